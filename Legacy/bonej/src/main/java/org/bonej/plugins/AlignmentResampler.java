@@ -0,0 +1,469 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.bonej.plugins;
+
+import java.awt.Rectangle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bonej.util.Multithreader;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.measure.Calibration;
+
+/**
+ * Resample a stack into the frame of its principal axes, as used by
+ * {@link Moments} to draw the aligned copy of an image.
+ * <p>
+ * Each target voxel is mapped back into the source with the inverse rotation
+ * and looked up with nearest neighbour, trilinear or tricubic (Catmull-Rom)
+ * interpolation. Target voxels whose nearest source voxel lies outside the
+ * ROI or slice range stay 0 in every mode, and the interpolated modes clamp
+ * their neighbourhood to the ROI and slice range, so all modes cover the same
+ * footprint. Interpolated modes sample the source half a voxel back from the
+ * mapped position, which keeps their output registered with the nearest
+ * neighbour result. RGB images are always resampled by nearest neighbour.
+ * </p>
+ * <p>
+ * Pixels are read from and written to the slices' primitive arrays. The
+ * target is processed in cubic blocks, shared out between threads, so that
+ * each thread's reads stay within a compact region of the source. The
+ * aligned volume can be made all at once, or in slabs of a few slices that
+ * are handed on and then overwritten, so that it never has to be held in
+ * memory.
+ * </p>
+ */
+final class AlignmentResampler {
+
+	/** Edge length of the blocks of target voxels resampled together */
+	private static final int BLOCK = 32;
+
+	private static final int BYTE = 0;
+	private static final int SHORT = 1;
+	private static final int FLOAT = 2;
+	private static final int RGB = 3;
+
+	/** How source voxels are combined into a target voxel */
+	enum Interpolation {
+		NEAREST("Nearest neighbour"), TRILINEAR("Trilinear"), TRICUBIC("Tricubic");
+
+		private final String label;
+
+		Interpolation(final String label) {
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+
+		/**
+		 * Find the mode with a given label
+		 *
+		 * @param label label as shown to the user
+		 * @return the labelled mode
+		 * @throws IllegalArgumentException if no mode has the label
+		 */
+		static Interpolation fromLabel(final String label) {
+			for (final Interpolation interpolation : values()) {
+				if (interpolation.label.equals(label)) return interpolation;
+			}
+			throw new IllegalArgumentException("Unknown interpolation: " + label);
+		}
+	}
+
+	/** Receives each slab of aligned slices before it is overwritten */
+	interface SlabConsumer {
+
+		/**
+		 * @param firstSlice target slice number of the slab's first slice (1-based)
+		 * @param slices pixel arrays of the slab; only the first nSlices are used
+		 * @param nSlices number of slices in the slab
+		 */
+		void accept(int firstSlice, Object[] slices, int nSlices);
+	}
+
+	private final Object[] source;
+	private final int type;
+	private final int width;
+	private final int bitDepth;
+	private final int rX;
+	private final int rY;
+	private final int rW;
+	private final int rH;
+	private final int startSlice;
+	private final int endSlice;
+	private final double vW;
+	private final double vH;
+	private final double vD;
+	private final double vS;
+	private final int wT;
+	private final int hT;
+	private final int dT;
+	private final double xTc;
+	private final double yTc;
+	private final double zTc;
+	private final double dXc;
+	private final double dYc;
+	private final double dZc;
+	private final double[][] eigenVecInv;
+	private final Interpolation interpolation;
+
+	/**
+	 * @param imp source image; its ROI limits the voxels that are copied
+	 * @param eigenVecInv inverse rotation matrix (target to source)
+	 * @param centroid centroid of the source in calibrated units, {x, y, z}
+	 * @param wT width of the target stack
+	 * @param hT height of the target stack
+	 * @param dT depth of the target stack
+	 * @param startSlice first source slice to copy (1-based)
+	 * @param endSlice last source slice to copy, inclusive
+	 * @param interpolation how to look up source voxels
+	 * @throws IllegalArgumentException if the image's bit depth is unsupported
+	 */
+	AlignmentResampler(final ImagePlus imp, final double[][] eigenVecInv,
+		final double[] centroid, final int wT, final int hT, final int dT,
+		final int startSlice, final int endSlice,
+		final Interpolation interpolation)
+	{
+		final ImageStack stack = imp.getImageStack();
+		source = new Object[stack.getSize() + 1];
+		for (int z = startSlice; z <= endSlice; z++)
+			source[z] = stack.getPixels(z);
+		bitDepth = imp.getBitDepth();
+		type = getType(bitDepth);
+		width = stack.getWidth();
+		final Rectangle r = imp.getProcessor().getRoi();
+		rX = r.x;
+		rY = r.y;
+		rW = r.x + r.width;
+		rH = r.y + r.height;
+		this.startSlice = startSlice;
+		this.endSlice = endSlice;
+		final Calibration cal = imp.getCalibration();
+		vW = cal.pixelWidth;
+		vH = cal.pixelHeight;
+		vD = cal.pixelDepth;
+		vS = Math.min(vW, Math.min(vH, vD));
+		this.wT = wT;
+		this.hT = hT;
+		this.dT = dT;
+		xTc = wT * vS / 2;
+		yTc = hT * vS / 2;
+		zTc = dT * vS / 2;
+		dXc = centroid[0] - xTc;
+		dYc = centroid[1] - yTc;
+		dZc = centroid[2] - zTc;
+		this.eigenVecInv = eigenVecInv;
+		this.interpolation = type == RGB ? Interpolation.NEAREST : interpolation;
+	}
+
+	/**
+	 * Resample the whole target volume
+	 *
+	 * @param target stack of wT × hT × dT pixel arrays of the source's type
+	 */
+	void resample(final ImageStack target) {
+		final Object[] slices = new Object[dT];
+		for (int z = 0; z < dT; z++)
+			slices[z] = target.getPixels(z + 1);
+		resample(slices, 1, dT);
+	}
+
+	/**
+	 * Resample the target volume a slab at a time, reusing the same slab of
+	 * pixel arrays for each
+	 *
+	 * @param slabDepth number of slices per slab
+	 * @param consumer receives each slab once it is complete
+	 */
+	void resampleInSlabs(final int slabDepth, final SlabConsumer consumer) {
+		final int depth = Math.min(slabDepth, dT);
+		final Object[] slab = new Object[depth];
+		for (int z = 0; z < depth; z++)
+			slab[z] = Moments.getEmptyPixels(wT, hT, bitDepth);
+		for (int first = 1; first <= dT; first += depth) {
+			final int n = Math.min(depth, dT - first + 1);
+			resample(slab, first, n);
+			consumer.accept(first, slab, n);
+		}
+	}
+
+	/**
+	 * Fill a run of target slices, sharing its blocks out between threads
+	 *
+	 * @param slices pixel arrays to fill
+	 * @param first target slice number of slices[0] (1-based)
+	 * @param n number of slices to fill
+	 */
+	private void resample(final Object[] slices, final int first, final int n) {
+		final int nX = (wT + BLOCK - 1) / BLOCK;
+		final int nY = (hT + BLOCK - 1) / BLOCK;
+		final int nZ = (n + BLOCK - 1) / BLOCK;
+		final int nBlocks = nX * nY * nZ;
+		final AtomicInteger ai = new AtomicInteger(0);
+		final AtomicInteger done = new AtomicInteger(0);
+		IJ.showStatus("Aligning image stack...");
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				for (int b = ai.getAndIncrement(); b < nBlocks; b = ai.getAndIncrement()) {
+					final int bx = b % nX;
+					final int by = (b / nX) % nY;
+					final int bz = b / (nX * nY);
+					final int z0 = bz * BLOCK;
+					final int z1 = Math.min(z0 + BLOCK, n);
+					for (int z = z0; z < z1; z++) {
+						resampleBlockRows(slices[z], first + z, bx * BLOCK, Math.min(
+							(bx + 1) * BLOCK, wT), by * BLOCK, Math.min((by + 1) * BLOCK, hT));
+					}
+					IJ.showProgress(done.incrementAndGet(), nBlocks);
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+	}
+
+	/**
+	 * Fill a rectangle of one target slice
+	 *
+	 * @param pixels the target slice's pixels
+	 * @param z target slice number (1-based)
+	 * @param x0 first column
+	 * @param x1 column after the last
+	 * @param y0 first row
+	 * @param y1 row after the last
+	 */
+	private void resampleBlockRows(final Object pixels, final int z,
+		final int x0, final int x1, final int y0, final int y1)
+	{
+		final double eVI00 = eigenVecInv[0][0];
+		final double eVI10 = eigenVecInv[1][0];
+		final double eVI20 = eigenVecInv[2][0];
+		final double eVI01 = eigenVecInv[0][1];
+		final double eVI11 = eigenVecInv[1][1];
+		final double eVI21 = eigenVecInv[2][1];
+		final double eVI02 = eigenVecInv[0][2];
+		final double eVI12 = eigenVecInv[1][2];
+		final double eVI22 = eigenVecInv[2][2];
+		final double zD = z * vS - zTc;
+		final double zDeVI20 = zD * eVI20;
+		final double zDeVI21 = zD * eVI21;
+		final double zDeVI22 = zD * eVI22;
+		for (int y = y0; y < y1; y++) {
+			final double yD = y * vS - yTc;
+			final double yDeVI10 = yD * eVI10;
+			final double yDeVI11 = yD * eVI11;
+			final double yDeVI12 = yD * eVI12;
+			final int offset = y * wT;
+			for (int x = x0; x < x1; x++) {
+				final double xD = x * vS - xTc;
+				final double xAlign = xD * eVI00 + yDeVI10 + zDeVI20 + xTc;
+				final double yAlign = xD * eVI01 + yDeVI11 + zDeVI21 + yTc;
+				final double zAlign = xD * eVI02 + yDeVI12 + zDeVI22 + zTc;
+				// position in source voxels; voxel i spans [i, i + 1)
+				final double xP = (xAlign + dXc) / vW;
+				final double yP = (yAlign + dYc) / vH;
+				final double zP = (zAlign + dZc) / vD;
+				final int xA = (int) Math.floor(xP);
+				final int yA = (int) Math.floor(yP);
+				final int zA = (int) Math.floor(zP);
+				if (xA < rX || xA >= rW || yA < rY || yA >= rH || zA < startSlice ||
+					zA > endSlice)
+				{
+					set(pixels, offset + x, 0);
+					continue;
+				}
+				switch (interpolation) {
+					case NEAREST:
+						copy(source[zA], yA * width + xA, pixels, offset + x);
+						break;
+					case TRILINEAR:
+						set(pixels, offset + x, trilinear(xP - 0.5, yP - 0.5, zP - 0.5));
+						break;
+					default:
+						set(pixels, offset + x, tricubic(xP - 0.5, yP - 0.5, zP - 0.5));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Interpolate between the 8 voxels around a point, with voxel centres at
+	 * integer coordinates
+	 */
+	private double trilinear(final double x, final double y, final double z) {
+		final int i = (int) Math.floor(x);
+		final int j = (int) Math.floor(y);
+		final int k = (int) Math.floor(z);
+		final double tx = x - i;
+		final double ty = y - j;
+		final double tz = z - k;
+		final int x0 = clamp(i, rX, rW - 1);
+		final int x1 = clamp(i + 1, rX, rW - 1);
+		final int row0 = clamp(j, rY, rH - 1) * width;
+		final int row1 = clamp(j + 1, rY, rH - 1) * width;
+		final Object s0 = source[clamp(k, startSlice, endSlice)];
+		final Object s1 = source[clamp(k + 1, startSlice, endSlice)];
+		final double a = lerp(get(s0, row0 + x0), get(s0, row0 + x1), tx);
+		final double b = lerp(get(s0, row1 + x0), get(s0, row1 + x1), tx);
+		final double c = lerp(get(s1, row0 + x0), get(s1, row0 + x1), tx);
+		final double d = lerp(get(s1, row1 + x0), get(s1, row1 + x1), tx);
+		return lerp(lerp(a, b, ty), lerp(c, d, ty), tz);
+	}
+
+	/**
+	 * Interpolate the 4 × 4 × 4 voxels around a point with a Catmull-Rom spline,
+	 * with voxel centres at integer coordinates
+	 */
+	private double tricubic(final double x, final double y, final double z) {
+		final int i = (int) Math.floor(x);
+		final int j = (int) Math.floor(y);
+		final int k = (int) Math.floor(z);
+		final double tx = x - i;
+		final double ty = y - j;
+		final double tz = z - k;
+		final int x0 = clamp(i - 1, rX, rW - 1);
+		final int x1 = clamp(i, rX, rW - 1);
+		final int x2 = clamp(i + 1, rX, rW - 1);
+		final int x3 = clamp(i + 2, rX, rW - 1);
+		double sum = 0;
+		for (int c = 0; c < 4; c++) {
+			final Object slice = source[clamp(k + c - 1, startSlice, endSlice)];
+			double plane = 0;
+			for (int b = 0; b < 4; b++) {
+				final int row = clamp(j + b - 1, rY, rH - 1) * width;
+				final double line = cubicWeight(tx, 0) * get(slice, row + x0) +
+					cubicWeight(tx, 1) * get(slice, row + x1) + cubicWeight(tx, 2) * get(
+						slice, row + x2) + cubicWeight(tx, 3) * get(slice, row + x3);
+				plane += cubicWeight(ty, b) * line;
+			}
+			sum += cubicWeight(tz, c) * plane;
+		}
+		return sum;
+	}
+
+	/**
+	 * Catmull-Rom weight of one of the voxels at -1, 0, 1 and 2
+	 *
+	 * @param t position between voxels 0 and 1, 0 ≤ t &lt; 1
+	 * @param n index of the voxel, 0 for the one at -1
+	 * @return weight of the voxel
+	 */
+	private static double cubicWeight(final double t, final int n) {
+		final double t2 = t * t;
+		final double t3 = t2 * t;
+		switch (n) {
+			case 0:
+				return 0.5 * (-t3 + 2 * t2 - t);
+			case 1:
+				return 0.5 * (3 * t3 - 5 * t2 + 2);
+			case 2:
+				return 0.5 * (-3 * t3 + 4 * t2 + t);
+			default:
+				return 0.5 * (t3 - t2);
+		}
+	}
+
+	private static double lerp(final double a, final double b, final double t) {
+		return a + (b - a) * t;
+	}
+
+	private static int clamp(final int value, final int min, final int max) {
+		return value < min ? min : value > max ? max : value;
+	}
+
+	private double get(final Object pixels, final int i) {
+		switch (type) {
+			case BYTE:
+				return ((byte[]) pixels)[i] & 0xff;
+			case SHORT:
+				return ((short[]) pixels)[i] & 0xffff;
+			default:
+				return ((float[]) pixels)[i];
+		}
+	}
+
+	/** Write a value, rounded and clamped to the range of integer types */
+	private void set(final Object pixels, final int i, final double value) {
+		switch (type) {
+			case BYTE:
+				((byte[]) pixels)[i] = (byte) Math.max(0, Math.min(255, Math.round(
+					value)));
+				break;
+			case SHORT:
+				((short[]) pixels)[i] = (short) Math.max(0, Math.min(65535, Math.round(
+					value)));
+				break;
+			case FLOAT:
+				((float[]) pixels)[i] = (float) value;
+				break;
+			default:
+				((int[]) pixels)[i] = (int) value;
+		}
+	}
+
+	/** Copy a voxel unchanged */
+	private void copy(final Object from, final int i, final Object to,
+		final int j)
+	{
+		switch (type) {
+			case BYTE:
+				((byte[]) to)[j] = ((byte[]) from)[i];
+				break;
+			case SHORT:
+				((short[]) to)[j] = ((short[]) from)[i];
+				break;
+			case FLOAT:
+				((float[]) to)[j] = ((float[]) from)[i];
+				break;
+			default:
+				((int[]) to)[j] = ((int[]) from)[i];
+		}
+	}
+
+	private static int getType(final int bitDepth) {
+		switch (bitDepth) {
+			case 8:
+				return BYTE;
+			case 16:
+				return SHORT;
+			case 24:
+				return RGB;
+			case 32:
+				return FLOAT;
+			default:
+				throw new IllegalArgumentException("Unrecognized bit depth");
+		}
+	}
+}
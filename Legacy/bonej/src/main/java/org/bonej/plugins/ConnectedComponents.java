@@ -31,10 +31,12 @@
 package org.bonej.plugins;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.bonej.util.BitPackedStack;
 import org.bonej.util.Multithreader;
 import org.eclipse.collections.api.iterator.IntIterator;
 import org.eclipse.collections.api.iterator.MutableIntIterator;
@@ -47,7 +49,6 @@ import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
 
 import ij.ImagePlus;
 import ij.ImageStack;
-import ij.process.ImageProcessor;
 
 /**
  * Performs connected components labelling (sequential region labelling) in two-passes.
@@ -70,18 +71,40 @@ public class ConnectedComponents {
 	static final int MAX_LABEL = Integer.MAX_VALUE;
 	/** minimum number of first labels to use multithreaded bucket fountain on */
 	private static final int BUCKET_FOUNTAIN_MULTITHREAD_MIN_LABELS = (int) 1E6;
+	/** minimum number of first labels to resolve with a union-find by default */
+	private static final int UNION_FIND_MIN_LABELS = (int) 1E5;
 
 	/** number of particle labels */
 	private static int nParticles;
 
 	/** array of binary pixels */
-	private static byte[][] workArray;
+	private static BitPackedStack workArray;
+
+	/**
+	 * resolve label equivalences with a union-find instead of the bucket
+	 * fountain, or choose by the number of first labels if null
+	 */
+	private Boolean useUnionFind;
 
 	/** Constructor */
 	public ConnectedComponents() {
 
 	}
 
+	/**
+	 * Choose how label equivalences are resolved. The union-find resolver keeps
+	 * its working state in flat int[] arrays, which uses less memory and time
+	 * than the bucket fountain when there are many first labels. By default the
+	 * union-find is used when there are at least 100 000 first labels. The two
+	 * resolvers find the same particles but may number them differently.
+	 *
+	 * @param useUnionFind true to always use a union-find, false to always use
+	 *          the bucket fountain
+	 */
+	public void setUseUnionFind(final boolean useUnionFind) {
+		this.useUnionFind = useUnionFind;
+	}
+
 	/**
 	 * Run connected components filter on a binary image
 	 * 
@@ -92,9 +115,37 @@ public class ConnectedComponents {
 	 *         label.
 	 */
 	public int[][] run(final ImagePlus imp, final int phase) {
-		final int w = imp.getWidth();
-		final int h = imp.getHeight();
-		final int nSlices = imp.getImageStackSize();
+		// set up the work array
+		makeWorkArray(imp);
+
+		return label(phase);
+	}
+
+	/**
+	 * Run connected components filter on a bit-packed binary image, which is
+	 * used as the work array without being copied
+	 * 
+	 * @param binary Input binary image
+	 * @param phase either foreground (this.FORE) or background (this.BACK)
+	 * @return 2D int array with the same dimensions as the input image, with
+	 *         individual connected components labelled with a unique, consecutive
+	 *         label.
+	 */
+	public int[][] run(final BitPackedStack binary, final int phase) {
+		workArray = binary;
+		return label(phase);
+	}
+
+	/**
+	 * Label the work array
+	 * 
+	 * @param phase either foreground (this.FORE) or background (this.BACK)
+	 * @return label array
+	 */
+	private int[][] label(final int phase) {
+		final int w = workArray.getWidth();
+		final int h = workArray.getHeight();
+		final int nSlices = workArray.getDepth();
 		final int nProcessors = Runtime.getRuntime().availableProcessors();
 		final int minSlicesPerChunk = 10;
 
@@ -135,14 +186,12 @@ public class ConnectedComponents {
 			chunkMaps.add(map);
 		}
 
-		// set up the work array
-		makeWorkArray(imp);
-
 		//do a first labelling and map first degree neighbours
 		int[][] particleLabels = firstIDAttribution(chunkMaps, chunkIDOffsets, startSlices, w, h, nSlices, phase);
 
 		//merge neighbour networks and generate a LUT
-		final int[][] lut = generateLut(chunkMaps, chunkIDOffsets);
+		final int[][] lut = isUnionFindUsed(chunkMaps) ? generateLutUnionFind(chunkMaps, chunkIDOffsets) :
+			generateLut(chunkMaps, chunkIDOffsets);
 		
 		// rewrite the pixel values using the LUT
 		applyLUT(particleLabels, lut, chunkIDOffsets, startSlices, nSlices);
@@ -150,6 +199,154 @@ public class ConnectedComponents {
 		return particleLabels;
 	}
 
+	/**
+	 * Run connected components filter on a binary image in z-slabs, holding only
+	 * one slab's work and label arrays on the heap at a time. Labels are spilled
+	 * to a memory-mapped temporary file and slabs are stitched together using
+	 * only the planes at each slab boundary.
+	 * <p>
+	 * Use this for stacks whose label array would not fit in memory. The work
+	 * array is not retained, so {@link #getWorkArray()} returns null after a
+	 * streamed run.
+	 * </p>
+	 *
+	 * @param imp         Input ImagePlus, must be 2D or 3D and binary (0 or 255)
+	 * @param phase       either foreground (this.FORE) or background (this.BACK)
+	 * @param slabSlices  number of slices to label in memory at a time
+	 * @return label stack with the same dimensions as the input image, with
+	 *         individual connected components labelled with a unique, consecutive
+	 *         label. Close it when finished to delete the backing file.
+	 */
+	public MappedLabelStack runStreamed(final ImagePlus imp, final int phase, final int slabSlices) {
+		if (slabSlices < 1) {
+			throw new IllegalArgumentException("Slab must contain at least one slice");
+		}
+		final int w = imp.getWidth();
+		final int h = imp.getHeight();
+		final int wh = w * h;
+		final int nSlices = imp.getImageStackSize();
+		final ImageStack stack = imp.getImageStack();
+		final MappedLabelStack labelStack = new MappedLabelStack(w, h, nSlices);
+
+		// equivalences of the provisional labels, which are unique across slabs
+		final LabelUnionFind unionFind = new LabelUnionFind(1);
+		int labelOffset = 0;
+		int[] priorPlane = null;
+
+		for (int startSlice = 0; startSlice < nSlices; startSlice += slabSlices) {
+			final int endSlice = Math.min(startSlice + slabSlices, nSlices);
+			final ImageStack slabStack = new ImageStack(w, h);
+			for (int z = startSlice; z < endSlice; z++) {
+				slabStack.addSlice(stack.getSliceLabel(z + 1), stack.getProcessor(z + 1));
+			}
+			final int[][] slabLabels = run(new ImagePlus("Slab", slabStack), phase);
+			final int nSlabLabels = nParticles - 1;
+
+			if ((long) labelOffset + nSlabLabels >= MAX_LABEL) {
+				throw new IllegalArgumentException("Number of provisional labels exceeds the allowed range (max " +
+					(MAX_LABEL - 1) + ")");
+			}
+			unionFind.grow(labelOffset + nSlabLabels + 1);
+
+			// shift the slab's labels into their own part of the label space
+			final int offset = labelOffset;
+			for (int z = startSlice; z < endSlice; z++) {
+				final int[] slice = slabLabels[z - startSlice];
+				for (int i = 0; i < wh; i++) {
+					if (slice[i] != 0)
+						slice[i] += offset;
+				}
+				labelStack.writeSlice(z, slice);
+			}
+
+			// join labels that touch across the boundary with the previous slab
+			if (priorPlane != null) {
+				stitchPlanes(unionFind, priorPlane, slabLabels[0], w, h, phase);
+			}
+			priorPlane = slabLabels[endSlice - startSlice - 1];
+			labelOffset += nSlabLabels;
+		}
+		workArray = null;
+
+		// resolve the equivalences into consecutive final labels
+		final int[] lut = unionFind.relabel();
+		nParticles = unionFind.getNLabels() + 1;
+
+		// rewrite the spilled labels using the LUT
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				final int[] slice = new int[wh];
+				for (int z = ai.getAndIncrement(); z < nSlices; z = ai.getAndIncrement()) {
+					labelStack.readSlice(z, slice);
+					for (int i = 0; i < wh; i++) {
+						slice[i] = lut[slice[i]];
+					}
+					labelStack.writeSlice(z, slice);
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+
+		return labelStack;
+	}
+
+	/**
+	 * Join the labels in the first plane of a slab to their neighbours in the last
+	 * plane of the previous slab. Foreground is 26-connected and background is
+	 * 6-connected.
+	 *
+	 * @param unionFind provisional label equivalences
+	 * @param priorPlane last plane of the previous slab
+	 * @param plane first plane of the current slab
+	 * @param w image width
+	 * @param h image height
+	 * @param phase FORE or BACK
+	 */
+	private static void stitchPlanes(final LabelUnionFind unionFind, final int[] priorPlane, final int[] plane,
+			final int w, final int h, final int phase) {
+		for (int y = 0; y < h; y++) {
+			final int rowIndex = y * w;
+			for (int x = 0; x < w; x++) {
+				final int label = plane[rowIndex + x];
+				if (label == 0)
+					continue;
+				if (phase == BACK) {
+					final int priorLabel = priorPlane[rowIndex + x];
+					if (priorLabel != 0)
+						unionFind.union(label, priorLabel);
+					continue;
+				}
+				for (int ny = Math.max(0, y - 1); ny <= Math.min(h - 1, y + 1); ny++) {
+					final int nRowIndex = ny * w;
+					for (int nx = Math.max(0, x - 1); nx <= Math.min(w - 1, x + 1); nx++) {
+						final int priorLabel = priorPlane[nRowIndex + nx];
+						if (priorLabel != 0)
+							unionFind.union(label, priorLabel);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decide whether to resolve the label equivalences with a union-find
+	 *
+	 * @param chunkMaps list of HashMaps, one entry per first label
+	 * @return true if a union-find was chosen, or if there are enough first
+	 *         labels for it to pay off
+	 */
+	private boolean isUnionFindUsed(final ArrayList<MutableList<IntHashSet>> chunkMaps) {
+		if (useUnionFind != null)
+			return useUnionFind;
+		long nFirstLabels = 0;
+		for (final MutableList<IntHashSet> map : chunkMaps) {
+			nFirstLabels += map.size();
+		}
+		return nFirstLabels >= UNION_FIND_MIN_LABELS;
+	}
+
 	/**
 	 * Generate a label replacement LUT
 	 * 
@@ -167,31 +364,96 @@ public class ConnectedComponents {
 	}
 
 	/**
-	 * Create a work array and store it as a field of this instance, which can be
-	 * retrieved with getWorkArray
-	 *
-	 * @param imp an image.
+	 * Generate a label replacement LUT by joining each label to the members of its
+	 * HashSet in a union-find, instead of merging the HashSets themselves.
+	 * Chunks' label ranges are packed end to end so that the union-find's
+	 * parent table is dense.
+	 * 
+	 * @param chunkMaps list of HashMaps
+	 * @param chunkIDOffsets ID offsets
+	 * @return LUTs, one per image chunk
 	 */
-	static void makeWorkArray(final ImagePlus imp) {
-		final int s = imp.getStackSize();
-		final int p = imp.getWidth() * imp.getHeight();
-		workArray = new byte[s][p];
-		final ImageStack stack = imp.getStack();
+	private static int[][] generateLutUnionFind(final ArrayList<MutableList<IntHashSet>> chunkMaps,
+			final int[] chunkIDOffsets) {
+		final int nChunks = chunkIDOffsets.length;
 
-		AtomicInteger ai = new AtomicInteger(0);
+		// start of each chunk's labels in the dense label range
+		final int[] denseOffsets = new int[nChunks + 1];
+		for (int chunk = 0; chunk < nChunks; chunk++) {
+			denseOffsets[chunk + 1] = denseOffsets[chunk] + chunkMaps.get(chunk).size();
+		}
+		final int nFirstLabels = denseOffsets[nChunks];
 
-		final Thread[] threads = Multithreader.newThreads();
-		for (int thread = 0; thread < threads.length; thread++) {
-			threads[thread] = new Thread(() -> {
-				for (int z = ai.getAndIncrement(); z < s; z = ai.getAndIncrement()) {
-					final ImageProcessor ip = stack.getProcessor(z + 1);
-					for (int i = 0; i < p; i++) {
-						workArray[z][i] = (byte) ip.get(i);
+		final LabelUnionFind unionFind;
+		//use lock-free version only if there are lots of first labels to merge
+		if (nFirstLabels >= BUCKET_FOUNTAIN_MULTITHREAD_MIN_LABELS) {
+			final LabelUnionFind.Concurrent concurrent = new LabelUnionFind.Concurrent(nFirstLabels);
+			final Thread[] threads = new Thread[nChunks];
+			for (int thread = 0; thread < nChunks; thread++) {
+				final int chunk = thread;
+				threads[thread] = new Thread(() -> {
+					final MutableList<IntHashSet> map = chunkMaps.get(chunk);
+					final int mapSize = map.size();
+					for (int i = 0; i < mapSize; i++) {
+						final int label = denseOffsets[chunk] + i;
+						final IntIterator iter = map.get(i).intIterator();
+						while (iter.hasNext()) {
+							concurrent.union(label, denseLabel(iter.next(), chunkIDOffsets, denseOffsets));
+						}
+					}
+				});
+			}
+			Multithreader.startAndJoin(threads);
+			unionFind = concurrent.toLabelUnionFind();
+		}
+		else {
+			unionFind = new LabelUnionFind(nFirstLabels);
+			for (int chunk = 0; chunk < nChunks; chunk++) {
+				final MutableList<IntHashSet> map = chunkMaps.get(chunk);
+				final int mapSize = map.size();
+				for (int i = 0; i < mapSize; i++) {
+					final int label = denseOffsets[chunk] + i;
+					final IntIterator iter = map.get(i).intIterator();
+					while (iter.hasNext()) {
+						unionFind.union(label, denseLabel(iter.next(), chunkIDOffsets, denseOffsets));
 					}
 				}
-			});
+			}
 		}
-		Multithreader.startAndJoin(threads);
+
+		final int[] denseLut = unionFind.relabel();
+		nParticles = unionFind.getNLabels() + 1;
+
+		final int[][] lut = new int[nChunks][];
+		for (int chunk = 0; chunk < nChunks; chunk++) {
+			lut[chunk] = Arrays.copyOfRange(denseLut, denseOffsets[chunk], denseOffsets[chunk + 1]);
+		}
+		return lut;
+	}
+
+	/**
+	 * Convert a first label into its position in the dense label range
+	 * 
+	 * @param label first label, including its chunk's ID offset
+	 * @param chunkIDOffsets ID offsets
+	 * @param denseOffsets start of each chunk's labels in the dense range
+	 * @return dense label
+	 */
+	private static int denseLabel(final int label, final int[] chunkIDOffsets, final int[] denseOffsets) {
+		int chunk = Arrays.binarySearch(chunkIDOffsets, label);
+		if (chunk < 0)
+			chunk = -chunk - 2;
+		return denseOffsets[chunk] + label - chunkIDOffsets[chunk];
+	}
+
+	/**
+	 * Create a bit-packed work array and store it as a field of this instance,
+	 * which can be retrieved with getPackedWorkArray
+	 *
+	 * @param imp an image.
+	 */
+	static void makeWorkArray(final ImagePlus imp) {
+		workArray = BitPackedStack.fromStack(imp.getStack());
 	}
 
 	/**
@@ -253,7 +515,7 @@ public class ConnectedComponents {
 						final int rowIndex = y * w;
 						for (int x = 0; x < w; x++) {
 							final int arrayIndex = rowIndex + x;
-							if (workArray[startSlice][arrayIndex] == FORE) {
+							if (workArray.get(x, y, startSlice)) {
 								// Find the minimum particleLabel in the
 								// neighbouring pixels
 								get4Neighborhood(sliceNbh, particleLabels, x, y, startSlice, w, h, nSlices);
@@ -286,8 +548,14 @@ public class ConnectedComponents {
 						for (int y = 0; y < h; y++) {
 							final int rowIndex = y * w;
 							for (int x = 0; x < w; x++) {
+								if ((x & 63) == 0 && workArray.getWord(x >>> 6, y, z) == 0) {
+									// skip a whole word of background
+									lastPixelWasForeground = false;
+									x += 63;
+									continue;
+								}
 								final int arrayIndex = rowIndex + x;
-								if (workArray[z][arrayIndex] == FORE) {
+								if (workArray.get(x, y, z)) {
 									
 									//for pixels in the middle of the slice,
 									if (lastPixelWasForeground && x > 0 && y > 0 && x < wm1 && y < hm1) {
@@ -331,7 +599,7 @@ public class ConnectedComponents {
 						final int rowIndex = y * w;
 						for (int x = 0; x < w; x++) {
 							final int arrayIndex = rowIndex + x;
-							if (workArray[startSlice][arrayIndex] == BACK) {
+							if (!workArray.get(x, y, startSlice)) {
 								// Find the minimum particleLabel in the
 								// neighbouring pixels
 								get2Neighborhood(sliceNbh, particleLabels, x, y, startSlice, w, h, nSlices);
@@ -360,7 +628,7 @@ public class ConnectedComponents {
 							final int rowIndex = y * w;
 							for (int x = 0; x < w; x++) {
 								final int arrayIndex = rowIndex + x;
-								if (workArray[z][arrayIndex] == BACK) {
+								if (!workArray.get(x, y, z)) {
 
 									// Find the minimum particleLabel in the
 									// neighbouring pixels
@@ -414,7 +682,7 @@ public class ConnectedComponents {
 							final int rowIndex = y * w;
 							for (int x = 0; x < w; x++) {
 								final int arrayIndex = rowIndex + x;
-								if (workArray[z][arrayIndex] == FORE) {
+								if (workArray.get(x, y, z)) {
 									final int label = particleLabels[z][arrayIndex];
 									get9Neighborhood(nbh, particleLabels, x, y, z, w, h, nSlices);
 									addChunkNeighboursToMap(chunkMap, nbh, label - IDoffset);
@@ -429,7 +697,7 @@ public class ConnectedComponents {
 							final int rowIndex = y * w;
 							for (int x = 0; x < w; x++) {
 								final int arrayIndex = rowIndex + x;
-								if (workArray[z][arrayIndex] == BACK) {
+								if (!workArray.get(x, y, z)) {
 									final int label = particleLabels[z][arrayIndex];
 									get1Neighborhood(nbh, particleLabels, x, y, z, w);
 									addChunkNeighboursToMap(chunkMap, nbh, label - IDoffset);
@@ -1153,11 +1421,28 @@ public class ConnectedComponents {
 	}
 
 	/**
-	 * Returns the binary work array containing foreground and background pixels.
+	 * Returns a copy of the binary work array containing foreground (255) and
+	 * background (0) pixels.
 	 *
 	 * @return binary work array containing foreground and background pixels
 	 */
 	public byte[][] getWorkArray() {
+		if (workArray == null)
+			return null;
+		final int d = workArray.getDepth();
+		final byte[][] pixels = new byte[d][];
+		for (int z = 0; z < d; z++) {
+			pixels[z] = workArray.toByteSlice(z);
+		}
+		return pixels;
+	}
+
+	/**
+	 * Returns the bit-packed binary work array, without copying it.
+	 *
+	 * @return binary work array containing foreground and background pixels
+	 */
+	public BitPackedStack getPackedWorkArray() {
 		return workArray;
 	}
 
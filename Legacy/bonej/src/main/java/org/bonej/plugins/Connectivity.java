@@ -32,9 +32,9 @@ package org.bonej.plugins;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.bonej.util.BitPackedStack;
 import org.bonej.util.ImageCheck;
 import org.bonej.util.Multithreader;
-import org.bonej.utilities.DatasetUtil;
 import org.bonej.utilities.ImagePlusUtil;
 import org.bonej.utilities.SharedTable;
 import org.bonej.wrapperPlugins.BoneJCommand;
@@ -50,9 +50,12 @@ import org.scijava.ui.UIService;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.Prefs;
 import ij.macro.Interpreter;
 import ij.measure.Calibration;
+import ij.process.FloatProcessor;
 import net.imagej.Dataset;
+import net.imagej.display.ColorTables;
 
 /**
  * <p>
@@ -113,6 +116,12 @@ import net.imagej.Dataset;
 public class Connectivity extends BoneJCommand implements Command {
 
 	private final static int[] EULER_LUT = fillEulerLUT();
+
+	/**
+	 * Delta Euler of each octant, indexed directly by its voxels: bit k is set
+	 * if octant voxel o(k + 1) of {@link #getDeltaEuler} is foreground
+	 */
+	private final static int[] OCTANT_LUT = fillOctantLUT();
 	
 	/** working image width */
 	private int width = 0;
@@ -131,6 +140,18 @@ public class Connectivity extends BoneJCommand implements Command {
 	@Parameter (type = ItemIO.INPUT, required = false)
     private ImagePlus inputImagePlus;
 	
+	/** Edge length of the cubic tiles of a connectivity density map; 0 for none */
+	@Parameter(label = "Tile size (pixels)", style = "spinner", min = "0", required = false)
+	private int tileSize = 0;
+
+	@Parameter(type = ItemIO.OUTPUT, required = false)
+	private Dataset connDensityDataset;
+
+	/** Keep slice contributions with the image so re-runs after slice edits are fast */
+	@Parameter(label = "Cache slice contributions", required = false,
+			   description = "Not used for virtual stacks, which are streamed")
+	private boolean cacheSlices = false;
+
 	@Parameter
 	private ConvertService convertService;
 	
@@ -140,6 +161,16 @@ public class Connectivity extends BoneJCommand implements Command {
 	@Parameter
 	private UIService uiService;
 	
+	/**
+	 * Set whether {@link #getSumEuler(ImagePlus)} uses an image's
+	 * {@link EulerPlaneCache}
+	 *
+	 * @param cacheSlices true to use the cache
+	 */
+	void setCacheSlices(final boolean cacheSlices) {
+		this.cacheSlices = cacheSlices;
+	}
+
 	/**
 	 * Modern scijava Plugin entry point.
 	 */
@@ -155,7 +186,8 @@ public class Connectivity extends BoneJCommand implements Command {
 		
 		//in case no ImagePlus was provided use the Dataset input
 		if (inputImagePlus == null) {
-			imp = DatasetUtil.toImagePlus(inputDataset, convertService);
+			//not duplicated, so that a non-native stack can be streamed
+			imp = convertService.convert(inputDataset, ImagePlus.class);
 			if (imp == null) {
 	            logService.error("Connectivity failed to convert Dataset to ImagePlus.");
 	            return;
@@ -167,15 +199,16 @@ public class Connectivity extends BoneJCommand implements Command {
 			imp = inputImagePlus;
 		}
 		
-		//duplicate the dataset-derived imp if it's not native, to make it a native imp
-		//also loads VirtualStacks to memory.
-        if (!ImagePlusUtil.isNativeStack(imp)) {
-        	String title = imp.getTitle();
-        	imp = imp.duplicate();
-        	imp.setTitle(title);
-        	logService.info("Connectivity made a native ImagePlus in memory");
-        }
-        
+		//stream the slices of a virtual or wrapped imp rather than
+		//loading the whole stack to memory
+		final boolean streamed = !ImagePlusUtil.isNativeStack(imp);
+		if (streamed) {
+			logService.info("Connectivity will stream slices from the non-native ImagePlus");
+			if (cacheSlices) {
+				logService.info("Slice contributions are not cached for a streamed ImagePlus");
+			}
+		}
+
         if (!ImageCheck.isBinary(imp)) {
         	String errorMsg = "Connectivity requires a binary image. " +
         			"The provided image (" + imp.getTitle() + ") is not binary.";
@@ -185,13 +218,28 @@ public class Connectivity extends BoneJCommand implements Command {
 
         	return;
 		}
-        process(imp);
+        process(imp, streamed);
 	}
 
-	private void process(ImagePlus imp) {
-		final double sumEuler = getSumEuler(imp);
+	private void process(ImagePlus imp, final boolean streamed) {
+		final double sumEuler;
+		final StackFaces faces;
+		if (streamed) {
+			faces = new StackFaces(imp.getWidth(), imp.getHeight(), imp.getStackSize());
+			sumEuler = getSumEulerStreamed(imp, Prefs.getThreads(), faces);
+		}
+		else {
+			if (cacheSlices) {
+				EulerPlaneCache.attach(imp);
+			}
+			else {
+				EulerPlaneCache.detach(imp);
+			}
+			sumEuler = getSumEuler(imp);
+			faces = new StackFaces(imp.getStack());
+		}
 
-		final double deltaChi = getDeltaChi(imp, sumEuler);
+		final double deltaChi = getDeltaChi(faces, sumEuler);
 
 		final double connectivity = getConnectivity(deltaChi);
 
@@ -206,10 +254,158 @@ public class Connectivity extends BoneJCommand implements Command {
 		SharedTable.add(imp.getTitle(), "Δ(χ)", deltaChi);
 		SharedTable.add(imp.getTitle(), "Connectivity", connectivity);
 		SharedTable.add(imp.getTitle(), "Conn.D (" + imp.getCalibration().getUnit() + "^-3)", connDensity);
+		if (tileSize > 0) {
+			processTiles(imp);
+		}
 		resultsTable = SharedTable.getTable();
 		return;
 	}
 
+	private void processTiles(final ImagePlus imp) {
+		final double[][] tiles = getTileConnectivity(imp, tileSize);
+		final String unit = imp.getCalibration().getUnit();
+		for (final double[] tile : tiles) {
+			final String label = imp.getTitle() + " tile (" + (int) tile[0] + ", " +
+				(int) tile[1] + ", " + (int) tile[2] + ")";
+			SharedTable.add(label, "Euler ch.", tile[3]);
+			SharedTable.add(label, "Δ(χ)", tile[4]);
+			SharedTable.add(label, "Connectivity", tile[5]);
+			SharedTable.add(label, "Conn.D (" + unit + "^-3)", tile[6]);
+		}
+		final ImagePlus mapImp = getConnDensityMap(imp, tileSize, tiles);
+		connDensityDataset = convertService.convert(mapImp, Dataset.class);
+		mapImp.close();
+		connDensityDataset.getImgPlus().setColorTable(ColorTables.FIRE, 0);
+		if (uiService != null && uiService.isVisible())
+			uiService.show(connDensityDataset);
+	}
+
+	/**
+	 * Measure connectivity in each tile of a cubic grid laid over the stack, as
+	 * though each tile had been cropped out and measured on its own. Tiles at
+	 * the far edges of the stack are truncated to fit.
+	 * <p>
+	 * The stack is read one z-slab of tiles at a time, and each slice is read
+	 * once and packed into all the tiles of its slab. The slab's tiles are then
+	 * measured in parallel on their packed voxels, so only one slab is held in
+	 * memory at a time.
+	 * </p>
+	 *
+	 * @param imp Binary ImagePlus, which may be virtual
+	 * @param tileSize edge length of the tiles in pixels
+	 * @return for each tile, the x, y and z of its first pixel, its Euler
+	 *         characteristic, Δ(χ), connectivity and connectivity density.
+	 *         Tiles are ordered by x, then y, then z.
+	 * @throws IllegalArgumentException if tileSize &lt; 1
+	 */
+	public double[][] getTileConnectivity(final ImagePlus imp, final int tileSize) {
+		if (tileSize < 1) {
+			throw new IllegalArgumentException("Tile size must be at least 1 pixel");
+		}
+		final int w = imp.getWidth();
+		final int h = imp.getHeight();
+		final int d = imp.getStackSize();
+		final int nx = (w + tileSize - 1) / tileSize;
+		final int ny = (h + tileSize - 1) / tileSize;
+		final int nz = (d + tileSize - 1) / tileSize;
+		final int slabTiles = nx * ny;
+		final ImageStack stack = imp.getImageStack();
+		final Calibration cal = imp.getCalibration();
+		final double[][] tiles = new double[slabTiles * nz][];
+
+		for (int tz = 0; tz < nz; tz++) {
+			final int z0 = tz * tileSize;
+			final int td = Math.min(tileSize, d - z0);
+			final BitPackedStack[] slab = new BitPackedStack[slabTiles];
+			for (int t = 0; t < slabTiles; t++) {
+				slab[t] = new BitPackedStack(Math.min(tileSize, w - t % nx * tileSize),
+					Math.min(tileSize, h - t / nx * tileSize), td);
+			}
+
+			// each thread packs whole slices, so no tile slice is shared
+			final AtomicInteger az = new AtomicInteger(0);
+			final Thread[] readers = Multithreader.newThreads();
+			for (int thread = 0; thread < readers.length; thread++) {
+				readers[thread] = new Thread(() -> {
+					for (int z = az.getAndIncrement(); z < td; z = az.getAndIncrement()) {
+						final byte[] pixels = getSlice(stack, z0 + z + 1);
+						for (int y = 0; y < h; y++) {
+							final int row = y * w;
+							final int ty = y / tileSize;
+							final int tileY = y - ty * tileSize;
+							for (int x = 0; x < w; x++) {
+								if (pixels[row + x] != -1) continue;
+								final int tx = x / tileSize;
+								slab[ty * nx + tx].set(x - tx * tileSize, tileY, z);
+							}
+						}
+					}
+				});
+			}
+			Multithreader.startAndJoin(readers);
+
+			final int slabOffset = tz * slabTiles;
+			final AtomicInteger ai = new AtomicInteger(0);
+			final Thread[] threads = Multithreader.newThreads();
+			for (int thread = 0; thread < threads.length; thread++) {
+				threads[thread] = new Thread(() -> {
+					// the edge corrections read the dimensions of the instance, so each
+					// thread needs its own
+					final Connectivity tileConnectivity = new Connectivity();
+					for (int t = ai.getAndIncrement(); t < slabTiles; t = ai.getAndIncrement()) {
+						final BitPackedStack binary = slab[t];
+						int sumEulerInt = 0;
+						for (int z = 0; z <= td; z++) {
+							sumEulerInt += getPlaneEuler(binary, z);
+						}
+						final double sumEuler = sumEulerInt / 8.0;
+						final double deltaChi = tileConnectivity.getDeltaChi(new StackFaces(
+							binary), sumEuler);
+						final double connectivity = tileConnectivity.getConnectivity(deltaChi);
+						final double connDensity = getConnDensity(connectivity, binary
+							.getWidth(), binary.getHeight(), td, cal);
+						tiles[slabOffset + t] = new double[] { t % nx * tileSize, t / nx *
+							tileSize, z0, sumEuler, deltaChi, connectivity, connDensity };
+					}
+				});
+			}
+			Multithreader.startAndJoin(threads);
+		}
+		return tiles;
+	}
+
+	/**
+	 * Make a map with one pixel for each tile, whose value is the tile's
+	 * connectivity density. Pixels are calibrated to the size of the tiles.
+	 *
+	 * @param imp Binary ImagePlus that was tiled
+	 * @param tileSize edge length of the tiles in pixels
+	 * @param tiles result of {@link #getTileConnectivity(ImagePlus, int)}
+	 * @return 32-bit connectivity density map
+	 */
+	static ImagePlus getConnDensityMap(final ImagePlus imp, final int tileSize,
+		final double[][] tiles)
+	{
+		final int nx = (imp.getWidth() + tileSize - 1) / tileSize;
+		final int ny = (imp.getHeight() + tileSize - 1) / tileSize;
+		final int nz = (imp.getStackSize() + tileSize - 1) / tileSize;
+		final ImageStack mapStack = new ImageStack(nx, ny);
+		for (int z = 0; z < nz; z++) {
+			final float[] pixels = new float[nx * ny];
+			for (int i = 0; i < nx * ny; i++) {
+				pixels[i] = (float) tiles[z * nx * ny + i][6];
+			}
+			mapStack.addSlice(new FloatProcessor(nx, ny, pixels));
+		}
+		final ImagePlus mapImp = new ImagePlus(imp.getShortTitle() + "_Conn.D", mapStack);
+		final Calibration mapCal = imp.getCalibration().copy();
+		mapCal.pixelWidth *= tileSize;
+		mapCal.pixelHeight *= tileSize;
+		mapCal.pixelDepth *= tileSize;
+		mapImp.setCalibration(mapCal);
+		return mapImp;
+	}
+
 	/**
 	 * Calculate connectivity density
 	 *
@@ -219,11 +415,17 @@ public class Connectivity extends BoneJCommand implements Command {
 	 */
 	public double getConnDensity(final ImagePlus imp, final double connectivity) {
 		setDimensions(imp);
-		final Calibration cal = imp.getCalibration();
+		return getConnDensity(connectivity, width, height, depth, imp
+			.getCalibration());
+	}
+
+	private static double getConnDensity(final double connectivity, final int w,
+		final int h, final int d, final Calibration cal)
+	{
 		final double vW = cal.pixelWidth;
 		final double vH = cal.pixelHeight;
 		final double vD = cal.pixelDepth;
-		final double stackVolume = (long) width * (long) height * depth * vW * vH * vD;
+		final double stackVolume = (long) w * (long) h * d * vW * vH * vD;
 		final double connDensity = connectivity / stackVolume;
 		return connDensity;
 	}
@@ -250,13 +452,38 @@ public class Connectivity extends BoneJCommand implements Command {
 	 * @return delta Chi
 	 */
 	public double getDeltaChi(final ImagePlus imp, final double sumEuler) {
-		setDimensions(imp);
-		final double deltaChi = sumEuler - correctForEdges(imp.getStack());
+		return getDeltaChi(new StackFaces(imp.getStack()), sumEuler);
+	}
+
+	/**
+	 * Get the contribution of a stack's foreground particles to the Euler
+	 * characteristic of the universe the stack was cut from, from its faces
+	 *
+	 * @param faces faces of the stack
+	 * @param sumEuler Euler characteristic of the stack
+	 * @return delta Chi
+	 */
+	double getDeltaChi(final StackFaces faces, final double sumEuler) {
+		width = faces.w;
+		height = faces.h;
+		depth = faces.d;
+		final double deltaChi = sumEuler - correctForEdges(faces);
 		return deltaChi;
 	}
 
 	/**
 	 * Calculate the Euler characteristic of the foreground in a binary stack
+	 * <p>
+	 * The stack is bit-packed and walked one 64-voxel word at a time. For each
+	 * vertex the eight voxels of its octant are shifted into an 8-bit index to
+	 * {@link #OCTANT_LUT}, and words in which every octant is empty or full are
+	 * skipped, because such octants add nothing.
+	 * </p>
+	 * <p>
+	 * If slice contributions are cached and the image has an
+	 * {@link EulerPlaneCache} attached, only the planes next to slices that
+	 * changed since the last call are calculated.
+	 * </p>
 	 *
 	 * @param imp
 	 *            Binary ImagePlus
@@ -264,38 +491,21 @@ public class Connectivity extends BoneJCommand implements Command {
 	 */
 	public double getSumEuler(final ImagePlus imp) {
 		setDimensions(imp);
-		final ImageStack stack = imp.getImageStack();
+		final EulerPlaneCache cache = cacheSlices ? EulerPlaneCache.get(imp) : null;
+		if (cache != null) {
+			return cache.getSumEuler(imp.getImageStack(), 1, depth);
+		}
+		final BitPackedStack binary = BitPackedStack.fromStack(imp.getImageStack());
+		final int depth = this.depth;
 
 		final int[] sumEulerInt = new int[depth + 1];
 
 		final AtomicInteger ai = new AtomicInteger(0);
 		final Thread[] threads = Multithreader.newThreads();
 		for (int thread = 0; thread < threads.length; thread++) {
-			threads[thread] = new Thread(new Runnable() {
-				@Override
-				public void run() {
-					byte o1 = 0, o2 = 0, o3 = 0, o4 = 0, o5 = 0, o6 = 0, o7 = 0, o8 = 0;
-					for (int z = ai.getAndIncrement(); z <= depth; z = ai.getAndIncrement()) {
-						for (int y = 0; y <= height; y++) {
-							for (int x = 0; x <= width; x++) {
-								
-								final int y1 = y - 1;
-								final int z1 = z - 1;
-								
-								o1 = o3;
-								o2 = o4;
-								o3 = getPixel(stack, x, y1, z1);
-								o4 = getPixel(stack, x, y, z1);
-								o5 = o7;
-								o6 = o8;
-								o7 = getPixel(stack, x, y1, z);
-								o8 = getPixel(stack, x, y, z);
-
-							  if ( o1 != 0 || o2 != 0 || o3 != 0 || o4 != 0 || o5 != 0 || o6 != 0 || o7 != 0 || o8 != 0 )
-							  	sumEulerInt[z] += getDeltaEuler(o1, o2, o3, o4, o5, o6, o7, o8);
-							}
-						}
-					}
+			threads[thread] = new Thread(() -> {
+				for (int z = ai.getAndIncrement(); z <= depth; z = ai.getAndIncrement()) {
+					sumEulerInt[z] = getPlaneEuler(binary, z);
 				}
 			});
 		}
@@ -306,6 +516,180 @@ public class Connectivity extends BoneJCommand implements Command {
 		return sumEuler;
 	}
 
+	/**
+	 * Calculate the Euler characteristic of the foreground in a binary stack
+	 * without copying the stack to memory, so that virtual stacks larger than
+	 * RAM can be measured straight from disk.
+	 * <p>
+	 * The planes of vertices are split into nWindows contiguous z-ranges, each
+	 * of which is read slice by slice through its own window of two slices.
+	 * Each slice is read once, except that the slice below each range is read
+	 * again by the range's window.
+	 * </p>
+	 *
+	 * @param imp
+	 *            Binary ImagePlus, which may be virtual
+	 * @param nWindows
+	 *            number of z-ranges to read in parallel; 1 reads the slices in
+	 *            order on the calling thread
+	 * @return Euler characteristic of the foreground particles
+	 */
+	public double getSumEulerStreamed(final ImagePlus imp, final int nWindows) {
+		return getSumEulerStreamed(imp, nWindows, new StackFaces(imp.getWidth(),
+			imp.getHeight(), imp.getStackSize()));
+	}
+
+	/**
+	 * Calculate the Euler characteristic of a binary stack without copying it
+	 * to memory, keeping the faces of the stack as they pass through the
+	 * windows so that delta Chi can be found without reading the stack again.
+	 *
+	 * @param imp Binary ImagePlus, which may be virtual
+	 * @param nWindows number of z-ranges to read in parallel
+	 * @param faces empty faces the size of the stack, filled in as it is read
+	 * @return Euler characteristic of the foreground particles
+	 * @see #getSumEulerStreamed(ImagePlus, int)
+	 */
+	double getSumEulerStreamed(final ImagePlus imp, final int nWindows,
+		final StackFaces faces)
+	{
+		setDimensions(imp);
+		final ImageStack stack = imp.getImageStack();
+		final int nPlanes = depth + 1;
+		final int nRanges = Math.max(1, Math.min(nWindows, nPlanes));
+		final int[] rangeSums = new int[nRanges];
+
+		if (nRanges == 1) {
+			rangeSums[0] = getRangeEuler(stack, faces, 0, nPlanes);
+		}
+		else {
+			final AtomicInteger ai = new AtomicInteger(0);
+			final Thread[] threads = Multithreader.newThreads();
+			for (int thread = 0; thread < threads.length; thread++) {
+				threads[thread] = new Thread(() -> {
+					for (int r = ai.getAndIncrement(); r < nRanges; r = ai.getAndIncrement()) {
+						final int first = (int) ((long) r * nPlanes / nRanges);
+						final int end = (int) ((long) (r + 1) * nPlanes / nRanges);
+						rangeSums[r] = getRangeEuler(stack, faces, first, end);
+					}
+				});
+			}
+			Multithreader.startAndJoin(threads);
+		}
+
+		double sumEuler = Arrays.stream(rangeSums).sum();
+		sumEuler /= 8;
+		return sumEuler;
+	}
+
+	/**
+	 * Sum a range of vertex planes through a sliding window of two slices,
+	 * keeping the faces of each slice as it enters the window
+	 *
+	 * @param stack binary stack
+	 * @param faces faces of the stack, filled in as slices are read
+	 * @param first first vertex plane of the range
+	 * @param end vertex plane after the range
+	 * @return 8 &#215; the range's contribution to the Euler characteristic
+	 */
+	private static int getRangeEuler(final ImageStack stack, final StackFaces faces,
+		final int first, final int end)
+	{
+		final int w = stack.getWidth();
+		final int h = stack.getHeight();
+		final int d = stack.getSize();
+		byte[] lower = first > 0 ? getSlice(stack, first) : null;
+		int sum = 0;
+		for (int z = first; z < end; z++) {
+			final byte[] upper = z < d ? getSlice(stack, z + 1) : null;
+			if (upper != null) faces.add(z, upper);
+			sum += getPlaneEuler(lower, upper, w, h);
+			lower = upper;
+		}
+		return sum;
+	}
+
+	/**
+	 * Read a slice through its processor, which gives the pixels of virtual and
+	 * wrapped stacks as well as native ones
+	 */
+	private static byte[] getSlice(final ImageStack stack, final int n) {
+		return (byte[]) stack.getProcessor(n).getPixels();
+	}
+
+	/**
+	 * Calculate the contribution of the vertex plane between two slices
+	 *
+	 * @param lower pixels of the slice below the plane, or null for none
+	 * @param upper pixels of the slice above the plane, or null for none
+	 * @param w slice width
+	 * @param h slice height
+	 * @return 8 &#215; the plane's contribution to the Euler characteristic
+	 */
+	static int getPlaneEuler(final byte[] lower, final byte[] upper, final int w,
+		final int h)
+	{
+		final BitPackedStack binary = new BitPackedStack(w, h, 2);
+		pack(lower, binary, 0);
+		pack(upper, binary, 1);
+		return getPlaneEuler(binary, 1);
+	}
+
+	private static void pack(final byte[] pixels, final BitPackedStack binary,
+		final int z)
+	{
+		if (pixels == null) return;
+		final int w = binary.getWidth();
+		final int h = binary.getHeight();
+		for (int y = 0; y < h; y++) {
+			final int row = y * w;
+			for (int x = 0; x < w; x++)
+				if (pixels[row + x] == -1) binary.set(x, y, z);
+		}
+	}
+
+	/**
+	 * Sum the delta Euler of the octants around one plane of voxel vertices,
+	 * 64 vertices at a time
+	 *
+	 * @param binary packed binary stack
+	 * @param z vertex plane, between slices z - 1 and z
+	 * @return 8 &#215; the plane's contribution to the Euler characteristic
+	 */
+	static int getPlaneEuler(final BitPackedStack binary, final int z) {
+		final int height = binary.getHeight();
+		// vertices run from 0 to width, so there may be one more word than voxels have
+		final int nWords = (binary.getWidth() >>> 6) + 1;
+		int sum = 0;
+		for (int y = 0; y <= height; y++) {
+			// words of the four rows around the vertices, and the words before them
+			long a = 0, b = 0, c = 0, e = 0;
+			for (int word = 0; word < nWords; word++) {
+				final long a0 = a, b0 = b, c0 = c, e0 = e;
+				a = binary.getWord(word, y - 1, z - 1);
+				b = binary.getWord(word, y, z - 1);
+				c = binary.getWord(word, y - 1, z);
+				e = binary.getWord(word, y, z);
+				// voxels at x - 1 for each vertex x of this word
+				final long pa = a << 1 | a0 >>> 63;
+				final long pb = b << 1 | b0 >>> 63;
+				final long pc = c << 1 | c0 >>> 63;
+				final long pe = e << 1 | e0 >>> 63;
+				long vertices = (pa | pb | a | b | pc | pe | c | e) &
+					~(pa & pb & a & b & pc & pe & c & e);
+				while (vertices != 0) {
+					final int x = Long.numberOfTrailingZeros(vertices);
+					vertices &= vertices - 1;
+					final int octant = (int) ((pa >>> x & 1) | (pb >>> x & 1) << 1 |
+						(a >>> x & 1) << 2 | (b >>> x & 1) << 3 | (pc >>> x & 1) << 4 |
+						(pe >>> x & 1) << 5 | (c >>> x & 1) << 6 | (e >>> x & 1) << 7);
+					sum += OCTANT_LUT[octant];
+				}
+			}
+		}
+		return sum;
+	}
+
 	private void setDimensions(final ImagePlus imp) {
 		this.width = imp.getWidth();
 		this.height = imp.getHeight();
@@ -314,10 +698,10 @@ public class Connectivity extends BoneJCommand implements Command {
 	}
 
 	/**
-	 * Get pixel in 3D image stack (0 border conditions)
+	 * Get pixel on the faces of a 3D image stack (0 border conditions)
 	 *
-	 * @param stack
-	 *            3D image
+	 * @param faces
+	 *            faces of the 3D image
 	 * @param x
 	 *            x- coordinate
 	 * @param y
@@ -326,9 +710,9 @@ public class Connectivity extends BoneJCommand implements Command {
 	 *            z- coordinate (in image stacks the indexes start at 1)
 	 * @return corresponding pixel (0 if out of image)
 	 */
-	private byte getPixel(final ImageStack stack, final int x, final int y, final int z) {
+	private byte getPixel(final StackFaces faces, final int x, final int y, final int z) {
 		if (x >= 0 && x < this.width && y >= 0 && y < this.height && z >= 0 && z < this.depth)
-			return ((byte[]) stack.getPixels(z + 1))[y * this.width + x];
+			return faces.get(x, y, z);
 
 		return 0;
 	} /* end getPixel */
@@ -342,7 +726,7 @@ public class Connectivity extends BoneJCommand implements Command {
 	 * In binary images, foreground is -1, background = 0. o1 = 08 are the octant values.
 	 * @return delta Euler for the octant or false if the point is Euler invariant or not
 	 */
-	private int getDeltaEuler(final byte o1, final byte o2, final byte o3, final byte o4,
+	static int getDeltaEuler(final byte o1, final byte o2, final byte o3, final byte o4,
 		final byte o5, final byte o6, final byte o7, final byte o8) {
 		
 		char n = 1;
@@ -398,10 +782,10 @@ public class Connectivity extends BoneJCommand implements Command {
 	 * Check all vertices of stack and count if foreground (-1) this is &#967;
 	 * <sub>0</sub> from Odgaard and Gundersen (1993) and <i>f</i> in my working
 	 *
-	 * @param stack
+	 * @param faces
 	 * @return number of voxel vertices intersecting with stack vertices
 	 */
-	private long getStackVertices(final ImageStack stack) {
+	private long getStackVertices(final StackFaces faces) {
 		long nStackVertices = 0;
 		final int xInc = Math.max(1, width - 1);
 		final int yInc = Math.max(1, height - 1);
@@ -410,7 +794,7 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int z = 0; z < depth; z += zInc) {
 			for (int y = 0; y < height; y += yInc) {
 				for (int x = 0; x < width; x += xInc) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nStackVertices++;
 				}
 			}
@@ -423,10 +807,10 @@ public class Connectivity extends BoneJCommand implements Command {
 	 * Count the number of foreground voxels on edges of stack, this is part of
 	 * &#967;<sub>1</sub> (<i>e</i> in my working)
 	 *
-	 * @param stack
+	 * @param faces
 	 * @return number of voxel edges intersecting with stack edges
 	 */
-	private long getStackEdges(final ImageStack stack) {
+	private long getStackEdges(final StackFaces faces) {
 		long nStackEdges = 0;
 		
 		final int w1 = width - 1;
@@ -441,7 +825,7 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int z = 0; z < depth; z += zInc) {
 			for (int y = 0; y < height; y += yInc) {
 				for (int x = 1; x < w1; x++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nStackEdges++;
 				}
 			}
@@ -451,7 +835,7 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int z = 0; z < depth; z += zInc) {
 			for (int x = 0; x < width; x += xInc) {
 				for (int y = 1; y < h1; y++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nStackEdges++;
 				}
 			}
@@ -461,7 +845,7 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int y = 0; y < height; y += yInc) {
 			for (int x = 0; x < width; x += xInc) {
 				for (int z = 1; z < d1; z++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nStackEdges++;
 				}
 			}
@@ -474,10 +858,10 @@ public class Connectivity extends BoneJCommand implements Command {
 	 * Count the number of foreground voxel faces intersecting with stack faces
 	 * This is part of &#967;<sub>2</sub> and is <i>c</i> in my working
 	 *
-	 * @param stack
+	 * @param faces
 	 * @return number of voxel faces intersecting with stack faces
 	 */
-	private long getStackFaces(final ImageStack stack) {
+	private long getStackFaces(final StackFaces faces) {
 		
 		final int w1 = width - 1;
 		final int h1 = height - 1;
@@ -492,7 +876,7 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int z = 0; z < depth; z += zInc) {
 			for (int y = 1; y < h1; y++) {
 				for (int x = 1; x < w1; x++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nStackFaces++;
 				}
 			}
@@ -502,7 +886,7 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int y = 0; y < height; y += yInc) {
 			for (int z = 1; z < d1; z++) {
 				for (int x = 1; x < w1; x++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nStackFaces++;
 				}
 			}
@@ -512,7 +896,7 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int x = 0; x < width; x += xInc) {
 			for (int y = 1; y < h1; y++) {
 				for (int z = 1; z < d1; z++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nStackFaces++;
 				}
 			}
@@ -524,10 +908,10 @@ public class Connectivity extends BoneJCommand implements Command {
 	 * Count the number of voxel vertices intersecting stack faces. This
 	 * contributes to &#967;<sub>2</sub> (<i>a</i> in my working)
 	 *
-	 * @param stack
+	 * @param faces
 	 * @return Number of voxel vertices intersecting stack faces
 	 */
-	private long getFaceVertices(final ImageStack stack) {
+	private long getFaceVertices(final StackFaces faces) {
 		final int xInc = Math.max(1, width - 1);
 		final int yInc = Math.max(1, height - 1);
 		final int zInc = Math.max(1, depth - 1);
@@ -539,13 +923,13 @@ public class Connectivity extends BoneJCommand implements Command {
 				for (int x = 0; x <= width; x++) {
 					// if the voxel or any of its neighbours are foreground, the
 					// vertex is counted
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nFaceVertices++;
-					else if (getPixel(stack, x, y - 1, z) == -1)
+					else if (getPixel(faces, x, y - 1, z) == -1)
 						nFaceVertices++;
-					else if (getPixel(stack, x - 1, y - 1, z) == -1)
+					else if (getPixel(faces, x - 1, y - 1, z) == -1)
 						nFaceVertices++;
-					else if (getPixel(stack, x - 1, y, z) == -1)
+					else if (getPixel(faces, x - 1, y, z) == -1)
 						nFaceVertices++;
 				}
 			}
@@ -557,13 +941,13 @@ public class Connectivity extends BoneJCommand implements Command {
 				for (int z = 1; z < depth; z++) {
 					// if the voxel or any of its neighbours are foreground, the
 					// vertex is counted
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nFaceVertices++;
-					else if (getPixel(stack, x, y - 1, z) == -1)
+					else if (getPixel(faces, x, y - 1, z) == -1)
 						nFaceVertices++;
-					else if (getPixel(stack, x, y - 1, z - 1) == -1)
+					else if (getPixel(faces, x, y - 1, z - 1) == -1)
 						nFaceVertices++;
-					else if (getPixel(stack, x, y, z - 1) == -1)
+					else if (getPixel(faces, x, y, z - 1) == -1)
 						nFaceVertices++;
 				}
 			}
@@ -575,13 +959,13 @@ public class Connectivity extends BoneJCommand implements Command {
 				for (int z = 1; z < depth; z++) {
 					// if the voxel or any of its neighbours are foreground, the
 					// vertex is counted
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nFaceVertices++;
-					else if (getPixel(stack, x, y, z - 1) == -1)
+					else if (getPixel(faces, x, y, z - 1) == -1)
 						nFaceVertices++;
-					else if (getPixel(stack, x - 1, y, z - 1) == -1)
+					else if (getPixel(faces, x - 1, y, z - 1) == -1)
 						nFaceVertices++;
-					else if (getPixel(stack, x - 1, y, z) == -1)
+					else if (getPixel(faces, x - 1, y, z) == -1)
 						nFaceVertices++;
 				}
 			}
@@ -593,10 +977,10 @@ public class Connectivity extends BoneJCommand implements Command {
 	 * Count the number of intersections between voxel edges and stack faces.
 	 * This is part of &#967;<sub>2</sub>, in my working it's called <i>b</i>
 	 *
-	 * @param stack
+	 * @param faces
 	 * @return number of intersections between voxel edges and stack faces
 	 */
-	private long getFaceEdges(final ImageStack stack) {
+	private long getFaceEdges(final StackFaces faces) {
 		final int xInc = Math.max(1, width - 1);
 		final int yInc = Math.max(1, height - 1);
 		final int zInc = Math.max(1, depth - 1);
@@ -609,13 +993,13 @@ public class Connectivity extends BoneJCommand implements Command {
 				for (int x = 0; x <= width; x++) {
 					// if the voxel or any of its neighbours are foreground, the
 					// vertex is counted
-					if (getPixel(stack, x, y, z) == -1) {
+					if (getPixel(faces, x, y, z) == -1) {
 						nFaceEdges += 2;
 					} else {
-						if (getPixel(stack, x, y - 1, z) == -1) {
+						if (getPixel(faces, x, y - 1, z) == -1) {
 							nFaceEdges++;
 						}
-						if (getPixel(stack, x - 1, y, z) == -1) {
+						if (getPixel(faces, x - 1, y, z) == -1) {
 							nFaceEdges++;
 						}
 					}
@@ -627,9 +1011,9 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int y = 0; y < height; y += yInc) {
 			for (int z = 1; z < depth; z++) {
 				for (int x = 0; x < width; x++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nFaceEdges++;
-					else if (getPixel(stack, x, y, z - 1) == -1)
+					else if (getPixel(faces, x, y, z - 1) == -1)
 						nFaceEdges++;
 				}
 			}
@@ -639,9 +1023,9 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int y = 0; y < height; y += yInc) {
 			for (int z = 0; z < depth; z++) {
 				for (int x = 0; x <= width; x++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nFaceEdges++;
-					else if (getPixel(stack, x - 1, y, z) == -1)
+					else if (getPixel(faces, x - 1, y, z) == -1)
 						nFaceEdges++;
 				}
 			}
@@ -651,9 +1035,9 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int x = 0; x < width; x += xInc) {
 			for (int z = 1; z < depth; z++) {
 				for (int y = 0; y < height; y++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nFaceEdges++;
-					else if (getPixel(stack, x, y, z - 1) == -1)
+					else if (getPixel(faces, x, y, z - 1) == -1)
 						nFaceEdges++;
 				}
 			}
@@ -663,9 +1047,9 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int x = 0; x < width; x += xInc) {
 			for (int z = 0; z < depth; z++) {
 				for (int y = 1; y < height; y++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nFaceEdges++;
-					else if (getPixel(stack, x, y - 1, z) == -1)
+					else if (getPixel(faces, x, y - 1, z) == -1)
 						nFaceEdges++;
 				}
 			}
@@ -678,10 +1062,10 @@ public class Connectivity extends BoneJCommand implements Command {
 	 * Count number of voxel vertices intersecting stack edges. It contributes
 	 * to &#967;<sub>1</sub>, and I call it <i>d</i> in my working
 	 *
-	 * @param stack
+	 * @param faces
 	 * @return number of voxel vertices intersecting stack edges
 	 */
-	private long getEdgeVertices(final ImageStack stack) {
+	private long getEdgeVertices(final StackFaces faces) {
 		final int xInc = Math.max(1, width - 1);
 		final int yInc = Math.max(1, height - 1);
 		final int zInc = Math.max(1, depth - 1);
@@ -691,9 +1075,9 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int z = 0; z < depth; z += zInc) {
 			for (int y = 0; y < height; y += yInc) {
 				for (int x = 1; x < width; x++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nEdgeVertices++;
-					else if (getPixel(stack, x - 1, y, z) == -1)
+					else if (getPixel(faces, x - 1, y, z) == -1)
 						nEdgeVertices++;
 				}
 			}
@@ -703,9 +1087,9 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int z = 0; z < depth; z += zInc) {
 			for (int x = 0; x < width; x += xInc) {
 				for (int y = 1; y < height; y++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nEdgeVertices++;
-					else if (getPixel(stack, x, y - 1, z) == -1)
+					else if (getPixel(faces, x, y - 1, z) == -1)
 						nEdgeVertices++;
 				}
 			}
@@ -715,9 +1099,9 @@ public class Connectivity extends BoneJCommand implements Command {
 		for (int x = 0; x < width; x += xInc) {
 			for (int y = 0; y < height; y += yInc) {
 				for (int z = 1; z < depth; z++) {
-					if (getPixel(stack, x, y, z) == -1)
+					if (getPixel(faces, x, y, z) == -1)
 						nEdgeVertices++;
-					else if (getPixel(stack, x, y, z - 1) == -1)
+					else if (getPixel(faces, x, y, z - 1) == -1)
 						nEdgeVertices++;
 				}
 			}
@@ -744,17 +1128,17 @@ public class Connectivity extends BoneJCommand implements Command {
 	 * connectivity
 	 * </p>
 	 *
-	 * @param stack
+	 * @param faces
 	 * @return edgeCorrection for subtraction from the stack's Euler number
 	 */
-	private double correctForEdges(final ImageStack stack) {
+	private double correctForEdges(final StackFaces faces) {
 
-		final long f = getStackVertices(stack);
-		final long e = getStackEdges(stack) + 3 * f;
-		final long c = getStackFaces(stack) + 2 * e - 3 * f;
-		final long d = getEdgeVertices(stack) + f;
-		final long a = getFaceVertices(stack);
-		final long b = getFaceEdges(stack);
+		final long f = getStackVertices(faces);
+		final long e = getStackEdges(faces) + 3 * f;
+		final long c = getStackFaces(faces) + 2 * e - 3 * f;
+		final long d = getEdgeVertices(faces) + f;
+		final long a = getFaceVertices(faces);
+		final long b = getFaceEdges(faces);
 
 		final double chiZero = f;
 		final double chiOne = (double) d - (double) e;
@@ -765,6 +1149,28 @@ public class Connectivity extends BoneJCommand implements Command {
 		return edgeCorrection;
 	}/* end correctForEdges */
 
+	/**
+	 * Fill a table of the delta Euler of every octant, indexed by its voxels.
+	 *
+	 * Bit k of the index is set when octant voxel o(k+1) of
+	 * {@link #getDeltaEuler} is foreground. For the vertex at (x, y, z) the bits
+	 * are, from bit 0: (x-1, y-1, z-1), (x-1, y, z-1), (x, y-1, z-1),
+	 * (x, y, z-1), then the same four voxels at z. Entry 0, the empty octant, is
+	 * 0.
+	 *
+	 * @return delta Euler of each of the 256 octants
+	 */
+	private static int[] fillOctantLUT() {
+		final int[] lut = new int[256];
+		final byte[] o = new byte[8];
+		for (int index = 1; index < 256; index++) {
+			for (int k = 0; k < 8; k++)
+				o[k] = (index >> k & 1) == 1 ? (byte) -1 : 0;
+			lut[index] = getDeltaEuler(o[0], o[1], o[2], o[3], o[4], o[5], o[6], o[7]);
+		}
+		return lut;
+	}
+
 	/*
 	 * -----------------------------------------------------------------------
 	 */
@@ -912,4 +1318,92 @@ public class Connectivity extends BoneJCommand implements Command {
 		
 		return lut;
 	}/* end fillEulerLUT */
+
+	/**
+	 * The voxels on the faces of a stack, which are all that the edge
+	 * correction reads: the first and last slices in full, and the outer rows
+	 * and columns of the slices between them.
+	 */
+	static final class StackFaces {
+
+		private final int w;
+		private final int h;
+		private final int d;
+		private byte[] firstSlice;
+		private byte[] lastSlice;
+		/** rows y = 0 and y = h - 1 of each slice */
+		private final byte[][] topRows;
+		private final byte[][] bottomRows;
+		/** columns x = 0 and x = w - 1 of each slice */
+		private final byte[][] leftColumns;
+		private final byte[][] rightColumns;
+
+		StackFaces(final int w, final int h, final int d) {
+			this.w = w;
+			this.h = h;
+			this.d = d;
+			topRows = new byte[d][];
+			bottomRows = new byte[d][];
+			leftColumns = new byte[d][];
+			rightColumns = new byte[d][];
+		}
+
+		StackFaces(final ImageStack stack) {
+			this(stack.getWidth(), stack.getHeight(), stack.getSize());
+			for (int z = 0; z < d; z++)
+				add(z, getSlice(stack, z + 1));
+		}
+
+		/** Take the faces of a packed stack, unpacking only the face voxels */
+		StackFaces(final BitPackedStack binary) {
+			this(binary.getWidth(), binary.getHeight(), binary.getDepth());
+			firstSlice = binary.toByteSlice(0);
+			lastSlice = d > 1 ? binary.toByteSlice(d - 1) : firstSlice;
+			for (int z = 0; z < d; z++) {
+				final byte[] top = new byte[w];
+				final byte[] bottom = new byte[w];
+				for (int x = 0; x < w; x++) {
+					if (binary.get(x, 0, z)) top[x] = -1;
+					if (binary.get(x, h - 1, z)) bottom[x] = -1;
+				}
+				final byte[] left = new byte[h];
+				final byte[] right = new byte[h];
+				for (int y = 0; y < h; y++) {
+					if (binary.get(0, y, z)) left[y] = -1;
+					if (binary.get(w - 1, y, z)) right[y] = -1;
+				}
+				topRows[z] = top;
+				bottomRows[z] = bottom;
+				leftColumns[z] = left;
+				rightColumns[z] = right;
+			}
+		}
+
+		/** Keep the faces of slice z, which may be added from any thread */
+		void add(final int z, final byte[] pixels) {
+			if (z == 0) firstSlice = pixels;
+			if (z == d - 1) lastSlice = pixels;
+			topRows[z] = Arrays.copyOfRange(pixels, 0, w);
+			bottomRows[z] = Arrays.copyOfRange(pixels, (h - 1) * w, h * w);
+			final byte[] left = new byte[h];
+			final byte[] right = new byte[h];
+			for (int y = 0; y < h; y++) {
+				left[y] = pixels[y * w];
+				right[y] = pixels[y * w + w - 1];
+			}
+			leftColumns[z] = left;
+			rightColumns[z] = right;
+		}
+
+		byte get(final int x, final int y, final int z) {
+			if (z == 0) return firstSlice[y * w + x];
+			if (z == d - 1) return lastSlice[y * w + x];
+			if (y == 0) return topRows[z][x];
+			if (y == h - 1) return bottomRows[z][x];
+			if (x == 0) return leftColumns[z][y];
+			if (x == w - 1) return rightColumns[z][y];
+			throw new IllegalArgumentException("(" + x + ", " + y + ", " + z +
+				") is not on a face of the stack");
+		}
+	}
 }
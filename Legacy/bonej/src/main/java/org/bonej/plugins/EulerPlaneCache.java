@@ -0,0 +1,239 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.bonej.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.bonej.util.Multithreader;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+
+/**
+ * Cache of each vertex plane's contribution to the Euler characteristic of a
+ * binary stack, kept alongside the image as one of its properties.
+ * <p>
+ * The contribution of the plane between two slices depends only on those two
+ * slices, so it is keyed by the identity of their pixel arrays. Deleting,
+ * inserting or replacing slices leaves the other slices' arrays in place, so
+ * only the planes either side of a change are recalculated. The same holds
+ * for summing a moving range of slices.
+ * </p>
+ * <p>
+ * Editing pixels in place does not change their array, so a checksum of each
+ * slice is kept too and checked on every call. The planes either side of a
+ * slice whose checksum changed are recalculated, so drawing, filtering or
+ * purifying a slice in place never gives a stale result. Checksums are much
+ * cheaper to calculate than planes. Callers that know they rewrote a slice
+ * can call {@link #invalidate(Object)} or {@link #invalidate()} to drop its
+ * planes straight away.
+ * </p>
+ */
+public final class EulerPlaneCache {
+
+	private static final String PROPERTY = EulerPlaneCache.class.getName();
+
+	/** 8 × plane contributions, keyed by the upper slice's then the lower slice's pixels */
+	private final Map<Object, Map<Object, Integer>> planes = new IdentityHashMap<>();
+	/** checksum of each slice's pixels when its planes were cached */
+	private final Map<Object, Long> checksums = new IdentityHashMap<>();
+	private long nComputed;
+
+	/**
+	 * Get the cache attached to an image
+	 *
+	 * @param imp an image
+	 * @return the image's cache, or null if it has none
+	 */
+	public static EulerPlaneCache get(final ImagePlus imp) {
+		final Object cache = imp.getProperty(PROPERTY);
+		return cache instanceof EulerPlaneCache ? (EulerPlaneCache) cache : null;
+	}
+
+	/**
+	 * Attach a cache to an image, unless it already has one
+	 *
+	 * @param imp a binary image
+	 * @return the image's cache
+	 */
+	public static synchronized EulerPlaneCache attach(final ImagePlus imp) {
+		EulerPlaneCache cache = get(imp);
+		if (cache == null) {
+			cache = new EulerPlaneCache();
+			imp.setProperty(PROPERTY, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Remove an image's cache
+	 *
+	 * @param imp an image
+	 */
+	public static void detach(final ImagePlus imp) {
+		imp.setProperty(PROPERTY, null);
+	}
+
+	/**
+	 * Forget every cached plane
+	 */
+	public synchronized void invalidate() {
+		planes.clear();
+		checksums.clear();
+	}
+
+	/**
+	 * Forget the planes either side of a slice whose pixels were edited in place
+	 *
+	 * @param pixels the slice's pixel array
+	 */
+	public synchronized void invalidate(final Object pixels) {
+		checksums.remove(pixels);
+		planes.remove(pixels);
+		for (final Map<Object, Integer> lower : planes.values())
+			lower.remove(pixels);
+	}
+
+	/**
+	 * Calculate the Euler characteristic of a range of slices, as though they
+	 * were cropped out of the stack, recalculating only planes not already
+	 * cached. Planes of slices that are no longer in the stack or whose pixels
+	 * have changed are dropped.
+	 *
+	 * @param stack binary (0, 255) 8-bit stack
+	 * @param first first slice of the range (1-based)
+	 * @param last last slice of the range, inclusive
+	 * @return Euler characteristic of the foreground in the range
+	 * @throws IllegalArgumentException if the range is not within the stack
+	 */
+	public synchronized double getSumEuler(final ImageStack stack,
+		final int first, final int last)
+	{
+		if (first < 1 || last > stack.getSize() || first > last) {
+			throw new IllegalArgumentException("Slice range " + first + "-" + last +
+				" is not within the stack");
+		}
+		retain(stack);
+		verify(stack, first, last);
+		final int nPlanes = last - first + 2;
+		final Object[] lowers = new Object[nPlanes];
+		final Object[] uppers = new Object[nPlanes];
+		final int[] sums = new int[nPlanes];
+		final List<Integer> missing = new ArrayList<>();
+		for (int z = 0; z < nPlanes; z++) {
+			lowers[z] = z > 0 ? stack.getPixels(first + z - 1) : null;
+			uppers[z] = z < nPlanes - 1 ? stack.getPixels(first + z) : null;
+			final Map<Object, Integer> lower = planes.get(uppers[z]);
+			final Integer sum = lower == null ? null : lower.get(lowers[z]);
+			if (sum == null) missing.add(z);
+			else sums[z] = sum;
+		}
+
+		final int w = stack.getWidth();
+		final int h = stack.getHeight();
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				for (int i = ai.getAndIncrement(); i < missing.size(); i = ai.getAndIncrement()) {
+					final int z = missing.get(i);
+					sums[z] = Connectivity.getPlaneEuler((byte[]) lowers[z],
+						(byte[]) uppers[z], w, h);
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+
+		long sumEuler = 0;
+		for (int z = 0; z < nPlanes; z++) {
+			planes.computeIfAbsent(uppers[z], k -> new IdentityHashMap<>()).put(
+				lowers[z], sums[z]);
+			sumEuler += sums[z];
+		}
+		nComputed += missing.size();
+		return sumEuler / 8.0;
+	}
+
+	/**
+	 * @return number of planes calculated since the cache was made
+	 */
+	synchronized long getComputedPlaneCount() {
+		return nComputed;
+	}
+
+	/**
+	 * Drop the planes of slices in a range whose pixels changed since their
+	 * checksums were taken
+	 */
+	private void verify(final ImageStack stack, final int first, final int last) {
+		final int n = last - first + 1;
+		final long[] sums = new long[n];
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				final CRC32 crc = new CRC32();
+				for (int i = ai.getAndIncrement(); i < n; i = ai.getAndIncrement()) {
+					final byte[] pixels = (byte[]) stack.getPixels(first + i);
+					crc.reset();
+					crc.update(pixels, 0, pixels.length);
+					sums[i] = crc.getValue();
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+		for (int i = 0; i < n; i++) {
+			final Object pixels = stack.getPixels(first + i);
+			final Long previous = checksums.get(pixels);
+			if (previous != null && previous != sums[i]) invalidate(pixels);
+			checksums.put(pixels, sums[i]);
+		}
+	}
+
+	/** Drop the planes of slices that have left the stack */
+	private void retain(final ImageStack stack) {
+		final Set<Object> slices = Collections.newSetFromMap(new IdentityHashMap<>());
+		slices.add(null);
+		for (int s = 1; s <= stack.getSize(); s++)
+			slices.add(stack.getPixels(s));
+		planes.keySet().retainAll(slices);
+		checksums.keySet().retainAll(slices);
+		for (final Map<Object, Integer> lower : planes.values())
+			lower.keySet().retainAll(slices);
+	}
+}
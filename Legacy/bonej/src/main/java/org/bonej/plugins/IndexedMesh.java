@@ -0,0 +1,186 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.bonej.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jogamp.vecmath.Color3f;
+import org.jogamp.vecmath.Point3f;
+
+import customnode.CustomTriangleMesh;
+
+/**
+ * Triangle mesh with shared vertices held in primitive arrays. Vertex i has
+ * coordinates vertices[3i], vertices[3i + 1] and vertices[3i + 2]; triangle t
+ * joins vertices faces[3t], faces[3t + 1] and faces[3t + 2], ordered
+ * anticlockwise when viewed from outside.
+ */
+public final class IndexedMesh {
+
+	private final float[] vertices;
+	private final int[] faces;
+
+	/**
+	 * Wrap vertex and face arrays in a mesh. The arrays are not copied.
+	 *
+	 * @param vertices packed x, y, z vertex coordinates
+	 * @param faces packed triangle vertex indices
+	 */
+	public IndexedMesh(final float[] vertices, final int[] faces) {
+		this.vertices = vertices;
+		this.faces = faces;
+	}
+
+	/**
+	 * @return packed x, y, z vertex coordinates. Not a copy.
+	 */
+	public float[] getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * @return packed triangle vertex indices. Not a copy.
+	 */
+	public int[] getFaces() {
+		return faces;
+	}
+
+	public int getVertexCount() {
+		return vertices.length / 3;
+	}
+
+	public int getFaceCount() {
+		return faces.length / 3;
+	}
+
+	/**
+	 * Calculate the surface area of the mesh, as half the sum of the magnitudes
+	 * of the triangles' edge cross products.
+	 *
+	 * @return surface area
+	 */
+	public double getArea() {
+		double sumArea = 0;
+		for (int f = 0; f < faces.length; f += 3) {
+			final int a = 3 * faces[f];
+			final int b = 3 * faces[f + 1];
+			final int c = 3 * faces[f + 2];
+			final double x1 = vertices[b] - vertices[a];
+			final double y1 = vertices[b + 1] - vertices[a + 1];
+			final double z1 = vertices[b + 2] - vertices[a + 2];
+			final double x2 = vertices[c] - vertices[a];
+			final double y2 = vertices[c + 1] - vertices[a + 1];
+			final double z2 = vertices[c + 2] - vertices[a + 2];
+			final double cx = y1 * z2 - z1 * y2;
+			final double cy = z1 * x2 - x1 * z2;
+			final double cz = x1 * y2 - y1 * x2;
+			sumArea += Math.sqrt(cx * cx + cy * cy + cz * cz);
+		}
+		return 0.5 * sumArea;
+	}
+
+	/**
+	 * Calculate the volume enclosed by the mesh with the divergence theorem, as
+	 * the sum of the signed volumes of the tetrahedra joining each triangle to
+	 * the origin. Only meaningful for closed meshes.
+	 *
+	 * @return enclosed volume, positive when the faces are ordered anticlockwise
+	 *         from outside
+	 */
+	public double getVolume() {
+		double sumVolume = 0;
+		for (int f = 0; f < faces.length; f += 3) {
+			final int a = 3 * faces[f];
+			final int b = 3 * faces[f + 1];
+			final int c = 3 * faces[f + 2];
+			final double ax = vertices[a];
+			final double ay = vertices[a + 1];
+			final double az = vertices[a + 2];
+			final double bx = vertices[b];
+			final double by = vertices[b + 1];
+			final double bz = vertices[b + 2];
+			final double cx = vertices[c];
+			final double cy = vertices[c + 1];
+			final double cz = vertices[c + 2];
+			sumVolume += ax * (by * cz - bz * cy) + ay * (bz * cx - bx * cz) + az *
+				(bx * cy - by * cx);
+		}
+		return sumVolume / 6;
+	}
+
+	/**
+	 * Copy the vertices into an array of points. Each surface point appears
+	 * once, however many triangles share it.
+	 *
+	 * @return new array of x, y, z vertex coordinates
+	 */
+	public double[][] getVertexPoints() {
+		final int nVertices = getVertexCount();
+		final double[][] points = new double[nVertices][3];
+		for (int i = 0; i < nVertices; i++) {
+			points[i][0] = vertices[3 * i];
+			points[i][1] = vertices[3 * i + 1];
+			points[i][2] = vertices[3 * i + 2];
+		}
+		return points;
+	}
+
+	/**
+	 * Expand the mesh into a triangle list, three points per triangle, as
+	 * produced by the 3D Viewer's marching cubes. Triangles that share a vertex
+	 * share its Point3f instance.
+	 *
+	 * @return new list of triangle corner points
+	 */
+	public List<Point3f> toTriangleList() {
+		final Point3f[] points = new Point3f[getVertexCount()];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = new Point3f(vertices[3 * i], vertices[3 * i + 1],
+				vertices[3 * i + 2]);
+		}
+		final List<Point3f> triangles = new ArrayList<>(faces.length);
+		for (final int v : faces) {
+			triangles.add(points[v]);
+		}
+		return triangles;
+	}
+
+	/**
+	 * Make a 3D Viewer mesh from this mesh.
+	 *
+	 * @param colour colour of the surface
+	 * @return new triangle mesh, ready to add to a universe
+	 */
+	public CustomTriangleMesh toCustomTriangleMesh(final Color3f colour) {
+		return new CustomTriangleMesh(toTriangleList(), colour, 0.0f);
+	}
+}
@@ -0,0 +1,467 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.bonej.plugins;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bonej.util.Multithreader;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+
+import ij.ImagePlus;
+import ij.measure.Calibration;
+
+/**
+ * Marching cubes mesher that works directly on a particle label array. The
+ * labels are walked once, in parallel z-slabs, and every cube that straddles
+ * a particle boundary adds triangles to that particle's mesh, so no binary
+ * image needs to be cropped out for each particle.
+ * <p>
+ * Vertices are shared between the triangles of a particle. Surfaces match
+ * those of a binary 0/255 particle image thresholded at 128, as used by the
+ * 3D Viewer. Ambiguous cube faces are resolved by joining the inside corners,
+ * consistent with 26-connected particles, and the triangulation table is
+ * derived from that rule so that neighbouring cubes always agree.
+ * </p>
+ */
+final class LabelMarchingCubes {
+
+	/**
+	 * Fraction of an edge from an inside (255) corner to the 128 iso-surface
+	 * when the other corner is 0
+	 */
+	private static final float INSIDE_FRACTION = 127f / 255f;
+
+	/** Lower corner of each cube edge. Corner c is offset by its x, y, z bits */
+	private static final int[] EDGE_CORNER = new int[12];
+	/** Axis (0 = x, 1 = y, 2 = z) along which each cube edge runs */
+	private static final int[] EDGE_AXIS = new int[12];
+	/** Edge triplets of the triangles of each of the 256 cube cases */
+	private static final int[][] TRIANGLES = new int[256][];
+
+	static {
+		final int[][] edgeIndex = new int[8][8];
+		int e = 0;
+		for (int axis = 0; axis < 3; axis++) {
+			for (int c = 0; c < 8; c++) {
+				if ((c & (1 << axis)) != 0) continue;
+				EDGE_CORNER[e] = c;
+				EDGE_AXIS[e] = axis;
+				edgeIndex[c][c | (1 << axis)] = e;
+				edgeIndex[c | (1 << axis)][c] = e;
+				e++;
+			}
+		}
+		for (int cubeCase = 0; cubeCase < 256; cubeCase++) {
+			TRIANGLES[cubeCase] = triangulate(cubeCase, edgeIndex);
+		}
+	}
+
+	private LabelMarchingCubes() {}
+
+	/**
+	 * Derive the triangles of one cube case. On each face of the cube the
+	 * surface crosses from an entry edge to an exit edge, walking the face
+	 * boundary anticlockwise from outside. Each crossed edge is an exit on one
+	 * face and an entry on the other, so the face segments chain into closed
+	 * loops, which are then triangulated.
+	 */
+	private static int[] triangulate(final int cubeCase, final int[][] edgeIndex) {
+		final int[] next = new int[12];
+		Arrays.fill(next, -1);
+		// bit mask of the two cube faces that each edge lies on
+		final int[] edgeFaces = new int[12];
+		for (int axis = 0; axis < 3; axis++) {
+			final int a = 1 << ((axis + 1) % 3);
+			final int b = 1 << ((axis + 2) % 3);
+			for (int side = 0; side < 2; side++) {
+				final int s = side << axis;
+				// face corners, anticlockwise viewed from outside the cube
+				final int[] q = side == 1 ? new int[] { s, s | a, s | a | b, s | b }
+					: new int[] { s, s | b, s | a | b, s | a };
+				final int[] edges = new int[4];
+				final boolean[] entry = new boolean[4];
+				final boolean[] exit = new boolean[4];
+				for (int i = 0; i < 4; i++) {
+					final boolean in = (cubeCase >> q[i] & 1) == 1;
+					final boolean nextIn = (cubeCase >> q[(i + 1) % 4] & 1) == 1;
+					edges[i] = edgeIndex[q[i]][q[(i + 1) % 4]];
+					edgeFaces[edges[i]] |= 1 << (2 * axis + side);
+					exit[i] = in && !nextIn;
+					entry[i] = !in && nextIn;
+				}
+				for (int j = 0; j < 4; j++) {
+					if (!entry[j]) continue;
+					// join the inside corners: prefer the exit just before the entry,
+					// which cuts off the outside corner between them
+					final int before = (j + 3) % 4;
+					final int after = (j + 1) % 4;
+					final int i = exit[before] ? before : exit[after] ? after : (j + 2) % 4;
+					next[edges[j]] = edges[i];
+				}
+			}
+		}
+		final int[] triangles = new int[36];
+		int n = 0;
+		final boolean[] done = new boolean[12];
+		final int[] loop = new int[12];
+		for (int start = 0; start < 12; start++) {
+			if (next[start] < 0 || done[start]) continue;
+			int length = 0;
+			for (int e = start; !done[e]; e = next[e]) {
+				done[e] = true;
+				loop[length++] = e;
+			}
+			n = clipEars(loop, length, edgeFaces, triangles, n);
+		}
+		return Arrays.copyOf(triangles, n);
+	}
+
+	/**
+	 * Split a loop into triangles by clipping ears. A cut between two vertices
+	 * on the same cube face would lie in that face, where the neighbouring cube
+	 * could make the same cut, so such ears are taken only when there is no
+	 * other choice.
+	 */
+	private static int clipEars(final int[] loop, int length,
+		final int[] edgeFaces, final int[] triangles, int n)
+	{
+		while (length > 3) {
+			int ear = 0;
+			for (int i = 0; i < length; i++) {
+				final int before = loop[(i + length - 1) % length];
+				final int after = loop[(i + 1) % length];
+				if ((edgeFaces[before] & edgeFaces[after]) == 0) {
+					ear = i;
+					break;
+				}
+			}
+			triangles[n++] = loop[(ear + length - 1) % length];
+			triangles[n++] = loop[ear];
+			triangles[n++] = loop[(ear + 1) % length];
+			System.arraycopy(loop, ear + 1, loop, ear, length - ear - 1);
+			length--;
+		}
+		triangles[n++] = loop[0];
+		triangles[n++] = loop[1];
+		triangles[n++] = loop[2];
+		return n;
+	}
+
+	/**
+	 * Make a surface mesh of every particle in a label array.
+	 * <p>
+	 * At full resolution the labels are walked once for all particles. When
+	 * resampling, each particle's bounding box is divided into blocks of
+	 * resampling voxels a side, starting at the particle's lower corner, and a
+	 * block is inside the particle if any of its voxels is. Every particle thus
+	 * keeps a surface however thin it is, and the surface does not depend on
+	 * where the particle lies in the image.
+	 * </p>
+	 *
+	 * @param imp input image, used for calibration and dimensions
+	 * @param particleLabels particle label array
+	 * @param limits min and max x, y and z limits of each particle, as
+	 *          int[nParticles][6]. Only used when resampling.
+	 * @param nParticles number of particles, including label 0
+	 * @param resampling edge length of the blocks of voxels that are merged
+	 *          into one sample; 1 uses the full resolution
+	 * @return surface mesh of each particle in calibrated units, indexed by
+	 *         label. Null for label 0 and for labels with no voxels.
+	 */
+	static IndexedMesh[] getMeshes(final ImagePlus imp,
+		final int[][] particleLabels, final int[][] limits, final int nParticles,
+		final int resampling)
+	{
+		if (resampling > 1) {
+			return getBlockMeshes(imp, particleLabels, limits, nParticles,
+				resampling);
+		}
+		final int w = imp.getWidth();
+		final int h = imp.getHeight();
+		final int d = imp.getImageStackSize();
+		final Calibration cal = imp.getCalibration();
+		final float sx = (float) cal.pixelWidth;
+		final float sy = (float) cal.pixelHeight;
+		final float sz = (float) cal.pixelDepth;
+		final int gw = w;
+		final int gh = h;
+		final int gd = d;
+
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		// cube layers run from -1 to gd - 1 so that the surface is closed
+		final int nLayers = gd + 1;
+		final int slabDepth = Math.max(1, nLayers / (threads.length * 4));
+		final int nSlabs = (nLayers + slabDepth - 1) / slabDepth;
+		@SuppressWarnings("unchecked")
+		final IntObjectHashMap<MeshBuilder>[] threadMeshes =
+			new IntObjectHashMap[threads.length];
+
+		for (int thread = 0; thread < threads.length; thread++) {
+			final IntObjectHashMap<MeshBuilder> meshes = new IntObjectHashMap<>();
+			threadMeshes[thread] = meshes;
+			threads[thread] = new Thread(() -> {
+				final int[] corners = new int[8];
+				final int[] triangle = new int[3];
+				for (int slab = ai.getAndIncrement(); slab < nSlabs; slab = ai.getAndIncrement()) {
+					final int zEnd = Math.min(nLayers, (slab + 1) * slabDepth) - 1;
+					for (int z = slab * slabDepth - 1; z < zEnd; z++) {
+						final int[] slice0 = z < 0 ? null : particleLabels[z];
+						final int[] slice1 = z + 1 >= gd ? null : particleLabels[z + 1];
+						for (int y = -1; y < gh; y++) {
+							final int row0 = y < 0 ? -1 : y * w;
+							final int row1 = y + 1 >= gh ? -1 : (y + 1) * w;
+							// left-hand corners of the cube at x = -1 are outside the image
+							corners[1] = 0;
+							corners[3] = 0;
+							corners[5] = 0;
+							corners[7] = 0;
+							for (int x = -1; x < gw; x++) {
+								corners[0] = corners[1];
+								corners[2] = corners[3];
+								corners[4] = corners[5];
+								corners[6] = corners[7];
+								final int xr = x + 1 >= gw ? -1 : x + 1;
+								corners[1] = label(slice0, row0, xr);
+								corners[3] = label(slice0, row1, xr);
+								corners[5] = label(slice1, row0, xr);
+								corners[7] = label(slice1, row1, xr);
+								final int c0 = corners[0];
+								if (c0 == corners[1] && c0 == corners[2] && c0 == corners[3] &&
+									c0 == corners[4] && c0 == corners[5] && c0 == corners[6] &&
+									c0 == corners[7]) continue;
+								for (int c = 0; c < 8; c++) {
+									final int p = corners[c];
+									if (p == 0 || seenBefore(corners, c)) continue;
+									int cubeCase = 0;
+									for (int k = c; k < 8; k++)
+										if (corners[k] == p) cubeCase |= 1 << k;
+									MeshBuilder mesh = meshes.get(p);
+									if (mesh == null) {
+										mesh = new MeshBuilder();
+										meshes.put(p, mesh);
+									}
+									addCube(mesh, cubeCase, x, y, z, gw, gh, sx, sy, sz, 0, 0, 0,
+										triangle);
+								}
+							}
+						}
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+
+		// weld the pieces of particles that span slabs handled by different threads
+		final IndexedMesh[] meshes = new IndexedMesh[nParticles];
+		final AtomicInteger an = new AtomicInteger(1);
+		final Thread[] mergeThreads = Multithreader.newThreads();
+		for (int thread = 0; thread < mergeThreads.length; thread++) {
+			mergeThreads[thread] = new Thread(() -> {
+				for (int p = an.getAndIncrement(); p < nParticles; p = an.getAndIncrement()) {
+					MeshBuilder mesh = null;
+					for (final IntObjectHashMap<MeshBuilder> partials : threadMeshes) {
+						final MeshBuilder partial = partials.get(p);
+						if (partial == null) continue;
+						if (mesh == null) mesh = partial;
+						else mesh.append(partial);
+					}
+					if (mesh != null) meshes[p] = mesh.toMesh();
+				}
+			});
+		}
+		Multithreader.startAndJoin(mergeThreads);
+		return meshes;
+	}
+
+	/**
+	 * Make a surface mesh of each particle from a copy of it downsampled into
+	 * blocks, as {@link #getMeshes(ImagePlus, int[][], int[][], int, int)}
+	 * describes. Threads take whole particles.
+	 */
+	private static IndexedMesh[] getBlockMeshes(final ImagePlus imp,
+		final int[][] particleLabels, final int[][] limits, final int nParticles,
+		final int r)
+	{
+		final int w = imp.getWidth();
+		final Calibration cal = imp.getCalibration();
+		final float sx = (float) (r * cal.pixelWidth);
+		final float sy = (float) (r * cal.pixelHeight);
+		final float sz = (float) (r * cal.pixelDepth);
+		// samples sit at the centres of their blocks
+		final double centre = (r - 1) / 2.0;
+		final IndexedMesh[] meshes = new IndexedMesh[nParticles];
+		final AtomicInteger ai = new AtomicInteger(1);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				final int[] triangle = new int[3];
+				for (int p = ai.getAndIncrement(); p < nParticles; p = ai.getAndIncrement()) {
+					final int[] l = limits[p];
+					if (l[0] > l[1]) continue;
+					final int gw = (l[1] - l[0]) / r + 1;
+					final int gh = (l[3] - l[2]) / r + 1;
+					final int gd = (l[5] - l[4]) / r + 1;
+					final boolean[] blocks = new boolean[gw * gh * gd];
+					for (int z = l[4]; z <= l[5]; z++) {
+						final int[] slice = particleLabels[z];
+						final int blockSlice = (z - l[4]) / r * gh;
+						for (int y = l[2]; y <= l[3]; y++) {
+							final int row = y * w;
+							final int blockRow = (blockSlice + (y - l[2]) / r) * gw;
+							for (int x = l[0]; x <= l[1]; x++) {
+								if (slice[row + x] == p) blocks[blockRow + (x - l[0]) / r] = true;
+							}
+						}
+					}
+					final float ox = (float) ((l[0] + centre) * cal.pixelWidth);
+					final float oy = (float) ((l[2] + centre) * cal.pixelHeight);
+					final float oz = (float) ((l[4] + centre) * cal.pixelDepth);
+					final MeshBuilder mesh = new MeshBuilder();
+					// cubes run from -1 so that the surface is closed
+					for (int z = -1; z < gd; z++) {
+						for (int y = -1; y < gh; y++) {
+							for (int x = -1; x < gw; x++) {
+								int cubeCase = 0;
+								for (int c = 0; c < 8; c++) {
+									if (block(blocks, x + (c & 1), y + (c >> 1 & 1), z + (c >> 2 &
+										1), gw, gh, gd)) cubeCase |= 1 << c;
+								}
+								if (cubeCase == 0 || cubeCase == 255) continue;
+								addCube(mesh, cubeCase, x, y, z, gw, gh, sx, sy, sz, ox, oy, oz,
+									triangle);
+							}
+						}
+					}
+					meshes[p] = mesh.toMesh();
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+		return meshes;
+	}
+
+	private static boolean block(final boolean[] blocks, final int x,
+		final int y, final int z, final int gw, final int gh, final int gd)
+	{
+		if (x < 0 || y < 0 || z < 0 || x >= gw || y >= gh || z >= gd) return false;
+		return blocks[(z * gh + y) * gw + x];
+	}
+
+	private static int label(final int[] slice, final int row, final int x) {
+		if (slice == null || row < 0 || x < 0) return 0;
+		return slice[row + x];
+	}
+
+	private static boolean seenBefore(final int[] corners, final int c) {
+		for (int k = 0; k < c; k++)
+			if (corners[k] == corners[c]) return true;
+		return false;
+	}
+
+	private static void addCube(final MeshBuilder mesh, final int cubeCase,
+		final int x, final int y, final int z, final int gw, final int gh,
+		final float sx, final float sy, final float sz, final float ox,
+		final float oy, final float oz, final int[] v)
+	{
+		final int[] triangles = TRIANGLES[cubeCase];
+		for (int t = 0; t < triangles.length; t += 3) {
+			for (int k = 0; k < 3; k++) {
+				final int e = triangles[t + k];
+				final int c = EDGE_CORNER[e];
+				final int axis = EDGE_AXIS[e];
+				// grid position of the edge's lower corner
+				final int ex = x + (c & 1);
+				final int ey = y + (c >> 1 & 1);
+				final int ez = z + (c >> 2 & 1);
+				final long key = (((ez + 1L) * (gh + 2) + ey + 1) * (gw + 2) + ex + 1) * 3 +
+					axis;
+				final float f = (cubeCase >> c & 1) == 1 ? INSIDE_FRACTION : 1 -
+					INSIDE_FRACTION;
+				v[k] = mesh.vertex(key, ox + (ex + (axis == 0 ? f : 0)) * sx, oy + (ey +
+					(axis == 1 ? f : 0)) * sy, oz + (ez + (axis == 2 ? f : 0)) * sz);
+			}
+			mesh.face(v[0], v[1], v[2]);
+		}
+	}
+
+	/** Growable indexed mesh whose vertices are keyed by the edge they lie on */
+	private static final class MeshBuilder {
+
+		private final LongIntHashMap index = new LongIntHashMap();
+		private float[] vertices = new float[3 * 32];
+		private long[] keys = new long[32];
+		private int nVertices;
+		private int[] faces = new int[3 * 32];
+		private int nFaceIndices;
+
+		int vertex(final long key, final float x, final float y, final float z) {
+			final int existing = index.getIfAbsent(key, -1);
+			if (existing >= 0) return existing;
+			if (nVertices == keys.length) {
+				keys = Arrays.copyOf(keys, nVertices * 2);
+				vertices = Arrays.copyOf(vertices, nVertices * 6);
+			}
+			keys[nVertices] = key;
+			vertices[3 * nVertices] = x;
+			vertices[3 * nVertices + 1] = y;
+			vertices[3 * nVertices + 2] = z;
+			index.put(key, nVertices);
+			return nVertices++;
+		}
+
+		void face(final int a, final int b, final int c) {
+			if (nFaceIndices + 3 > faces.length)
+				faces = Arrays.copyOf(faces, faces.length * 2);
+			faces[nFaceIndices++] = a;
+			faces[nFaceIndices++] = b;
+			faces[nFaceIndices++] = c;
+		}
+
+		void append(final MeshBuilder other) {
+			final int[] remap = new int[other.nVertices];
+			for (int i = 0; i < other.nVertices; i++) {
+				remap[i] = vertex(other.keys[i], other.vertices[3 * i],
+					other.vertices[3 * i + 1], other.vertices[3 * i + 2]);
+			}
+			for (int i = 0; i < other.nFaceIndices; i += 3)
+				face(remap[other.faces[i]], remap[other.faces[i + 1]], remap[
+					other.faces[i + 2]]);
+		}
+
+		IndexedMesh toMesh() {
+			return new IndexedMesh(Arrays.copyOf(vertices, 3 * nVertices), Arrays
+				.copyOf(faces, nFaceIndices));
+		}
+	}
+}
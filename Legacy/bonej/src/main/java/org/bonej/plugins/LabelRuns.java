@@ -0,0 +1,159 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.bonej.plugins;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bonej.util.Multithreader;
+
+/**
+ * Run-length encoded copy of a particle label array. Each row of each slice is
+ * stored as a list of runs of identical, non-zero label, so measurements that
+ * ignore label 0 can skip background without visiting it voxel by voxel.
+ * <p>
+ * Runs never cross row boundaries. For each slice the runs are packed into a
+ * single int[] as consecutive {start, length, label} triplets, where start is
+ * the index of the first voxel of the run within the slice (y * w + x).
+ * </p>
+ */
+public final class LabelRuns {
+
+	/** Offset of the slice index of the first voxel within a run triplet */
+	static final int START = 0;
+	/** Offset of the run length within a run triplet */
+	static final int LENGTH = 1;
+	/** Offset of the particle label within a run triplet */
+	static final int LABEL = 2;
+	/** Number of ints used to store each run */
+	static final int RUN_SIZE = 3;
+
+	private final int w;
+	private final int h;
+	private final int[][] runs;
+
+	private LabelRuns(final int w, final int h, final int[][] runs) {
+		this.w = w;
+		this.h = h;
+		this.runs = runs;
+	}
+
+	/**
+	 * Encode a particle label array as runs of identical non-zero label. Slices
+	 * are encoded in parallel.
+	 *
+	 * @param particleLabels particle label array, indexed [z][y * w + x]
+	 * @param w image width
+	 * @param h image height
+	 * @return run-length encoded labels
+	 */
+	public static LabelRuns encode(final int[][] particleLabels, final int w,
+		final int h)
+	{
+		final int d = particleLabels.length;
+		final int[][] runs = new int[d][];
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				int[] buffer = new int[RUN_SIZE * 64];
+				for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
+					final int[] slice = particleLabels[z];
+					int n = 0;
+					for (int y = 0; y < h; y++) {
+						final int rowEnd = (y + 1) * w;
+						int i = y * w;
+						while (i < rowEnd) {
+							final int label = slice[i];
+							if (label == 0) {
+								i++;
+								continue;
+							}
+							final int start = i;
+							while (i < rowEnd && slice[i] == label)
+								i++;
+							if (n + RUN_SIZE > buffer.length)
+								buffer = Arrays.copyOf(buffer, buffer.length * 2);
+							buffer[n + START] = start;
+							buffer[n + LENGTH] = i - start;
+							buffer[n + LABEL] = label;
+							n += RUN_SIZE;
+						}
+					}
+					runs[z] = Arrays.copyOf(buffer, n);
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+		return new LabelRuns(w, h, runs);
+	}
+
+	/**
+	 * Get the runs of a slice. The returned array is not a copy and must not be
+	 * modified.
+	 *
+	 * @param z slice index, 0-based
+	 * @return packed {start, length, label} triplets for the slice
+	 */
+	public int[] getRuns(final int z) {
+		return runs[z];
+	}
+
+	/**
+	 * @param z slice index, 0-based
+	 * @return number of runs in the slice
+	 */
+	public int getRunCount(final int z) {
+		return runs[z].length / RUN_SIZE;
+	}
+
+	/**
+	 * @return total number of runs in the stack
+	 */
+	public long getRunCount() {
+		long count = 0;
+		for (final int[] slice : runs)
+			count += slice.length / RUN_SIZE;
+		return count;
+	}
+
+	public int getWidth() {
+		return w;
+	}
+
+	public int getHeight() {
+		return h;
+	}
+
+	public int getDepth() {
+		return runs.length;
+	}
+}
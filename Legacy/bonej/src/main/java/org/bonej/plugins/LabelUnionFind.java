@@ -0,0 +1,249 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+
+package org.bonej.plugins;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Disjoint-set (union-find) structure over a dense range of particle labels,
+ * held in flat primitive arrays. Used to resolve label equivalences found
+ * during connected components labelling without building sets of neighbours.
+ * <p>
+ * Uses union by rank and path halving, so each operation runs in nearly
+ * constant amortised time. {@link Concurrent} is a lock-free variant that
+ * many threads may update at once, for stitching chunks in parallel.
+ * </p>
+ * <p>
+ * Label 0 is reserved for the opposite phase and should never be joined to
+ * another label.
+ * </p>
+ */
+final class LabelUnionFind {
+
+	/** parent of each label; roots are their own parent */
+	private int[] parents;
+	/** upper bound on each root's tree height */
+	private byte[] ranks;
+	/** number of consecutive labels found by the last call to relabel */
+	private int nLabels;
+
+	/**
+	 * Create a union-find in which every label in [0, size) is its own set
+	 *
+	 * @param size number of labels
+	 */
+	LabelUnionFind(final int size) {
+		parents = new int[size];
+		ranks = new byte[size];
+		for (int i = 0; i < size; i++) {
+			parents[i] = i;
+		}
+	}
+
+	/**
+	 * Create a union-find from an existing parent table, which is taken over
+	 * and not copied.
+	 *
+	 * @param parents parent table
+	 */
+	private LabelUnionFind(final int[] parents) {
+		this.parents = parents;
+		this.ranks = new byte[parents.length];
+	}
+
+	/**
+	 * Extend the label range, adding each new label as its own set
+	 *
+	 * @param size new number of labels
+	 */
+	void grow(final int size) {
+		final int oldSize = parents.length;
+		if (size <= oldSize)
+			return;
+		parents = Arrays.copyOf(parents, size);
+		ranks = Arrays.copyOf(ranks, size);
+		for (int i = oldSize; i < size; i++) {
+			parents[i] = i;
+		}
+	}
+
+	/**
+	 * @return number of labels in the structure
+	 */
+	int size() {
+		return parents.length;
+	}
+
+	/**
+	 * Find the root of a label's set, halving the path as it goes
+	 *
+	 * @param label a label
+	 * @return the label at the root of its set
+	 */
+	int find(int label) {
+		while (parents[label] != label) {
+			final int grandParent = parents[parents[label]];
+			parents[label] = grandParent;
+			label = grandParent;
+		}
+		return label;
+	}
+
+	/**
+	 * Merge the sets containing two labels
+	 *
+	 * @param a a label
+	 * @param b another label
+	 */
+	void union(final int a, final int b) {
+		final int rootA = find(a);
+		final int rootB = find(b);
+		if (rootA == rootB)
+			return;
+		final byte rankA = ranks[rootA];
+		final byte rankB = ranks[rootB];
+		if (rankA < rankB) {
+			parents[rootA] = rootB;
+		}
+		else if (rankA > rankB) {
+			parents[rootB] = rootA;
+		}
+		else {
+			parents[rootB] = rootA;
+			ranks[rootA]++;
+		}
+	}
+
+	/**
+	 * Generate a LUT that replaces each label with a consecutive label unique to
+	 * its set. Sets are numbered from 1 in order of their lowest label, and label
+	 * 0 maps to 0.
+	 *
+	 * @return LUT with one entry per label
+	 */
+	int[] relabel() {
+		final int size = parents.length;
+		final int[] lut = new int[size];
+		int n = 0;
+		for (int i = 1; i < size; i++) {
+			final int root = find(i);
+			if (lut[root] == 0)
+				lut[root] = ++n;
+			lut[i] = lut[root];
+		}
+		nLabels = n;
+		return lut;
+	}
+
+	/**
+	 * @return number of sets, excluding label 0, found by the last call to
+	 *         {@link #relabel()}
+	 */
+	int getNLabels() {
+		return nLabels;
+	}
+
+	/**
+	 * Lock-free union-find that may be updated by several threads at once. Roots
+	 * are always linked towards the smaller label, which keeps the forest acyclic
+	 * without needing ranks.
+	 */
+	static final class Concurrent {
+
+		private final AtomicIntegerArray parents;
+
+		/**
+		 * Create a union-find in which every label in [0, size) is its own set
+		 *
+		 * @param size number of labels
+		 */
+		Concurrent(final int size) {
+			parents = new AtomicIntegerArray(size);
+			for (int i = 0; i < size; i++) {
+				parents.set(i, i);
+			}
+		}
+
+		/**
+		 * Find the root of a label's set, halving the path as it goes
+		 *
+		 * @param label a label
+		 * @return the label at the root of its set
+		 */
+		int find(int label) {
+			while (true) {
+				final int parent = parents.get(label);
+				if (parent == label)
+					return label;
+				final int grandParent = parents.get(parent);
+				if (parent != grandParent)
+					parents.compareAndSet(label, parent, grandParent);
+				label = grandParent;
+			}
+		}
+
+		/**
+		 * Merge the sets containing two labels
+		 *
+		 * @param a a label
+		 * @param b another label
+		 */
+		void union(final int a, final int b) {
+			int rootA = find(a);
+			int rootB = find(b);
+			while (rootA != rootB) {
+				final int high = Math.max(rootA, rootB);
+				final int low = Math.min(rootA, rootB);
+				if (parents.compareAndSet(high, high, low))
+					return;
+				// another thread moved the root, try again from where it went
+				rootA = find(high);
+				rootB = find(low);
+			}
+		}
+
+		/**
+		 * Copy into a single-threaded union-find, once all the unions are done
+		 *
+		 * @return union-find with the same sets
+		 */
+		LabelUnionFind toLabelUnionFind() {
+			final int size = parents.length();
+			final int[] p = new int[size];
+			for (int i = 0; i < size; i++) {
+				p[i] = parents.get(i);
+			}
+			return new LabelUnionFind(p);
+		}
+	}
+}
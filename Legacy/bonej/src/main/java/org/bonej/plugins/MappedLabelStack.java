@@ -0,0 +1,189 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+
+package org.bonej.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Particle label stack held in a memory-mapped temporary file rather than on
+ * the heap, so that labelling is not limited by the size of an
+ * {@code int[nSlices][w*h]} array.
+ * <p>
+ * The file is mapped once, in regions of whole slices, when the stack is
+ * created, so reading and writing slices does not map any more of it. Distinct
+ * slices may be read and written concurrently from different threads. Call
+ * {@link #close()} to release the backing file when the labels are no longer
+ * needed.
+ * </p>
+ */
+public class MappedLabelStack implements AutoCloseable {
+
+	private final int w;
+	private final int h;
+	private final int d;
+	private final int slicesPerRegion;
+	private final File file;
+	private final FileChannel channel;
+	/** mapped regions of the file, each holding slicesPerRegion slices */
+	private IntBuffer[] regions;
+
+	/**
+	 * Create a new label stack backed by a temporary file. All labels are
+	 * initially 0.
+	 *
+	 * @param w image width
+	 * @param h image height
+	 * @param d image depth
+	 * @throws IllegalArgumentException if a slice is too large to map
+	 */
+	public MappedLabelStack(final int w, final int h, final int d) {
+		this.w = w;
+		this.h = h;
+		this.d = d;
+		final long sliceBytes = (long) w * h * Integer.BYTES;
+		if (sliceBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Slices of " + w + " x " + h +
+				" labels are too large to map");
+		}
+		slicesPerRegion = (int) Math.max(1, Integer.MAX_VALUE / Math.max(1,
+			sliceBytes));
+		try {
+			file = File.createTempFile("bonej-labels", ".raw");
+			file.deleteOnExit();
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+			final int nRegions = (d + slicesPerRegion - 1) / slicesPerRegion;
+			regions = new IntBuffer[nRegions];
+			for (int r = 0; r < nRegions; r++) {
+				final int regionSlices = Math.min(slicesPerRegion, d - r *
+					slicesPerRegion);
+				regions[r] = channel.map(MapMode.READ_WRITE, r * slicesPerRegion *
+					sliceBytes, regionSlices * sliceBytes).order(ByteOrder.nativeOrder())
+					.asIntBuffer();
+			}
+		}
+		catch (final IOException e) {
+			throw new UncheckedIOException("Could not create label stack file", e);
+		}
+	}
+
+	/**
+	 * Copy a slice of labels into an existing array
+	 *
+	 * @param z slice index (0-based)
+	 * @param labels array of length w * h to fill
+	 */
+	public void readSlice(final int z, final int[] labels) {
+		slice(z).get(labels, 0, w * h);
+	}
+
+	/**
+	 * Get a copy of a slice of labels
+	 *
+	 * @param z slice index (0-based)
+	 * @return new array of w * h labels
+	 */
+	public int[] getSlice(final int z) {
+		final int[] labels = new int[w * h];
+		readSlice(z, labels);
+		return labels;
+	}
+
+	/**
+	 * Write a slice of labels to the backing file
+	 *
+	 * @param z slice index (0-based)
+	 * @param labels array of w * h labels
+	 */
+	public void writeSlice(final int z, final int[] labels) {
+		slice(z).put(labels, 0, w * h);
+	}
+
+	/**
+	 * Get a view of a single slice in its mapped region, with its own position
+	 * so that threads working on different slices do not interfere.
+	 *
+	 * @param z slice index (0-based)
+	 * @return native-ordered view positioned at the start of the slice
+	 */
+	private IntBuffer slice(final int z) {
+		if (z < 0 || z >= d) {
+			throw new IndexOutOfBoundsException("Slice " + z + " is outside the stack (depth " + d + ")");
+		}
+		if (regions == null) {
+			throw new IllegalStateException("Label stack is closed");
+		}
+		final IntBuffer region = regions[z / slicesPerRegion].duplicate();
+		region.position((z % slicesPerRegion) * w * h);
+		return region;
+	}
+
+	/** @return image width */
+	public int getWidth() {
+		return w;
+	}
+
+	/** @return image height */
+	public int getHeight() {
+		return h;
+	}
+
+	/** @return number of slices */
+	public int getDepth() {
+		return d;
+	}
+
+	/**
+	 * Close the backing file and delete it. The mapped regions are released
+	 * when they are garbage collected.
+	 */
+	@Override
+	public void close() {
+		regions = null;
+		try {
+			channel.close();
+		}
+		catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		finally {
+			file.delete();
+		}
+	}
+}
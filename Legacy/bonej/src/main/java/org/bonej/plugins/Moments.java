@@ -31,6 +31,7 @@
 package org.bonej.plugins;
 
 import java.awt.Rectangle;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -59,6 +60,7 @@ import customnode.CustomPointMesh;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.io.FileSaver;
 import ij.measure.Calibration;
 import ij.plugin.Duplicator;
 import ij.process.ImageProcessor;
@@ -123,9 +125,20 @@ public class Moments extends BoneJCommand implements Command {
 	@Parameter(label = "HU Calibrated")
 	private boolean huCalibrated;
 
+	@Parameter(label = "Single pass")
+	private boolean singlePass = true;
+
 	@Parameter(label = "Align Result")
 	private boolean doAlign = true;
 
+	@Parameter(label = "Interpolation", choices = { "Nearest neighbour",
+		"Trilinear", "Tricubic" })
+	private String interpolation = "Nearest neighbour";
+
+	@Parameter(label = "Save aligned slices to", style = "directory",
+		required = false)
+	private File alignedDirectory;
+
 	@Parameter(label = "Show Axes (2D)")
 	private boolean doAxes2D = false;
 
@@ -137,6 +150,23 @@ public class Moments extends BoneJCommand implements Command {
 
 	private Calibration cal;
 
+	// Indices of the sums kept by the single-pass moment calculation
+	private static final int VOLUME = 0;
+	private static final int MASS = 1;
+	private static final int MX = 2;
+	private static final int MY = 3;
+	private static final int MZ = 4;
+	private static final int MXX = 5;
+	private static final int MYY = 6;
+	private static final int MZZ = 7;
+	private static final int MXY = 8;
+	private static final int MXZ = 9;
+	private static final int MYZ = 10;
+	private static final int N_SUMS = 11;
+
+	/** Number of aligned slices held in memory when saving them to disk */
+	private static final int ALIGNED_SLAB_DEPTH = 32;
+
 	/**
 	 * Modern scijava Plugin entry point.
 	 */
@@ -188,25 +218,40 @@ public class Moments extends BoneJCommand implements Command {
         
         logService.info("Moments: using pixels between "+minThreshold+" and "+maxThreshold+" (raw) for calculations");
         
-        double[] centroid = getCentroid3D(imp, startSlice, endSlice, minThreshold, maxThreshold, 
+        final double[] centroid;
+        final Object[] momentResults;
+        if (singlePass) {
+        	momentResults = calculateMomentsSinglePass(imp, startSlice, endSlice,
+        		minThreshold, maxThreshold, densitySlope, densityIntercept);
+        	centroid = (double[]) momentResults[2];
+        } else {
+        	centroid = getCentroid3D(imp, startSlice, endSlice, minThreshold, maxThreshold, 
                 densitySlope, densityIntercept);
+        	momentResults = centroid[0] < 0 ? null : calculateMoments(imp, startSlice,
+        		endSlice, centroid, minThreshold, maxThreshold, densitySlope,
+        		densityIntercept);
+        }
 
         if (centroid[0] < 0) {
         	logService.error("Empty Stack: No voxels available for calculation.");
         	return;
         }
-        
-        Object[] momentResults = calculateMoments(imp, startSlice, endSlice, centroid, 
-                minThreshold, maxThreshold, densitySlope, densityIntercept);
 
 		populateResultsTable(imp, centroid, momentResults);
 		
 		final EigenvalueDecomposition E =
 				(EigenvalueDecomposition) momentResults[0];
 		
-		if (doAlign) {
+		if (doAlign && alignedDirectory != null) {
+			alignToPrincipalAxes(imp, E.getV(), centroid, startSlice, endSlice,
+				minThreshold, maxThreshold, doAxes2D, AlignmentResampler.Interpolation
+					.fromLabel(interpolation), alignedDirectory);
+			logService.info("Moments: aligned slices saved to " + alignedDirectory);
+		}
+		else if (doAlign) {
 			ImagePlus alignedImp = alignToPrincipalAxes(imp, E.getV(), centroid, startSlice,
-			endSlice, minThreshold, maxThreshold, doAxes2D);
+			endSlice, minThreshold, maxThreshold, doAxes2D,
+			AlignmentResampler.Interpolation.fromLabel(interpolation), null);
 			
 			outputDataset = convertService.convert(alignedImp, Dataset.class);
     		alignedImp.close();
@@ -276,7 +321,7 @@ public class Moments extends BoneJCommand implements Command {
 		final double[] centroid = getCentroid3D(imp, 1, endSlice, 128.0, 255.0, 0.0,
 			1.0);
 		return alignToPrincipalAxes(imp, E, centroid, 1, endSlice, 128.0, 255.0,
-			false);
+			false, AlignmentResampler.Interpolation.NEAREST, null);
 	}
 
 	/**
@@ -288,20 +333,22 @@ public class Moments extends BoneJCommand implements Command {
 	 * @param startSlice first slice to copy
 	 * @param endSlice final slice to copy
 	 * @param doAxes if true, draw axes on the aligned copy
-	 * @return ImagePlus copy of the input image
+	 * @param interpolation how to look up source voxels
+	 * @param directory if not null, save the aligned slices to this directory
+	 *          as TIFFs, a slab at a time, instead of returning them
+	 * @return ImagePlus copy of the input image, or null if it was saved
 	 */
 	private ImagePlus alignToPrincipalAxes(final ImagePlus imp,
 		final Matrix E, final double[] centroid, final int startSlice,
 		final int endSlice, final double min, final double max,
-		final boolean doAxes)
+		final boolean doAxes, final AlignmentResampler.Interpolation interpolation,
+		final File directory)
 	{
-		final ImageStack sourceStack = imp.getImageStack();
 		final Calibration cal = imp.getCalibration();
 		final double vW = cal.pixelWidth;
 		final double vH = cal.pixelHeight;
 		final double vD = cal.pixelDepth;
 		final double vS = Math.min(vW, Math.min(vH, vD));
-		final int d = sourceStack.getSize();
 		final int[] sides = getRotatedSize(E, imp, centroid, startSlice, endSlice,
 			min, max);
 
@@ -397,76 +444,85 @@ public class Moments extends BoneJCommand implements Command {
 
 		// for each voxel in the target stack,
 		// find the corresponding source voxel
+		final AlignmentResampler resampler = new AlignmentResampler(imp,
+			eigenVecInv, centroid, wT, hT, dT, startSlice, endSlice, interpolation);
+		final int xCent = (int) Math.floor(xTc / vS);
+		final int yCent = (int) Math.floor(yTc / vS);
+		final int zCent = (int) Math.floor(zTc / vS);
+		final Calibration targetCal = imp.getCalibration().copy();
+		targetCal.pixelDepth = vS;
+		targetCal.pixelHeight = vS;
+		targetCal.pixelWidth = vS;
 
-		// Cache the sourceStack's processors
-		final ImageProcessor[] sliceProcessors = new ImageProcessor[d + 1];
-		for (int z = 1; z <= d; z++) {
-			sliceProcessors[z] = sourceStack.getProcessor(z);
+		if (directory != null) {
+			final String prefix = "Aligned_" + imp.getShortTitle() + "_";
+			final String number = "%0" + String.valueOf(dT).length() + "d";
+			resampler.resampleInSlabs(ALIGNED_SLAB_DEPTH, (first, slices, n) -> {
+				final ImageStack slab = new ImageStack(wT, hT);
+				for (int i = 0; i < n; i++)
+					slab.addSlice(null, slices[i]);
+				for (int i = 0; i < n; i++) {
+					final int z = first + i;
+					final ImageProcessor ip = slab.getProcessor(i + 1);
+					if (doAxes) drawAxes(ip, z, xCent, yCent, zCent, wT, hT);
+					final ImagePlus slice = new ImagePlus(prefix + String.format(number, z) +
+						".tif", ip);
+					slice.setCalibration(targetCal);
+					final String path = new File(directory, slice.getTitle()).getPath();
+					if (!new FileSaver(slice).saveAsTiff(path)) {
+						throw new RuntimeException("Could not save aligned slice to " +
+							path);
+					}
+				}
+			});
+			return null;
 		}
-		// Initialise an empty stack and tartgetStack's processor array
+
 		final ImageStack targetStack = new ImageStack(wT, hT, dT);
-		final ImageProcessor[] targetProcessors = new ImageProcessor[dT + 1];
 		for (int z = 1; z <= dT; z++) {
 			targetStack.setPixels(getEmptyPixels(wT, hT, imp.getBitDepth()), z);
-			targetProcessors[z] = targetStack.getProcessor(z);
-		}
-
-		// Multithread start
-		final int nThreads = Runtime.getRuntime().availableProcessors();
-		final AlignThread[] alignThread = new AlignThread[nThreads];
-		for (int thread = 0; thread < nThreads; thread++) {
-			alignThread[thread] = new AlignThread(thread, nThreads, imp,
-				sliceProcessors, targetProcessors, eigenVecInv, centroid, wT, hT, dT,
-				startSlice, endSlice);
-			alignThread[thread].start();
-		}
-		try {
-			for (int thread = 0; thread < nThreads; thread++) {
-				alignThread[thread].join();
-			}
-		}
-		catch (final InterruptedException ie) {
-			IJ.error("A thread was interrupted.");
 		}
-		// end multithreading
+		resampler.resample(targetStack);
 		if (doAxes) {
-			// draw axes on stack
-			final int xCent = (int) Math.floor(xTc / vS);
-			final int yCent = (int) Math.floor(yTc / vS);
-			final int zCent = (int) Math.floor(zTc / vS);
-			final int axisColour = Integer.MAX_VALUE;
 			for (int z = 1; z <= dT; z++) {
-				// z axis
-				try {
-					final ImageProcessor axisIP = targetStack.getProcessor(z);
-					axisIP.set(xCent, yCent, axisColour);
-				}
-				catch (final NullPointerException npe) {
-					IJ.handleException(npe);
-					break;
-				}
+				drawAxes(targetStack.getProcessor(z), z, xCent, yCent, zCent, wT, hT);
 			}
-			final ImageProcessor axisIP = targetStack.getProcessor(zCent);
-			axisIP.setColor(Integer.MAX_VALUE);
-			// x axis
-			axisIP.drawLine(0, yCent, wT, yCent);
-
-			// y axis
-			axisIP.drawLine(xCent, 0, xCent, hT);
 		}
 		final ImagePlus impTarget = new ImagePlus("Aligned_" + imp.getTitle(),
 			targetStack);
-		impTarget.setCalibration(imp.getCalibration());
-		final Calibration targetCal = impTarget.getCalibration();
-		targetCal.pixelDepth = vS;
-		targetCal.pixelHeight = vS;
-		targetCal.pixelWidth = vS;
+		impTarget.setCalibration(targetCal);
 		impTarget.setDisplayRange(imp.getDisplayRangeMin(), imp
 			.getDisplayRangeMax());
 		return impTarget;
 	}
 
-	private Object[] calculateMoments(final ImagePlus imp,
+	/**
+	 * Draw the principal axes on a slice of the aligned stack: the long axis as
+	 * a point in every slice and the other two as lines in the middle slice
+	 *
+	 * @param ip the slice
+	 * @param z slice number (1-based)
+	 * @param xCent x-coordinate of the centre
+	 * @param yCent y-coordinate of the centre
+	 * @param zCent slice number of the centre
+	 * @param wT width of the slice
+	 * @param hT height of the slice
+	 */
+	private static void drawAxes(final ImageProcessor ip, final int z,
+		final int xCent, final int yCent, final int zCent, final int wT,
+		final int hT)
+	{
+		// z axis
+		ip.set(xCent, yCent, Integer.MAX_VALUE);
+		if (z != zCent) return;
+		ip.setColor(Integer.MAX_VALUE);
+		// x axis
+		ip.drawLine(0, yCent, wT, yCent);
+		// y axis
+		ip.drawLine(xCent, 0, xCent, hT);
+	}
+
+	Object[] calculateMoments(final ImagePlus imp,
 		final int startSlice, final int endSlice, final double[] centroid,
 		final double min, final double max, final double m, final double c)
 	{
@@ -549,14 +605,162 @@ public class Moments extends BoneJCommand implements Command {
 		}
 		Multithreader.startAndJoin(threads);
 			
+		return getInertiaResults(Arrays.stream(sliceSumVoxVol).sum(), Arrays.stream(
+			sliceSumVoxMass).sum(), Arrays.stream(sliceIcxx).sum(), Arrays.stream(
+				sliceIcyy).sum(), Arrays.stream(sliceIczz).sum(), Arrays.stream(
+					sliceIcxy).sum(), Arrays.stream(sliceIcxz).sum(), Arrays.stream(
+						sliceIcyz).sum());
+	}
+
+	/**
+	 * Calculate the centroid and inertia tensor in one sweep of the stack.
+	 * <p>
+	 * Each slice accumulates its mass and its first and second moments about
+	 * the middle of the ROI and slice range, which keeps the sums small. Only
+	 * the x-sums vary along a row, so each voxel adds to just three sums; the
+	 * rows' sums are combined into the slice's, and the slices' into the
+	 * stack's, with compensated (Kahan) summation. The tensor about the
+	 * centroid then follows from the parallel axis theorem.
+	 * </p>
+	 *
+	 * @param imp ImagePlus
+	 * @param startSlice first slice to use
+	 * @param endSlice last slice to use
+	 * @param min minimum threshold value
+	 * @param max maximum threshold value
+	 * @param m slope of density equation (set to 0 if constant density)
+	 * @param c constant in density equation
+	 * @return {@link EigenvalueDecomposition} of the inertia tensor, the
+	 *         moments as returned by
+	 *         {@link #calculateMoments(ImagePlus, int, int, double[], double, double, double, double)}
+	 *         and the centroid as returned by
+	 *         {@link #getCentroid3D(ImagePlus, int, int, double, double, double, double)}.
+	 *         If no voxels are in range, only the centroid is set, to -1.
+	 */
+	Object[] calculateMomentsSinglePass(final ImagePlus imp,
+		final int startSlice, final int endSlice, final double min,
+		final double max, final double m, final double c)
+	{
+		final ImageStack stack = imp.getImageStack();
+		final Rectangle r = imp.getProcessor().getRoi();
+		final int rW = r.x + r.width;
+		final int rH = r.y + r.height;
+		final int rX = r.x;
+		final int rY = r.y;
+		final Calibration cal = imp.getCalibration();
+		final double vW = cal.pixelWidth;
+		final double vH = cal.pixelHeight;
+		final double vD = cal.pixelDepth;
+		final double voxVol = vW * vH * vD;
+		final double factor = getDensityFactor(imp);
+		final double x0 = (rX + rW - 1) * vW / 2;
+		final double y0 = (rY + rH - 1) * vH / 2;
+		final double z0 = (startSlice + endSlice) * vD / 2;
+		final int d = imp.getStackSize();
+		final double[][] sliceSums = new double[d + 1][];
+
+		final AtomicInteger ai = new AtomicInteger(startSlice);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				for (int z = ai.getAndIncrement(); z <= endSlice; z = ai.getAndIncrement()) {
+					IJ.showStatus("Calculating centroid and inertia tensor...");
+					IJ.showProgress(z - startSlice, endSlice - startSlice);
+					final ImageProcessor ip = stack.getProcessor(z);
+					final int w = ip.getWidth();
+					final double dz = z * vD - z0;
+					final double[] sums = new double[N_SUMS];
+					final double[] compensation = new double[N_SUMS];
+					for (int y = rY; y < rH; y++) {
+						final double dy = y * vH - y0;
+						final int offset = y * w;
+						long count = 0;
+						double mass = 0;
+						double mx = 0;
+						double mxx = 0;
+						for (int x = rX; x < rW; x++) {
+							final double testPixel = ip.get(offset + x);
+							if (testPixel < min || testPixel > max) {
+								continue;
+							}
+							final double voxMass = voxelDensity(testPixel, m, c, factor) * voxVol;
+							final double dx = x * vW - x0;
+							count++;
+							mass += voxMass;
+							mx += dx * voxMass;
+							mxx += dx * dx * voxMass;
+						}
+						if (count == 0) continue;
+						kahanAdd(sums, compensation, VOLUME, count * voxVol);
+						kahanAdd(sums, compensation, MASS, mass);
+						kahanAdd(sums, compensation, MX, mx);
+						kahanAdd(sums, compensation, MY, dy * mass);
+						kahanAdd(sums, compensation, MZ, dz * mass);
+						kahanAdd(sums, compensation, MXX, mxx);
+						kahanAdd(sums, compensation, MYY, dy * dy * mass);
+						kahanAdd(sums, compensation, MZZ, dz * dz * mass);
+						kahanAdd(sums, compensation, MXY, dy * mx);
+						kahanAdd(sums, compensation, MXZ, dz * mx);
+						kahanAdd(sums, compensation, MYZ, dy * dz * mass);
+					}
+					sliceSums[z] = sums;
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+
+		final double[] sums = new double[N_SUMS];
+		final double[] compensation = new double[N_SUMS];
+		for (int z = startSlice; z <= endSlice; z++) {
+			for (int i = 0; i < N_SUMS; i++)
+				kahanAdd(sums, compensation, i, sliceSums[z][i]);
+		}
+		final double mass = sums[MASS];
+		if (mass == 0) {
+			return new Object[] { null, null, new double[] { -1, -1, -1 } };
+		}
+		final double mx = sums[MX];
+		final double my = sums[MY];
+		final double mz = sums[MZ];
+		final double[] centroid = { x0 + mx / mass, y0 + my / mass, z0 + mz /
+			mass };
+		// second moments about the centroid
+		final double cxx = sums[MXX] - mx * mx / mass;
+		final double cyy = sums[MYY] - my * my / mass;
+		final double czz = sums[MZZ] - mz * mz / mass;
+		final double Icxx = cyy + czz + mass * (vH * vH + vD * vD) / 12;
+		final double Icyy = cxx + czz + mass * (vW * vW + vD * vD) / 12;
+		final double Iczz = cxx + cyy + mass * (vH * vH + vW * vW) / 12;
+		final double Icxy = sums[MXY] - mx * my / mass;
+		final double Icxz = sums[MXZ] - mx * mz / mass;
+		final double Icyz = sums[MYZ] - my * mz / mass;
+		final Object[] results = getInertiaResults(sums[VOLUME], mass, Icxx, Icyy,
+			Iczz, Icxy, Icxz, Icyz);
+		return new Object[] { results[0], results[1], centroid };
+	}
+
+	/** Add to one of a set of sums, carrying its rounding error forward */
+	private static void kahanAdd(final double[] sums,
+		final double[] compensation, final int i, final double value)
+	{
+		final double y = value - compensation[i];
+		final double t = sums[i] + y;
+		compensation[i] = (t - sums[i]) - y;
+		sums[i] = t;
+	}
+
+	/**
+	 * Decompose the inertia tensor into its principal axes
+	 *
+	 * @return {@link EigenvalueDecomposition} of the tensor, and the array
+	 *         {sumVoxVol, sumVoxMass, Icxx, Icyy, Iczz, Icxy, Icxz, Icyz}
+	 */
+	private Object[] getInertiaResults(final double sumVoxVol,
+		final double sumVoxMass, final double Icxx, final double Icyy,
+		final double Iczz, final double Icxy, final double Icxz,
+		final double Icyz)
+	{
 		// create the inertia tensor matrix
-		final double Icxx = Arrays.stream(sliceIcxx).sum();
-		final double Icyy = Arrays.stream(sliceIcyy).sum();
-		final double Iczz = Arrays.stream(sliceIczz).sum();
-		final double Icxy = Arrays.stream(sliceIcxy).sum();
-		final double Icxz = Arrays.stream(sliceIcxz).sum();
-		final double Icyz = Arrays.stream(sliceIcyz).sum();
-				
 		final double[][] inertiaTensor = new double[3][3];
 		inertiaTensor[0][0] = Icxx;
 		inertiaTensor[1][1] = Icyy;
@@ -572,13 +776,12 @@ public class Moments extends BoneJCommand implements Command {
 		// do the Eigenvalue decomposition
 		final EigenvalueDecomposition E = new EigenvalueDecomposition(
 			inertiaTensorMatrix);
-		MatrixUtils matrixUtils = new MatrixUtils();
-		matrixUtils.printToIJ2Log(logService, E.getD(), "Eigenvalues");
-		matrixUtils.printToIJ2Log(logService, E.getV(), "Eigenvectors");
+		if (logService != null) {
+			MatrixUtils matrixUtils = new MatrixUtils();
+			matrixUtils.printToIJ2Log(logService, E.getD(), "Eigenvalues");
+			matrixUtils.printToIJ2Log(logService, E.getV(), "Eigenvectors");
+		}
 
-		final double sumVoxVol = Arrays.stream(sliceSumVoxVol).sum();
-		final double sumVoxMass = Arrays.stream(sliceSumVoxMass).sum();
-		
 		final double[] moments = { sumVoxVol, sumVoxMass, Icxx, Icyy, Iczz, Icxy,
 			Icxz, Icyz };
 
@@ -598,7 +801,7 @@ public class Moments extends BoneJCommand implements Command {
 	 * @param c constant in density equation
 	 * @return double[] containing (x,y,z) centroid in scaled units
 	 */
-	private static double[] getCentroid3D(final ImagePlus imp,
+	static double[] getCentroid3D(final ImagePlus imp,
 		final int startSlice, final int endSlice, final double min,
 		final double max, final double m, final double c)
 	{
@@ -986,111 +1189,6 @@ public class Moments extends BoneJCommand implements Command {
 		return Math.max(0.0, (m * pixelValue + c) / factor);
 	}
 
-	/**
-	 * Multithreading class to look up aligned voxel values, processing each slice
-	 * in its own thread
-	 */
-	private static final class AlignThread extends Thread {
-
-		private final int thread;
-		private final int nThreads;
-		private final int wT;
-		private final int hT;
-		private final int dT;
-		private final int startSlice;
-		private final int endSlice;
-		private final ImagePlus impT;
-		private final ImageProcessor[] sliceProcessors;
-		private final ImageProcessor[] targetProcessors;
-		private final double[][] eigenVecInv;
-		private final double[] centroid;
-
-		private AlignThread(final int thread, final int nThreads,
-			final ImagePlus imp, final ImageProcessor[] sliceProcessors,
-			final ImageProcessor[] targetProcessors, final double[][] eigenVecInv,
-			final double[] centroid, final int wT, final int hT, final int dT,
-			final int startSlice, final int endSlice)
-		{
-			impT = imp;
-			this.thread = thread;
-			this.nThreads = nThreads;
-			this.sliceProcessors = sliceProcessors;
-			this.targetProcessors = targetProcessors;
-			this.eigenVecInv = eigenVecInv;
-			this.centroid = centroid;
-			this.wT = wT;
-			this.hT = hT;
-			this.dT = dT;
-			this.startSlice = startSlice;
-			this.endSlice = endSlice;
-		}
-
-		@Override
-		public void run() {
-			final Rectangle r = impT.getProcessor().getRoi();
-			final int rW = r.x + r.width;
-			final int rH = r.y + r.height;
-			final int rX = r.x;
-			final int rY = r.y;
-			final Calibration cal = impT.getCalibration();
-			final double vW = cal.pixelWidth;
-			final double vH = cal.pixelHeight;
-			final double vD = cal.pixelDepth;
-			final double vS = Math.min(vW, Math.min(vH, vD));
-			final double xC = centroid[0];
-			final double yC = centroid[1];
-			final double zC = centroid[2];
-			final double xTc = wT * vS / 2;
-			final double yTc = hT * vS / 2;
-			final double zTc = dT * vS / 2;
-			final double dXc = xC - xTc;
-			final double dYc = yC - yTc;
-			final double dZc = zC - zTc;
-			final double eVI00 = eigenVecInv[0][0];
-			final double eVI10 = eigenVecInv[1][0];
-			final double eVI20 = eigenVecInv[2][0];
-			final double eVI01 = eigenVecInv[0][1];
-			final double eVI11 = eigenVecInv[1][1];
-			final double eVI21 = eigenVecInv[2][1];
-			final double eVI02 = eigenVecInv[0][2];
-			final double eVI12 = eigenVecInv[1][2];
-			final double eVI22 = eigenVecInv[2][2];
-			for (int z = thread + 1; z <= dT; z += nThreads) {
-				IJ.showStatus("Aligning image stack...");
-				IJ.showProgress(z, dT);
-				final ImageProcessor targetIP = targetProcessors[z];
-				final double zD = z * vS - zTc;
-				final double zDeVI20 = zD * eVI20;
-				final double zDeVI21 = zD * eVI21;
-				final double zDeVI22 = zD * eVI22;
-				for (int y = 0; y < hT; y++) {
-					final double yD = y * vS - yTc;
-					final double yDeVI10 = yD * eVI10;
-					final double yDeVI11 = yD * eVI11;
-					final double yDeVI12 = yD * eVI12;
-					for (int x = 0; x < wT; x++) {
-						final double xD = x * vS - xTc;
-						final double xAlign = xD * eVI00 + yDeVI10 + zDeVI20 + xTc;
-						final double yAlign = xD * eVI01 + yDeVI11 + zDeVI21 + yTc;
-						final double zAlign = xD * eVI02 + yDeVI12 + zDeVI22 + zTc;
-						// possibility to do some voxel interpolation instead
-						// of just rounding in next 3 lines
-						final int xA = (int) Math.floor((xAlign + dXc) / vW);
-						final int yA = (int) Math.floor((yAlign + dYc) / vH);
-						final int zA = (int) Math.floor((zAlign + dZc) / vD);
-
-						if (xA < rX || xA >= rW || yA < rY || yA >= rH || zA < startSlice ||
-							zA > endSlice)
-						{
-							continue;
-						}
-						targetIP.set(x, y, sliceProcessors[zA].get(xA, yA));
-					}
-				}
-			}
-		}
-	}
-
 	/**
 	 * Return an empty pixel array of the type appropriate for the bit depth
 	 * required. Returns an Object, which can be used when adding an empty slice
@@ -30,27 +30,22 @@
 
 package org.bonej.plugins;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.bonej.geometry.ConvexHull3D;
 import org.bonej.geometry.FitEllipsoid;
+import org.bonej.util.BitPackedStack;
 import org.bonej.util.Multithreader;
-import org.jogamp.vecmath.Point3f;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
 
 import Jama.EigenvalueDecomposition;
 import Jama.Matrix;
-import customnode.CustomTriangleMesh;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.measure.Calibration;
-import marchingcubes.MCTriangulator;
 import sc.fiji.analyzeSkeleton.AnalyzeSkeleton_;
 import sc.fiji.analyzeSkeleton.SkeletonResult;
 import sc.fiji.skeletonize3D.Skeletonize3D_;
@@ -81,14 +76,14 @@ public class ParticleAnalysis {
 	 * 
 	 * @param imp            Input image. Needed for calibration
 	 * @param particleLabels Particle label image array
-	 * @param workArray      Binary work array
+	 * @param workArray      Bit-packed binary work array
 	 * @param nParticles     Number of particles in the image
 	 * @param phase          Foreground or background
 	 * @param doExclude      true to remove all particles touching a side
 	 * @param min            minimum volume in calibrated units to include
 	 * @param max            minimum volume in calibrated units to include
 	 */
-	public void filterParticles(final ImagePlus imp, final int[][] particleLabels, final byte[][] workArray,
+	public void filterParticles(final ImagePlus imp, final int[][] particleLabels, final BitPackedStack workArray,
 			int nParticles, final int phase, final boolean doExclude, final double min, final double max) {
 
 		getParticleSizes(particleLabels, nParticles);
@@ -209,14 +204,7 @@ public class ParticleAnalysis {
 			// replace labels based on lut
 
 			// handle both phases in the workArray
-			final byte flip;
-			if (phase == ConnectedComponents.FORE) {
-				flip = 0;
-			} else {
-				flip = (byte) 255;
-			}
-
-			final int wh = w * h;
+			final boolean flipToForeground = phase != ConnectedComponents.FORE;
 
 			AtomicInteger ai = new AtomicInteger(0);
 
@@ -225,15 +213,21 @@ public class ParticleAnalysis {
 				threads[thread] = new Thread(() -> {
 					for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
 						final int[] particleLabelSlice = particleLabels[z];
-						final byte[] workArraySlice = workArray[z];
-						for (int i = 0; i < wh; i++) {
-							final int oldLabel = particleLabelSlice[i];
-							if (oldLabel == 0)
-								continue;
-							final int newLabel = lut[oldLabel];
-							particleLabelSlice[i] = newLabel;
-							if (newLabel == 0)
-								workArraySlice[i] = flip;
+						for (int y = 0; y < h; y++) {
+							final int rowIndex = y * w;
+							for (int x = 0; x < w; x++) {
+								final int oldLabel = particleLabelSlice[rowIndex + x];
+								if (oldLabel == 0)
+									continue;
+								final int newLabel = lut[oldLabel];
+								particleLabelSlice[rowIndex + x] = newLabel;
+								if (newLabel == 0) {
+									if (flipToForeground)
+										workArray.set(x, y, z);
+									else
+										workArray.clear(x, y, z);
+								}
+							}
 						}
 					}
 				});
@@ -313,274 +307,26 @@ public class ParticleAnalysis {
 		return particleVolumes;
 	}
 
-	/**
-	 * Get the mean and standard deviation of pixel values &gt;0 for each particle
-	 * in a particle label work array
-	 *
-	 * @param imp            Input image containing pixel values
-	 * @param particleLabels workArray containing particle labels
-	 * @param particleSizes  array of particle sizes as pixel counts
-	 * @return array containing mean, std dev and max pixel values for each particle
-	 */
-	static double[][] getMeanStdDev(final ImagePlus imp, final int[][] particleLabels, final long[] particleSizes) {
-		final int d = imp.getImageStackSize();
-		final int wh = imp.getWidth() * imp.getHeight();
-		final ImageStack stack = imp.getImageStack();
-		final int nParticles = particleSizes.length;
-		final double[] sums = new double[nParticles];
-		for (int z = 0; z < d; z++) {
-			final float[] pixels = (float[]) stack.getPixels(z + 1);
-			final int[] labelPixels = particleLabels[z];
-			for (int i = 0; i < wh; i++) {
-				final double value = pixels[i];
-				if (value > 0) {
-					sums[labelPixels[i]] += value;
-				}
-			}
-		}
-		final double[][] meanStdDev = new double[nParticles][3];
-		for (int p = 1; p < nParticles; p++) {
-			meanStdDev[p][0] = sums[p] / particleSizes[p];
-		}
-
-		final double[] sumSquares = new double[nParticles];
-		for (int z = 0; z < d; z++) {
-			final float[] pixels = (float[]) stack.getPixels(z + 1);
-			final int[] labelPixels = particleLabels[z];
-			for (int i = 0; i < wh; i++) {
-				final double value = pixels[i];
-				if (value > 0) {
-					final int p = labelPixels[i];
-					final double residual = value - meanStdDev[p][0];
-					sumSquares[p] += residual * residual;
-					meanStdDev[p][2] = Math.max(meanStdDev[p][2], value);
-				}
-			}
-		}
-		for (int p = 1; p < nParticles; p++) {
-			meanStdDev[p][1] = Math.sqrt(sumSquares[p] / particleSizes[p]);
-		}
-		return meanStdDev;
-	}
-
-	/**
-	 * Calculate Eigenvalue decompositions of all the particles
-	 * 
-	 * @param imp ImagePlus, used for calibration
-	 * @param particleLabels label image array
-	 * @param centroids list of particle centroids
-	 * @return list of EigenvalueDecompositions
-	 */
-	static EigenvalueDecomposition[] getEigens(final ImagePlus imp, final int[][] particleLabels,
-			final double[][] centroids) {
-		final Calibration cal = imp.getCalibration();
-		final double vW = cal.pixelWidth;
-		final double vH = cal.pixelHeight;
-		final double vD = cal.pixelDepth;
-		final double voxVhVd = (vH * vH + vD * vD) / 12;
-		final double voxVwVd = (vW * vW + vD * vD) / 12;
-		final double voxVhVw = (vH * vH + vW * vW) / 12;
-		final int w = imp.getWidth();
-		final int h = imp.getHeight();
-		final int d = imp.getImageStackSize();
-		final int nParticles = centroids.length;
-
-		final AtomicInteger ai = new AtomicInteger(0);
-		final Thread[] threads = Multithreader.newThreads();
-		final List<double[][]> listOfTensors = Collections.synchronizedList(new ArrayList<>());
-		
-		for (int thread = 0; thread < threads.length; thread++) {
-
-			final double[][] threadTensors = new double[nParticles][6];
-
-			threads[thread] = new Thread(() -> {
-				for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
-					final double zVd = z * vD;
-					final int[] slice = particleLabels[z];
-					for (int y = 0; y < h; y++) {
-						final double yVh = y * vH;
-						final int index = y * w;
-						for (int x = 0; x < w; x++) {
-							final int p = slice[index + x];
-							if (p == 0) continue;
-							final double xVw = x * vW;
-							final double dx = xVw - centroids[p][0];
-							final double dy = yVh - centroids[p][1];
-							final double dz = zVd - centroids[p][2];
-							threadTensors[p][0] += dy * dy + dz * dz + voxVhVd; // Ixx
-							threadTensors[p][1] += dx * dx + dz * dz + voxVwVd; // Iyy
-							threadTensors[p][2] += dy * dy + dx * dx + voxVhVw; // Izz
-							threadTensors[p][3] += dx * dy; // Ixy
-							threadTensors[p][4] += dx * dz; // Ixz
-							threadTensors[p][5] += dy * dz; // Iyz
-						}
-					}
-				}
-			});
-			listOfTensors.add(threadTensors);
-		}
-		Multithreader.startAndJoin(threads);
-		
-		final double[][] momentTensors = new double[nParticles][6];
-		Iterator<double[][]> iter = listOfTensors.iterator();
-		while (iter.hasNext()) {
-			final double[][] threadTensors = iter.next();
-			for (int p = 1; p < nParticles; p++) {
-				momentTensors[p][0] += threadTensors[p][0];
-				momentTensors[p][1] += threadTensors[p][1];
-				momentTensors[p][2] += threadTensors[p][2];
-				momentTensors[p][3] += threadTensors[p][3];
-				momentTensors[p][4] += threadTensors[p][4];
-				momentTensors[p][5] += threadTensors[p][5];
-			}
-		}
-		
-		final EigenvalueDecomposition[] eigens = new EigenvalueDecomposition[nParticles];
-		for (int p = 1; p < nParticles; p++) {
-			final double[][] inertiaTensor = new double[3][3];
-			inertiaTensor[0][0] = momentTensors[p][0];
-			inertiaTensor[1][1] = momentTensors[p][1];
-			inertiaTensor[2][2] = momentTensors[p][2];
-			inertiaTensor[0][1] = -momentTensors[p][3];
-			inertiaTensor[0][2] = -momentTensors[p][4];
-			inertiaTensor[1][0] = -momentTensors[p][3];
-			inertiaTensor[1][2] = -momentTensors[p][5];
-			inertiaTensor[2][0] = -momentTensors[p][4];
-			inertiaTensor[2][1] = -momentTensors[p][5];
-			final Matrix inertiaTensorMatrix = new Matrix(inertiaTensor);
-			final EigenvalueDecomposition E = new EigenvalueDecomposition(inertiaTensorMatrix);
-			eigens[p] = E;
-		}
-		return eigens;
-	}
-
-	/**
-	 * Get the centroid and minimum and maximum x, y and z coordinates of each particle
-	 *
-	 * @param imp            ImagePlus (used for stack size)
-	 * @param particleLabels work array containing labelled particles
-	 * @param particleSizes sizes of the particles in pixel counts
-	 * @return 2-element Object array containing for each particle the centroid (in calibrated units as double[nParticles][3]) and the 
-	 * min and max x, y and z limits (in uncalibrated pixel units as int[nParticles][6]).
-	 */
-	static Object[] getBoundingBoxes(final ImagePlus imp, final int[][] particleLabels, final long[] particleSizes) {
-		
-		final int w = imp.getWidth();
-		final int h = imp.getHeight();
-		final int d = imp.getImageStackSize();
-		final int nParticles = particleSizes.length;
-		
-		final AtomicInteger ai = new AtomicInteger(0);
-		final Thread[] threads = Multithreader.newThreads();
-		final List<int[][]> listOfLimits = Collections.synchronizedList(new ArrayList<>());
-		final List<double[][]> listOfSums = Collections.synchronizedList(new ArrayList<>());
-		
-		for (int thread = 0; thread < threads.length; thread++) {
-			
-			final double[][] threadSums = new double[nParticles][3];
-			
-			//set up a limit range for each thread and particle
-			final int[][] threadLimits = new int[nParticles][6];
-			for (int p = 1; p < nParticles; p++) {
-				threadLimits[p][0] = Integer.MAX_VALUE; // x min
-				threadLimits[p][1] = 0; // x max
-				threadLimits[p][2] = Integer.MAX_VALUE; // y min
-				threadLimits[p][3] = 0; // y max
-				threadLimits[p][4] = Integer.MAX_VALUE; // z min
-				threadLimits[p][5] = 0; // z max
-			}
-			
-			threads[thread] = new Thread(() -> {
-				for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
-					final int[] slice = particleLabels[z];
-					for (int y = 0; y < h; y++) {
-						final int index = y * w;
-						for (int x = 0; x < w; x++) {
-							final int p = slice[index + x];
-							if (p == 0) continue;
-							
-							threadSums[p][0] += x;
-							threadSums[p][1] += y;
-							threadSums[p][2] += z;
-							
-							threadLimits[p][0] = Math.min(threadLimits[p][0], x);
-							threadLimits[p][1] = Math.max(threadLimits[p][1], x);
-							threadLimits[p][2] = Math.min(threadLimits[p][2], y);
-							threadLimits[p][3] = Math.max(threadLimits[p][3], y);
-							threadLimits[p][4] = Math.min(threadLimits[p][4], z);
-							threadLimits[p][5] = Math.max(threadLimits[p][5], z);
-						}
-					}
-				}
-			});
-			listOfLimits.add(threadLimits);
-			listOfSums.add(threadSums);
-		}
-		Multithreader.startAndJoin(threads);
-		
-		final int[][] limits = new int[nParticles][6];
-		final double[][] sums = new double[nParticles][3];
-		
-		for (int p = 1; p < nParticles; p++) {
-			limits[p][0] = Integer.MAX_VALUE; // x min
-			limits[p][1] = 0; // x max
-			limits[p][2] = Integer.MAX_VALUE; // y min
-			limits[p][3] = 0; // y max
-			limits[p][4] = Integer.MAX_VALUE; // z min
-			limits[p][5] = 0; // z max
-		}
-		
-		Iterator<int[][]> iter = listOfLimits.iterator();
-		while (iter.hasNext()) {
-			final int[][] threadLimits = iter.next();
-			for (int p = 1; p < nParticles; p++) {
-				limits[p][0] = Math.min(limits[p][0], threadLimits[p][0]);
-				limits[p][1] = Math.max(limits[p][1], threadLimits[p][1]);
-				limits[p][2] = Math.min(limits[p][2], threadLimits[p][2]);
-				limits[p][3] = Math.max(limits[p][3], threadLimits[p][3]);
-				limits[p][4] = Math.min(limits[p][4], threadLimits[p][4]);
-				limits[p][5] = Math.max(limits[p][5], threadLimits[p][5]);
-			}
-		}
-
-		Iterator<double[][]> iterSums = listOfSums.iterator();
-		while (iterSums.hasNext()) {
-			final double[][] threadSums = iterSums.next();
-			for (int p = 1; p < nParticles; p++) {
-				sums[p][0] += threadSums[p][0];
-				sums[p][1] += threadSums[p][1];
-				sums[p][2] += threadSums[p][2];
-			}
-		}
-		
-		final Calibration cal = imp.getCalibration();
-		final double[][] centroids = new double[nParticles][3];
-		for (int p = 0; p < nParticles; p++) {
-			final long particleSize = particleSizes[p];
-			centroids[p][0] = cal.pixelWidth * sums[p][0] / particleSize;
-			centroids[p][1] = cal.pixelHeight * sums[p][1] / particleSize;
-			centroids[p][2] = cal.pixelDepth * sums[p][2] / particleSize;
-		}
-		
-		return new Object[] {centroids, limits};
-	}
-	
 	/**
 	 * Get the limits of each particle in the directions defined by an 
 	 * eigenvector tensor (usually the principal axes).
+	 * <p>
+	 * Extreme projections of a particle lie on the vertices of its convex hull,
+	 * and a projection varies linearly along a run of voxels, so only the first
+	 * and last voxels of each run need to be projected.
+	 * </p>
 	 * 
 	 * @param imp input image, needed for calibration
-	 * @param particleLabels label image
+	 * @param labelRuns run-length encoded particle labels
 	 * @param tensors array of rotation matrices, one per particle
 	 * @param nParticles number of particles
 	 * @return array of box dimensions, each containing the centre x, y, z
 	 * coordinates and box width, height and depth.
 	 */
-	static double[][] getAxisAlignedBoundingBoxes(final ImagePlus imp, final int[][] particleLabels,
+	static double[][] getAxisAlignedBoundingBoxes(final ImagePlus imp, final LabelRuns labelRuns,
 		final Matrix[] tensors, final int nParticles){
 		
 		final int w = imp.getWidth();
-		final int h = imp.getHeight();
 		final int d = imp.getImageStackSize();
 		Calibration cal = imp.getCalibration();
 		final double vW = cal.pixelWidth;
@@ -589,36 +335,31 @@ public class ParticleAnalysis {
 		
 		final AtomicInteger ai = new AtomicInteger(0);
 		final Thread[] threads = Multithreader.newThreads();
-		final List<double[][]> listOfLimits = Collections.synchronizedList(new ArrayList<>());
+		final boolean sparse = ParticleSums.isSparse(nParticles, threads.length);
+		final double[] template = { Double.MAX_VALUE, -Double.MAX_VALUE,
+			Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE };
+		final ParticleSums[] threadLimits = new ParticleSums[threads.length];
+		// several slabs per thread to balance the load
+		final int slabDepth = Math.max(1, d / (threads.length * 4));
+		final int nSlabs = (d + slabDepth - 1) / slabDepth;
 		
 		for (int thread = 0; thread < threads.length; thread++) {
-			double[][] threadLimits = new double[nParticles][6];
-			for (int p = 1; p < nParticles; p++) {
-				threadLimits[p][0] = Double.MAX_VALUE; // 0 min
-				threadLimits[p][1] = -Double.MAX_VALUE; // 0 max
-				threadLimits[p][2] = Double.MAX_VALUE; // 1 min
-				threadLimits[p][3] = -Double.MAX_VALUE; // 1 max
-				threadLimits[p][4] = Double.MAX_VALUE; // 2 min
-				threadLimits[p][5] = -Double.MAX_VALUE; // 2 max
-			}
+			final ParticleSums particleLimits = ParticleSums.create(nParticles, template, sparse);
+			threadLimits[thread] = particleLimits;
 			threads[thread] = new Thread(() -> {
-				double[][] v = new double[3][3];
-				for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
-					final double zd = z * vD;
-					final int[] slice = particleLabels[z];
-					for (int y = 0; y < h; y++) {
-						final double yh = y * vH;
-						final int index = y * w;
-						for (int x = 0; x < w; x++) {
-							final double xw = x * vW;
-							
-							final int p = slice[index + x];
-							if (p == 0) continue;
-							v = tensors[p].getArray();
+				for (int slab = ai.getAndIncrement(); slab < nSlabs; slab = ai.getAndIncrement()) {
+					final int zEnd = Math.min(d, (slab + 1) * slabDepth);
+					for (int z = slab * slabDepth; z < zEnd; z++) {
+						final double zd = z * vD;
+						final int[] runs = labelRuns.getRuns(z);
+						for (int r = 0; r < runs.length; r += LabelRuns.RUN_SIZE) {
+							final int start = runs[r + LabelRuns.START];
+							final int p = runs[r + LabelRuns.LABEL];
+							final int y = start / w;
+							final int x0 = start - y * w;
+							final double yh = y * vH;
+							final double[][] v = tensors[p].getArray();
 							
-							final double xwv00 = xw * v[0][0];
-							final double xwv01 = xw * v[0][1];
-							final double xwv02 = xw * v[0][2];
 							final double yhv10 = yh * v[1][0];
 							final double yhv11 = yh * v[1][1];
 							final double yhv12 = yh * v[1][2];
@@ -626,45 +367,50 @@ public class ParticleAnalysis {
 							final double zdv21 = zd * v[2][1];
 							final double zdv22 = zd * v[2][2];
 							
-							final double l0 = xwv00 + yhv10 + zdv20;
-							final double l1 = xwv01 + yhv11 + zdv21;
-							final double l2 = xwv02 + yhv12 + zdv22;
-					
-							threadLimits[p][0] = Math.min(threadLimits[p][0], l0);
-							threadLimits[p][1] = Math.max(threadLimits[p][1], l0);
-							threadLimits[p][2] = Math.min(threadLimits[p][2], l1);
-							threadLimits[p][3] = Math.max(threadLimits[p][3], l1);
-							threadLimits[p][4] = Math.min(threadLimits[p][4], l2);
-							threadLimits[p][5] = Math.max(threadLimits[p][5], l2);
+							final int o = particleLimits.offset(p);
+							final double[] limits = particleLimits.values();
+							// first and last voxel of the run
+							final double xw0 = x0 * vW;
+							final double xw1 = (x0 + runs[r + LabelRuns.LENGTH] - 1) * vW;
+							for (int e = 0; e < 2; e++) {
+								final double xw = e == 0 ? xw0 : xw1;
+								final double l0 = xw * v[0][0] + yhv10 + zdv20;
+								final double l1 = xw * v[0][1] + yhv11 + zdv21;
+								final double l2 = xw * v[0][2] + yhv12 + zdv22;
+						
+								limits[o] = Math.min(limits[o], l0);
+								limits[o + 1] = Math.max(limits[o + 1], l0);
+								limits[o + 2] = Math.min(limits[o + 2], l1);
+								limits[o + 3] = Math.max(limits[o + 3], l1);
+								limits[o + 4] = Math.min(limits[o + 4], l2);
+								limits[o + 5] = Math.max(limits[o + 5], l2);
+							}
 						}
 					}
 				}
-				
 			});
-			listOfLimits.add(threadLimits);
 		}
 		Multithreader.startAndJoin(threads);
 		
-		final double[][] limits = new double[nParticles][6];
+		final double[][] limits = new double[nParticles][];
 		for (int p = 1; p < nParticles; p++) {
-			limits[p][0] = Double.MAX_VALUE; // 0 min
-			limits[p][1] = -Double.MAX_VALUE; // 0 max
-			limits[p][2] = Double.MAX_VALUE; // 1 min
-			limits[p][3] = -Double.MAX_VALUE; // 1 max
-			limits[p][4] = Double.MAX_VALUE; // 2 min
-			limits[p][5] = -Double.MAX_VALUE; // 2 max
+			limits[p] = template.clone();
 		}
 		
-		for (int thread = 0; thread < threads.length; thread++) {
-			final double[][] threadLimits = listOfLimits.get(thread);
-				for (int p = 1; p < nParticles; p++) {
-					limits[p][0] = Math.min(limits[p][0], threadLimits[p][0]);
-					limits[p][1] = Math.max(limits[p][1], threadLimits[p][1]);
-					limits[p][2] = Math.min(limits[p][2], threadLimits[p][2]);
-					limits[p][3] = Math.max(limits[p][3], threadLimits[p][3]);
-					limits[p][4] = Math.min(limits[p][4], threadLimits[p][4]);
-					limits[p][5] = Math.max(limits[p][5], threadLimits[p][5]);
-				}
+		for (final ParticleSums particleLimits : threadLimits) {
+			final double[] t = particleLimits.values();
+			final int nSlots = particleLimits.size();
+			for (int slot = 0; slot < nSlots; slot++) {
+				final int p = particleLimits.label(slot);
+				if (p == 0) continue;
+				final int o = slot * 6;
+				limits[p][0] = Math.min(limits[p][0], t[o]);
+				limits[p][1] = Math.max(limits[p][1], t[o + 1]);
+				limits[p][2] = Math.min(limits[p][2], t[o + 2]);
+				limits[p][3] = Math.max(limits[p][3], t[o + 3]);
+				limits[p][4] = Math.min(limits[p][4], t[o + 4]);
+				limits[p][5] = Math.max(limits[p][5], t[o + 5]);
+			}
 		}
 		
 		final double[][] alignedBoxes = new double[nParticles][6];
@@ -712,13 +458,13 @@ public class ParticleAnalysis {
 	 * for convenience.
 	 * 
 	 * @param imp ImagePlus
-	 * @param particleLabels 
+	 * @param labelRuns run-length encoded particle labels
 	 * @param eigens array of 3 × 3 rotation matrices (inertia tensors)
 	 * @param nParticles 
 	 * @return dimensions of the axis aligned bounding box, aligned to the eigenvectors
 	 * of the supplied eigenvalue decomposition.
 	 */
-	static double[][] getAxisAlignedBoundingBoxes(final ImagePlus imp, final int[][] particleLabels,
+	static double[][] getAxisAlignedBoundingBoxes(final ImagePlus imp, final LabelRuns labelRuns,
 		final EigenvalueDecomposition[] eigens, final int nParticles){
 		
 		final Matrix[] tensors = new Matrix[nParticles];
@@ -727,37 +473,282 @@ public class ParticleAnalysis {
 			tensors[i] = eigens[i].getV();
 		}
 		
-		return getAxisAlignedBoundingBoxes(imp, particleLabels, tensors, nParticles);
+		return getAxisAlignedBoundingBoxes(imp, labelRuns, tensors, nParticles);
 	}
 	
 	/**
-	 * Get the Euler characteristic of each particle
+	 * Get the Euler characteristic of each particle, and the numbers of holes and
+	 * cavities derived from it. The Euler characteristic is summed per label in
+	 * one parallel sweep of the label array using Connectivity's octant look-up
+	 * table, and the cavities of all particles are counted from a single
+	 * labelling of the background.
 	 *
 	 * @param imp an image.
 	 * @param particleLabels particles of the image.
-	 * @param limits limits of the particles.
 	 * @param nParticles number of particles in the image
-	 * @return euler characteristic of each image.
+	 * @return Euler characteristic, holes and cavities of each particle.
 	 */
 	static double[][] getEulerCharacter(final ImagePlus imp,
-		final int[][] particleLabels, final int[][] limits, final int nParticles)
+		final int[][] particleLabels, final int nParticles)
 	{
-		final Connectivity con = new Connectivity();
+		final int w = imp.getWidth();
+		final int h = imp.getHeight();
+		final int d = imp.getImageStackSize();
+		final long[] eulerSums = getEulerSums(particleLabels, w, h, d, nParticles);
+		final int[] cavities = getCavities(particleLabels, w, h, d, nParticles);
 		final double[][] eulerCharacters = new double[nParticles][3];
 		for (int p = 1; p < nParticles; p++) {
-			final ImagePlus particleImp = getBinaryParticle(p, imp, particleLabels,
-				limits, 1);
-			final double euler = con.getSumEuler(particleImp);
-			final double cavities = getNCavities(particleImp);
+			final double euler = eulerSums[p] / 8.0;
 			// Calculate number of holes and cavities using
 			// Euler = particles - holes + cavities
 			// where particles = 1
-			final double holes = cavities - euler + 1;
-			final double[] bettis = { euler, holes, cavities };
+			final double holes = cavities[p] - euler + 1;
+			final double[] bettis = { euler, holes, cavities[p] };
 			eulerCharacters[p] = bettis;
 		}
 		return eulerCharacters;
 	}
+
+	/**
+	 * Sum the octant contributions to the Euler characteristic of each particle.
+	 * Each octant is evaluated once for every label among its 8 voxels, treating
+	 * that label as foreground and everything else as background, which is the
+	 * same as running {@link Connectivity#getSumEuler(ImagePlus)} on each
+	 * particle cropped out on its own.
+	 *
+	 * @return 8 × the Euler characteristic of each particle
+	 */
+	private static long[] getEulerSums(final int[][] particleLabels,
+		final int w, final int h, final int d, final int nParticles)
+	{
+		final Thread[] threads = Multithreader.newThreads();
+		final boolean sparse = ParticleSums.isSparse(nParticles, threads.length);
+		final ParticleSums[] threadSums = new ParticleSums[threads.length];
+		final AtomicInteger ai = new AtomicInteger(0);
+		for (int thread = 0; thread < threads.length; thread++) {
+			final ParticleSums sums = ParticleSums.create(nParticles, new double[1], sparse);
+			threadSums[thread] = sums;
+			threads[thread] = new Thread(() -> {
+				// o1 - o8 of Connectivity: bit 0 is x, bit 1 is y and bit 2 is z
+				final int[] o = new int[8];
+				for (int z = ai.getAndIncrement(); z <= d; z = ai.getAndIncrement()) {
+					final int[] slice0 = z > 0 ? particleLabels[z - 1] : null;
+					final int[] slice1 = z < d ? particleLabels[z] : null;
+					for (int y = 0; y <= h; y++) {
+						final int row0 = y > 0 ? (y - 1) * w : -1;
+						final int row1 = y < h ? y * w : -1;
+						o[1] = 0;
+						o[3] = 0;
+						o[5] = 0;
+						o[7] = 0;
+						for (int x = 0; x <= w; x++) {
+							o[0] = o[1];
+							o[2] = o[3];
+							o[4] = o[5];
+							o[6] = o[7];
+							final int xi = x < w ? x : -1;
+							o[1] = getLabel(slice0, row0, xi);
+							o[3] = getLabel(slice0, row1, xi);
+							o[5] = getLabel(slice1, row0, xi);
+							o[7] = getLabel(slice1, row1, xi);
+							final int o0 = o[0];
+							// uniform octants contribute nothing
+							if (o0 == o[1] && o0 == o[2] && o0 == o[3] && o0 == o[4] &&
+								o0 == o[5] && o0 == o[6] && o0 == o[7]) continue;
+							for (int c = 0; c < 8; c++) {
+								final int p = o[c];
+								if (p == 0 || isRepeated(o, c)) continue;
+								final int delta = Connectivity.getDeltaEuler(phase(o[0], p),
+									phase(o[2], p), phase(o[1], p), phase(o[3], p), phase(o[4], p),
+									phase(o[6], p), phase(o[5], p), phase(o[7], p));
+								if (delta == 0) continue;
+								final int offset = sums.offset(p);
+								sums.values()[offset] += delta;
+							}
+						}
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+
+		final long[] eulerSums = new long[nParticles];
+		for (final ParticleSums sums : threadSums) {
+			final double[] values = sums.values();
+			for (int slot = 0; slot < sums.size(); slot++)
+				eulerSums[sums.label(slot)] += (long) values[slot];
+		}
+		return eulerSums;
+	}
+
+	private static int getLabel(final int[] slice, final int row, final int x) {
+		if (slice == null || row < 0 || x < 0) return 0;
+		return slice[row + x];
+	}
+
+	private static boolean isRepeated(final int[] labels, final int i) {
+		for (int k = 0; k < i; k++)
+			if (labels[k] == labels[i]) return true;
+		return false;
+	}
+
+	private static byte phase(final int label, final int p) {
+		return label == p ? (byte) -1 : 0;
+	}
+
+	/**
+	 * Count the cavities of every particle from one labelling of the background.
+	 * <p>
+	 * Background components and particles are never 6-adjacent to components of
+	 * their own kind, so they form a bipartite adjacency graph. Removing particle
+	 * p splits the graph into the connected components of p's complement. Those
+	 * that neither touch the edge of the image nor contain anything that does
+	 * are enclosed by p alone, and so are its cavities.
+	 * </p>
+	 *
+	 * @return number of cavities in each particle
+	 */
+	private static int[] getCavities(final int[][] particleLabels, final int w,
+		final int h, final int d, final int nParticles)
+	{
+		final BitPackedStack binary = new BitPackedStack(w, h, d);
+		final AtomicInteger af = new AtomicInteger(0);
+		final Thread[] fillThreads = Multithreader.newThreads();
+		for (int thread = 0; thread < fillThreads.length; thread++) {
+			fillThreads[thread] = new Thread(() -> {
+				for (int z = af.getAndIncrement(); z < d; z = af.getAndIncrement()) {
+					final int[] slice = particleLabels[z];
+					for (int y = 0; y < h; y++) {
+						final int row = y * w;
+						for (int x = 0; x < w; x++)
+							if (slice[row + x] != 0) binary.set(x, y, z);
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(fillThreads);
+
+		final ConnectedComponents connector = new ConnectedComponents();
+		final int[][] backLabels = connector.run(binary, ConnectedComponents.BACK);
+		// graph nodes: particles, then background components
+		final int nNodes = nParticles + connector.getNParticles();
+		final boolean[] open = new boolean[nNodes];
+
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		final LongHashSet[] threadEdges = new LongHashSet[threads.length];
+		for (int thread = 0; thread < threads.length; thread++) {
+			final LongHashSet edges = new LongHashSet();
+			threadEdges[thread] = edges;
+			threads[thread] = new Thread(() -> {
+				for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
+					for (int y = 0; y < h; y++) {
+						final int row = y * w;
+						for (int x = 0; x < w; x++) {
+							final int i = row + x;
+							final int node = node(particleLabels, backLabels, nParticles, z, i);
+							if (x == 0 || y == 0 || z == 0 || x == w - 1 || y == h - 1 ||
+								z == d - 1) open[node] = true;
+							if (x + 1 < w) addEdge(edges, node, node(particleLabels, backLabels,
+								nParticles, z, i + 1), nParticles);
+							if (y + 1 < h) addEdge(edges, node, node(particleLabels, backLabels,
+								nParticles, z, i + w), nParticles);
+							if (z + 1 < d) addEdge(edges, node, node(particleLabels, backLabels,
+								nParticles, z + 1, i), nParticles);
+						}
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+
+		// adjacency lists of the graph, packed in one array
+		final LongHashSet edgeSet = threadEdges[0];
+		for (int t = 1; t < threadEdges.length; t++)
+			edgeSet.addAll(threadEdges[t]);
+		final long[] edges = edgeSet.toArray();
+		final int[] start = new int[nNodes + 1];
+		for (final long edge : edges) {
+			start[(int) (edge >>> 32) + 1]++;
+			start[(int) edge + 1]++;
+		}
+		for (int n = 0; n < nNodes; n++)
+			start[n + 1] += start[n];
+		final int[] fill = Arrays.copyOf(start, nNodes);
+		final int[] neighbours = new int[start[nNodes]];
+		for (final long edge : edges) {
+			final int a = (int) (edge >>> 32);
+			final int b = (int) edge;
+			neighbours[fill[a]++] = b;
+			neighbours[fill[b]++] = a;
+		}
+
+		final int[] cavities = new int[nParticles];
+		final AtomicInteger ap = new AtomicInteger(1);
+		final Thread[] searchThreads = Multithreader.newThreads();
+		for (int thread = 0; thread < searchThreads.length; thread++) {
+			searchThreads[thread] = new Thread(() -> {
+				// 1 for nodes in an enclosed component, 2 for nodes that reach the edge
+				final IntIntHashMap state = new IntIntHashMap();
+				int[] queue = new int[16];
+				for (int p = ap.getAndIncrement(); p < nParticles; p = ap.getAndIncrement()) {
+					state.clear();
+					for (int k = start[p]; k < start[p + 1]; k++) {
+						final int seed = neighbours[k];
+						if (open[seed] || state.getIfAbsent(seed, 0) != 0) continue;
+						// breadth-first search of p's complement, stopping at the edge
+						boolean enclosed = true;
+						int head = 0;
+						int tail = 0;
+						queue[tail++] = seed;
+						state.put(seed, 1);
+						search: while (head < tail) {
+							final int node = queue[head++];
+							for (int j = start[node]; j < start[node + 1]; j++) {
+								final int next = neighbours[j];
+								if (next == p) continue;
+								final int s = state.getIfAbsent(next, 0);
+								if (open[next] || s == 2) {
+									enclosed = false;
+									break search;
+								}
+								if (s != 0) continue;
+								if (tail == queue.length) queue = Arrays.copyOf(queue, tail * 2);
+								queue[tail++] = next;
+								state.put(next, 1);
+							}
+						}
+						if (enclosed) cavities[p]++;
+						else for (int q = 0; q < tail; q++)
+							state.put(queue[q], 2);
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(searchThreads);
+		return cavities;
+	}
+
+	/**
+	 * @return graph node of a voxel: its particle label, or the label of its
+	 *         background component offset by the number of particles
+	 */
+	private static int node(final int[][] particleLabels, final int[][] backLabels,
+		final int nParticles, final int z, final int i)
+	{
+		final int p = particleLabels[z][i];
+		return p != 0 ? p : nParticles + backLabels[z][i];
+	}
+
+	/** Add an edge between a particle and a background component */
+	private static void addEdge(final LongHashSet edges, final int a, final int b,
+		final int nParticles)
+	{
+		if ((a < nParticles) == (b < nParticles)) return;
+		final int particle = Math.min(a, b);
+		final int background = Math.max(a, b);
+		edges.add((long) particle << 32 | background);
+	}
 	
 	/**
 	 * Calculate number of branches and total branch length by running Skeletonize3D
@@ -800,19 +791,6 @@ public class ParticleAnalysis {
 		return skeletonResults;
 	}
 
-	/**
-	 * Calculate the number of cavities in the image, which may be interpreted
-	 * as a count of disconnected particles of background.
-	 * 
-	 * @param imp input image
-	 * @return number of cavities
-	 */
-	private static int getNCavities(final ImagePlus imp) {
-		final ConnectedComponents connector = new ConnectedComponents();
-		connector.run(imp, ConnectedComponents.BACK);
-		return connector.getNParticles() - 2;
-	}	
-
 	/**
 	 * create a binary ImagePlus containing a single particle and which 'just fits'
 	 * the particle
@@ -863,161 +841,100 @@ public class ParticleAnalysis {
 	// ----------- SURFACE MESH OPERATIONS ------------------------//
 
 	/**
-	 * Create a list of surface meshes, each wrapping a particle
-	 * 
-	 * @param imp Input image, needed for calibration
-	 * @param particleLabels label array
+	 * Get the surface mesh of each particle, made by marching cubes directly on
+	 * the label array.
+	 *
+	 * @param imp input image, needed for calibration
+	 * @param particleLabels particle label array
 	 * @param limits bounding box limits for each particle
-	 * @param resampling user-set resampling level
+	 * @param resampling edge length of the blocks of voxels merged into one
+	 *          sample
 	 * @param nParticles number of particles
-	 * @return list of surface meshes, one per particle
+	 * @return surface mesh of each particle, null for particles with no surface
 	 */
-	static List<List<Point3f>> getSurfacePoints(final ImagePlus imp, final int[][] particleLabels,
+	static IndexedMesh[] getSurfaceMeshes(final ImagePlus imp, final int[][] particleLabels,
 			final int[][] limits, final int resampling, final int nParticles) {
-		final Calibration cal = imp.getCalibration();
-		final List<List<Point3f>> surfacePoints = Collections.synchronizedList(new ArrayList<>(nParticles));
-		for (int p = 0; p < nParticles; p++) {
-			surfacePoints.add(null);
-		}
-		final AtomicInteger ai = new AtomicInteger(1);
-		final Thread[] threads = Multithreader.newThreads();
-		final boolean[] channels = { true, false, false };
-
-		for (int thread = 0; thread < threads.length; thread++) {
-			threads[thread] = new Thread(() -> {
-				for (int p = ai.getAndIncrement(); p < nParticles; p = ai.getAndIncrement()) {
-
-					final ImagePlus binaryImp = getBinaryParticle(p, imp, particleLabels, limits, resampling);
-					// noinspection TypeMayBeWeakened
-					final MCTriangulator mct = new MCTriangulator();
-					@SuppressWarnings("unchecked")
-					final List<Point3f> points = mct.getTriangles(binaryImp, 128, channels, resampling);
-
-					final double xOffset = (limits[p][0] - 1) * cal.pixelWidth;
-					final double yOffset = (limits[p][2] - 1) * cal.pixelHeight;
-					final double zOffset = (limits[p][4] - 1) * cal.pixelDepth;
-					for (final Point3f point : points) {
-						point.x += xOffset;
-						point.y += yOffset;
-						point.z += zOffset;
-					}
-					if (points.isEmpty()) {
-						IJ.log("Particle " + p + " resulted in 0 surface points");
-					} else {
-						surfacePoints.set(p, points);
-					}
-				}
-			});
+		final IndexedMesh[] meshes = LabelMarchingCubes.getMeshes(imp, particleLabels, limits, nParticles,
+			resampling);
+		for (int p = 1; p < nParticles; p++) {
+			if (meshes[p] == null) {
+				IJ.log("Particle " + p + " resulted in 0 surface points");
+			}
 		}
-		Multithreader.startAndJoin(threads);
-		
-		return surfacePoints;
+		return meshes;
 	}
 
 	/**
 	 * Calculate surface areas of the particles
 	 * 
-	 * @param surfacePoints list of surface points
+	 * @param meshes surface mesh of each particle
 	 * @return list of surface areas
 	 */
-	static double[] getSurfaceAreas(final Collection<List<Point3f>> surfacePoints) {
-		return surfacePoints.parallelStream().mapToDouble(ParticleAnalysis::getSurfaceArea).toArray();
+	static double[] getSurfaceAreas(final IndexedMesh[] meshes) {
+		return Arrays.stream(meshes).parallel().mapToDouble(m -> m == null ? 0 : m.getArea()).toArray();
 	}
 
 	/**
-	 * Calculate surface area of the isosurface
-	 *
-	 * @param points in 3D triangle mesh
-	 * @return surface area
-	 */
-	private static double getSurfaceArea(final List<Point3f> points) {
-		if (points == null) {
-			return 0;
-		}
-		double sumArea = 0;
-		final int nPoints = points.size();
-		final Point3f origin = new Point3f(0.0f, 0.0f, 0.0f);
-		for (int n = 0; n < nPoints; n += 3) {
-			final Point3f cp = crossProduct(points.get(n), points.get(n + 1), points.get(n + 2));
-			final double deltaArea = 0.5 * cp.distance(origin);
-			sumArea += deltaArea;
-		}
-		return sumArea;
-	}
-
-	/**
-	 * Calculate volume contained within surface points
+	 * Calculate volume contained within surface meshes
 	 * 
-	 * @param surfacePoints list of surface points
+	 * @param meshes surface mesh of each particle
 	 * @return  list of particle volumes
 	 */
-	static double[] getSurfaceVolume(final Collection<List<Point3f>> surfacePoints) {
-		return surfacePoints.parallelStream().mapToDouble(p -> {
-			if (p == null) {
-				return 0;
-			}
-			final CustomTriangleMesh mesh = new CustomTriangleMesh(p);
-			return Math.abs(mesh.getVolume());
-		}).toArray();
+	static double[] getSurfaceVolume(final IndexedMesh[] meshes) {
+		return Arrays.stream(meshes).parallel().mapToDouble(m -> m == null ? 0 : Math.abs(m.getVolume())).toArray();
 	}
 
 	/**
-	 * Get the Feret diameter of a surface. Uses an inefficient brute-force
-	 * algorithm.
+	 * Get the Feret diameter of a surface. Only the vertices of the convex hull
+	 * of the surface points can be Feret points, so the search is limited to
+	 * them.
 	 *
-	 * @param surfacePoints points from a surface mesher
+	 * @param meshes surface mesh of each particle
 	 * @return Feret diameters and x, y, z coordinates of the two feret points of each surface,
 	 * packed in a double so that the feret diameter of particle i is found at [i * 7] and the
 	 * points' coordinates are in the following 6 positions in ax, ay, az, bx, by, bz order.
 	 */
-	static double[][] getFerets(final List<List<Point3f>> surfacePoints) {
+	static double[][] getFerets(final IndexedMesh[] meshes) {
 		
 		Thread[] threads = Multithreader.newThreads();
-		final int nSurfaces = surfacePoints.size();
+		final int nSurfaces = meshes.length;
 		//distance, xa, ya, za, xb, yb, zb
 		final double[][] ferets = new double[nSurfaces][7];
 		AtomicInteger ai = new AtomicInteger(0);
 		for (int thread = 0; thread < threads.length; thread++) {
 			threads[thread] = new Thread(() -> {
 				for (int i = ai.getAndIncrement(); i < nSurfaces; i = ai.getAndIncrement()) {
-
-					final List<Point3f> surface = filterSurfacePoints(surfacePoints.get(i));
 					
-					if (surface == null) {
+					if (meshes[i] == null) {
 						Arrays.fill(ferets[i], Double.NaN);
 						continue;
 					}
 					
-					final int nPoints = surface.size();
+					final double[][] points = meshes[i].getVertexPoints();
 					
 					//4 points for the minimal tetrahedron
-					if (nPoints < 4) {
+					if (points.length < 4) {
 						Arrays.fill(ferets[i], Double.NaN);
+						continue;
 					}
 					
-					// check all the point pairs in this surface
-					Point3f feretA = new Point3f();
-					Point3f feretB = new Point3f();
-					double feret = 0;
-					for (int p = 0; p < nPoints; p++) {
-						Point3f a = surface.get(p);
-						for (int q = p + 1; q < nPoints; q++) {
-							Point3f b = surface.get(q);
-							final double distance = a.distance(b);
-							if (distance > feret) {
-								feret = distance;
-								feretA = a;
-								feretB = b;
-							}
-						}
+					final int[] pair = new ConvexHull3D(points).getDiameterPoints();
+					if (pair == null) {
+						Arrays.fill(ferets[i], Double.NaN);
+						continue;
 					}
-					ferets[i][0] = feret;
-					ferets[i][1] = feretA.x;
-					ferets[i][2] = feretA.y;
-					ferets[i][3] = feretA.z;
-					ferets[i][4] = feretB.x;
-					ferets[i][5] = feretB.y;
-					ferets[i][6] = feretB.z;
+					final double[] feretA = points[pair[0]];
+					final double[] feretB = points[pair[1]];
+					final double dx = feretA[0] - feretB[0];
+					final double dy = feretA[1] - feretB[1];
+					final double dz = feretA[2] - feretB[2];
+					ferets[i][0] = Math.sqrt(dx * dx + dy * dy + dz * dz);
+					ferets[i][1] = feretA[0];
+					ferets[i][2] = feretA[1];
+					ferets[i][3] = feretA[2];
+					ferets[i][4] = feretB[0];
+					ferets[i][5] = feretB[1];
+					ferets[i][6] = feretB[2];
 				}
 			});
 		}
@@ -1028,35 +945,22 @@ public class ParticleAnalysis {
 	/**
 	 * Get the list of best-fit ellipsoids for the particle surfaces
 	 * 
-	 * @param surfacePoints list of surface points
+	 * @param meshes surface mesh of each particle
 	 * @return Object[] array containing the list of ellipsoids, each of which is
 	 *         also stored as an Object[] array (see FitEllipsoid.yuryPetrov() for
 	 *         details). Note that an Object[] is also an Object so there is no need
 	 *         to make a 2D array (i.e. Object[][]). However, client code must
 	 *         unwrap the ellipsoid elements into arrays by casting to Object[].
 	 */
-	static Object[] getEllipsoids(final Collection<List<Point3f>> surfacePoints) {
-		return surfacePoints.parallelStream().map(surface -> {
+	static Object[] getEllipsoids(final IndexedMesh[] meshes) {
+		return Arrays.stream(meshes).parallel().map(mesh -> {
 
-			if (surface == null)
+			if (mesh == null)
 				return null;
 
-			surface = filterSurfacePoints(surface);
-			
-			final Iterator<Point3f> pointIter = surface.iterator();
-			final double[][] coOrdinates = new double[surface.size()][3];
-			int i = 0;
-			while (pointIter.hasNext()) {
-				final Point3f point = pointIter.next();
-				coOrdinates[i][0] = point.x;
-				coOrdinates[i][1] = point.y;
-				coOrdinates[i][2] = point.z;
-				i++;
-			}
-
 			Object[] ellipsoid = null;
 			try {
-				ellipsoid = FitEllipsoid.yuryPetrov(coOrdinates);
+				ellipsoid = FitEllipsoid.yuryPetrov(mesh.getVertexPoints());
 			} catch (final IllegalArgumentException re) {
 				IJ.log("Could not fit ellipsoid to particle: "+re.getMessage());
 			} catch (final Exception e) {
@@ -1065,52 +969,4 @@ public class ParticleAnalysis {
 			return ellipsoid;
 		}).toArray();
 	}
-	
-	/**
-	 * Calculate the cross product of 3 Point3f's, which describe two vectors
-	 * joined at the tails. Can be used to find the plane / surface normal of a
-	 * triangle. Half of its magnitude is the area of the triangle.
-	 *
-	 * @param point0 both vectors' tails
-	 * @param point1 vector 1's head
-	 * @param point2 vector 2's head
-	 * @return cross product vector
-	 */
-	private static Point3f crossProduct(final Point3f point0,
-		final Point3f point1, final Point3f point2)
-	{
-		final double x1 = point1.x - point0.x;
-		final double y1 = point1.y - point0.y;
-		final double z1 = point1.z - point0.z;
-		final double x2 = point2.x - point0.x;
-		final double y2 = point2.y - point0.y;
-		final double z2 = point2.z - point0.z;
-		final Point3f crossVector = new Point3f();
-		crossVector.x = (float) (y1 * z2 - z1 * y2);
-		crossVector.y = (float) (z1 * x2 - x1 * z2);
-		crossVector.z = (float) (x1 * y2 - y1 * x2);
-		return crossVector;
-	}
-	
-	/**
-	 * Remove redundant vertices from the surface point list that occur because 
-	 * triangles in the surface mesh share vertices.
-	 * 
-	 * It cuts down the number of points by a factor of 4-6, which should
-	 * speed up O(n²) processes like Feret max by a factor of 16-36×
-	 * 
-	 * @param surface list of surface points, in Point3f format 
-	 * @return the same points but with duplicates removed
-	 */
-	private static List<Point3f> filterSurfacePoints(final List<Point3f> surface){
-			if (surface == null)
-				return null;
-
-			HashSet<Point3f> filteredSurface = new HashSet<>();
-			final int nPoints = surface.size();
-			for (int i = 0; i < nPoints; i++) {
-				filteredSurface.add(surface.get(i));
-			}
-			return new ArrayList<>(filteredSurface);
-	}
 }
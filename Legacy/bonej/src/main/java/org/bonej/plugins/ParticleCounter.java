@@ -30,16 +30,14 @@
 
 package org.bonej.plugins;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 import org.bonej.menuWrappers.ThicknessHelper;
+import org.bonej.util.BitPackedStack;
 import org.bonej.util.ImageCheck;
 import org.bonej.utilities.SharedTable;
 import org.bonej.wrapperPlugins.BoneJCommand;
 import org.bonej.wrapperPlugins.wrapperUtils.Common;
-import org.jogamp.vecmath.Point3f;
 import org.scijava.ItemIO;
 import org.scijava.command.Command;
 import org.scijava.convert.ConvertService;
@@ -243,50 +241,57 @@ public class ParticleCounter extends BoneJCommand implements Command {
 			logService.warn("Number of particles ("+nParticles+") exceeds the accurate display range (2^23) of the 32-bit float particle image");
 
 		final double[] volumes = ParticleAnalysis.getVolumes(imp, particleSizes);
+
+		// encode the labels once, so the measurements below skip the background
+		final LabelRuns labelRuns = LabelRuns.encode(particleLabels, imp.getWidth(), imp.getHeight());
+
+		// thickness is needed before the sweep so its intensities can be summed too
+		final ImagePlus thickImp = doThickness ? ThicknessHelper.getLocalThickness(imp, false, doMask) : null;
+
+		// centroids, limits, moments and thickness sums in one pass over the labels
+		final ParticleStatistics statistics = ParticleStatistics.accumulate(imp, labelRuns, nParticles, thickImp);
 		
-		final Object[] boxes = ParticleAnalysis.getBoundingBoxes(imp, particleLabels, particleSizes);
-		
-		final double[][] centroids = (double[][]) boxes[0];
-		final int[][] limits = (int[][]) boxes[1];
+		final double[][] centroids = statistics.getCentroids();
+		final int[][] limits = statistics.getLimits();
 
 		EigenvalueDecomposition[] eigens = new EigenvalueDecomposition[nParticles];
 		if (doMoments || doAxesImage || colourMode == ParticleDisplay.ORIENTATION || doAlignedBoxes || doAlignedBoxesImage) {
-			eigens = ParticleAnalysis.getEigens(imp, particleLabels, centroids);
+			eigens = statistics.getEigens();
 		}
 		
 		double[][] alignedBoxes = new double[nParticles][6];
 		if (doAlignedBoxes || doAlignedBoxesImage) {
-			alignedBoxes = ParticleAnalysis.getAxisAlignedBoundingBoxes(imp, particleLabels, eigens, nParticles);
+			alignedBoxes = ParticleAnalysis.getAxisAlignedBoundingBoxes(imp, labelRuns, eigens, nParticles);
 		}
 		
 		// set up resources for analysis
-		List<List<Point3f>> surfacePoints = new ArrayList<>();
+		IndexedMesh[] surfaceMeshes = new IndexedMesh[nParticles];
 		if (doSurfaceArea || doSurfaceVolume || doSurfaceImage || doEllipsoids ||
 			doFeret || doEllipsoidStack)
 		{
-			surfacePoints = ParticleAnalysis.getSurfacePoints(imp, particleLabels, limits, surfaceResampling, nParticles);
+			surfaceMeshes = ParticleAnalysis.getSurfaceMeshes(imp, particleLabels, limits, surfaceResampling,
+				nParticles);
 		}
 		// calculate dimensions
 		double[] surfaceAreas = new double[nParticles];
 		if (doSurfaceArea) {
-			surfaceAreas = ParticleAnalysis.getSurfaceAreas(surfacePoints);
+			surfaceAreas = ParticleAnalysis.getSurfaceAreas(surfaceMeshes);
 		}
 		double[][] ferets = new double[nParticles][7];
 		if (doFeret) {
-			ferets = ParticleAnalysis.getFerets(surfacePoints);
+			ferets = ParticleAnalysis.getFerets(surfaceMeshes);
 		}
 		double[] surfaceVolumes = new double[nParticles];
 		if (doSurfaceVolume) {
-			surfaceVolumes = ParticleAnalysis.getSurfaceVolume(surfacePoints);
+			surfaceVolumes = ParticleAnalysis.getSurfaceVolume(surfaceMeshes);
 		}
 		double[][] eulerCharacters = new double[nParticles][3];
 		if (doEulerCharacters) {
-			eulerCharacters = ParticleAnalysis.getEulerCharacter(imp, particleLabels, limits, nParticles);
+			eulerCharacters = ParticleAnalysis.getEulerCharacter(imp, particleLabels, nParticles);
 		}
 		double[][] thick = new double[nParticles][2];
 		if (doThickness) {
-			final ImagePlus thickImp = ThicknessHelper.getLocalThickness(imp, false, doMask);
-			thick = ParticleAnalysis.getMeanStdDev(thickImp, particleLabels, particleSizes);
+			thick = statistics.getMeanStdDev();
 			if (doThickImage) {
 				double max = 0;
 				for (int i = 1; i < nParticles; i++) {
@@ -311,7 +316,7 @@ public class ParticleCounter extends BoneJCommand implements Command {
 		}
 		Object[] ellipsoids = new Object[nParticles][10];
 		if (doEllipsoids || doEllipsoidImage || doEllipsoidStack) {
-			ellipsoids = ParticleAnalysis.getEllipsoids(surfacePoints);
+			ellipsoids = ParticleAnalysis.getEllipsoids(surfaceMeshes);
 		}
 		SkeletonResult[] skeletonResults = null;
 		if (doSkeletons) {
@@ -473,12 +478,12 @@ public class ParticleCounter extends BoneJCommand implements Command {
 			}
 		}
 
-		show3DRenderings(imp, surfacePoints, volumes, eigens, centroids, particleSizes, ferets, ellipsoids, alignedBoxes);
+		show3DRenderings(imp, surfaceMeshes, volumes, eigens, centroids, particleSizes, ferets, ellipsoids, alignedBoxes);
 
 		logService.info("Particle analysis complete");
 	}
 	
-	private void show3DRenderings(ImagePlus imp, List<List<Point3f>> surfacePoints, double[] volumes, EigenvalueDecomposition[] eigens,
+	private void show3DRenderings(ImagePlus imp, IndexedMesh[] surfaceMeshes, double[] volumes, EigenvalueDecomposition[] eigens,
 			double[][] centroids, long[] particleSizes, double[][] ferets, Object[] ellipsoids,
 			double[][] alignedBoxes) {
 		// show 3D renderings
@@ -493,7 +498,7 @@ public class ParticleCounter extends BoneJCommand implements Command {
 
 			final Image3DUniverse univ = new Image3DUniverse();
 			if (doSurfaceImage) {
-				ParticleDisplay.displayParticleSurfaces(univ, surfacePoints, colourMode, volumes,
+				ParticleDisplay.displayParticleSurfaces(univ, surfaceMeshes, colourMode, volumes,
 						splitValue, eigens);
 			}
 			if (doCentroidImage) {
@@ -557,7 +562,7 @@ public class ParticleCounter extends BoneJCommand implements Command {
 		//do the connected components
 		final int[][] particleLabels = connector.run(imp, phase);
 		
-		byte[][] workArray = connector.getWorkArray();
+		final BitPackedStack workArray = connector.getPackedWorkArray();
 
 		final int nParticles = connector.getNParticles();
 
@@ -442,7 +442,7 @@ public class ParticleDisplay {
 	 * Display Feret points and axis in the 3D Viewer
 	 * 
 	 * @param univ 3D Viewer universe
-	 * @param ferets array of results from {@link ParticleAnalysis#getFerets(List)}
+	 * @param ferets array of results from {@link ParticleAnalysis#getFerets(IndexedMesh[])}
 	 */
 	static void displayMaxFeret(final Image3DUniverse univ, double[][] ferets) {
 		final int nParticles = ferets.length;
@@ -550,27 +550,27 @@ public class ParticleDisplay {
 	 * Draw the particle surfaces in a 3D viewer
 	 *
 	 * @param univ          universe where the centroids are displayed.
-	 * @param surfacePoints points of each particle.
+	 * @param meshes surface mesh of each particle.
 	 * @param colourMode  colour particles by SPLIT, GRADIENT, or ORIENTATION
 	 * @param volumes   list of particle volumes
 	 * @param splitValue volume at which to split the colours for SPLIT colour option
 	 * @param eigens list of eigendecompositions, needed for ORIENTATION colouring
 	 */
-	static void displayParticleSurfaces(final Image3DUniverse univ, final List<List<Point3f>> surfacePoints,
+	static void displayParticleSurfaces(final Image3DUniverse univ, final IndexedMesh[] meshes,
 			final int colourMode, final double[] volumes, final double splitValue,
 			final EigenvalueDecomposition[] eigens) {
-		final int nSurfaces = surfacePoints.size();
+		final int nSurfaces = meshes.length;
 		for (int p = 1; p < nSurfaces; p++) {
 			IJ.showStatus("Rendering surfaces...");
 			IJ.showProgress(p, nSurfaces);
-			final List<Point3f> surfacePoint = surfacePoints.get(p);
-			if (surfacePoint == null)
+			final IndexedMesh mesh = meshes[p];
+			if (mesh == null)
 				continue;
-			if (!surfacePoint.isEmpty()) {
+			if (mesh.getFaceCount() > 0) {
 				Color3f colour = getColour(p, nSurfaces, colourMode, volumes, eigens, splitValue);
 				// Add the mesh
 				try {
-					univ.addTriangleMesh(surfacePoint, colour, "Surface " + p).setLocked(true);
+					univ.addCustomMesh(mesh.toCustomTriangleMesh(colour), "Surface " + p).setLocked(true);
 				} catch (final NullPointerException npe) {
 					IJ.log("3D Viewer was closed before rendering completed.");
 					return;
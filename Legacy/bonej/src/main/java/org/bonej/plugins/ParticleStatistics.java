@@ -0,0 +1,333 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.bonej.plugins;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bonej.util.Multithreader;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.Prefs;
+import ij.measure.Calibration;
+
+/**
+ * Per-particle voxel counts, centroids, bounding limits, inertia tensors and
+ * intensity statistics gathered in a single parallel sweep of the labels.
+ * <p>
+ * Each thread accumulates raw sums into its own {@link ParticleSums}, which are
+ * merged when the sweep completes. Threads take contiguous slabs of slices and,
+ * when there are many particles, hold sums only for the particles they touch.
+ * Second moments are kept as raw sums of products and are moved to the
+ * centroid with the parallel axis theorem, so the centroids do not need to be
+ * known before the sweep.
+ * </p>
+ */
+public final class ParticleStatistics {
+
+	// offsets into the per-particle block of sums
+	private static final int SX = 0;
+	private static final int SY = 1;
+	private static final int SZ = 2;
+	private static final int SXX = 3;
+	private static final int SYY = 4;
+	private static final int SZZ = 5;
+	private static final int SXY = 6;
+	private static final int SXZ = 7;
+	private static final int SYZ = 8;
+	private static final int SI = 9;
+	private static final int SII = 10;
+	private static final int NI = 11;
+	private static final int MAXI = 12;
+	private static final int N_SUMS = 13;
+	// per-thread blocks also hold the count and limits
+	private static final int COUNT = 13;
+	private static final int LIMITS = 14;
+	private static final int BLOCK_SIZE = 20;
+
+	private final int nParticles;
+	private final Calibration cal;
+	private final long[] counts;
+	private final double[] sums;
+	private final int[] limits;
+
+	private ParticleStatistics(final int nParticles, final Calibration cal,
+		final long[] counts, final double[] sums, final int[] limits)
+	{
+		this.nParticles = nParticles;
+		this.cal = cal;
+		this.counts = counts;
+		this.sums = sums;
+		this.limits = limits;
+	}
+
+	/**
+	 * Sweep the labels once and accumulate the statistics of every particle.
+	 *
+	 * @param imp input image, used for calibration
+	 * @param labelRuns run-length encoded particle labels
+	 * @param nParticles number of particles, including the background label 0
+	 * @param intensityImp 32-bit image whose pixel values &gt; 0 are summed per
+	 *          particle, or null to skip intensity statistics
+	 * @return accumulated particle statistics
+	 */
+	public static ParticleStatistics accumulate(final ImagePlus imp,
+		final LabelRuns labelRuns, final int nParticles,
+		final ImagePlus intensityImp)
+	{
+		return accumulate(imp, labelRuns, nParticles, intensityImp, ParticleSums
+			.isSparse(nParticles, Prefs.getThreads()));
+	}
+
+	/**
+	 * Sweep the labels once and accumulate the statistics of every particle.
+	 *
+	 * @param imp input image, used for calibration
+	 * @param labelRuns run-length encoded particle labels
+	 * @param nParticles number of particles, including the background label 0
+	 * @param intensityImp 32-bit image whose pixel values &gt; 0 are summed per
+	 *          particle, or null to skip intensity statistics
+	 * @param sparse true to keep per-thread sums only for the particles each
+	 *          thread touches
+	 * @return accumulated particle statistics
+	 */
+	static ParticleStatistics accumulate(final ImagePlus imp,
+		final LabelRuns labelRuns, final int nParticles,
+		final ImagePlus intensityImp, final boolean sparse)
+	{
+		final int w = labelRuns.getWidth();
+		final int d = labelRuns.getDepth();
+		final ImageStack intensityStack = intensityImp == null ? null
+			: intensityImp.getImageStack();
+
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		// several slabs per thread to balance the load
+		final int slabDepth = Math.max(1, d / (threads.length * 4));
+		final int nSlabs = (d + slabDepth - 1) / slabDepth;
+		final double[] template = new double[BLOCK_SIZE];
+		for (int i = LIMITS; i < BLOCK_SIZE; i += 2)
+			template[i] = Integer.MAX_VALUE;
+		final ParticleSums[] threadSums = new ParticleSums[threads.length];
+		for (int thread = 0; thread < threads.length; thread++) {
+			final ParticleSums particleSums = ParticleSums.create(nParticles, template, sparse);
+			threadSums[thread] = particleSums;
+			threads[thread] = new Thread(() -> {
+				for (int slab = ai.getAndIncrement(); slab < nSlabs; slab = ai.getAndIncrement()) {
+					final int zEnd = Math.min(d, (slab + 1) * slabDepth);
+					for (int z = slab * slabDepth; z < zEnd; z++) {
+						final float[] pixels = intensityStack == null ? null
+							: (float[]) intensityStack.getPixels(z + 1);
+						final int[] runs = labelRuns.getRuns(z);
+						for (int r = 0; r < runs.length; r += LabelRuns.RUN_SIZE) {
+							final int start = runs[r + LabelRuns.START];
+							final int length = runs[r + LabelRuns.LENGTH];
+							final int p = runs[r + LabelRuns.LABEL];
+							final int y = start / w;
+							final int x0 = start - y * w;
+							final double n = length;
+							// sums of k and k^2 for k = 0 .. n-1
+							final double s1 = n * (n - 1) / 2;
+							final double s2 = (n - 1) * n * (2 * n - 1) / 6;
+							final double sumX = n * x0 + s1;
+							final double sumXX = n * x0 * x0 + 2 * x0 * s1 + s2;
+
+							final int b = particleSums.offset(p);
+							final double[] sums = particleSums.values();
+							sums[b + COUNT] += n;
+							sums[b + SX] += sumX;
+							sums[b + SY] += n * y;
+							sums[b + SZ] += n * z;
+							sums[b + SXX] += sumXX;
+							sums[b + SYY] += n * y * y;
+							sums[b + SZZ] += n * z * z;
+							sums[b + SXY] += sumX * y;
+							sums[b + SXZ] += sumX * z;
+							sums[b + SYZ] += n * y * z;
+
+							final int l = b + LIMITS;
+							sums[l] = Math.min(sums[l], x0);
+							sums[l + 1] = Math.max(sums[l + 1], x0 + length - 1);
+							sums[l + 2] = Math.min(sums[l + 2], y);
+							sums[l + 3] = Math.max(sums[l + 3], y);
+							sums[l + 4] = Math.min(sums[l + 4], z);
+							sums[l + 5] = Math.max(sums[l + 5], z);
+
+							if (pixels == null) continue;
+							final int end = start + length;
+							for (int i = start; i < end; i++) {
+								final double value = pixels[i];
+								if (value > 0) {
+									sums[b + SI] += value;
+									sums[b + SII] += value * value;
+									sums[b + NI]++;
+									sums[b + MAXI] = Math.max(sums[b + MAXI], value);
+								}
+							}
+						}
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+
+		final long[] counts = new long[nParticles];
+		final double[] sums = new double[nParticles * N_SUMS];
+		final int[] limits = new int[nParticles * 6];
+		for (int i = 6; i < limits.length; i += 2)
+			limits[i] = Integer.MAX_VALUE;
+		for (final ParticleSums particleSums : threadSums) {
+			final double[] tSums = particleSums.values();
+			final int nSlots = particleSums.size();
+			for (int slot = 0; slot < nSlots; slot++) {
+				final int p = particleSums.label(slot);
+				if (p == 0) continue;
+				final int t = slot * BLOCK_SIZE;
+				counts[p] += (long) tSums[t + COUNT];
+				final int b = p * N_SUMS;
+				for (int s = 0; s < MAXI; s++)
+					sums[b + s] += tSums[t + s];
+				sums[b + MAXI] = Math.max(sums[b + MAXI], tSums[t + MAXI]);
+				final int l = p * 6;
+				for (int i = 0; i < 6; i += 2) {
+					limits[l + i] = Math.min(limits[l + i], (int) tSums[t + LIMITS + i]);
+					limits[l + i + 1] = Math.max(limits[l + i + 1], (int) tSums[t + LIMITS + i + 1]);
+				}
+			}
+		}
+		return new ParticleStatistics(nParticles, imp.getCalibration(), counts,
+			sums, limits);
+	}
+
+	/**
+	 * @return particle sizes in voxels. Label 0 is not counted.
+	 */
+	public long[] getParticleSizes() {
+		return counts.clone();
+	}
+
+	/**
+	 * @return calibrated centroid of each particle as double[nParticles][3]
+	 */
+	public double[][] getCentroids() {
+		final double[][] centroids = new double[nParticles][3];
+		for (int p = 1; p < nParticles; p++) {
+			final int b = p * N_SUMS;
+			final long n = counts[p];
+			centroids[p][0] = cal.pixelWidth * sums[b + SX] / n;
+			centroids[p][1] = cal.pixelHeight * sums[b + SY] / n;
+			centroids[p][2] = cal.pixelDepth * sums[b + SZ] / n;
+		}
+		return centroids;
+	}
+
+	/**
+	 * @return min and max x, y and z limits of each particle in uncalibrated
+	 *         pixel units, as int[nParticles][6]
+	 */
+	public int[][] getLimits() {
+		final int[][] limits = new int[nParticles][];
+		for (int p = 0; p < nParticles; p++)
+			limits[p] = Arrays.copyOfRange(this.limits, p * 6, p * 6 + 6);
+		return limits;
+	}
+
+	/**
+	 * Calculate the Eigenvalue decomposition of each particle's inertia tensor,
+	 * about its centroid and in calibrated units. Each voxel contributes the
+	 * inertia of a solid cuboid as well as that of its centre.
+	 *
+	 * @return list of EigenvalueDecompositions, null for label 0
+	 */
+	public EigenvalueDecomposition[] getEigens() {
+		final double vW = cal.pixelWidth;
+		final double vH = cal.pixelHeight;
+		final double vD = cal.pixelDepth;
+		final double voxVhVd = (vH * vH + vD * vD) / 12;
+		final double voxVwVd = (vW * vW + vD * vD) / 12;
+		final double voxVhVw = (vH * vH + vW * vW) / 12;
+		final EigenvalueDecomposition[] eigens = new EigenvalueDecomposition[nParticles];
+		for (int p = 1; p < nParticles; p++) {
+			final int b = p * N_SUMS;
+			final double n = counts[p];
+			final double mx = sums[b + SX] / n;
+			final double my = sums[b + SY] / n;
+			final double mz = sums[b + SZ] / n;
+			// central second moments in calibrated units
+			final double xx = vW * vW * (sums[b + SXX] - n * mx * mx);
+			final double yy = vH * vH * (sums[b + SYY] - n * my * my);
+			final double zz = vD * vD * (sums[b + SZZ] - n * mz * mz);
+			final double xy = vW * vH * (sums[b + SXY] - n * mx * my);
+			final double xz = vW * vD * (sums[b + SXZ] - n * mx * mz);
+			final double yz = vH * vD * (sums[b + SYZ] - n * my * mz);
+			final double[][] inertiaTensor = new double[3][3];
+			inertiaTensor[0][0] = yy + zz + n * voxVhVd;
+			inertiaTensor[1][1] = xx + zz + n * voxVwVd;
+			inertiaTensor[2][2] = xx + yy + n * voxVhVw;
+			inertiaTensor[0][1] = -xy;
+			inertiaTensor[0][2] = -xz;
+			inertiaTensor[1][0] = -xy;
+			inertiaTensor[1][2] = -yz;
+			inertiaTensor[2][0] = -xz;
+			inertiaTensor[2][1] = -yz;
+			eigens[p] = new EigenvalueDecomposition(new Matrix(inertiaTensor));
+		}
+		return eigens;
+	}
+
+	/**
+	 * Get the mean, standard deviation and maximum of intensity values &gt; 0 in
+	 * each particle. The mean and standard deviation are taken over all of the
+	 * particle's voxels, with voxels of value 0 or less left out of the sums.
+	 * Values are 0 if no intensity image was accumulated.
+	 *
+	 * @return array containing mean, std dev and max pixel values for each
+	 *         particle
+	 */
+	public double[][] getMeanStdDev() {
+		final double[][] meanStdDev = new double[nParticles][3];
+		for (int p = 1; p < nParticles; p++) {
+			final int b = p * N_SUMS;
+			final double n = counts[p];
+			final double mean = sums[b + SI] / n;
+			// sum of squared residuals of the values > 0 about the mean
+			final double sumSquares = Math.max(0, sums[b + SII] - 2 * mean *
+				sums[b + SI] + sums[b + NI] * mean * mean);
+			meanStdDev[p][0] = mean;
+			meanStdDev[p][1] = Math.sqrt(sumSquares / n);
+			meanStdDev[p][2] = sums[b + MAXI];
+		}
+		return meanStdDev;
+	}
+}
@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.bonej.plugins;
+
+import java.util.Arrays;
+
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+
+/**
+ * Per-thread block of per-particle partial sums. Each particle that is
+ * touched gets a block of values, initialised from a template so that minima
+ * and maxima can be tracked alongside sums.
+ * <p>
+ * In dense mode a block is preallocated for every label. In sparse mode
+ * blocks are created on first touch and found through a hash map, so memory
+ * scales with the number of particles a thread actually visits rather than
+ * with the total number of particles.
+ * </p>
+ */
+final class ParticleSums {
+
+	/**
+	 * Minimum product of particle count and thread count at which
+	 * {@link #isSparse(int, int)} chooses sparse mode
+	 */
+	static final long SPARSE_MIN_PARTICLE_THREADS = 1L << 20;
+
+	private final double[] template;
+	private final int width;
+	private final IntIntHashMap slots;
+	private int[] labels;
+	private double[] values;
+	private int nSlots;
+
+	private ParticleSums(final double[] template, final int nParticles,
+		final boolean sparse)
+	{
+		this.template = template;
+		this.width = template.length;
+		if (sparse) {
+			slots = new IntIntHashMap();
+			labels = new int[16];
+			values = new double[16 * width];
+		}
+		else {
+			slots = null;
+			nSlots = nParticles;
+			labels = null;
+			values = new double[nParticles * width];
+			for (int p = 0; p < nParticles; p++)
+				System.arraycopy(template, 0, values, p * width, width);
+		}
+	}
+
+	/**
+	 * Decide whether sparse mode is needed because dense blocks for every thread
+	 * would take too much memory.
+	 *
+	 * @param nParticles number of particle labels
+	 * @param nThreads number of threads that will each hold a block
+	 * @return true if sparse blocks should be used
+	 */
+	static boolean isSparse(final int nParticles, final int nThreads) {
+		return (long) nParticles * nThreads >= SPARSE_MIN_PARTICLE_THREADS;
+	}
+
+	/**
+	 * Create a block of partial sums in the given mode.
+	 *
+	 * @param nParticles number of particle labels
+	 * @param template initial values of each particle's block
+	 * @param sparse true to allocate blocks only for touched particles
+	 * @return new partial sums
+	 */
+	static ParticleSums create(final int nParticles, final double[] template,
+		final boolean sparse)
+	{
+		return new ParticleSums(template, nParticles, sparse);
+	}
+
+	/**
+	 * Get the offset of a particle's block in {@link #values()}, creating the
+	 * block if needed. The values array may be replaced when a block is created,
+	 * so fetch it after calling this method.
+	 *
+	 * @param label particle label
+	 * @return offset of the first value of the particle's block
+	 */
+	int offset(final int label) {
+		if (slots == null) return label * width;
+		int slot = slots.getIfAbsent(label, -1);
+		if (slot < 0) {
+			slot = nSlots++;
+			if (slot == labels.length) {
+				labels = Arrays.copyOf(labels, slot * 2);
+				values = Arrays.copyOf(values, slot * 2 * width);
+			}
+			labels[slot] = label;
+			System.arraycopy(template, 0, values, slot * width, width);
+			slots.put(label, slot);
+		}
+		return slot * width;
+	}
+
+	/**
+	 * @return backing array of all blocks
+	 */
+	double[] values() {
+		return values;
+	}
+
+	/**
+	 * @return number of blocks, which is the number of labels in dense mode
+	 */
+	int size() {
+		return nSlots;
+	}
+
+	/**
+	 * @param slot block index, 0 &le; slot &lt; {@link #size()}
+	 * @return label of the particle that owns the block
+	 */
+	int label(final int slot) {
+		return slots == null ? slot : labels[slot];
+	}
+}
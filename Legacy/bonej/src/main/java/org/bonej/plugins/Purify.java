@@ -31,15 +31,16 @@
 package org.bonej.plugins;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
 
 import org.bonej.util.ImageCheck;
 import org.bonej.util.Multithreader;
-import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
 
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
 
+import org.bonej.utilities.ImagePlusUtil;
 import org.bonej.utilities.SharedTable;
 import org.bonej.wrapperPlugins.BoneJCommand;
 import org.scijava.ItemIO;
@@ -158,6 +159,11 @@ public class Purify extends BoneJCommand implements Command {
 	@Parameter(label = "Make copy",
 			   description = "Return the purified image as a new Dataset")
 	private boolean makeCopy = true;
+
+	@Parameter(label = "Slab slices",
+			   description = "Label this many slices at a time and keep the labels in a temporary file, for stacks too large to purify in memory. 0 purifies the whole stack in memory.",
+			   min = "0")
+	private int slabSlices = 0;
 	
 	/**
 	 * Modern scijava Plugin entry point.
@@ -182,7 +188,8 @@ public class Purify extends BoneJCommand implements Command {
 		}
         
         final long startTime = System.currentTimeMillis();
-        ImagePlus purified = purify(imp);
+        ImagePlus purified = slabSlices > 0 ? purifyStreamed(imp, !makeCopy,
+        	slabSlices) : purify(imp, !makeCopy);
         
         if (purified != null) {
             
@@ -236,218 +243,212 @@ public class Purify extends BoneJCommand implements Command {
 
 	/**
 	 * Find all foreground and particles in an image and remove all but the
-	 * largest. Foreground is 26-connected and background is 8-connected.
+	 * largest. Foreground is 26-connected and background is 6-connected.
 	 *
 	 * @param imp input image
 	 * @return purified image
 	 */
 	static ImagePlus purify(final ImagePlus imp)
 	{
+		return purify(imp, false);
+	}
 
-		final int w = imp.getWidth();
-		final int h = imp.getHeight();
-		final int nSlices = imp.getNSlices();
-		
-		final ConnectedComponents connector = new ConnectedComponents();
-		final ParticleAnalysis pa = new ParticleAnalysis();
-
-		int[][] particleLabels = connector.run(imp, ConnectedComponents.FORE);
-		byte[][] workArray = connector.getWorkArray();
-		final int nFgParticles = connector.getNParticles();
+	/**
+	 * Find all foreground and particles in an image and remove all but the
+	 * largest. Foreground is 26-connected and background is 6-connected.
+	 *
+	 * @param imp input image
+	 * @param inPlace if true, write the result into the input image's pixels
+	 *          instead of a new image. Ignored unless the stack's pixels are
+	 *          held in memory, because a virtual or wrapped stack returns a copy
+	 *          of a slice's pixels that would be written and then lost.
+	 * @return purified image, which is imp if it was purified in place or there
+	 *         is no foreground
+	 * @see RunPurifier
+	 */
+	static ImagePlus purify(final ImagePlus imp, final boolean inPlace)
+	{
+		final ImageStack source = imp.getStack();
+		final RunPurifier purifier = new RunPurifier(source);
 		//if there are no foreground particles, stop processing and return
-		//there is always one particle, pixel value & label = 0, representing background
-		if (nFgParticles == 1)
+		if (!purifier.hasForeground())
 			return imp;
-		
-		// index 0 is background particle's size...
-		long[] particleSizes = pa.getParticleSizes(particleLabels, nFgParticles);
-		//no need to remove particles when there is only one foreground particle
-		//>2 because label 0 is for background, label 1 is for the first foreground particle
-		if (nFgParticles > 2)
-			removeSmallParticles(workArray, particleLabels, particleSizes, ConnectedComponents.FORE);
 
-		ImageStack stack = new ImageStack(w, h);
-		for (int z = 0; z < nSlices; z++) {
-			stack.addSlice(imp.getStack().getSliceLabel(z + 1), workArray[z]);
+		final ImagePlus purified;
+		if (inPlace && ImagePlusUtil.isNativeStack(imp)) {
+			purified = imp;
 		}
-		//halfPurifiedImp has only one big foreground particle
-		ImagePlus halfPurifiedImp = new ImagePlus("Half Purified", stack);
-			
-		//particleLabels is now background particles of the half-purified image
-		particleLabels = connector.run(halfPurifiedImp, ConnectedComponents.BACK);
-		halfPurifiedImp = null;
-		final int nBgParticles = connector.getNParticles();
-		particleSizes = pa.getParticleSizes(particleLabels, nBgParticles);
-		final int biggestParticle = getBiggestParticleLabel(particleSizes);
-		final IntHashSet labelList = getParticlesTouchingEdges(particleLabels, w, h, nSlices);
-		relabelEdgeTouchingParticles(particleLabels, labelList, biggestParticle);
-		
-		workArray = connector.getWorkArray();
-		removeSmallParticles(workArray, particleLabels, particleSizes, ConnectedComponents.BACK);
-		
-		stack = new ImageStack(w, h);
-		for (int z = 0; z < nSlices; z++) {
-			stack.addSlice(imp.getStack().getSliceLabel(z + 1), workArray[z]);
+		else {
+			purified = emptyCopy(imp);
 		}
-		final ImagePlus purified = new ImagePlus(imp.getTitle()+"_purified", stack);
-		purified.setCalibration(imp.getCalibration());
+		purifier.purify(purified.getStack());
+		if (purified == imp) invalidateEulerCache(imp);
+		purified.setTitle(imp.getTitle() + "_purified");
 		IJ.showStatus("Image Purified");
 		IJ.showProgress(1.0);
 		return purified;
 	}
-	
+
 	/**
-	 * Find the label of the largest particle in the image, excluding 0 (which is the opposite phase label).
-	 * @param particleSizes
-	 * @return label of the largest particle
+	 * Purify an image as {@link #purify(ImagePlus, boolean)} does, but label it
+	 * in z-slabs with {@link ConnectedComponents#runStreamed(ImagePlus, int, int)}
+	 * so that only one slab's labels are held on the heap at a time. Use this for
+	 * stacks whose runs are too many to purify in memory.
+	 * <p>
+	 * Ties between particles of the same size go to the one that is reached
+	 * first in the stack.
+	 * </p>
+	 *
+	 * @param imp input image
+	 * @param inPlace if true, write the result into the input image's pixels
+	 *          instead of a new image. Ignored unless the stack's pixels are
+	 *          held in memory.
+	 * @param slabSlices number of slices to label in memory at a time
+	 * @return purified image, which is imp if it was purified in place or there
+	 *         is no foreground
 	 */
-	private static int getBiggestParticleLabel(final long[] particleSizes) {
-		long max = 0;
-		int biggestParticleLabel = 0;
-		final int nPartSizes = particleSizes.length;
-		for (int i = 1; i < nPartSizes; i++) {
-			if (particleSizes[i] > max) {
-				max = particleSizes[i];
-				biggestParticleLabel = i;
-			}
+	static ImagePlus purifyStreamed(final ImagePlus imp, final boolean inPlace,
+		final int slabSlices)
+	{
+		final ConnectedComponents connector = new ConnectedComponents();
+		IJ.showStatus("Labelling foreground...");
+		final ImagePlus purified;
+		try (final MappedLabelStack labels = connector.runStreamed(imp,
+			ConnectedComponents.FORE, slabSlices))
+		{
+			final int keptFore = getLargest(labels, connector.getNParticles(), null);
+			//if there are no foreground particles, stop processing and return
+			if (keptFore == 0) return imp;
+			// the labels are already spilled, so the input can be overwritten
+			purified = inPlace && ImagePlusUtil.isNativeStack(imp) ? imp : emptyCopy(
+				imp);
+			writeSlices(labels, purified.getStack(), l -> l == keptFore);
 		}
-		return biggestParticleLabel;
+		purifyBackground(purified, imp.getTitle(), slabSlices);
+		if (purified == imp) invalidateEulerCache(imp);
+		return purified;
 	}
-	
+
 	/**
-	 * Get a list of labels for all the particles that touch the sides.
-	 * 
-	 * @param particleLabels
-	 * @param w image width
-	 * @param h image height
-	 * @param d image depth
-	 * @return list of particle IDs that touch the sides
+	 * Forget the Euler characteristic planes cached for an image whose pixels
+	 * were rewritten in place
 	 */
-	private static IntHashSet getParticlesTouchingEdges(final int[][] particleLabels,
-		final int w, final int h, final int d) {
-		
-		final IntHashSet labelList = new IntHashSet();
-		
-		// scan faces
-		// top and bottom faces
-		final int[] top = particleLabels[0];
-		final int[] bottom = particleLabels[d - 1];
-		final int wh = top.length;
-		for (int i = 0; i < wh; i++) {
-			final int pt = top[i];
-			if (pt > 0) {
-				labelList.add(pt);
-			}
-			final int pb = bottom[i];
-			if (pb > 0) {
-				labelList.add(pb);
-			}
+	private static void invalidateEulerCache(final ImagePlus imp) {
+		final EulerPlaneCache cache = EulerPlaneCache.get(imp);
+		if (cache != null) cache.invalidate();
+	}
+
+	/**
+	 * Fill every background particle of a purified foreground except the
+	 * largest and those touching the stack's sides
+	 */
+	private static ImagePlus purifyBackground(final ImagePlus purified,
+		final String title, final int slabSlices)
+	{
+		final ConnectedComponents connector = new ConnectedComponents();
+		IJ.showStatus("Labelling background...");
+		try (final MappedLabelStack labels = connector.runStreamed(purified,
+			ConnectedComponents.BACK, slabSlices))
+		{
+			final int nParticles = connector.getNParticles();
+			final boolean[] touchesEdge = new boolean[nParticles];
+			final int keptBack = getLargest(labels, nParticles, touchesEdge);
+			IJ.showStatus("Writing purified image...");
+			writeSlices(labels, purified.getStack(), l -> l == 0 || l != keptBack &&
+				!touchesEdge[l]);
 		}
+		purified.setTitle(title + "_purified");
+		IJ.showStatus("Image Purified");
+		IJ.showProgress(1.0);
+		return purified;
+	}
 
-		// west and east faces
-		// north and south faces
-		final int lastRow = w * (h - 1);
+	/**
+	 * Sum the sizes of the labelled particles and find the largest
+	 *
+	 * @param labels particle labels
+	 * @param nParticles number of labels, including 0
+	 * @param touchesEdge if not null, set for each label that touches the sides
+	 *          of the stack
+	 * @return largest label, or 0 if there are no particles
+	 */
+	private static int getLargest(final MappedLabelStack labels,
+		final int nParticles, final boolean[] touchesEdge)
+	{
+		final int w = labels.getWidth();
+		final int h = labels.getHeight();
+		final int d = labels.getDepth();
+		final long[] sizes = new long[nParticles];
+		// order in which each label is first reached, to break ties
+		final int[] firstSeen = new int[nParticles];
+		int nSeen = 0;
+		final int[] slice = new int[w * h];
 		for (int z = 0; z < d; z++) {
-			final int[] slice = particleLabels[z];
-			for (int x = 0; x < w; x++) {
-				final int pn = slice[x];
-				final int ps = slice[lastRow + x];
-				if (pn > 0) {
-					labelList.add(pn);
-				}
-				if (ps > 0) {
-					labelList.add(ps);
-				}
-			}
+			labels.readSlice(z, slice);
 			for (int y = 0; y < h; y++) {
-				final int yw = y * w;
-				final int pw = slice[yw];
-				final int pe = slice[yw + w - 1];
-				if (pw > 0) {
-					labelList.add(pw);
-				}
-				if (pe > 0) {
-					labelList.add(pe);
+				for (int x = 0; x < w; x++) {
+					final int label = slice[y * w + x];
+					if (label == 0) continue;
+					if (sizes[label]++ == 0) firstSeen[label] = nSeen++;
+					if (touchesEdge != null && (z == 0 || z == d - 1 || y == 0 ||
+						y == h - 1 || x == 0 || x == w - 1))
+					{
+						touchesEdge[label] = true;
+					}
 				}
 			}
 		}
-		return labelList;
+		int largest = 0;
+		for (int label = 1; label < nParticles; label++) {
+			if (largest == 0 || sizes[label] > sizes[largest] ||
+				sizes[label] == sizes[largest] && firstSeen[label] < firstSeen[largest])
+			{
+				largest = label;
+			}
+		}
+		return largest;
 	}
-	
+
 	/**
-	 * Replace all particles in the label list with a new value
-	 * 
-	 * @param particleLabels
-	 * @param labelList
-	 * @param newLabel
+	 * Write a binary image from labels, setting the voxels whose labels are kept
+	 * to 255 and all others to 0
 	 */
-	private static void relabelEdgeTouchingParticles(final int[][] particleLabels, final IntHashSet labelList,
-		final int newLabel) {
-		if (newLabel == 0 || newLabel < 0) {
-			throw new IllegalArgumentException("replacement label cannot be 0 (that would be background) or < 0");
-		}
-		
-		final int nSlices = particleLabels.length;
-		final int wh = particleLabels[0].length;
-		final Thread[] threads = Multithreader.newThreads();
+	private static void writeSlices(final MappedLabelStack labels,
+		final ImageStack target, final IntPredicate keep)
+	{
+		final int wh = labels.getWidth() * labels.getHeight();
+		final int d = labels.getDepth();
 		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
 		for (int thread = 0; thread < threads.length; thread++) {
 			threads[thread] = new Thread(() -> {
-				for (int z = ai.getAndIncrement(); z < nSlices; z = ai.getAndIncrement()) {
-					final int[] sliceParticleLabels = particleLabels[z];
-					for (int i = 0; i < wh; i++) {
-						final int particleID = sliceParticleLabels[i];
-						if (particleID > 0) {
-							if (labelList.contains(particleID)) {
-								sliceParticleLabels[i] = newLabel;
-							}
-						}
-					}
+				final int[] slice = new int[wh];
+				for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
+					labels.readSlice(z, slice);
+					final byte[] pixels = (byte[]) target.getPixels(z + 1);
+					for (int i = 0; i < wh; i++)
+						pixels[i] = keep.test(slice[i]) ? (byte) 255 : 0;
+					IJ.showProgress(z, d);
 				}
 			});
 		}
 		Multithreader.startAndJoin(threads);
 	}
-	
+
 	/**
-	 * Remove all but the largest phase particle from workArray
-	 *
-	 * @param workArray a work array
-	 * @param particleLabels particle labels.
-	 * @param particleSizes sizes of the particles.
-	 * @param phase foreground or background.
+	 * @return a blank 8-bit image with the same dimensions, slice labels and
+	 *         calibration as imp
 	 */
-	private static void removeSmallParticles(final byte[][] workArray,
-		final int[][] particleLabels, final long[] particleSizes, final int phase)
-	{
-		final int d = workArray.length;
-		final int wh = workArray[0].length;
-
-		final int biggestParticleLabel = getBiggestParticleLabel(particleSizes);
-		
-		final int testPhase = phase;
-		final byte replacementPhase = (byte) (phase == ConnectedComponents.FORE ? ConnectedComponents.BACK : ConnectedComponents.FORE);
-		final String sPhase = phase == ConnectedComponents.FORE ? "foreground" : "background";
-		
-		final AtomicInteger ai = new AtomicInteger(0);
-		final Thread[] threads = Multithreader.newThreads();
-		for (int thread = 0; thread < threads.length; thread++) {
-			threads[thread] = new Thread(() -> {
-					// go through work array and turn all
-					// smaller foreground (255) particles into background (0) (or vice versa)
-					for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
-						for (int i = 0; i < wh; i++) {
-							if (workArray[z][i] == testPhase) {
-								if (particleLabels[z][i] != biggestParticleLabel) {
-									workArray[z][i] = replacementPhase;
-								}
-							}
-						}
-						IJ.showStatus("Removing "+sPhase+" particles");
-						IJ.showProgress(z, d);
-					}
-			});
+	private static ImagePlus emptyCopy(final ImagePlus imp) {
+		final int w = imp.getWidth();
+		final int h = imp.getHeight();
+		final ImageStack source = imp.getStack();
+		final ImageStack stack = new ImageStack(w, h);
+		for (int z = 1; z <= source.getSize(); z++) {
+			stack.addSlice(source.getSliceLabel(z), new byte[w * h]);
 		}
-		Multithreader.startAndJoin(threads);
-	}	
+		final ImagePlus copy = new ImagePlus(imp.getTitle(), stack);
+		copy.setCalibration(imp.getCalibration());
+		return copy;
+	}
 }
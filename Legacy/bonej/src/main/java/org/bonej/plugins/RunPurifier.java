@@ -0,0 +1,404 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.bonej.plugins;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bonej.util.Multithreader;
+
+import ij.IJ;
+import ij.ImageStack;
+
+/**
+ * Purify a binary stack on a graph of its runs, labelling the foreground and
+ * the background together instead of relabelling the image for each phase.
+ * <p>
+ * Each row of each slice is split into runs of alternating phase, which are
+ * linked in one sweep to the touching runs of the same phase in the rows above
+ * and behind it: foreground runs by 26-connectivity and background runs by
+ * 6-connectivity. After the largest foreground particle is chosen, the runs of
+ * the other foreground particles join the background, and only those runs are
+ * linked again. Particle sizes and edge contact are summed over runs, so the
+ * voxels are visited once to read the image and once to write the result.
+ * </p>
+ * <p>
+ * Ties between particles of the same size go to the one that starts first in
+ * the stack.
+ * </p>
+ */
+final class RunPurifier {
+
+	private static final byte BACK = 0;
+	private static final byte FORE = 1;
+
+	private final int w;
+	private final int h;
+	private final int d;
+	/** x-coordinate of the first voxel of each run, by slice */
+	private final int[][] starts;
+	/** index of each row's first run in its slice, with an extra entry at h */
+	private final int[][] rowOffsets;
+	/** phase of each run, by slice; removed particles' runs become BACK */
+	private final byte[][] phases;
+	/** label of each slice's first run */
+	private final int[] base;
+	private final int nRuns;
+	private boolean hasForeground;
+
+	/**
+	 * Split a binary stack into runs. Foreground is 255, all else is background.
+	 *
+	 * @param stack 8-bit binary stack
+	 */
+	RunPurifier(final ImageStack stack) {
+		w = stack.getWidth();
+		h = stack.getHeight();
+		d = stack.getSize();
+		starts = new int[d][];
+		rowOffsets = new int[d][];
+		phases = new byte[d][];
+		base = new int[d];
+		IJ.showStatus("Finding runs...");
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				int[] sliceStarts = new int[64];
+				byte[] slicePhases = new byte[64];
+				for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
+					final byte[] pixels = (byte[]) stack.getPixels(z + 1);
+					final int[] offsets = new int[h + 1];
+					int n = 0;
+					for (int y = 0; y < h; y++) {
+						offsets[y] = n;
+						final int row = y * w;
+						byte phase = -1;
+						for (int x = 0; x < w; x++) {
+							final byte p = (pixels[row + x] & 0xff) == 255 ? FORE : BACK;
+							if (p == phase) continue;
+							if (n == sliceStarts.length) {
+								sliceStarts = Arrays.copyOf(sliceStarts, n * 2);
+								slicePhases = Arrays.copyOf(slicePhases, n * 2);
+							}
+							sliceStarts[n] = x;
+							slicePhases[n] = p;
+							phase = p;
+							n++;
+						}
+					}
+					offsets[h] = n;
+					starts[z] = Arrays.copyOf(sliceStarts, n);
+					phases[z] = Arrays.copyOf(slicePhases, n);
+					rowOffsets[z] = offsets;
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+
+		long total = 0;
+		for (int z = 0; z < d; z++) {
+			base[z] = Math.toIntExact(total);
+			total += starts[z].length;
+			for (final byte phase : phases[z])
+				hasForeground |= phase == FORE;
+		}
+		nRuns = Math.toIntExact(total);
+	}
+
+	/**
+	 * @return true if the stack has any foreground voxels
+	 */
+	boolean hasForeground() {
+		return hasForeground;
+	}
+
+	/**
+	 * @return number of runs in the stack
+	 */
+	int getRunCount() {
+		return nRuns;
+	}
+
+	/**
+	 * Keep only the largest foreground particle, then fill every background
+	 * particle except the largest and those touching the stack's sides, and
+	 * write the result into a stack. Does nothing if there is no foreground.
+	 *
+	 * @param target 8-bit stack of the same size to write into, which may be
+	 *          the stack the runs came from
+	 */
+	void purify(final ImageStack target) {
+		if (!hasForeground) return;
+		final long[] sizes = new long[nRuns];
+
+		IJ.showStatus("Labelling foreground and background...");
+		final LabelUnionFind.Concurrent fore = new LabelUnionFind.Concurrent(nRuns);
+		final LabelUnionFind.Concurrent back = new LabelUnionFind.Concurrent(nRuns);
+		link(fore, back);
+		final int keptFore = getLargest(fore, FORE, sizes, null);
+
+		IJ.showStatus("Relinking removed particles...");
+		relinkRemoved(back, removeSmallParticles(fore, keptFore));
+		Arrays.fill(sizes, 0);
+		final boolean[] touchesEdge = new boolean[nRuns];
+		final int keptBack = getLargest(back, BACK, sizes, touchesEdge);
+
+		IJ.showStatus("Writing purified image...");
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
+					final byte[] pixels = (byte[]) target.getPixels(z + 1);
+					final int[] offsets = rowOffsets[z];
+					for (int y = 0; y < h; y++) {
+						for (int k = offsets[y]; k < offsets[y + 1]; k++) {
+							final boolean filled;
+							if (phases[z][k] == FORE) filled = true;
+							else {
+								final int root = back.find(base[z] + k);
+								filled = root != keptBack && !touchesEdge[root];
+							}
+							Arrays.fill(pixels, y * w + starts[z][k], y * w + end(z, y, k),
+								filled ? (byte) 255 : 0);
+						}
+					}
+					IJ.showProgress(z, d);
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+	}
+
+	/**
+	 * Join the runs that touch each other, foreground runs by 26-connectivity
+	 * and background runs by 6-connectivity, in one sweep over the rows
+	 *
+	 * @param fore union-find in which to join foreground runs
+	 * @param back union-find in which to join background runs
+	 */
+	private void link(final LabelUnionFind.Concurrent fore,
+		final LabelUnionFind.Concurrent back)
+	{
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
+					for (int y = 0; y < h; y++) {
+						if (y > 0) linkRows(fore, back, z, y, z, y - 1, false);
+						if (z == 0) continue;
+						linkRows(fore, back, z, y, z - 1, y, false);
+						if (y > 0) linkRows(fore, back, z, y, z - 1, y - 1, true);
+						if (y < h - 1) linkRows(fore, back, z, y, z - 1, y + 1, true);
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+	}
+
+	/**
+	 * Join the runs in one row to the touching runs of the same phase in
+	 * another row
+	 *
+	 * @param diagonal true if the rows only touch along an edge, so only
+	 *          foreground runs are joined
+	 */
+	private void linkRows(final LabelUnionFind.Concurrent fore,
+		final LabelUnionFind.Concurrent back, final int z, final int y,
+		final int zN, final int yN, final boolean diagonal)
+	{
+		final int[] offsets = rowOffsets[z];
+		final int[] offsetsN = rowOffsets[zN];
+		final byte[] phasesN = phases[zN];
+		final int lastN = offsetsN[yN + 1];
+		int j = offsetsN[yN];
+		for (int k = offsets[y]; k < offsets[y + 1]; k++) {
+			final byte phase = phases[z][k];
+			if (diagonal && phase != FORE) continue;
+			final int expand = phase == FORE ? 1 : 0;
+			final LabelUnionFind.Concurrent unionFind = phase == FORE ? fore : back;
+			final int from = starts[z][k] - expand;
+			final int to = end(z, y, k) + expand;
+			while (j < lastN && end(zN, yN, j) <= from)
+				j++;
+			for (int n = j; n < lastN && starts[zN][n] < to; n++) {
+				if (phasesN[n] == phase) unionFind.union(base[z] + k, base[zN] + n);
+			}
+		}
+	}
+
+	/**
+	 * Move the runs of every foreground particle but one to the background
+	 *
+	 * @param fore linked foreground runs
+	 * @param kept root of the particle to keep
+	 * @return indices within their slice of the moved runs, by slice
+	 */
+	private int[][] removeSmallParticles(final LabelUnionFind.Concurrent fore,
+		final int kept)
+	{
+		final int[][] removed = new int[d][];
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
+					final byte[] slicePhases = phases[z];
+					int[] moved = new int[16];
+					int n = 0;
+					for (int k = 0; k < slicePhases.length; k++) {
+						if (slicePhases[k] != FORE || fore.find(base[z] + k) == kept)
+							continue;
+						if (n == moved.length) moved = Arrays.copyOf(moved, n * 2);
+						moved[n++] = k;
+					}
+					removed[z] = Arrays.copyOf(moved, n);
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+		for (int z = 0; z < d; z++) {
+			for (final int k : removed[z])
+				phases[z][k] = BACK;
+		}
+		return removed;
+	}
+
+	/**
+	 * Join runs that have just moved to the background to their background
+	 * face neighbours. The rest of the background was linked by
+	 * {@link #link(LabelUnionFind.Concurrent, LabelUnionFind.Concurrent)}, and
+	 * any new connection passes through a moved run, so only those are visited.
+	 *
+	 * @param back linked background runs
+	 * @param removed moved runs, by slice
+	 */
+	private void relinkRemoved(final LabelUnionFind.Concurrent back,
+		final int[][] removed)
+	{
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
+					final int[] offsets = rowOffsets[z];
+					int y = 0;
+					for (final int k : removed[z]) {
+						while (offsets[y + 1] <= k)
+							y++;
+						final int run = base[z] + k;
+						if (k > offsets[y] && phases[z][k - 1] == BACK)
+							back.union(run, run - 1);
+						if (k + 1 < offsets[y + 1] && phases[z][k + 1] == BACK)
+							back.union(run, run + 1);
+						final int start = starts[z][k];
+						final int end = end(z, y, k);
+						if (y > 0) linkRun(back, run, z, y - 1, start, end);
+						if (y < h - 1) linkRun(back, run, z, y + 1, start, end);
+						if (z > 0) linkRun(back, run, z - 1, y, start, end);
+						if (z < d - 1) linkRun(back, run, z + 1, y, start, end);
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+	}
+
+	/**
+	 * Join a background run to the background runs of a row that overlap
+	 * [from, to)
+	 */
+	private void linkRun(final LabelUnionFind.Concurrent back, final int run,
+		final int z, final int y, final int from, final int to)
+	{
+		final int[] sliceStarts = starts[z];
+		final int last = rowOffsets[z][y + 1];
+		// last run starting at or before from, found by bisection
+		int low = rowOffsets[z][y];
+		int high = last - 1;
+		while (low < high) {
+			final int mid = (low + high + 1) >>> 1;
+			if (sliceStarts[mid] <= from) low = mid;
+			else high = mid - 1;
+		}
+		for (int n = low; n < last && sliceStarts[n] < to; n++) {
+			if (phases[z][n] == BACK) back.union(run, base[z] + n);
+		}
+	}
+
+	/**
+	 * Sum the sizes of a phase's particles and find the largest
+	 *
+	 * @param unionFind linked runs
+	 * @param phase FORE or BACK
+	 * @param sizes zeroed array, filled with the size of each particle at its
+	 *          root
+	 * @param touchesEdge if not null, set at the root of each particle that
+	 *          touches the sides of the stack
+	 * @return root of the largest particle, or -1 if the phase is empty
+	 */
+	private int getLargest(final LabelUnionFind.Concurrent unionFind,
+		final byte phase, final long[] sizes, final boolean[] touchesEdge)
+	{
+		int largest = -1;
+		for (int z = 0; z < d; z++) {
+			final int[] offsets = rowOffsets[z];
+			for (int y = 0; y < h; y++) {
+				for (int k = offsets[y]; k < offsets[y + 1]; k++) {
+					if (phases[z][k] != phase) continue;
+					final int root = unionFind.find(base[z] + k);
+					final int start = starts[z][k];
+					final int end = end(z, y, k);
+					sizes[root] += end - start;
+					if (largest < 0 || sizes[root] > sizes[largest] ||
+						sizes[root] == sizes[largest] && root < largest)
+					{
+						largest = root;
+					}
+					if (touchesEdge != null && (z == 0 || z == d - 1 || y == 0 ||
+						y == h - 1 || start == 0 || end == w))
+					{
+						touchesEdge[root] = true;
+					}
+				}
+			}
+		}
+		return largest;
+	}
+
+	/** x-coordinate after the last voxel of a run */
+	private int end(final int z, final int y, final int k) {
+		return k + 1 < rowOffsets[z][y + 1] ? starts[z][k + 1] : w;
+	}
+}
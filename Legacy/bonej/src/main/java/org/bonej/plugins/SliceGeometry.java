@@ -34,9 +34,13 @@ import java.awt.Color;
 import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 import org.bonej.menuWrappers.ThicknessHelper;
 import org.bonej.util.BoneList;
+import org.bonej.util.LocalThickness2D;
+import org.bonej.util.Multithreader;
 import org.bonej.util.ThresholdGuesser;
 import org.bonej.utilities.SharedTable;
 import org.bonej.wrapperPlugins.BoneJCommand;
@@ -177,7 +181,7 @@ public class SliceGeometry extends BoneJCommand implements Command {
 	/** Number of thresholded pixels in each slice */
 	private double[] cslice;
 	/** Cross-sectional area */
-	private double[] cortArea;
+	double[] cortArea;
 	/** Mean of 3D local thickness in slice */
 	private double[] meanCortThick3D;
 	/** Maximum 3D local thickness in slice */
@@ -195,11 +199,11 @@ public class SliceGeometry extends BoneJCommand implements Command {
 	/**
 	 * 2nd moment of area around minimum principal axis (shorter axis, larger I)
 	 */
-	private double[] Imin;
+	double[] Imin;
 	/**
 	 * 2nd moment of area around maximum principal axis (longer axis, smaller I)
 	 */
-	private double[] Imax;
+	double[] Imax;
 	/** product moment of area, should be 0 if theta calculated perfectly */
 	private double[] Ipm;
 	/** length of major axis */
@@ -211,27 +215,27 @@ public class SliceGeometry extends BoneJCommand implements Command {
 	/** maximum distance from maximum principal axis (shorter) */
 	private double[] maxRadMax;
 	/** Section modulus around minimum principal axis */
-	private double[] Zmin;
+	double[] Zmin;
 	/** Section modulus around maximum principal axis */
-	private double[] Zmax;
+	double[] Zmax;
 	/** Maximum diameter */
-	private double[] feretMax;
+	double[] feretMax;
 	/** Angle of maximum diameter */
 	private double[] feretAngle;
 	/** Minimum diameter */
-	private double[] feretMin;
+	double[] feretMin;
 	/** List of empty slices. If true, slice contains 0 pixels to analyse */
 	private boolean[] emptySlices;
 	/** List of slice centroids */
-	private double[][] sliceCentroids;
-	private double[] meanDensity;
+	double[][] sliceCentroids;
+	double[] meanDensity;
 //	private double m;
 //	private double c;
 	private double[][] weightedCentroids;
 	/** List of perimeter lengths */
-	private double[] perimeter;
+	double[] perimeter;
 	/** List of polar section moduli */
-	private double[] Zpol;
+	double[] Zpol;
 	private Orienteer orienteer;
 	/** Flag to use anatomic orientation */
 //	private boolean doOriented;
@@ -276,10 +280,6 @@ public class SliceGeometry extends BoneJCommand implements Command {
         	logService.info("Pixel spacing in x is "+cal.pixelWidth+" "+cal.getUnits());
         }
         
-		vW = cal.pixelWidth;
-		vH = cal.pixelHeight;
-		al = imp.getStackSize() + 1;
-        
         if (!uiService.isHeadless()) {
         	//should be null, because it is not carried over in the Dataset -> ImagePlus conversion
         	Roi roi = imp.getRoi();
@@ -381,18 +381,14 @@ public class SliceGeometry extends BoneJCommand implements Command {
             logService.info("Slice Geometry: scaling pixel weighting between "+background+" and "+foreground+" (raw) for partial volume compensation");
         }
         
-		if (calculateCentroids(imp, minThreshold, maxThreshold) == 0) {
+        orienteer = Orienteer.getInstance();
+        
+		if (!measureSections(imp, startSlice, endSlice, minThreshold, maxThreshold)) {
 			logService.error("Slice Geometry: No pixels available to calculate. Please check the threshold and ROI.");
 			return;
 		}
-        
-        orienteer = Orienteer.getInstance();
-        
-		calculateMoments(imp, minThreshold, maxThreshold);
 		if (doThickness3D) calculateThickness3D(imp, minThreshold, maxThreshold);
 		if (doThickness2D) calculateThickness2D(imp, minThreshold, maxThreshold);
-
-		roiMeasurements(imp, minThreshold, maxThreshold);
         
         populateResultsTable(imp, BoneList.getBoneID(boneSelection));
         
@@ -536,7 +532,37 @@ public class SliceGeometry extends BoneJCommand implements Command {
 
 
 	/**
-	 * Calculate the centroid of each slice
+	 * Measure the centroids, areas, second moments of area, section moduli and
+	 * Feret diameters of a range of slices, within the image's ROI
+	 *
+	 * @param imp Input image
+	 * @param startSlice first slice to measure (1-based)
+	 * @param endSlice last slice to measure, inclusive
+	 * @param min lowest pixel value in the section
+	 * @param max highest pixel value in the section
+	 * @return false if no pixels in the slices are between min and max
+	 */
+	boolean measureSections(final ImagePlus imp, final int startSlice,
+			final int endSlice, final double min, final double max)
+	{
+		final Calibration calibration = imp.getCalibration();
+		vW = calibration.pixelWidth;
+		vH = calibration.pixelHeight;
+		al = imp.getStackSize() + 1;
+		this.startSlice = startSlice;
+		this.endSlice = endSlice;
+		if (calculateCentroids(imp, min, max) == 0) {
+			return false;
+		}
+		calculateMoments(imp, min, max);
+		roiMeasurements(imp, min, max);
+		return true;
+	}
+
+	/**
+	 * Calculate the centroid, area, mean density and principal axis angle of
+	 * each slice. The sums behind them are gathered together in a single pass
+	 * over each slice's pixels, and slices are measured in parallel.
 	 *
 	 * @param imp Input image
 	 * @return double containing sum of pixel count
@@ -545,48 +571,46 @@ public class SliceGeometry extends BoneJCommand implements Command {
 			final double max)
 	{
 		final ImageStack stack = imp.getImageStack();
-		int rx = 0; int ry = 0; int rwidth = 0; int rheight = 0;
-		if (imp.getRoi() == null) {
-			rwidth = imp.getWidth();
-			rheight = imp.getHeight();
-		} else {
-			rx = imp.getRoi().getBounds().x;
-			ry = imp.getRoi().getBounds().y;
-			rwidth = imp.getRoi().getBounds().width;
-			rheight = imp.getRoi().getBounds().height;
-		}
+		final Rectangle bounds = getRoiBounds(imp);
 		// 2D centroids
 		sliceCentroids = new double[2][al];
-		// pixel counters
-		double cstack = 0;
 		emptySlices = new boolean[al];
 		cslice = new double[al];
 		cortArea = new double[al];
 		meanDensity = new double[al];
 		weightedCentroids = new double[2][al];
+		theta = new double[al];
 		final double pixelArea = vW * vH;
-		final int roiXEnd = rx + rwidth;
-		final int roiYEnd = ry + rheight;
-		for (int s = startSlice; s <= endSlice; s++) {
-			IJ.showStatus("Calculating centroids...");
-			IJ.showProgress(s - startSlice, endSlice);
+		final int roiXEnd = bounds.x + bounds.width;
+		final int roiYEnd = bounds.y + bounds.height;
+		IJ.showStatus("Calculating centroids and moments...");
+		forEachSlice(s -> {
+			final ImageProcessor ip = stack.getProcessor(s);
+			final Object pixels = ip.getPixels();
+			final double[] row = new double[bounds.width];
 			double sumX = 0;
 			double sumY = 0;
+			double sumXX = 0;
+			double sumYY = 0;
+			double sumXY = 0;
 			int count = 0;
 			double sumAreaFractions = 0;
 			double sumD = 0;
 			double wSumX = 0;
 			double wSumY = 0;
-			final ImageProcessor ip = stack.getProcessor(s);
-			for (int y = ry; y < roiYEnd; y++) {
-				for (int x = rx; x < roiXEnd; x++) {
-					final double pixel = ip.get(x, y);
-					if (pixel >= minThreshold && pixel <= max) {
+			for (int y = bounds.y; y < roiYEnd; y++) {
+				readRow(ip, pixels, y, bounds.x, row);
+				for (int x = bounds.x; x < roiXEnd; x++) {
+					final double pixel = row[x - bounds.x];
+					if (pixel >= min && pixel <= max) {
 						count++;
 						final double areaFraction = doPartialVolume ? filledFraction(pixel) : 1;
 						sumAreaFractions += areaFraction;
 						sumX += areaFraction * x;
 						sumY += areaFraction * y;
+						sumXX += areaFraction * x * x;
+						sumYY += areaFraction * y * y;
+						sumXY += areaFraction * x * y;
 						final double wP = pixel * this.m + this.c;
 						sumD += wP;
 						wSumX += x * wP;
@@ -602,8 +626,18 @@ public class SliceGeometry extends BoneJCommand implements Command {
 				meanDensity[s] = sumD / count;
 				weightedCentroids[0][s] = wSumX * vW / sumD;
 				weightedCentroids[1][s] = wSumY * vH / sumD;
-				cstack += count;
 				emptySlices[s] = false;
+				// + /12 is for each pixel's own moment
+				final double Myys = vW * vW * (sumXX - sumX * sumX / sumAreaFractions) + sumAreaFractions * vW * vW / 12;
+				final double Mxxs = vH * vH * (sumYY - sumY * sumY / sumAreaFractions) + sumAreaFractions * vH * vH / 12;
+				final double Mxys = vW * vH * (sumXY - sumX * sumY / sumAreaFractions) + sumAreaFractions * vH * vW / 12;
+				if (Mxys == 0) {
+					theta[s] = 0;
+				}
+				else {
+					theta[s] = Math.atan((Mxxs - Myys + Math.sqrt((Mxxs - Myys) * (Mxxs -
+							Myys) + 4 * Mxys * Mxys)) / (2 * Mxys));
+				}
 			}
 			else {
 				emptySlices[s] = true;
@@ -611,77 +645,26 @@ public class SliceGeometry extends BoneJCommand implements Command {
 				sliceCentroids[0][s] = Double.NaN;
 				sliceCentroids[1][s] = Double.NaN;
 				cslice[s] = Double.NaN;
+				theta[s] = Double.NaN;
 			}
+		});
+		double cstack = 0;
+		for (int s = startSlice; s <= endSlice; s++) {
+			if (!emptySlices[s]) cstack += cslice[s];
 		}
 		return cstack;
 	}
 
 	/**
-	 * Calculate second moments of area, length and angle of principal axes
+	 * Calculate second moments of area and section moduli around the principal
+	 * axes found by {@link #calculateCentroids}, and optionally around the
+	 * Orientation axes
 	 *
 	 * @param imp
 	 */
 	private void calculateMoments(final ImagePlus imp, final double min,
 			final double max)
 	{
-		final ImageStack stack = imp.getImageStack();
-		int rx = 0; int ry = 0; int rwidth = 0; int rheight = 0;
-		if (imp.getRoi() == null) {
-			rwidth = imp.getWidth();
-			rheight = imp.getHeight();
-		} else {
-			rx = imp.getRoi().getBounds().x;
-			ry = imp.getRoi().getBounds().y;
-			rwidth = imp.getRoi().getBounds().width;
-			rheight = imp.getRoi().getBounds().height;
-		}
-		theta = new double[al];
-		for (int s = startSlice; s <= endSlice; s++) {
-			IJ.showStatus("Calculating Ix and Iy...");
-			IJ.showProgress(s, endSlice);
-			double sxs = 0;
-			double sys = 0;
-			double sxxs = 0;
-			double syys = 0;
-			double sxys = 0;
-			final int roiXEnd = rx + rwidth;
-			final int roiYEnd = ry + rheight;
-			if (emptySlices[s]) {
-				theta[s] = Double.NaN;
-				continue;
-			}
-			final ImageProcessor ip = stack.getProcessor(s);
-			double sumAreaFractions = 0;
-			for (int y = ry; y < roiYEnd; y++) {
-				for (int x = rx; x < roiXEnd; x++) {
-					final double pixel = ip.get(x, y);
-					if (pixel >= minThreshold && pixel <= max) {
-						final double xVw = x * vW;
-						final double yVh = y * vH;
-						final double areaFraction = doPartialVolume ? filledFraction(pixel) : 1;
-						sumAreaFractions += areaFraction;
-						// sum of distances from axis
-						sxs += xVw * areaFraction;
-						sys += yVh * areaFraction;
-						// sum of squares of distances from axis
-						sxxs += xVw * xVw * areaFraction;
-						syys += yVh * yVh * areaFraction;
-						sxys += xVw * yVh * areaFraction;
-					}
-				}
-			}
-			// + /12 is for each pixel's own moment
-			final double Myys = sxxs - (sxs * sxs / sumAreaFractions) + sumAreaFractions * vW * vW / 12;
-			final double Mxxs = syys - (sys * sys / sumAreaFractions) + sumAreaFractions * vH * vH / 12;
-			final double Mxys = sxys - (sxs * sys / sumAreaFractions) + sumAreaFractions * vH * vW / 12;
-			if (Mxys == 0) {
-				theta[s] = 0;
-			}
-			else {
-				theta[s] = Math.atan((Mxxs - Myys + Math.sqrt((Mxxs - Myys) * (Mxxs -
-						Myys) + 4 * Mxys * Mxys)) / (2 * Mxys));
-			}
-		}
 		// Get I and Z around the principal axes
 		final double[][] result = calculateAngleMoments(imp, min, max, theta);
 		Imin = result[0];
@@ -716,16 +699,7 @@ public class SliceGeometry extends BoneJCommand implements Command {
 			final double min, final double max, final double[] angles)
 	{
 		final ImageStack stack = imp.getImageStack();
-		int rx = 0; int ry = 0; int rwidth = 0; int rheight = 0;
-		if (imp.getRoi() == null) {
-			rwidth = imp.getWidth();
-			rheight = imp.getHeight();
-		} else {
-			rx = imp.getRoi().getBounds().x;
-			ry = imp.getRoi().getBounds().y;
-			rwidth = imp.getRoi().getBounds().width;
-			rheight = imp.getRoi().getBounds().height;
-		}
+		final Rectangle bounds = getRoiBounds(imp);
 		final double[] I1 = new double[al];
 		final double[] I2 = new double[al];
 		final double[] Ip = new double[al];
@@ -737,9 +711,8 @@ public class SliceGeometry extends BoneJCommand implements Command {
 		final double[] Z1 = new double[al];
 		final double[] Z2 = new double[al];
 		final double[] Zp = new double[al];
-		for (int s = startSlice; s <= endSlice; s++) {
-			IJ.showStatus("Calculating Imin and Imax...");
-			IJ.showProgress(s, endSlice);
+		IJ.showStatus("Calculating Imin and Imax...");
+		forEachSlice(s -> {
 			if (emptySlices[s]) {
 				I1[s] = Double.NaN;
 				I2[s] = Double.NaN;
@@ -751,76 +724,141 @@ public class SliceGeometry extends BoneJCommand implements Command {
 				Z1[s] = Double.NaN;
 				Z2[s] = Double.NaN;
 				Zp[s] = Double.NaN;
+				return;
 			}
-			else {
-				final ImageProcessor ip = stack.getProcessor(s);
-				double sxs = 0;
-				double sys = 0;
-				double sxxs = 0;
-				double syys = 0;
-				double sxys = 0;
-				double maxRadMinS = 0;
-				double maxRadMaxS = 0;
-				double maxRadCentreS = 0;
-				final double cosTheta = Math.cos(angles[s]);
-				final double sinTheta = Math.sin(angles[s]);
-				final int roiYEnd = ry + rheight;
-				final int roiXEnd = rx + rwidth;
-				final double xC = sliceCentroids[0][s];
-				final double yC = sliceCentroids[1][s];
-				final double cS = cslice[s];
-				double sumAreaFractions = 0;
-				for (int y = ry; y < roiYEnd; y++) {
-					final double yYc = y * vH - yC;
-					for (int x = rx; x < roiXEnd; x++) {
-						final double pixel = ip.get(x, y);
-						if (pixel >= minThreshold && pixel <= max) {
-							final double areaFraction = doPartialVolume ? filledFraction(
-									pixel)
-									: 1;
-									sumAreaFractions += areaFraction;
-									final double xXc = x * vW - xC;
-									final double xCosTheta = x * vW * cosTheta;
-									final double yCosTheta = y * vH * cosTheta;
-									final double xSinTheta = x * vW * sinTheta;
-									final double ySinTheta = y * vH * sinTheta;
-									sxs += areaFraction * (xCosTheta + ySinTheta);
-									sys += areaFraction * (yCosTheta - xSinTheta);
-									sxxs += areaFraction * (xCosTheta + ySinTheta) * (xCosTheta + ySinTheta);
-									syys += areaFraction * (yCosTheta - xSinTheta) * (yCosTheta - xSinTheta);
-									sxys += areaFraction * (yCosTheta - xSinTheta) * (xCosTheta + ySinTheta);
-									maxRadMinS = Math.max(maxRadMinS, Math.abs(xXc * cosTheta + yYc *
-											sinTheta));
-									maxRadMaxS = Math.max(maxRadMaxS, Math.abs(yYc * cosTheta - xXc *
-											sinTheta));
-									maxRadCentreS = Math.max(maxRadCentreS, Math.sqrt(xXc * xXc +
-											yYc * yYc));
-						}
+			final ImageProcessor ip = stack.getProcessor(s);
+			final Object pixels = ip.getPixels();
+			final double[] row = new double[bounds.width];
+			double sxs = 0;
+			double sys = 0;
+			double sxxs = 0;
+			double syys = 0;
+			double sxys = 0;
+			double maxRadMinS = 0;
+			double maxRadMaxS = 0;
+			double maxRadCentreS = 0;
+			final double cosTheta = Math.cos(angles[s]);
+			final double sinTheta = Math.sin(angles[s]);
+			final int roiYEnd = bounds.y + bounds.height;
+			final int roiXEnd = bounds.x + bounds.width;
+			final double xC = sliceCentroids[0][s];
+			final double yC = sliceCentroids[1][s];
+			final double cS = cslice[s];
+			double sumAreaFractions = 0;
+			for (int y = bounds.y; y < roiYEnd; y++) {
+				readRow(ip, pixels, y, bounds.x, row);
+				final double yYc = y * vH - yC;
+				for (int x = bounds.x; x < roiXEnd; x++) {
+					final double pixel = row[x - bounds.x];
+					if (pixel >= min && pixel <= max) {
+						final double areaFraction = doPartialVolume ? filledFraction(
+								pixel)
+								: 1;
+						sumAreaFractions += areaFraction;
+						final double xXc = x * vW - xC;
+						final double xCosTheta = x * vW * cosTheta;
+						final double yCosTheta = y * vH * cosTheta;
+						final double xSinTheta = x * vW * sinTheta;
+						final double ySinTheta = y * vH * sinTheta;
+						sxs += areaFraction * (xCosTheta + ySinTheta);
+						sys += areaFraction * (yCosTheta - xSinTheta);
+						sxxs += areaFraction * (xCosTheta + ySinTheta) * (xCosTheta + ySinTheta);
+						syys += areaFraction * (yCosTheta - xSinTheta) * (yCosTheta - xSinTheta);
+						sxys += areaFraction * (yCosTheta - xSinTheta) * (xCosTheta + ySinTheta);
+						maxRadMinS = Math.max(maxRadMinS, Math.abs(xXc * cosTheta + yYc *
+								sinTheta));
+						maxRadMaxS = Math.max(maxRadMaxS, Math.abs(yYc * cosTheta - xXc *
+								sinTheta));
+						maxRadCentreS = Math.max(maxRadCentreS, Math.sqrt(xXc * xXc +
+								yYc * yYc));
 					}
 				}
-				maxRad2[s] = maxRadMinS;
-				maxRad1[s] = maxRadMaxS;
-				maxRadC[s] = maxRadCentreS;
-				final double pixelMoments = sumAreaFractions * vW * vH
-						* (cosTheta * cosTheta + sinTheta * sinTheta) / 12;
-				I1[s] = vW * vH * (sxxs - (sxs * sxs / sumAreaFractions) + pixelMoments);
-				I2[s] = vW * vH * (syys - (sys * sys / sumAreaFractions) + pixelMoments);
-				Ip[s] = sxys - (sys * sxs / sumAreaFractions) + pixelMoments;
-				r1[s] = Math.sqrt(I2[s] / (cS * vW * vH * vW * vH));
-				r2[s] = Math.sqrt(I1[s] / (cS * vW * vH * vW * vH));
-				Z1[s] = I1[s] / maxRad2[s];
-				Z2[s] = I2[s] / maxRad1[s];
-				Zp[s] = (I1[s] + I2[s]) / maxRadC[s];
 			}
-		}
+			maxRad2[s] = maxRadMinS;
+			maxRad1[s] = maxRadMaxS;
+			maxRadC[s] = maxRadCentreS;
+			final double pixelMoments = sumAreaFractions * vW * vH
+					* (cosTheta * cosTheta + sinTheta * sinTheta) / 12;
+			I1[s] = vW * vH * (sxxs - (sxs * sxs / sumAreaFractions) + pixelMoments);
+			I2[s] = vW * vH * (syys - (sys * sys / sumAreaFractions) + pixelMoments);
+			Ip[s] = sxys - (sys * sxs / sumAreaFractions) + pixelMoments;
+			r1[s] = Math.sqrt(I2[s] / (cS * vW * vH * vW * vH));
+			r2[s] = Math.sqrt(I1[s] / (cS * vW * vH * vW * vH));
+			Z1[s] = I1[s] / maxRad2[s];
+			Z2[s] = I2[s] / maxRad1[s];
+			Zp[s] = (I1[s] + I2[s]) / maxRadC[s];
+		});
 
 		return new double[][] { I1, I2, Ip, r1, r2, maxRad2, maxRad1, Z1, Z2, Zp, };
 	}
 
+	/**
+	 * Measure each slice from startSlice to endSlice, with slices shared out
+	 * between threads, and show the progress after each slice
+	 *
+	 * @param measurement measures the slice with the given (1-based) number
+	 */
+	private void forEachSlice(final IntConsumer measurement) {
+		final AtomicInteger ai = new AtomicInteger(startSlice);
+		final AtomicInteger done = new AtomicInteger();
+		final int nSlices = endSlice - startSlice + 1;
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				for (int s = ai.getAndIncrement(); s <= endSlice; s = ai.getAndIncrement()) {
+					measurement.accept(s);
+					IJ.showProgress(done.incrementAndGet(), nSlices);
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+	}
+
+	private static Rectangle getRoiBounds(final ImagePlus imp) {
+		if (imp.getRoi() == null) {
+			return new Rectangle(0, 0, imp.getWidth(), imp.getHeight());
+		}
+		return imp.getRoi().getBounds();
+	}
 
+	/**
+	 * Read the values of part of a row of pixels, as given by
+	 * {@link ImageProcessor#get(int, int)}. 8- and 16-bit pixels are read
+	 * straight from the pixel array.
+	 *
+	 * @param ip the slice's processor
+	 * @param pixels the slice's pixel array
+	 * @param y row to read
+	 * @param x first pixel of the row to read
+	 * @param row receives the values, and sets how many are read
+	 */
+	private static void readRow(final ImageProcessor ip, final Object pixels,
+			final int y, final int x, final double[] row)
+	{
+		final int offset = y * ip.getWidth() + x;
+		if (pixels instanceof byte[]) {
+			final byte[] bytes = (byte[]) pixels;
+			for (int i = 0; i < row.length; i++) {
+				row[i] = bytes[offset + i] & 0xff;
+			}
+		}
+		else if (pixels instanceof short[]) {
+			final short[] shorts = (short[]) pixels;
+			for (int i = 0; i < row.length; i++) {
+				row[i] = shorts[offset + i] & 0xffff;
+			}
+		}
+		else {
+			for (int i = 0; i < row.length; i++) {
+				row[i] = ip.get(x + i, y);
+			}
+		}
+	}
 
 	/**
-	 * Calculate thickness on individual slices using local thickness
+	 * Calculate thickness on individual slices using local thickness. Each
+	 * thread keeps one {@link LocalThickness2D} and its work arrays for all the
+	 * slices that it measures.
 	 *
 	 * @param imp
 	 */
@@ -831,22 +869,65 @@ public class SliceGeometry extends BoneJCommand implements Command {
 		meanCortThick2D = new double[al];
 		stdevCortThick2D = new double[al];
 
-		final int nThreads = Runtime.getRuntime().availableProcessors();
-		final SliceThread[] sliceThread = new SliceThread[nThreads];
-		for (int thread = 0; thread < nThreads; thread++) {
-			sliceThread[thread] = new SliceThread(thread, nThreads, imp, min, max,
-					meanCortThick2D, maxCortThick2D, stdevCortThick2D, startSlice, endSlice,
-					emptySlices);
-			sliceThread[thread].start();
-		}
-		try {
-			for (int thread = 0; thread < nThreads; thread++) {
-				sliceThread[thread].join();
-			}
+		final ImageStack stack = imp.getImageStack();
+		final int w = stack.getWidth();
+		final int h = stack.getHeight();
+		if (Math.abs(vW - vH) > 1E-3 * vW) {
+			logService.warn("Slice Geometry: pixels are not square. 2D thickness results will be inaccurate");
 		}
-		catch (final InterruptedException ie) {
-			IJ.error("A thread was interrupted.");
+		final AtomicInteger ai = new AtomicInteger(startSlice);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				final LocalThickness2D localThickness = new LocalThickness2D(w, h);
+				final byte[] binary = new byte[w * h];
+				final float[] thickness = new float[w * h];
+				final double[] row = new double[w];
+				for (int s = ai.getAndIncrement(); s <= endSlice; s = ai.getAndIncrement()) {
+					if (emptySlices[s]) {
+						meanCortThick2D[s] = Double.NaN;
+						maxCortThick2D[s] = Double.NaN;
+						stdevCortThick2D[s] = Double.NaN;
+						continue;
+					}
+					// binarise
+					final ImageProcessor ip = stack.getProcessor(s);
+					final Object pixels = ip.getPixels();
+					for (int y = 0; y < h; y++) {
+						readRow(ip, pixels, y, 0, row);
+						for (int x = 0; x < w; x++) {
+							binary[y * w + x] = row[x] >= min && row[x] <= max ? (byte) 255 : 0;
+						}
+					}
+					// calculate thickness
+					localThickness.thickness(binary, thickness);
+					double sumPix = 0;
+					double sliceMax = 0;
+					double pixCount = 0;
+					for (final float t : thickness) {
+						if (t > 0) {
+							final double pixel = t * vW;
+							pixCount++;
+							sumPix += pixel;
+							sliceMax = Math.max(sliceMax, pixel);
+						}
+					}
+					final double sliceMean = sumPix / pixCount;
+					meanCortThick2D[s] = sliceMean;
+					maxCortThick2D[s] = sliceMax;
+
+					double sumSquares = 0;
+					for (final float t : thickness) {
+						if (t > 0) {
+							final double d = sliceMean - t * vW;
+							sumSquares += d * d;
+						}
+					}
+					stdevCortThick2D[s] = Math.sqrt(sumSquares / pixCount);
+				}
+			});
 		}
+		Multithreader.startAndJoin(threads);
 	}
 
 	/**
@@ -946,18 +1027,18 @@ public class SliceGeometry extends BoneJCommand implements Command {
 			final double max)
 	{
 		final Roi initialRoi = imp.getRoi();
-		final int xMin = imp.getImageStack().getRoi().x;
-		double[] feretValues;
+		final ImageStack stack = imp.getImageStack();
+		final int xMin = stack.getRoi().x;
 		feretAngle = new double[al];
 		feretMax = new double[al];
 		feretMin = new double[al];
 		perimeter = new double[al];
 		principalDiameter = new double[al];
 		secondaryDiameter = new double[al];
-		final int initialSlice = imp.getCurrentSlice();
+		final int type = Wand.allPoints() ? Roi.FREEROI : Roi.TRACED_ROI;
 		// for the required slices...
-		for (int s = startSlice; s <= endSlice; s++) {
-			final ImageProcessor ip = imp.getImageStack().getProcessor(s);
+		forEachSlice(s -> {
+			final ImageProcessor ip = stack.getProcessor(s);
 			final Wand w = new Wand(ip);
 			w.autoOutline(xMin, (int) Math.round(sliceCentroids[1][s] / vH), min, max,
 					Wand.EIGHT_CONNECTED);
@@ -968,13 +1049,12 @@ public class SliceGeometry extends BoneJCommand implements Command {
 				perimeter[s] = Double.NaN;
 				principalDiameter[s] = Double.NaN;
 				secondaryDiameter[s] = Double.NaN;
-				continue;
+				return;
 			}
 
-			final int type = Wand.allPoints() ? Roi.FREEROI : Roi.TRACED_ROI;
 			final PolygonRoi roi = new PolygonRoi(w.xpoints, w.ypoints, w.npoints,
 					type);
-			feretValues = roi.getFeretValues();
+			final double[] feretValues = roi.getFeretValues();
 			feretMin[s] = feretValues[2] * vW;
 			feretAngle[s] = feretValues[1] * Math.PI / 180;
 			feretMax[s] = feretValues[0] * vW;
@@ -990,8 +1070,7 @@ public class SliceGeometry extends BoneJCommand implements Command {
 				principalDiameter[s] = diameters[0];
 				secondaryDiameter[s] = diameters[1];
 			}
-		}
-		IJ.setSlice(initialSlice);
+		});
 		imp.setRoi(initialRoi);
 	}
 
@@ -1110,103 +1189,6 @@ public class SliceGeometry extends BoneJCommand implements Command {
 		}
 	}
 
-	private final class SliceThread extends Thread {
-
-		private final int thread;
-		private final int nThreads;
-		private final int startSlice;
-		private final int endSlice;
-		private final double min;
-		private final double max;
-		private final double[] meanThick;
-		private final double[] maxThick;
-		private final double[] stdevThick;
-		private final boolean[] emptySlices;
-		private final ImagePlus impT;
-
-		private SliceThread(final int thread, final int nThreads,
-				final ImagePlus imp, final double min, final double max,
-				final double[] meanThick, final double[] maxThick,
-				final double[] stdevThick, final int startSlice, final int endSlice,
-				final boolean[] emptySlices)
-		{
-			impT = imp;
-			this.min = min;
-			this.max = max;
-			this.thread = thread;
-			this.nThreads = nThreads;
-			this.meanThick = meanThick;
-			this.maxThick = maxThick;
-			this.stdevThick = stdevThick;
-			this.startSlice = startSlice;
-			this.endSlice = endSlice;
-			this.emptySlices = emptySlices;
-		}
-
-		@Override
-		public void run() {
-			for (int s = thread + startSlice; s <= endSlice; s += nThreads) {
-				if (emptySlices[s]) {
-					meanThick[s] = Double.NaN;
-					maxThick[s] = Double.NaN;
-					stdevThick[s] = Double.NaN;
-					continue;
-				}
-				final ImageProcessor ip = impT.getImageStack().getProcessor(s);
-				final ImagePlus sliceImp = new ImagePlus(" " + s, ip);
-				int rx = 0; int ry = 0; int rwidth = 0; int rheight = 0;
-				if (sliceImp.getRoi() == null) {
-					rwidth = sliceImp.getWidth();
-					rheight = sliceImp.getHeight();
-				} else {
-					rx = sliceImp.getRoi().getBounds().x;
-					ry = sliceImp.getRoi().getBounds().y;
-					rwidth = sliceImp.getRoi().getBounds().width;
-					rheight = sliceImp.getRoi().getBounds().height;
-				}
-				// binarise
-				final ImagePlus binaryImp = convertToBinary(sliceImp, min, max);
-				final Calibration cal = impT.getCalibration();
-				binaryImp.setCalibration(cal);
-				// calculate thickness
-				final ImagePlus thickImp = ThicknessHelper.getLocalThickness(binaryImp, false,
-						doMask);
-				final FloatProcessor thickIp = (FloatProcessor) thickImp.getProcessor();
-				double sumPix = 0;
-				double sliceMax = 0;
-				double pixCount = 0;
-				final double roiXEnd = rx + rwidth;
-				final double roiYEnd = ry + rheight;
-				for (int y = ry; y < roiYEnd; y++) {
-					for (int x = rx; x < roiXEnd; x++) {
-						final float pixel = Float.intBitsToFloat(thickIp.get(x, y));
-						if (pixel > 0) {
-							pixCount++;
-							sumPix += pixel;
-							sliceMax = Math.max(sliceMax, pixel);
-						}
-					}
-				}
-				final double sliceMean = sumPix / pixCount;
-				meanThick[s] = sliceMean;
-				maxThick[s] = sliceMax;
-
-				double sumSquares = 0;
-				for (int y = ry; y < roiYEnd; y++) {
-					for (int x = rx; x < roiXEnd; x++) {
-						final float pixel = Float.intBitsToFloat(thickIp.get(x, y));
-						if (pixel > 0) {
-							final double d = sliceMean - pixel;
-							sumSquares += d * d;
-						}
-					}
-				}
-
-				stdevThick[s] = Math.sqrt(sumSquares / pixCount);
-			}
-		}
-	}
-
 	/**
 	 * Calculate the proportion of a pixel that contains foreground, assuming a
 	 * two-phase image (foreground and background) and linear relationship
@@ -0,0 +1,201 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.bonej.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.bonej.plugins.AlignmentResampler.Interpolation;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+
+/**
+ * Tests for {@link AlignmentResampler}
+ */
+public class AlignmentResamplerTest {
+
+	private static final double[][] IDENTITY = { { 1, 0, 0 }, { 0, 1, 0 }, { 0,
+		0, 1 } };
+
+	@Test
+	public void testNearestWithIdentityCopiesSource() {
+		final Random random = new Random(1);
+		final ImageStack stack = new ImageStack(5, 4);
+		for (int z = 0; z < 3; z++) {
+			final byte[] pixels = new byte[20];
+			random.nextBytes(pixels);
+			stack.addSlice(null, pixels);
+		}
+		final ImagePlus imp = new ImagePlus("test", stack);
+		final double[] centroid = { 2.5, 2, 1.5 };
+
+		final ImageStack target = resample(imp, IDENTITY, centroid, 5, 4, 3,
+			Interpolation.NEAREST);
+
+		for (int z = 1; z <= 3; z++)
+			assertArrayEquals((byte[]) stack.getPixels(z), (byte[]) target.getPixels(
+				z));
+	}
+
+	@Test
+	public void testTrilinearInterpolatesBetweenVoxels() {
+		final ImagePlus imp = xRamp(6, 3, 3);
+		// a quarter voxel along from each voxel centre in x, on it in y and z
+		final double[] centroid = { 3.75, 2, 2 };
+
+		final ImageStack target = resample(imp, IDENTITY, centroid, 6, 3, 3,
+			Interpolation.TRILINEAR);
+
+		final float[] pixels = (float[]) target.getPixels(2);
+		for (int x = 0; x < 5; x++)
+			assertEquals(x + 0.25, pixels[6 + x], 1e-6);
+		// the neighbour beyond the edge is clamped to the last column
+		assertEquals(5, pixels[6 + 5], 1e-6);
+	}
+
+	@Test
+	public void testTricubicReproducesLinearRamp() {
+		final ImagePlus imp = xRamp(8, 3, 3);
+		final double[] centroid = { 4.75, 2, 2 };
+
+		final ImageStack target = resample(imp, IDENTITY, centroid, 8, 3, 3,
+			Interpolation.TRICUBIC);
+
+		final float[] pixels = (float[]) target.getPixels(2);
+		for (int x = 1; x < 6; x++)
+			assertEquals(x + 0.25, pixels[8 + x], 1e-6);
+	}
+
+	@Test
+	public void testModesCoverSameFootprintAndKeepConstant() {
+		final ImageStack stack = new ImageStack(20, 16);
+		for (int z = 0; z < 12; z++) {
+			final byte[] pixels = new byte[20 * 16];
+			java.util.Arrays.fill(pixels, (byte) 100);
+			stack.addSlice(null, pixels);
+		}
+		final ImagePlus imp = new ImagePlus("test", stack);
+		final double[][] rotation = rotationAboutZ(Math.toRadians(30));
+		final double[] centroid = { 10, 8, 6 };
+
+		int expected = -1;
+		for (final Interpolation interpolation : Interpolation.values()) {
+			final ImageStack target = resample(imp, rotation, centroid, 24, 24, 14,
+				interpolation);
+			int foreground = 0;
+			for (int z = 1; z <= 14; z++) {
+				for (final byte b : (byte[]) target.getPixels(z)) {
+					if (b == 0) continue;
+					assertEquals(interpolation.toString(), 100, b & 0xff);
+					foreground++;
+				}
+			}
+			if (expected < 0) expected = foreground;
+			assertEquals(interpolation.toString(), expected, foreground);
+		}
+	}
+
+	@Test
+	public void testSlabsMatchWholeVolume() {
+		final Random random = new Random(2);
+		final ImageStack stack = new ImageStack(9, 7);
+		for (int z = 0; z < 6; z++) {
+			final float[] pixels = new float[9 * 7];
+			for (int i = 0; i < pixels.length; i++)
+				pixels[i] = random.nextFloat();
+			stack.addSlice(null, pixels);
+		}
+		final ImagePlus imp = new ImagePlus("test", stack);
+		final double[][] rotation = rotationAboutZ(Math.toRadians(20));
+		final double[] centroid = { 4.5, 3.5, 3 };
+		final ImageStack whole = resample(imp, rotation, centroid, 8, 9, 7,
+			Interpolation.TRICUBIC);
+		final AlignmentResampler resampler = new AlignmentResampler(imp, rotation,
+			centroid, 8, 9, 7, 1, 6, Interpolation.TRICUBIC);
+		final int[] nSlices = { 0 };
+
+		resampler.resampleInSlabs(3, (first, slices, n) -> {
+			for (int i = 0; i < n; i++) {
+				assertArrayEquals((float[]) whole.getPixels(first + i),
+					(float[]) slices[i], 0f);
+			}
+			nSlices[0] += n;
+		});
+
+		assertEquals(7, nSlices[0]);
+	}
+
+	@Test
+	public void testFromLabel() {
+		for (final Interpolation interpolation : Interpolation.values())
+			assertEquals(interpolation, Interpolation.fromLabel(interpolation
+				.toString()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFromLabelUnknown() {
+		Interpolation.fromLabel("Bilinear");
+	}
+
+	private static ImageStack resample(final ImagePlus imp,
+		final double[][] eigenVecInv, final double[] centroid, final int wT,
+		final int hT, final int dT, final Interpolation interpolation)
+	{
+		final ImageStack target = new ImageStack(wT, hT);
+		for (int z = 0; z < dT; z++)
+			target.addSlice(null, Moments.getEmptyPixels(wT, hT, imp.getBitDepth()));
+		new AlignmentResampler(imp, eigenVecInv, centroid, wT, hT, dT, 1, imp
+			.getStackSize(), interpolation).resample(target);
+		return target;
+	}
+
+	/** Float stack whose value is each pixel's x-coordinate */
+	private static ImagePlus xRamp(final int w, final int h, final int d) {
+		final ImageStack stack = new ImageStack(w, h);
+		for (int z = 0; z < d; z++) {
+			final float[] pixels = new float[w * h];
+			for (int i = 0; i < pixels.length; i++)
+				pixels[i] = i % w;
+			stack.addSlice(null, pixels);
+		}
+		return new ImagePlus("ramp", stack);
+	}
+
+	private static double[][] rotationAboutZ(final double theta) {
+		final double cos = Math.cos(theta);
+		final double sin = Math.sin(theta);
+		return new double[][] { { cos, -sin, 0 }, { sin, cos, 0 }, { 0, 0, 1 } };
+	}
+}
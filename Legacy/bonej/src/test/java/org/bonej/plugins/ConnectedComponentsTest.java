@@ -28,8 +28,11 @@
  */
 package org.bonej.plugins;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 import ij.ImagePlus;
@@ -58,6 +61,111 @@ public class ConnectedComponentsTest {
 		}
 	}
 
+	/**
+	 * Check that labelling in streamed slabs finds the same particles as
+	 * labelling the whole stack in memory, for both phases.
+	 */
+	@Test
+	public void testRunStreamedMatchesRun() {
+		final ImagePlus imp = noise(48, 40, 37, 0.3, 0xB0E);
+		for (final int phase : new int[] { ConnectedComponents.FORE, ConnectedComponents.BACK }) {
+			final ConnectedComponents cc = new ConnectedComponents();
+			final int[][] labels = cc.run(imp, phase);
+			final int nParticles = cc.getNParticles();
+			for (final int slabSlices : new int[] { 1, 5, 12, 37 }) {
+				try (final MappedLabelStack streamed = cc.runStreamed(imp, phase, slabSlices)) {
+					assertEquals(nParticles, cc.getNParticles());
+					final int[][] streamedLabels = new int[labels.length][];
+					for (int z = 0; z < labels.length; z++) {
+						streamedLabels[z] = streamed.getSlice(z);
+					}
+					assertSameParticles(labels, streamedLabels, nParticles);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check that the union-find resolver finds the same particles as the bucket
+	 * fountain, for both phases.
+	 */
+	@Test
+	public void testUnionFindMatchesBucketFountain() {
+		final ImagePlus imp = noise(48, 40, 64, 0.3, 0xB0E);
+		for (final int phase : new int[] { ConnectedComponents.FORE, ConnectedComponents.BACK }) {
+			final ConnectedComponents cc = new ConnectedComponents();
+			cc.setUseUnionFind(false);
+			final int[][] labels = cc.run(imp, phase);
+			final int nParticles = cc.getNParticles();
+			cc.setUseUnionFind(true);
+			final int[][] unionFindLabels = cc.run(imp, phase);
+			assertEquals(nParticles, cc.getNParticles());
+			assertSameParticles(labels, unionFindLabels, nParticles);
+		}
+	}
+
+	/**
+	 * Check that images with few first labels are still resolved by the bucket
+	 * fountain by default, so their particles keep their numbers.
+	 */
+	@Test
+	public void testDefaultResolverKeepsNumberingOfSmallImages() {
+		final ImagePlus imp = noise(48, 40, 64, 0.3, 0xB0E);
+		final ConnectedComponents cc = new ConnectedComponents();
+		final int[][] labels = cc.run(imp, ConnectedComponents.FORE);
+		cc.setUseUnionFind(false);
+		final int[][] bucketFountainLabels = cc.run(imp, ConnectedComponents.FORE);
+		for (int z = 0; z < labels.length; z++) {
+			assertArrayEquals(bucketFountainLabels[z], labels[z]);
+		}
+	}
+
+	/**
+	 * Assert that two label arrays divide the image into the same particles,
+	 * which may be numbered differently.
+	 *
+	 * @param expected label array
+	 * @param actual label array
+	 * @param nParticles number of labels in each array, including 0
+	 */
+	private static void assertSameParticles(final int[][] expected, final int[][] actual, final int nParticles) {
+		final int[] forward = new int[nParticles];
+		final int[] backward = new int[nParticles];
+		for (int z = 0; z < expected.length; z++) {
+			for (int i = 0; i < expected[z].length; i++) {
+				final int a = expected[z][i];
+				final int b = actual[z][i];
+				assertEquals(a, backward[b] == 0 ? a : backward[b] - 1);
+				assertEquals(b, forward[a] == 0 ? b : forward[a] - 1);
+				forward[a] = b + 1;
+				backward[b] = a + 1;
+			}
+		}
+	}
+
+	/**
+	 * @param width image width
+	 * @param height image height
+	 * @param depth image depth
+	 * @param density proportion of foreground pixels
+	 * @param seed random seed
+	 * @return Image stack containing random foreground (255) and background (0)
+	 */
+	static ImagePlus noise(final int width, final int height, final int depth,
+			final double density, final long seed) {
+		final Random random = new Random(seed);
+		final ImageStack stack = new ImageStack(width, height);
+		for (int i = 0; i < depth; i++) {
+			final ByteProcessor bp = new ByteProcessor(width, height);
+			for (int p = 0; p < width * height; p++) {
+				if (random.nextDouble() < density)
+					bp.set(p, 255);
+			}
+			stack.addSlice(bp);
+		}
+		return new ImagePlus("noise", stack);
+	}
+
 	/**
 	 * 
 	 * @param width image width
@@ -30,6 +30,7 @@
 
 package org.bonej.plugins;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import org.junit.Test;
@@ -78,6 +79,132 @@ public class ConnectivityTest {
 		}
 	}
 
+	/**
+	 * The Euler characteristic is additive over particles, so the whole-stack
+	 * sum must equal the sum over each labelled particle. Widths straddle the
+	 * 64-voxel word boundaries of the packed kernel.
+	 */
+	@Test
+	public void testGetSumEulerMatchesParticleSum() {
+		for (final int width : new int[] { 1, 63, 64, 65, 129 }) {
+			final ImagePlus imp = ConnectedComponentsTest.noise(width, 9, 7, 0.4,
+				width);
+			final ConnectedComponents cc = new ConnectedComponents();
+			final int[][] labels = cc.run(imp, ConnectedComponents.FORE);
+			final int nParticles = cc.getNParticles();
+			final double[][] eulerCharacters = ParticleAnalysis.getEulerCharacter(imp,
+				labels, nParticles);
+			double particleSum = 0;
+			for (int p = 1; p < nParticles; p++)
+				particleSum += eulerCharacters[p][0];
+			assertEquals(particleSum, conn.getSumEuler(imp), 0);
+		}
+	}
+
+	@Test
+	public void testGetSumEulerStreamedMatchesInMemory() {
+		final int[][] sizes = { { 1, 9, 7 }, { 13, 1, 5 }, { 65, 9, 1 }, { 17, 11,
+			2 }, { 37, 29, 19 } };
+		for (final int[] size : sizes) {
+			final ImagePlus imp = ConnectedComponentsTest.noise(size[0], size[1],
+				size[2], 0.4, size[0] * size[2]);
+			final double sumEuler = conn.getSumEuler(imp);
+			final double deltaChi = conn.getDeltaChi(imp, sumEuler);
+			for (final int nWindows : new int[] { 1, 3, 100 }) {
+				final Connectivity streaming = new Connectivity();
+				final double streamedEuler = streaming.getSumEulerStreamed(imp,
+					nWindows);
+				assertEquals(sumEuler, streamedEuler, 0);
+				assertEquals(deltaChi, streaming.getDeltaChi(imp, streamedEuler), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testGetSumEulerStreamedReadsEachSliceOnce() {
+		final ImagePlus noise = ConnectedComponentsTest.noise(23, 17, 11, 0.4, 0x57);
+		final ImageStack source = noise.getImageStack();
+		final int[] reads = new int[source.getSize() + 1];
+		final ImageStack counting = new ImageStack(source.getWidth(), source
+			.getHeight())
+		{
+
+			@Override
+			public ImageProcessor getProcessor(final int n) {
+				reads[n]++;
+				return super.getProcessor(n);
+			}
+		};
+		for (int s = 1; s <= source.getSize(); s++)
+			counting.addSlice(source.getProcessor(s));
+		final ImagePlus imp = new ImagePlus("counting", counting);
+		final Connectivity streaming = new Connectivity();
+		final Connectivity.StackFaces faces = new Connectivity.StackFaces(imp
+			.getWidth(), imp.getHeight(), imp.getStackSize());
+
+		final double sumEuler = streaming.getSumEulerStreamed(imp, 1, faces);
+		final double deltaChi = streaming.getDeltaChi(faces, sumEuler);
+
+		for (int s = 1; s <= source.getSize(); s++)
+			assertEquals("Slice " + s, 1, reads[s]);
+		assertEquals(conn.getSumEuler(noise), sumEuler, 0);
+		assertEquals(conn.getDeltaChi(noise, sumEuler), deltaChi, 0);
+	}
+
+	@Test
+	public void testGetTileConnectivityWholeStack() {
+		final ImagePlus imp = ConnectedComponentsTest.noise(37, 29, 19, 0.4, 0xC0);
+		final double sumEuler = conn.getSumEuler(imp);
+		final double deltaChi = conn.getDeltaChi(imp, sumEuler);
+		final double connectivity = conn.getConnectivity(deltaChi);
+		final double connD = conn.getConnDensity(imp, connectivity);
+
+		final double[][] tiles = conn.getTileConnectivity(imp, 40);
+
+		assertEquals(1, tiles.length);
+		assertArrayEquals(new double[] { 0, 0, 0, sumEuler, deltaChi, connectivity,
+			connD }, tiles[0], 1e-12);
+	}
+
+	@Test
+	public void testGetTileConnectivityBoxFrames() {
+		// two box frames side by side, one per tile
+		final ImagePlus frame = boxFrame(16, 16, 16);
+		final int size = frame.getWidth();
+		final ImageStack stack = new ImageStack(2 * size, size);
+		for (int z = 1; z <= size; z++) {
+			final byte[] pixels = (byte[]) frame.getStack().getPixels(z);
+			final byte[] twoFrames = new byte[2 * size * size];
+			for (int y = 0; y < size; y++) {
+				System.arraycopy(pixels, y * size, twoFrames, 2 * y * size, size);
+				System.arraycopy(pixels, y * size, twoFrames, (2 * y + 1) * size, size);
+			}
+			stack.addSlice(new ByteProcessor(2 * size, size, twoFrames));
+		}
+		final ImagePlus imp = new ImagePlus("frames", stack);
+		imp.getCalibration().pixelWidth = 0.5;
+
+		final double[][] tiles = conn.getTileConnectivity(imp, size);
+
+		assertEquals(2, tiles.length);
+		assertEquals(size, tiles[1][0], 0);
+		final double tileVolume = size * size * size * 0.5;
+		for (final double[] tile : tiles) {
+			assertEquals(-4, tile[3], 1e-12);
+			assertEquals(5, tile[5], 1e-12);
+			assertEquals(5 / tileVolume, tile[6], 1e-12);
+		}
+		final ImagePlus map = Connectivity.getConnDensityMap(imp, size, tiles);
+		assertEquals(2, map.getWidth());
+		assertEquals(1, map.getStackSize());
+		assertEquals(0.5 * size, map.getCalibration().pixelWidth, 1e-12);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetTileConnectivityZeroTile() {
+		conn.getTileConnectivity(boxFrame(4, 4, 4), 0);
+	}
+
 	/**
 	 * Draw the edges of a brick with 32 pixels of padding on all faces
 	 *
@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+
+public class EulerPlaneCacheTest {
+
+	/** Euler characteristic of slices first to last, without a cache */
+	private static double uncachedEuler(final ImageStack stack, final int first,
+		final int last)
+	{
+		final ImageStack range = new ImageStack(stack.getWidth(), stack
+			.getHeight());
+		for (int s = first; s <= last; s++)
+			range.addSlice(new ByteProcessor(stack.getWidth(), stack.getHeight(),
+				(byte[]) stack.getPixels(s)));
+		return new Connectivity().getSumEuler(new ImagePlus("range", range));
+	}
+
+	@Test
+	public void testDeleteSlicesRecomputesOnePlane() {
+		final ImagePlus imp = ConnectedComponentsTest.noise(70, 21, 40, 0.4, 0xD5);
+		final EulerPlaneCache cache = EulerPlaneCache.attach(imp);
+		final Connectivity connectivity = new Connectivity();
+		connectivity.setCacheSlices(true);
+		final ImageStack stack = imp.getImageStack();
+		assertEquals(uncachedEuler(stack, 1, 40), connectivity.getSumEuler(imp), 0);
+		assertEquals(41, cache.getComputedPlaneCount());
+
+		for (int s = 10; s <= 14; s++)
+			stack.deleteSlice(10);
+
+		assertEquals(uncachedEuler(stack, 1, 35), connectivity.getSumEuler(imp), 0);
+		// only the plane that joins slices 9 and 15 is new
+		assertEquals(42, cache.getComputedPlaneCount());
+	}
+
+	@Test
+	public void testCacheIgnoredUnlessEnabled() {
+		final ImagePlus imp = ConnectedComponentsTest.noise(20, 20, 10, 0.5, 0xDA);
+		final EulerPlaneCache cache = EulerPlaneCache.attach(imp);
+		final ImageStack stack = imp.getImageStack();
+		assertEquals(uncachedEuler(stack, 1, 10), new Connectivity().getSumEuler(
+			imp), 0);
+		assertEquals(0, cache.getComputedPlaneCount());
+	}
+
+	@Test
+	public void testReplaceSliceRecomputesTwoPlanes() {
+		final ImagePlus imp = ConnectedComponentsTest.noise(33, 30, 20, 0.5, 0xD6);
+		final EulerPlaneCache cache = EulerPlaneCache.attach(imp);
+		final ImageStack stack = imp.getImageStack();
+		cache.getSumEuler(stack, 1, 20);
+
+		final ImagePlus other = ConnectedComponentsTest.noise(33, 30, 1, 0.5, 0xD7);
+		stack.setPixels(other.getImageStack().getPixels(1), 7);
+
+		assertEquals(uncachedEuler(stack, 1, 20), cache.getSumEuler(stack, 1, 20), 0);
+		assertEquals(21 + 2, cache.getComputedPlaneCount());
+	}
+
+	@Test
+	public void testMovingRangeRecomputesEnds() {
+		final ImagePlus imp = ConnectedComponentsTest.noise(40, 40, 60, 0.3, 0xD8);
+		final EulerPlaneCache cache = EulerPlaneCache.attach(imp);
+		final ImageStack stack = imp.getImageStack();
+		assertEquals(uncachedEuler(stack, 11, 30), cache.getSumEuler(stack, 11, 30),
+			0);
+		assertEquals(21, cache.getComputedPlaneCount());
+		assertEquals(uncachedEuler(stack, 12, 31), cache.getSumEuler(stack, 12, 31),
+			0);
+		// new bottom and top planes, and the plane between slices 30 and 31
+		assertEquals(24, cache.getComputedPlaneCount());
+	}
+
+	@Test
+	public void testInvalidateEditedSlice() {
+		final ImagePlus imp = ConnectedComponentsTest.noise(20, 20, 10, 0.5, 0xD9);
+		final EulerPlaneCache cache = EulerPlaneCache.attach(imp);
+		final ImageStack stack = imp.getImageStack();
+		cache.getSumEuler(stack, 1, 10);
+		final byte[] pixels = (byte[]) stack.getPixels(5);
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = (byte) ~pixels[i];
+		cache.invalidate(pixels);
+		assertEquals(uncachedEuler(stack, 1, 10), cache.getSumEuler(stack, 1, 10), 0);
+	}
+
+	@Test
+	public void testInPlaceEditRecomputesTwoPlanes() {
+		final ImagePlus imp = ConnectedComponentsTest.noise(20, 20, 20, 0.5, 0xE4);
+		final EulerPlaneCache cache = EulerPlaneCache.attach(imp);
+		final ImageStack stack = imp.getImageStack();
+		cache.getSumEuler(stack, 1, 20);
+		final byte[] pixels = (byte[]) stack.getPixels(8);
+		for (int i = 0; i < pixels.length; i += 3)
+			pixels[i] = (byte) ~pixels[i];
+
+		assertEquals(uncachedEuler(stack, 1, 20), cache.getSumEuler(stack, 1, 20), 0);
+		assertEquals(21 + 2, cache.getComputedPlaneCount());
+	}
+
+	@Test
+	public void testAttachAndDetach() {
+		final ImagePlus imp = ConnectedComponentsTest.noise(5, 5, 5, 0.5, 1);
+		assertNull(EulerPlaneCache.get(imp));
+		final EulerPlaneCache cache = EulerPlaneCache.attach(imp);
+		assertSame(cache, EulerPlaneCache.attach(imp));
+		assertSame(cache, EulerPlaneCache.get(imp));
+		EulerPlaneCache.detach(imp);
+		assertNull(EulerPlaneCache.get(imp));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRangeOutsideStack() {
+		final ImagePlus imp = ConnectedComponentsTest.noise(5, 5, 5, 0.5, 1);
+		EulerPlaneCache.attach(imp).getSumEuler(imp.getImageStack(), 2, 6);
+	}
+}
@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.jogamp.vecmath.Point3f;
+
+public class IndexedMeshTest {
+
+	/** Axis-aligned 2 × 3 × 4 box, faces anticlockwise from outside */
+	private static IndexedMesh box() {
+		final float[] vertices = new float[24];
+		for (int c = 0; c < 8; c++) {
+			vertices[3 * c] = (c & 1) * 2;
+			vertices[3 * c + 1] = (c >> 1 & 1) * 3;
+			vertices[3 * c + 2] = (c >> 2 & 1) * 4;
+		}
+		final int[] faces = { 0, 2, 3, 0, 3, 1, 4, 5, 7, 4, 7, 6, 0, 1, 5, 0, 5, 4,
+			2, 6, 7, 2, 7, 3, 0, 4, 6, 0, 6, 2, 1, 3, 7, 1, 7, 5 };
+		return new IndexedMesh(vertices, faces);
+	}
+
+	@Test
+	public void testArea() {
+		assertEquals(2 * (6 + 8 + 12), box().getArea(), 1e-9);
+	}
+
+	@Test
+	public void testVolume() {
+		assertEquals(24, box().getVolume(), 1e-9);
+	}
+
+	@Test
+	public void testVolumeIsTranslationInvariant() {
+		final IndexedMesh box = box();
+		final float[] vertices = box.getVertices();
+		for (int i = 0; i < vertices.length; i++) {
+			vertices[i] += 100 + i % 3;
+		}
+		assertEquals(24, box.getVolume(), 1e-6);
+	}
+
+	@Test
+	public void testVertexPoints() {
+		final double[][] points = box().getVertexPoints();
+		assertEquals(8, points.length);
+		assertEquals(2, points[7][0], 0);
+		assertEquals(3, points[7][1], 0);
+		assertEquals(4, points[7][2], 0);
+	}
+
+	@Test
+	public void testTriangleListSharesVertices() {
+		final IndexedMesh box = box();
+		final List<Point3f> triangles = box.toTriangleList();
+		assertEquals(3 * box.getFaceCount(), triangles.size());
+		// faces 0 and 1 both start at vertex 0
+		assertSame(triangles.get(0), triangles.get(3));
+		assertEquals(3, triangles.get(1).y, 0);
+	}
+}
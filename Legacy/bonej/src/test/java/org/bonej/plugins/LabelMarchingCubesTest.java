@@ -0,0 +1,200 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+
+public class LabelMarchingCubesTest {
+
+	/**
+	 * Check that every particle's mesh is closed and consistently oriented:
+	 * each directed edge must be matched by exactly one reversed edge
+	 */
+	@Test
+	public void testMeshesAreClosed() {
+		final ImagePlus imp = ConnectedComponentsTest.noise(23, 19, 17, 0.35, 0xB0E);
+		final ConnectedComponents cc = new ConnectedComponents();
+		final int[][] labels = cc.run(imp, ConnectedComponents.FORE);
+		final int nParticles = cc.getNParticles();
+		final int[][] limits = limits(labels, imp.getWidth(), nParticles);
+		for (final int resampling : new int[] { 1, 2, 3 }) {
+			final IndexedMesh[] meshes = LabelMarchingCubes.getMeshes(imp, labels,
+				limits, nParticles, resampling);
+			assertNull(meshes[0]);
+			for (int p = 1; p < nParticles; p++) {
+				assertNotNull(meshes[p]);
+				final int[] faces = meshes[p].getFaces();
+				final Map<Long, Integer> edges = new HashMap<>();
+				for (int f = 0; f < faces.length; f += 3) {
+					for (int k = 0; k < 3; k++) {
+						final long a = faces[f + k];
+						final long b = faces[f + (k + 1) % 3];
+						edges.merge(a << 32 | b, 1, Integer::sum);
+					}
+				}
+				for (final Map.Entry<Long, Integer> edge : edges.entrySet()) {
+					final long key = edge.getKey();
+					final long reverse = (key & 0xFFFFFFFFL) << 32 | key >>> 32;
+					assertEquals(Integer.valueOf(1), edge.getValue());
+					assertEquals(Integer.valueOf(1), edges.get(reverse));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check that a ball's mesh encloses roughly the ball's volume, with
+	 * outward-facing triangles
+	 */
+	@Test
+	public void testBallVolume() {
+		final int size = 32;
+		final double radius = 12;
+		final ImageStack stack = new ImageStack(size, size);
+		long voxels = 0;
+		for (int z = 0; z < size; z++) {
+			final ByteProcessor bp = new ByteProcessor(size, size);
+			for (int y = 0; y < size; y++) {
+				for (int x = 0; x < size; x++) {
+					final double dx = x - 15.5;
+					final double dy = y - 15.5;
+					final double dz = z - 15.5;
+					if (dx * dx + dy * dy + dz * dz <= radius * radius) {
+						bp.set(y * size + x, 255);
+						voxels++;
+					}
+				}
+			}
+			stack.addSlice(bp);
+		}
+		final ImagePlus imp = new ImagePlus("ball", stack);
+		final ConnectedComponents cc = new ConnectedComponents();
+		final int[][] labels = cc.run(imp, ConnectedComponents.FORE);
+		final IndexedMesh[] meshes = LabelMarchingCubes.getMeshes(imp, labels,
+			limits(labels, size, cc.getNParticles()), cc.getNParticles(), 1);
+		assertEquals(2, meshes.length);
+
+		final double volume = volume(meshes[1]);
+		assertTrue(volume > 0);
+		assertEquals(voxels, volume, 0.05 * voxels);
+	}
+
+	/**
+	 * Check that a plate one voxel thick keeps its surface when resampled, and
+	 * that moving it by a voxel moves its mesh without changing its shape
+	 */
+	@Test
+	public void testResampledThinPlate() {
+		final int resampling = 2;
+		IndexedMesh previous = null;
+		for (int offset = 0; offset < 2; offset++) {
+			final ImageStack stack = new ImageStack(16, 16);
+			for (int z = 0; z < 8; z++) {
+				final ByteProcessor bp = new ByteProcessor(16, 16);
+				if (z == 3 + offset) {
+					for (int y = 4 + offset; y < 11 + offset; y++) {
+						for (int x = 3 + offset; x < 12 + offset; x++) {
+							bp.set(x, y, 255);
+						}
+					}
+				}
+				stack.addSlice(bp);
+			}
+			final ImagePlus imp = new ImagePlus("plate", stack);
+			final ConnectedComponents cc = new ConnectedComponents();
+			final int[][] labels = cc.run(imp, ConnectedComponents.FORE);
+			final IndexedMesh[] meshes = LabelMarchingCubes.getMeshes(imp, labels,
+				limits(labels, 16, cc.getNParticles()), cc.getNParticles(),
+				resampling);
+			assertEquals(2, meshes.length);
+			assertNotNull(meshes[1]);
+			assertTrue(volume(meshes[1]) > 0);
+			if (previous != null) {
+				final float[] a = previous.getVertices();
+				final float[] b = meshes[1].getVertices();
+				assertEquals(a.length, b.length);
+				for (int i = 0; i < a.length; i++) {
+					assertEquals(a[i] + 1, b[i], 1e-5);
+				}
+			}
+			previous = meshes[1];
+		}
+	}
+
+	private static double volume(final IndexedMesh mesh) {
+		final float[] v = mesh.getVertices();
+		final int[] faces = mesh.getFaces();
+		double volume = 0;
+		for (int f = 0; f < faces.length; f += 3) {
+			final int a = 3 * faces[f];
+			final int b = 3 * faces[f + 1];
+			final int c = 3 * faces[f + 2];
+			volume += (v[a] * (v[b + 1] * v[c + 2] - v[b + 2] * v[c + 1]) + v[a + 1] *
+				(v[b + 2] * v[c] - v[b] * v[c + 2]) + v[a + 2] * (v[b] * v[c + 1] -
+					v[b + 1] * v[c])) / 6;
+		}
+		return volume;
+	}
+
+	private static int[][] limits(final int[][] labels, final int w,
+		final int nParticles)
+	{
+		final int[][] limits = new int[nParticles][];
+		for (int p = 0; p < nParticles; p++) {
+			limits[p] = new int[] { Integer.MAX_VALUE, -1, Integer.MAX_VALUE, -1,
+				Integer.MAX_VALUE, -1 };
+		}
+		for (int z = 0; z < labels.length; z++) {
+			for (int i = 0; i < labels[z].length; i++) {
+				final int[] l = limits[labels[z][i]];
+				final int x = i % w;
+				final int y = i / w;
+				l[0] = Math.min(l[0], x);
+				l[1] = Math.max(l[1], x);
+				l[2] = Math.min(l[2], y);
+				l[3] = Math.max(l[3], y);
+				l[4] = Math.min(l[4], z);
+				l[5] = Math.max(l[5], z);
+			}
+		}
+		return limits;
+	}
+}
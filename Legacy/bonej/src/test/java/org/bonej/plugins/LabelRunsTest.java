@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import Jama.Matrix;
+import ij.ImagePlus;
+import ij.measure.Calibration;
+
+public class LabelRunsTest {
+
+	/**
+	 * Check that decoding the runs gives back the label array
+	 */
+	@Test
+	public void testEncodeRoundTrip() {
+		final int w = 37;
+		final int h = 29;
+		final ImagePlus imp = ConnectedComponentsTest.noise(w, h, 11, 0.4, 0xB0E);
+		final int[][] labels = new ConnectedComponents().run(imp, ConnectedComponents.FORE);
+		final LabelRuns labelRuns = LabelRuns.encode(labels, w, h);
+		assertEquals(labels.length, labelRuns.getDepth());
+		for (int z = 0; z < labels.length; z++) {
+			final int[] decoded = new int[w * h];
+			final int[] runs = labelRuns.getRuns(z);
+			for (int r = 0; r < runs.length; r += LabelRuns.RUN_SIZE) {
+				final int start = runs[r + LabelRuns.START];
+				final int end = start + runs[r + LabelRuns.LENGTH];
+				assertEquals("Run crosses a row boundary", start / w, (end - 1) / w);
+				Arrays.fill(decoded, start, end, runs[r + LabelRuns.LABEL]);
+			}
+			assertArrayEquals(labels[z], decoded);
+		}
+	}
+
+	/**
+	 * Check that boxes aligned to arbitrary axes, found from run end points,
+	 * enclose every voxel of the particle and touch it on each side
+	 */
+	@Test
+	public void testAlignedBoxesMatchVoxelScan() {
+		final int w = 31;
+		final int h = 27;
+		final int d = 19;
+		final ImagePlus imp = ConnectedComponentsTest.noise(w, h, d, 0.35, 0xB0E);
+		final Calibration cal = imp.getCalibration();
+		cal.pixelWidth = 0.5;
+		cal.pixelHeight = 0.7;
+		cal.pixelDepth = 1.3;
+		final ConnectedComponents cc = new ConnectedComponents();
+		final int[][] labels = cc.run(imp, ConnectedComponents.FORE);
+		final int nParticles = cc.getNParticles();
+		final LabelRuns labelRuns = LabelRuns.encode(labels, w, h);
+
+		// a rotation about an oblique axis, the same for every particle
+		final double c = Math.cos(0.7);
+		final double s = Math.sin(0.7);
+		final Matrix rotation = new Matrix(new double[][] { { c, -s, 0 }, { s, c, 0 }, { 0, 0, 1 } })
+			.times(new Matrix(new double[][] { { 1, 0, 0 }, { 0, c, -s }, { 0, s, c } }));
+		final Matrix[] tensors = new Matrix[nParticles];
+		Arrays.fill(tensors, rotation);
+		final double[][] boxes = ParticleAnalysis.getAxisAlignedBoundingBoxes(imp, labelRuns, tensors,
+			nParticles);
+
+		final double[][] limits = new double[nParticles][];
+		for (int p = 1; p < nParticles; p++)
+			limits[p] = new double[] { Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE,
+				-Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE };
+		final double[][] v = rotation.getArray();
+		for (int z = 0; z < d; z++)
+			for (int y = 0; y < h; y++)
+				for (int x = 0; x < w; x++) {
+					final int p = labels[z][y * w + x];
+					if (p == 0) continue;
+					final double[] q = { x * cal.pixelWidth, y * cal.pixelHeight, z * cal.pixelDepth };
+					for (int a = 0; a < 3; a++) {
+						final double l = q[0] * v[0][a] + q[1] * v[1][a] + q[2] * v[2][a];
+						limits[p][2 * a] = Math.min(limits[p][2 * a], l);
+						limits[p][2 * a + 1] = Math.max(limits[p][2 * a + 1], l);
+					}
+				}
+		for (int p = 1; p < nParticles; p++) {
+			for (int a = 0; a < 3; a++) {
+				assertEquals(limits[p][2 * a + 1] - limits[p][2 * a], boxes[p][3 + a], 1e-9);
+			}
+		}
+	}
+}
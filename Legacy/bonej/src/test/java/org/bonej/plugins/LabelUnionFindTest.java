@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class LabelUnionFindTest {
+
+	@Test
+	public void testRelabel() {
+		final LabelUnionFind unionFind = new LabelUnionFind(8);
+		unionFind.union(5, 2);
+		unionFind.union(7, 5);
+		unionFind.union(3, 6);
+		final int[] lut = unionFind.relabel();
+		assertEquals(0, lut[0]);
+		assertEquals(4, unionFind.getNLabels());
+		assertEquals(1, lut[1]);
+		assertEquals(2, lut[2]);
+		assertEquals(2, lut[5]);
+		assertEquals(2, lut[7]);
+		assertEquals(3, lut[3]);
+		assertEquals(3, lut[6]);
+		assertEquals(4, lut[4]);
+	}
+
+	@Test
+	public void testGrow() {
+		final LabelUnionFind unionFind = new LabelUnionFind(3);
+		unionFind.union(1, 2);
+		unionFind.grow(6);
+		unionFind.union(5, 2);
+		assertEquals(6, unionFind.size());
+		assertEquals(unionFind.find(1), unionFind.find(5));
+		assertNotEquals(unionFind.find(1), unionFind.find(4));
+	}
+
+	/**
+	 * Join every odd label to its odd neighbour and every even label to its even
+	 * neighbour from many threads at once, which should leave two sets.
+	 */
+	@Test
+	public void testConcurrentUnion() {
+		final int size = 100_001;
+		final LabelUnionFind.Concurrent concurrent = new LabelUnionFind.Concurrent(size);
+		IntStream.range(1, size - 2).parallel().forEach(i -> concurrent.union(i, i + 2));
+		final LabelUnionFind unionFind = concurrent.toLabelUnionFind();
+		final int[] lut = unionFind.relabel();
+		assertEquals(2, unionFind.getNLabels());
+		for (int i = 1; i < size; i++) {
+			assertEquals(i % 2 == 1 ? 1 : 2, lut[i]);
+		}
+	}
+}
@@ -30,11 +30,21 @@
 
 package org.bonej.plugins;
 
+import static org.bonej.plugins.Moments.getCentroid3D;
 import static org.bonej.plugins.Moments.getEmptyPixels;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.awt.Rectangle;
+import java.util.Random;
+
 import org.junit.Test;
 
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.measure.Calibration;
+import ij.process.ByteProcessor;
+
 /**
  * Tests for the {@link Moments} class.
  *
@@ -70,4 +80,65 @@ public class MomentsTest {
 	public void testGetEmptyPixelsBadBitDepth() {
 		getEmptyPixels(1, 1, 64);
 	}
+
+	/**
+	 * Check that the single pass finds the same centroid and inertia tensor as
+	 * a centroid pass followed by a moments pass, on an anisotropic calibrated
+	 * stack with density scaling, a ROI and a slice range
+	 */
+	@Test
+	public void testSinglePassMatchesTwoPasses() {
+		final int w = 37;
+		final int h = 29;
+		final Random random = new Random(0xB0E);
+		final ImageStack stack = new ImageStack(w, h);
+		for (int z = 0; z < 21; z++) {
+			final ByteProcessor bp = new ByteProcessor(w, h);
+			for (int y = 0; y < h; y++) {
+				for (int x = 0; x < w; x++) {
+					// denser towards a corner, so the products of inertia are not 0
+					if (random.nextInt(x + y + z + 10) < 8) bp.set(x, y, random.nextInt(
+						256));
+				}
+			}
+			stack.addSlice(bp);
+		}
+		final ImagePlus imp = new ImagePlus("noise", stack);
+		final Calibration cal = imp.getCalibration();
+		cal.pixelWidth = 0.2;
+		cal.pixelHeight = 0.3;
+		cal.pixelDepth = 0.7;
+		cal.setUnit("mm");
+		imp.setRoi(new Rectangle(4, 3, 25, 22));
+		final int startSlice = 3;
+		final int endSlice = 17;
+		final double min = 60;
+		final double max = 230;
+		final double m = 0.004;
+		final double c = 0.5;
+		final Moments moments = new Moments();
+
+		final double[] centroid = getCentroid3D(imp, startSlice, endSlice, min,
+			max, m, c);
+		final double[] twoPass = (double[]) moments.calculateMoments(imp,
+			startSlice, endSlice, centroid, min, max, m, c)[1];
+		final Object[] singlePassResults = moments.calculateMomentsSinglePass(imp,
+			startSlice, endSlice, min, max, m, c);
+		final double[] singlePassCentroid = (double[]) singlePassResults[2];
+		final double[] singlePass = (double[]) singlePassResults[1];
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(centroid[i], singlePassCentroid[i], 1e-9 * centroid[i]);
+		}
+		// volume and mass
+		assertEquals(twoPass[0], singlePass[0], 1e-9 * twoPass[0]);
+		assertEquals(twoPass[1], singlePass[1], 1e-9 * twoPass[1]);
+		// the tensor's elements, relative to its largest moment
+		final double scale = Math.max(twoPass[2], Math.max(twoPass[3],
+			twoPass[4]));
+		for (int i = 2; i < 8; i++) {
+			assertEquals(twoPass[i], singlePass[i], 1e-9 * scale);
+		}
+		assertTrue(Math.abs(twoPass[5]) > 1e-3 * scale);
+	}
 }
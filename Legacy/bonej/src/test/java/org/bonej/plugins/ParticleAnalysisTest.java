@@ -0,0 +1,131 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+
+public class ParticleAnalysisTest {
+
+	/**
+	 * The label-aware sweep must give the same Euler characteristic as running
+	 * Connectivity on each particle cropped out on its own, and the same cavity
+	 * count as labelling the background of each crop.
+	 */
+	@Test
+	public void testEulerCharacterMatchesCroppedParticles() {
+		final int w = 31;
+		final int h = 27;
+		final int d = 23;
+		for (final double density : new double[] { 0.3, 0.7 }) {
+			final ImagePlus imp = ConnectedComponentsTest.noise(w, h, d, density,
+				0xE0E);
+			// clear the edges so that every crop is padded all round
+			final ImageStack stack = imp.getImageStack();
+			for (int z = 0; z < d; z++) {
+				final byte[] pixels = (byte[]) stack.getPixels(z + 1);
+				for (int y = 0; y < h; y++) {
+					for (int x = 0; x < w; x++) {
+						if (x == 0 || y == 0 || z == 0 || x == w - 1 || y == h - 1 ||
+							z == d - 1) pixels[y * w + x] = 0;
+					}
+				}
+			}
+			final ConnectedComponents cc = new ConnectedComponents();
+			final int[][] labels = cc.run(imp, ConnectedComponents.FORE);
+			final int nParticles = cc.getNParticles();
+			final int[][] limits = ParticleStatistics.accumulate(imp, LabelRuns
+				.encode(labels, w, h), nParticles, null).getLimits();
+
+			final double[][] eulerCharacters = ParticleAnalysis.getEulerCharacter(
+				imp, labels, nParticles);
+
+			final Connectivity connectivity = new Connectivity();
+			for (int p = 1; p < nParticles; p++) {
+				final ImagePlus particleImp = ParticleAnalysis.getBinaryParticle(p, imp,
+					labels, limits, 1);
+				assertEquals("Euler characteristic of particle " + p, connectivity
+					.getSumEuler(particleImp), eulerCharacters[p][0], 0);
+				final ConnectedComponents back = new ConnectedComponents();
+				back.run(particleImp, ConnectedComponents.BACK);
+				assertEquals("Cavities of particle " + p, back.getNParticles() - 2,
+					eulerCharacters[p][2], 0);
+			}
+		}
+	}
+
+	/**
+	 * A hollow box with a particle floating in its cavity, and a ring through a
+	 * second box's wall
+	 */
+	@Test
+	public void testNestedCavities() {
+		final int w = 24;
+		final int h = 12;
+		final int d = 12;
+		final ImageStack stack = new ImageStack(w, h);
+		for (int z = 0; z < d; z++) {
+			final byte[] pixels = new byte[w * h];
+			for (int y = 0; y < h; y++) {
+				for (int x = 0; x < w; x++) {
+					final boolean shell = x >= 1 && x <= 10 && y >= 1 && y <= 10 && z >= 1 &&
+						z <= 10 && (x == 1 || x == 10 || y == 1 || y == 10 || z == 1 ||
+							z == 10);
+					final boolean core = x >= 4 && x <= 7 && y >= 4 && y <= 7 && z >= 4 &&
+						z <= 7;
+					final boolean ring = x >= 13 && x <= 21 && y >= 2 && y <= 9 && z == 5 &&
+						!(x >= 15 && x <= 19 && y >= 4 && y <= 7);
+					if (shell || core || ring) pixels[y * w + x] = (byte) 255;
+				}
+			}
+			stack.addSlice(new ByteProcessor(w, h, pixels));
+		}
+		final ImagePlus imp = new ImagePlus("nested", stack);
+		final ConnectedComponents cc = new ConnectedComponents();
+		final int[][] labels = cc.run(imp, ConnectedComponents.FORE);
+		final int nParticles = cc.getNParticles();
+		assertEquals(4, nParticles);
+
+		final double[][] eulerCharacters = ParticleAnalysis.getEulerCharacter(imp,
+			labels, nParticles);
+		final double[][] expected = new double[nParticles][];
+		expected[labels[1][1 * w + 1]] = new double[] { 2, 0, 1 };
+		expected[labels[4][4 * w + 4]] = new double[] { 1, 0, 0 };
+		expected[labels[5][2 * w + 13]] = new double[] { 0, 1, 0 };
+		for (int p = 1; p < nParticles; p++) {
+			for (int i = 0; i < 3; i++)
+				assertEquals(expected[p][i], eulerCharacters[p][i], 0);
+		}
+	}
+}
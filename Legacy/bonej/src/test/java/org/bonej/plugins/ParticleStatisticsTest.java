@@ -0,0 +1,168 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.measure.Calibration;
+import ij.process.FloatProcessor;
+
+public class ParticleStatisticsTest {
+
+	/**
+	 * Check that the single sweep over the runs gives the same results as
+	 * measuring the particles voxel by voxel
+	 */
+	@Test
+	public void testAccumulateMatchesVoxelScan() {
+		final int w = 48;
+		final int h = 40;
+		final int d = 23;
+		final ImagePlus imp = ConnectedComponentsTest.noise(w, h, d, 0.3, 0xB0E);
+		final Calibration cal = imp.getCalibration();
+		cal.pixelWidth = 0.5;
+		cal.pixelHeight = 0.7;
+		cal.pixelDepth = 1.3;
+		final ConnectedComponents cc = new ConnectedComponents();
+		final int[][] labels = cc.run(imp, ConnectedComponents.FORE);
+		final int nParticles = cc.getNParticles();
+		final LabelRuns labelRuns = LabelRuns.encode(labels, w, h);
+
+		// intensities with some zero values, which are left out of the sums
+		final Random random = new Random(0xB0E);
+		final ImageStack stack = new ImageStack(w, h);
+		for (int z = 0; z < d; z++) {
+			final float[] pixels = new float[w * h];
+			for (int i = 0; i < pixels.length; i++)
+				pixels[i] = random.nextDouble() < 0.2 ? 0 : random.nextFloat() * 10;
+			stack.addSlice(new FloatProcessor(w, h, pixels));
+		}
+		final ImagePlus intensityImp = new ImagePlus("intensity", stack);
+
+		final ParticleStatistics statistics = ParticleStatistics.accumulate(imp,
+			labelRuns, nParticles, intensityImp);
+
+		// voxel-by-voxel reference
+		final long[] sizes = new long[nParticles];
+		final double[][] sums = new double[nParticles][3];
+		final int[][] limits = new int[nParticles][];
+		final double[] intensitySums = new double[nParticles];
+		final double[] maxima = new double[nParticles];
+		for (int p = 1; p < nParticles; p++)
+			limits[p] = new int[] { Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 0,
+				Integer.MAX_VALUE, 0 };
+		for (int z = 0; z < d; z++) {
+			final float[] pixels = (float[]) stack.getPixels(z + 1);
+			for (int y = 0; y < h; y++)
+				for (int x = 0; x < w; x++) {
+					final int p = labels[z][y * w + x];
+					if (p == 0) continue;
+					sizes[p]++;
+					sums[p][0] += x * cal.pixelWidth;
+					sums[p][1] += y * cal.pixelHeight;
+					sums[p][2] += z * cal.pixelDepth;
+					limits[p][0] = Math.min(limits[p][0], x);
+					limits[p][1] = Math.max(limits[p][1], x);
+					limits[p][2] = Math.min(limits[p][2], y);
+					limits[p][3] = Math.max(limits[p][3], y);
+					limits[p][4] = Math.min(limits[p][4], z);
+					limits[p][5] = Math.max(limits[p][5], z);
+					final double value = pixels[y * w + x];
+					if (value > 0) {
+						intensitySums[p] += value;
+						maxima[p] = Math.max(maxima[p], value);
+					}
+				}
+		}
+		final double[][] centroids = new double[nParticles][3];
+		for (int p = 1; p < nParticles; p++)
+			for (int i = 0; i < 3; i++)
+				centroids[p][i] = sums[p][i] / sizes[p];
+
+		final double vw = cal.pixelWidth * cal.pixelWidth / 12;
+		final double vh = cal.pixelHeight * cal.pixelHeight / 12;
+		final double vd = cal.pixelDepth * cal.pixelDepth / 12;
+		final double[][][] tensors = new double[nParticles][3][3];
+		final double[] sumSquares = new double[nParticles];
+		for (int z = 0; z < d; z++) {
+			final float[] pixels = (float[]) stack.getPixels(z + 1);
+			for (int y = 0; y < h; y++)
+				for (int x = 0; x < w; x++) {
+					final int p = labels[z][y * w + x];
+					if (p == 0) continue;
+					final double dx = x * cal.pixelWidth - centroids[p][0];
+					final double dy = y * cal.pixelHeight - centroids[p][1];
+					final double dz = z * cal.pixelDepth - centroids[p][2];
+					final double[][] t = tensors[p];
+					t[0][0] += dy * dy + dz * dz + vh + vd;
+					t[1][1] += dx * dx + dz * dz + vw + vd;
+					t[2][2] += dx * dx + dy * dy + vw + vh;
+					t[0][1] -= dx * dy;
+					t[0][2] -= dx * dz;
+					t[1][2] -= dy * dz;
+					final double value = pixels[y * w + x];
+					if (value > 0) {
+						final double residual = value - intensitySums[p] / sizes[p];
+						sumSquares[p] += residual * residual;
+					}
+				}
+		}
+
+		final long[] counts = statistics.getParticleSizes();
+		final double[][] fusedCentroids = statistics.getCentroids();
+		final int[][] fusedLimits = statistics.getLimits();
+		final EigenvalueDecomposition[] fusedEigens = statistics.getEigens();
+		final double[][] fusedMeanStdDev = statistics.getMeanStdDev();
+		for (int p = 1; p < nParticles; p++) {
+			assertEquals(sizes[p], counts[p]);
+			assertArrayEquals(centroids[p], fusedCentroids[p], 1e-9);
+			assertArrayEquals(limits[p], fusedLimits[p]);
+			final double[][] t = tensors[p];
+			t[1][0] = t[0][1];
+			t[2][0] = t[0][2];
+			t[2][1] = t[1][2];
+			final double[] eigenvalues = new EigenvalueDecomposition(new Matrix(t))
+				.getRealEigenvalues();
+			assertArrayEquals(eigenvalues, fusedEigens[p].getRealEigenvalues(),
+				1e-9 * Math.max(1, eigenvalues[2]));
+			assertEquals(intensitySums[p] / sizes[p], fusedMeanStdDev[p][0], 1e-9);
+			assertEquals(Math.sqrt(sumSquares[p] / sizes[p]), fusedMeanStdDev[p][1], 1e-6);
+			assertEquals(maxima[p], fusedMeanStdDev[p][2], 0);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import Jama.EigenvalueDecomposition;
+import ij.ImagePlus;
+
+public class ParticleSumsTest {
+
+	/**
+	 * Check that sparse blocks are created on first touch, initialised from the
+	 * template and survive growth of the backing array
+	 */
+	@Test
+	public void testSparseBlocks() {
+		final ParticleSums sums = ParticleSums.create(1000, new double[] { 0, 7 }, true);
+		for (int label = 999; label > 0; label -= 3) {
+			final int offset = sums.offset(label);
+			sums.values()[offset] += label;
+		}
+		for (int label = 999; label > 0; label -= 3) {
+			sums.values()[sums.offset(label)] += label;
+		}
+		assertEquals(333, sums.size());
+		for (int slot = 0; slot < sums.size(); slot++) {
+			final int label = sums.label(slot);
+			assertEquals(2.0 * label, sums.values()[slot * 2], 0);
+			assertEquals(7.0, sums.values()[slot * 2 + 1], 0);
+		}
+	}
+
+	/**
+	 * Check that the statistics sweep gives the same results with dense and
+	 * sparse per-thread sums
+	 */
+	@Test
+	public void testSparseStatisticsMatchDense() {
+		final ImagePlus imp = ConnectedComponentsTest.noise(48, 40, 37, 0.3, 0xB0E);
+		final ConnectedComponents cc = new ConnectedComponents();
+		final int[][] labels = cc.run(imp, ConnectedComponents.FORE);
+		final int nParticles = cc.getNParticles();
+		final LabelRuns labelRuns = LabelRuns.encode(labels, 48, 40);
+
+		final ParticleStatistics dense = ParticleStatistics.accumulate(imp, labelRuns, nParticles, null, false);
+		final ParticleStatistics sparse = ParticleStatistics.accumulate(imp, labelRuns, nParticles, null, true);
+		assertArrayEquals(dense.getParticleSizes(), sparse.getParticleSizes());
+		final int[][] denseLimits = dense.getLimits();
+		final int[][] sparseLimits = sparse.getLimits();
+		final EigenvalueDecomposition[] denseEigens = dense.getEigens();
+		final EigenvalueDecomposition[] sparseEigens = sparse.getEigens();
+		for (int p = 1; p < nParticles; p++) {
+			assertArrayEquals(denseLimits[p], sparseLimits[p]);
+			for (int i = 0; i < 3; i++) {
+				// summation order depends on how slabs are shared between threads
+				final double expected = denseEigens[p].getD().get(i, i);
+				assertEquals(expected, sparseEigens[p].getD().get(i, i), 1e-12 * Math.max(1, expected));
+			}
+		}
+	}
+}
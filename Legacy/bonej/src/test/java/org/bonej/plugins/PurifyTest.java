@@ -28,12 +28,16 @@
  */
 package org.bonej.plugins;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.VirtualStack;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 
@@ -103,6 +107,213 @@ public class PurifyTest {
 		}
 	}
 
+	/**
+	 * Check that an enclosed cavity is filled, while a tunnel that reaches the
+	 * side of the stack stays empty
+	 */
+	@Test
+	public void testFillsCavityButNotTunnel() {
+		final ImageStack stack = new ImageStack(32, 32);
+		for (int i = 0; i < 32; i++) {
+			stack.addSlice(new ByteProcessor(32, 32));
+		}
+		fill(stack, 255, 6, 6, 6, 20, 20, 20);
+		// cavity in the middle of the brick
+		fill(stack, 0, 14, 14, 14, 4, 4, 4);
+		// tunnel from the brick's top face into the stack's top face
+		fill(stack, 0, 8, 8, 1, 2, 2, 10);
+
+		final ImageStack purified = Purify.purify(new ImagePlus("cavity", stack))
+			.getImageStack();
+
+		assertEquals(255, purified.getProcessor(15).get(15, 15));
+		assertEquals(0, purified.getProcessor(8).get(8, 8));
+	}
+
+	/**
+	 * Check that the cavity of a removed hollow particle joins the background
+	 * outside it, and so stays empty
+	 */
+	@Test
+	public void testRemovedShellCavityStaysEmpty() {
+		final ImageStack stack = emptyStack(40, 40, 40);
+		// kept: 16 x 16 x 16 solid brick
+		fill(stack, 255, 2, 2, 2, 16, 16, 16);
+		// removed: 12 x 12 x 12 shell around a 6 x 6 x 6 cavity
+		fill(stack, 255, 22, 22, 22, 12, 12, 12);
+		fill(stack, 0, 25, 25, 25, 6, 6, 6);
+
+		final ImageStack purified = Purify.purify(new ImagePlus("shell", stack))
+			.getImageStack();
+
+		assertEquals(0, purified.getProcessor(27).get(27, 27));
+		assertEquals(16 * 16 * 16, countForeground(purified));
+	}
+
+	/**
+	 * Check particles inside the cavities of other particles: a particle
+	 * inside the kept particle's cavity is removed and the whole cavity
+	 * filled, while a removed shell and the particle inside it both become
+	 * part of the outside background
+	 */
+	@Test
+	public void testNestedParticles() {
+		final ImageStack stack = emptyStack(48, 48, 48);
+		// kept: 30 x 30 x 30 shell around a 20 x 20 x 20 cavity
+		fill(stack, 255, 2, 2, 2, 30, 30, 30);
+		fill(stack, 0, 7, 7, 7, 20, 20, 20);
+		// particle inside the kept cavity
+		fill(stack, 255, 14, 14, 14, 4, 4, 4);
+		// removed: 12 x 12 x 12 shell around a 6 x 6 x 6 cavity
+		fill(stack, 255, 34, 34, 34, 12, 12, 12);
+		fill(stack, 0, 37, 37, 37, 6, 6, 6);
+		// particle inside the removed shell's cavity
+		fill(stack, 255, 39, 39, 39, 2, 2, 2);
+
+		final ImageStack purified = Purify.purify(new ImagePlus("nested", stack))
+			.getImageStack();
+
+		assertEquals(255, purified.getProcessor(10).get(10, 10));
+		assertEquals(0, purified.getProcessor(38).get(38, 38));
+		assertEquals(0, purified.getProcessor(40).get(40, 40));
+		assertEquals(30 * 30 * 30, countForeground(purified));
+	}
+
+	/**
+	 * Check that purifying in place gives the same image as purifying a copy
+	 */
+	@Test
+	public void testInPlaceMatchesCopy() {
+		final ImagePlus imp = brick(32, 32, 16, 8, 8, 8, 4, 4, 4);
+		addCuboid(imp.getImageStack(), 4, 4, 4, 20, 20, 8);
+		final ImagePlus copy = Purify.purify(imp);
+
+		final ImagePlus inPlace = Purify.purify(imp, true);
+
+		assertSame(imp, inPlace);
+		for (int z = 1; z <= 16; z++) {
+			assertArrayEquals((byte[]) copy.getImageStack().getPixels(z),
+				(byte[]) inPlace.getImageStack().getPixels(z));
+		}
+	}
+
+	/**
+	 * Check that asking to purify a virtual stack in place still returns the
+	 * purified image, although its slices' pixels can't be written
+	 */
+	@Test
+	public void testInPlaceOnVirtualStack() {
+		final ImagePlus imp = brick(32, 32, 16, 8, 8, 8, 4, 4, 4);
+		addCuboid(imp.getImageStack(), 4, 4, 4, 20, 20, 8);
+		final ImagePlus copy = Purify.purify(imp);
+		final ImagePlus virtual = new ImagePlus("virtual", new CopyingStack(imp
+			.getImageStack()));
+
+		final ImagePlus purified = Purify.purify(virtual, true);
+
+		assertNotSame(virtual, purified);
+		for (int z = 1; z <= 16; z++) {
+			assertArrayEquals((byte[]) copy.getImageStack().getPixels(z),
+				(byte[]) purified.getImageStack().getPixels(z));
+		}
+	}
+
+	/**
+	 * Check that purifying in streamed slabs gives the same image as purifying
+	 * in memory, whether or not the slabs split particles and cavities
+	 */
+	@Test
+	public void testStreamedMatchesInMemory() {
+		for (final double density : new double[] { 0.3, 0.6 }) {
+			final ImagePlus imp = ConnectedComponentsTest.noise(24, 20, 17, density,
+				0xB0E);
+			final ImagePlus expected = Purify.purify(imp);
+			for (final int slabSlices : new int[] { 1, 4, 17 }) {
+				final ImagePlus streamed = Purify.purifyStreamed(imp, false,
+					slabSlices);
+				assertNotSame(imp, streamed);
+				for (int z = 1; z <= 17; z++) {
+					assertArrayEquals("Slab of " + slabSlices + " slices differs at z = " +
+						z, (byte[]) expected.getImageStack().getPixels(z),
+						(byte[]) streamed.getImageStack().getPixels(z));
+				}
+			}
+		}
+	}
+
+	/**
+	 * A virtual stack that returns a new copy of a slice's pixels on every call,
+	 * as stacks read from disk or wrapped from other image types do
+	 */
+	private static final class CopyingStack extends VirtualStack {
+
+		private final ImageStack source;
+
+		private CopyingStack(final ImageStack source) {
+			super(source.getWidth(), source.getHeight(), null, null);
+			this.source = source;
+		}
+
+		@Override
+		public int getSize() {
+			return source.getSize();
+		}
+
+		@Override
+		public Object getPixels(final int n) {
+			return ((byte[]) source.getPixels(n)).clone();
+		}
+
+		@Override
+		public ImageProcessor getProcessor(final int n) {
+			return new ByteProcessor(getWidth(), getHeight(), (byte[]) getPixels(n));
+		}
+	}
+
+	private static ImageStack emptyStack(final int width, final int height,
+		final int depth)
+	{
+		final ImageStack stack = new ImageStack(width, height);
+		for (int i = 0; i < depth; i++) {
+			stack.addSlice(new ByteProcessor(width, height));
+		}
+		return stack;
+	}
+
+	private static long countForeground(final ImageStack stack) {
+		long count = 0;
+		for (int z = 1; z <= stack.getSize(); z++) {
+			for (final byte pixel : (byte[]) stack.getPixels(z)) {
+				if (pixel == (byte) 255) count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Set a cuboid of voxels to a value
+	 *
+	 * @param stack Image stack
+	 * @param value pixel value
+	 * @param x top left corner x coordinate
+	 * @param y top left corner y coordinate
+	 * @param z first slice (1-based)
+	 * @param width cuboid width
+	 * @param height cuboid height
+	 * @param depth cuboid depth
+	 */
+	private static void fill(final ImageStack stack, final int value,
+		final int x, final int y, final int z, final int width, final int height,
+		final int depth)
+	{
+		for (int i = z; i < z + depth; i++) {
+			final ImageProcessor ip = stack.getProcessor(i);
+			ip.setColor(value);
+			ip.setRoi(x, y, width, height);
+			ip.fill();
+		}
+	}
+
 	/**
 	 * 
 	 * @param width image width
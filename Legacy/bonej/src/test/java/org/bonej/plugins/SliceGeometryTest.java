@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * Mavenized version of the BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.gui.Roi;
+import ij.process.ByteProcessor;
+
+/**
+ * Tests for the {@link SliceGeometry} class.
+ */
+public class SliceGeometryTest {
+
+	private static final double PIXEL_SIZE = 0.5;
+
+	/**
+	 * Check the section properties of rectangles against their textbook values,
+	 * in a slice range of a calibrated stack with a ROI that excludes a second
+	 * object
+	 */
+	@Test
+	public void testRectangleSections() {
+		final ImageStack stack = new ImageStack(100, 80);
+		// slice 1 is outside the range, so its rectangle must not be measured
+		stack.addSlice(rectangle(0, 0, 100, 80));
+		// 40 x 10 pixels, and 10 x 30 pixels
+		stack.addSlice(rectangle(20, 30, 40, 10));
+		stack.addSlice(rectangle(45, 25, 10, 30));
+		for (int s = 1; s <= 3; s++) {
+			// outside the ROI
+			final ByteProcessor bp = (ByteProcessor) stack.getProcessor(s);
+			for (int y = 0; y < 5; y++) {
+				for (int x = 90; x < 100; x++) {
+					bp.set(x, y, 255);
+				}
+			}
+		}
+		final ImagePlus imp = new ImagePlus("rectangles", stack);
+		imp.getCalibration().pixelWidth = PIXEL_SIZE;
+		imp.getCalibration().pixelHeight = PIXEL_SIZE;
+		imp.setRoi(new Roi(10, 10, 70, 60));
+
+		final SliceGeometry sliceGeometry = new SliceGeometry();
+		assertTrue(sliceGeometry.measureSections(imp, 2, 3, 128, 255));
+
+		assertSection(sliceGeometry, 2, 20, 30, 40, 10);
+		assertSection(sliceGeometry, 3, 45, 25, 10, 30);
+		assertEquals(0, sliceGeometry.cortArea[1], 0);
+	}
+
+	@Test
+	public void testNoPixelsInRange() {
+		final ImageStack stack = new ImageStack(20, 20);
+		stack.addSlice(new ByteProcessor(20, 20));
+		final ImagePlus imp = new ImagePlus("empty", stack);
+		assertFalse(new SliceGeometry().measureSections(imp, 1, 1, 128, 255));
+	}
+
+	private static void assertSection(final SliceGeometry sliceGeometry,
+		final int s, final int x0, final int y0, final int w, final int h)
+	{
+		final double b = w * PIXEL_SIZE;
+		final double d = h * PIXEL_SIZE;
+		assertEquals(b * d, sliceGeometry.cortArea[s], 1e-9);
+		assertEquals((x0 + (w - 1) / 2.0) * PIXEL_SIZE,
+			sliceGeometry.sliceCentroids[0][s], 1e-9);
+		assertEquals((y0 + (h - 1) / 2.0) * PIXEL_SIZE,
+			sliceGeometry.sliceCentroids[1][s], 1e-9);
+		// density of a pixel is 0 * value + 1.8 by default
+		assertEquals(1.8, sliceGeometry.meanDensity[s], 1e-9);
+
+		// second moments of area around the centroidal axes
+		final double iShort = Math.min(b, d) * Math.pow(Math.max(b, d), 3) / 12;
+		final double iLong = Math.max(b, d) * Math.pow(Math.min(b, d), 3) / 12;
+		final double iSmall = Math.min(sliceGeometry.Imin[s], sliceGeometry.Imax[s]);
+		final double iLarge = Math.max(sliceGeometry.Imin[s], sliceGeometry.Imax[s]);
+		assertEquals(iLong, iSmall, 1e-3 * iLong);
+		assertEquals(iShort, iLarge, 1e-3 * iShort);
+
+		// section moduli, with distances measured to the outermost pixel centres;
+		// the fitted axes are slightly off square because of the pixel moments
+		final double cShort = (Math.max(w, h) - 1) / 2.0 * PIXEL_SIZE;
+		final double cLong = (Math.min(w, h) - 1) / 2.0 * PIXEL_SIZE;
+		final double zSmall = Math.min(sliceGeometry.Zmin[s], sliceGeometry.Zmax[s]);
+		final double zLarge = Math.max(sliceGeometry.Zmin[s], sliceGeometry.Zmax[s]);
+		assertEquals(iLong / cLong, zSmall, 5e-3 * zSmall);
+		assertEquals(iShort / cShort, zLarge, 5e-3 * zLarge);
+		assertEquals((iShort + iLong) / Math.sqrt(cShort * cShort + cLong * cLong),
+			sliceGeometry.Zpol[s], 5e-3 * sliceGeometry.Zpol[s]);
+
+		// the traced outline runs along the pixel edges
+		assertEquals(Math.sqrt(b * b + d * d), sliceGeometry.feretMax[s], 1e-6);
+		assertEquals(Math.min(b, d), sliceGeometry.feretMin[s], 0.01 * Math.min(b,
+			d));
+	}
+
+	private static ByteProcessor rectangle(final int x0, final int y0,
+		final int w, final int h)
+	{
+		final ByteProcessor bp = new ByteProcessor(100, 80);
+		for (int y = y0; y < y0 + h; y++) {
+			for (int x = x0; x < x0 + w; x++) {
+				bp.set(x, y, 255);
+			}
+		}
+		return bp;
+	}
+}
@@ -0,0 +1,629 @@
+/*-
+ * #%L
+ * Utility classes for BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.bonej.geometry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Convex hull of a 3D point set, built with the quickhull algorithm, and
+ * queries that need only the hull vertices, such as the diameter (maximum
+ * Feret) and the extent of the points along an arbitrary direction.
+ * <p>
+ * If the points are coplanar, or rounding produces an inconsistent hull, all
+ * the input points are kept as candidate vertices so that the queries remain
+ * exact, only slower.
+ * </p>
+ */
+public final class ConvexHull3D {
+
+	/** Maximum number of points in a leaf of the diameter search tree */
+	private static final int LEAF_SIZE = 8;
+
+	private final double[][] points;
+	private final int[] vertices;
+	private final int[][] faces;
+
+	/**
+	 * Build the convex hull of a set of points.
+	 *
+	 * @param points points in double[n][3] format
+	 */
+	public ConvexHull3D(final double[][] points) {
+		this.points = points;
+		List<Face> hull = null;
+		if (points.length >= 4) {
+			try {
+				hull = new Builder(points).build();
+			}
+			catch (final IllegalStateException e) {
+				// inconsistent horizon from rounding; fall back to all points
+				hull = null;
+			}
+		}
+		if (hull == null) {
+			vertices = new int[points.length];
+			for (int i = 0; i < points.length; i++)
+				vertices[i] = i;
+			faces = new int[0][];
+		}
+		else {
+			faces = new int[hull.size()][];
+			final boolean[] isVertex = new boolean[points.length];
+			int nVertices = 0;
+			for (int f = 0; f < faces.length; f++) {
+				faces[f] = hull.get(f).v.clone();
+				for (final int v : faces[f]) {
+					if (!isVertex[v]) {
+						isVertex[v] = true;
+						nVertices++;
+					}
+				}
+			}
+			vertices = new int[nVertices];
+			for (int i = 0, j = 0; i < points.length; i++)
+				if (isVertex[i]) vertices[j++] = i;
+		}
+	}
+
+	/**
+	 * @return indices of the hull vertices in the input point array, or of all
+	 *         input points if no valid hull could be built
+	 */
+	public int[] getVertices() {
+		return vertices.clone();
+	}
+
+	/**
+	 * @return triangular hull faces as triplets of input point indices, ordered
+	 *         anticlockwise when viewed from outside. Empty if no valid hull
+	 *         could be built.
+	 */
+	public int[][] getFaces() {
+		final int[][] copy = new int[faces.length][];
+		for (int f = 0; f < faces.length; f++)
+			copy[f] = faces[f].clone();
+		return copy;
+	}
+
+	/**
+	 * Get the minimum and maximum projection of the points onto a direction.
+	 * Only hull vertices need to be checked.
+	 *
+	 * @param direction direction vector, which need not be normalised
+	 * @return {min, max} of the dot products of the points with direction
+	 */
+	public double[] getExtent(final double[] direction) {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (final int v : vertices) {
+			final double[] p = points[v];
+			final double dot = p[0] * direction[0] + p[1] * direction[1] + p[2] *
+				direction[2];
+			min = Math.min(min, dot);
+			max = Math.max(max, dot);
+		}
+		return new double[] { min, max };
+	}
+
+	/**
+	 * Find the two points that are furthest apart, i.e. the end points of the
+	 * maximum Feret diameter.
+	 * <p>
+	 * The search is exact. Hull vertices are put in a k-d tree and pairs of
+	 * tree nodes are pruned whenever their bounding boxes cannot be further
+	 * apart than the best pair found so far, which is seeded by a few rounds of
+	 * farthest-point search.
+	 * </p>
+	 *
+	 * @return indices of the two points in the input array, or null if there
+	 *         are fewer than two points
+	 */
+	public int[] getDiameterPoints() {
+		if (vertices.length < 2) return null;
+		return new DiameterSearch(points, vertices.clone()).search();
+	}
+
+	/**
+	 * @return the maximum distance between any two points, or NaN if there are
+	 *         fewer than two points
+	 */
+	public double getDiameter() {
+		final int[] pair = getDiameterPoints();
+		if (pair == null) return Double.NaN;
+		return Math.sqrt(distanceSquared(points[pair[0]], points[pair[1]]));
+	}
+
+	private static double distanceSquared(final double[] a, final double[] b) {
+		final double dx = a[0] - b[0];
+		final double dy = a[1] - b[1];
+		final double dz = a[2] - b[2];
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	/** Triangular hull face with its plane and the points outside it */
+	private static final class Face {
+
+		/** vertices, anticlockwise viewed from outside */
+		final int[] v;
+		/** n[i] is the face across the edge v[i] to v[(i + 1) % 3] */
+		final Face[] n = new Face[3];
+		final double nx;
+		final double ny;
+		final double nz;
+		final double offset;
+		int[] outside = new int[0];
+		int nOutside;
+		boolean deleted;
+		int mark;
+
+		Face(final double[][] points, final int a, final int b, final int c) {
+			v = new int[] { a, b, c };
+			final double[] pa = points[a];
+			final double[] pb = points[b];
+			final double[] pc = points[c];
+			final double ux = pb[0] - pa[0];
+			final double uy = pb[1] - pa[1];
+			final double uz = pb[2] - pa[2];
+			final double wx = pc[0] - pa[0];
+			final double wy = pc[1] - pa[1];
+			final double wz = pc[2] - pa[2];
+			double x = uy * wz - uz * wy;
+			double y = uz * wx - ux * wz;
+			double z = ux * wy - uy * wx;
+			final double length = Math.sqrt(x * x + y * y + z * z);
+			if (length > 0) {
+				x /= length;
+				y /= length;
+				z /= length;
+			}
+			nx = x;
+			ny = y;
+			nz = z;
+			offset = nx * pa[0] + ny * pa[1] + nz * pa[2];
+		}
+
+		double distance(final double[] p) {
+			return nx * p[0] + ny * p[1] + nz * p[2] - offset;
+		}
+
+		void addOutside(final int point) {
+			if (nOutside == outside.length)
+				outside = Arrays.copyOf(outside, Math.max(4, nOutside * 2));
+			outside[nOutside++] = point;
+		}
+
+		/** index of the edge that runs from vertex a to vertex b */
+		int edge(final int a, final int b) {
+			for (int i = 0; i < 3; i++)
+				if (v[i] == a && v[(i + 1) % 3] == b) return i;
+			throw new IllegalStateException("Edge not found in neighbouring face");
+		}
+	}
+
+	/** Quickhull construction */
+	private static final class Builder {
+
+		private final double[][] points;
+		private final double tolerance;
+		private final List<Face> faces = new ArrayList<>();
+		private final ArrayDeque<Face> pending = new ArrayDeque<>();
+		/** new faces indexed by the horizon vertex they start from */
+		private final Face[] byStart;
+		private int mark;
+
+		Builder(final double[][] points) {
+			this.points = points;
+			double maxX = 0;
+			double maxY = 0;
+			double maxZ = 0;
+			for (final double[] p : points) {
+				maxX = Math.max(maxX, Math.abs(p[0]));
+				maxY = Math.max(maxY, Math.abs(p[1]));
+				maxZ = Math.max(maxZ, Math.abs(p[2]));
+			}
+			// distance below which a point is treated as lying on a plane
+			tolerance = 3 * Math.ulp(1.0) * (maxX + maxY + maxZ) * 16;
+			byStart = new Face[points.length];
+		}
+
+		/**
+		 * @return hull faces, or null if the points are coplanar
+		 */
+		List<Face> build() {
+			if (!initialTetrahedron()) return null;
+			while (!pending.isEmpty()) {
+				final Face face = pending.poll();
+				if (face.deleted || face.nOutside == 0) continue;
+				addPoint(face);
+			}
+			final List<Face> hull = new ArrayList<>();
+			for (final Face face : faces)
+				if (!face.deleted) hull.add(face);
+			return hull;
+		}
+
+		private boolean initialTetrahedron() {
+			final int n = points.length;
+			// extreme points along each axis
+			final int[] min = new int[3];
+			final int[] max = new int[3];
+			for (int i = 1; i < n; i++) {
+				for (int a = 0; a < 3; a++) {
+					if (points[i][a] < points[min[a]][a]) min[a] = i;
+					if (points[i][a] > points[max[a]][a]) max[a] = i;
+				}
+			}
+			int p0 = min[0];
+			int p1 = max[0];
+			double best = -1;
+			for (int a = 0; a < 3; a++) {
+				final double d = distanceSquared(points[min[a]], points[max[a]]);
+				if (d > best) {
+					best = d;
+					p0 = min[a];
+					p1 = max[a];
+				}
+			}
+			if (Math.sqrt(best) <= tolerance) return false;
+
+			// farthest point from the line p0-p1
+			final double[] a = points[p0];
+			final double[] b = points[p1];
+			final double ux = b[0] - a[0];
+			final double uy = b[1] - a[1];
+			final double uz = b[2] - a[2];
+			final double uu = ux * ux + uy * uy + uz * uz;
+			int p2 = -1;
+			best = 0;
+			for (int i = 0; i < n; i++) {
+				final double wx = points[i][0] - a[0];
+				final double wy = points[i][1] - a[1];
+				final double wz = points[i][2] - a[2];
+				final double cx = uy * wz - uz * wy;
+				final double cy = uz * wx - ux * wz;
+				final double cz = ux * wy - uy * wx;
+				final double d = (cx * cx + cy * cy + cz * cz) / uu;
+				if (d > best) {
+					best = d;
+					p2 = i;
+				}
+			}
+			if (p2 < 0 || Math.sqrt(best) <= tolerance) return false;
+
+			// farthest point from the plane p0-p1-p2
+			final Face base = new Face(points, p0, p1, p2);
+			int p3 = -1;
+			best = 0;
+			for (int i = 0; i < n; i++) {
+				final double d = Math.abs(base.distance(points[i]));
+				if (d > best) {
+					best = d;
+					p3 = i;
+				}
+			}
+			if (p3 < 0 || best <= tolerance) return false;
+
+			final Face[] tetra;
+			if (base.distance(points[p3]) > 0) {
+				tetra = new Face[] { new Face(points, p0, p2, p1), new Face(points, p0,
+					p1, p3), new Face(points, p1, p2, p3), new Face(points, p2, p0, p3) };
+			}
+			else {
+				tetra = new Face[] { base, new Face(points, p1, p0, p3), new Face(
+					points, p2, p1, p3), new Face(points, p0, p2, p3) };
+			}
+			for (final Face f : tetra) {
+				for (int i = 0; i < 3; i++) {
+					final int s = f.v[i];
+					final int e = f.v[(i + 1) % 3];
+					for (final Face g : tetra) {
+						if (g == f) continue;
+						for (int j = 0; j < 3; j++)
+							if (g.v[j] == e && g.v[(j + 1) % 3] == s) f.n[i] = g;
+					}
+				}
+				faces.add(f);
+			}
+
+			for (int i = 0; i < n; i++) {
+				if (i == p0 || i == p1 || i == p2 || i == p3) continue;
+				assign(i, Arrays.asList(tetra));
+			}
+			for (final Face f : tetra)
+				if (f.nOutside > 0) pending.add(f);
+			return true;
+		}
+
+		/** give a point to the first face it lies outside of, if any */
+		private void assign(final int point, final List<Face> candidates) {
+			final double[] p = points[point];
+			for (final Face f : candidates) {
+				if (f.distance(p) > tolerance) {
+					f.addOutside(point);
+					return;
+				}
+			}
+		}
+
+		private void addPoint(final Face seed) {
+			// the outside point farthest from the face is the next hull vertex
+			int eye = -1;
+			double best = 0;
+			for (int i = 0; i < seed.nOutside; i++) {
+				final double d = seed.distance(points[seed.outside[i]]);
+				if (d > best) {
+					best = d;
+					eye = seed.outside[i];
+				}
+			}
+			final double[] eyePoint = points[eye];
+
+			// faces visible from the eye, and the horizon edges around them
+			mark++;
+			final List<Face> visible = new ArrayList<>();
+			final List<Face> horizonFaces = new ArrayList<>();
+			final List<Integer> horizonEdges = new ArrayList<>();
+			final ArrayDeque<Face> stack = new ArrayDeque<>();
+			seed.mark = mark;
+			stack.push(seed);
+			while (!stack.isEmpty()) {
+				final Face f = stack.pop();
+				visible.add(f);
+				for (int i = 0; i < 3; i++) {
+					final Face g = f.n[i];
+					if (g.mark == mark) continue;
+					if (g.distance(eyePoint) > tolerance) {
+						g.mark = mark;
+						stack.push(g);
+					}
+				}
+			}
+			for (final Face f : visible) {
+				for (int i = 0; i < 3; i++) {
+					final Face g = f.n[i];
+					if (g.mark != mark) {
+						horizonFaces.add(f);
+						horizonEdges.add(i);
+					}
+				}
+			}
+
+			// cone of new faces from the horizon to the eye
+			final List<Face> cone = new ArrayList<>(horizonEdges.size());
+			for (int h = 0; h < horizonEdges.size(); h++) {
+				final Face f = horizonFaces.get(h);
+				final int i = horizonEdges.get(h);
+				final int s = f.v[i];
+				final int e = f.v[(i + 1) % 3];
+				if (byStart[s] != null) {
+					clearStarts(cone);
+					throw new IllegalStateException("Horizon is not a simple loop");
+				}
+				final Face g = f.n[i];
+				final Face face = new Face(points, s, e, eye);
+				face.n[0] = g;
+				g.n[g.edge(e, s)] = face;
+				byStart[s] = face;
+				cone.add(face);
+			}
+			for (final Face face : cone) {
+				final Face next = byStart[face.v[1]];
+				if (next == null) {
+					clearStarts(cone);
+					throw new IllegalStateException("Horizon is not a closed loop");
+				}
+				face.n[1] = next;
+				next.n[2] = face;
+			}
+			clearStarts(cone);
+
+			// hand the outside points of the visible faces to the cone
+			for (final Face f : visible) {
+				f.deleted = true;
+				for (int i = 0; i < f.nOutside; i++) {
+					final int point = f.outside[i];
+					if (point != eye) assign(point, cone);
+				}
+				f.outside = null;
+			}
+			for (final Face face : cone) {
+				faces.add(face);
+				if (face.nOutside > 0) pending.add(face);
+			}
+		}
+
+		private void clearStarts(final List<Face> cone) {
+			for (final Face face : cone)
+				byStart[face.v[0]] = null;
+		}
+	}
+
+	/** Exact diameter search over a k-d tree of candidate points */
+	private static final class DiameterSearch {
+
+		private final double[][] points;
+		private final int[] indices;
+		private double best;
+		private int bestA;
+		private int bestB;
+
+		DiameterSearch(final double[][] points, final int[] indices) {
+			this.points = points;
+			this.indices = indices;
+		}
+
+		int[] search() {
+			seed();
+			final Node root = new Node(0, indices.length);
+			visit(root, root);
+			return new int[] { bestA, bestB };
+		}
+
+		/** lower bound from a few rounds of farthest-point search */
+		private void seed() {
+			int a = indices[0];
+			bestA = a;
+			bestB = indices[1];
+			best = distanceSquared(points[bestA], points[bestB]);
+			for (int round = 0; round < 4; round++) {
+				int far = a;
+				double farDistance = -1;
+				for (final int i : indices) {
+					final double d = distanceSquared(points[a], points[i]);
+					if (d > farDistance) {
+						farDistance = d;
+						far = i;
+					}
+				}
+				if (farDistance > best) {
+					best = farDistance;
+					bestA = a;
+					bestB = far;
+				}
+				else if (round > 0) break;
+				a = far;
+			}
+		}
+
+		private void visit(final Node a, final Node b) {
+			if (a.maxDistanceSquared(b) <= best) return;
+			final boolean aLeaf = a.left == null;
+			final boolean bLeaf = b.left == null;
+			if (aLeaf && bLeaf) {
+				for (int i = a.start; i < a.end; i++) {
+					final double[] p = points[indices[i]];
+					for (int j = a == b ? i + 1 : b.start; j < b.end; j++) {
+						final double d = distanceSquared(p, points[indices[j]]);
+						if (d > best) {
+							best = d;
+							bestA = indices[i];
+							bestB = indices[j];
+						}
+					}
+				}
+				return;
+			}
+			if (a == b) {
+				visit(a.left, a.right);
+				visit(a.left, a.left);
+				visit(a.right, a.right);
+				return;
+			}
+			// split the larger node and try the more promising half first
+			final boolean splitA = !aLeaf && (bLeaf || a.size >= b.size);
+			final Node split = splitA ? a : b;
+			final Node other = splitA ? b : a;
+			final double left = split.left.maxDistanceSquared(other);
+			final double right = split.right.maxDistanceSquared(other);
+			if (left >= right) {
+				visit(split.left, other);
+				visit(split.right, other);
+			}
+			else {
+				visit(split.right, other);
+				visit(split.left, other);
+			}
+		}
+
+		/** k-d tree node over indices[start, end) */
+		private final class Node {
+
+			final int start;
+			final int end;
+			final double[] min = { Double.POSITIVE_INFINITY,
+				Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+			final double[] max = { Double.NEGATIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+			final double size;
+			Node left;
+			Node right;
+
+			Node(final int start, final int end) {
+				this.start = start;
+				this.end = end;
+				for (int i = start; i < end; i++) {
+					final double[] p = points[indices[i]];
+					for (int a = 0; a < 3; a++) {
+						min[a] = Math.min(min[a], p[a]);
+						max[a] = Math.max(max[a], p[a]);
+					}
+				}
+				int axis = 0;
+				for (int a = 1; a < 3; a++)
+					if (max[a] - min[a] > max[axis] - min[axis]) axis = a;
+				size = max[axis] - min[axis];
+				if (end - start > LEAF_SIZE && size > 0) {
+					final int mid = (start + end) >>> 1;
+					select(start, end - 1, mid, axis);
+					left = new Node(start, mid);
+					right = new Node(mid, end);
+				}
+			}
+
+			double maxDistanceSquared(final Node o) {
+				double sum = 0;
+				for (int a = 0; a < 3; a++) {
+					final double d = Math.max(max[a] - o.min[a], o.max[a] - min[a]);
+					sum += d * d;
+				}
+				return sum;
+			}
+
+			/** partial quickselect so that indices[k] splits the range on axis */
+			private void select(int lo, int hi, final int k, final int axis) {
+				while (hi > lo) {
+					final double pivot = points[indices[(lo + hi) >>> 1]][axis];
+					int i = lo;
+					int j = hi;
+					while (i <= j) {
+						while (points[indices[i]][axis] < pivot)
+							i++;
+						while (points[indices[j]][axis] > pivot)
+							j--;
+						if (i <= j) {
+							final int t = indices[i];
+							indices[i] = indices[j];
+							indices[j] = t;
+							i++;
+							j--;
+						}
+					}
+					if (k <= j) hi = j;
+					else if (k >= i) lo = i;
+					else return;
+				}
+			}
+		}
+	}
+}
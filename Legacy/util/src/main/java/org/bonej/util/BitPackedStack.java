@@ -0,0 +1,260 @@
+/*-
+ * #%L
+ * Utility classes for BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+
+package org.bonej.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+/**
+ * Binary image stack packed one bit per voxel into {@code long[]} words, which
+ * needs an eighth of the memory of a {@code byte[][]} work array.
+ * <p>
+ * Each slice is a separate {@code long[]}, and each row starts on a new word so
+ * that whole rows and their vertical neighbours can be compared 64 voxels at a
+ * time. Bit {@code x & 63} of word {@code y * getWordsPerRow() + (x >> 6)}
+ * holds voxel (x, y). Padding bits at the end of each row are always 0.
+ * </p>
+ * <p>
+ * Different slices may be modified concurrently by different threads, but a
+ * single slice must only be modified by one thread at a time.
+ * </p>
+ */
+public final class BitPackedStack {
+
+	private final int w;
+	private final int h;
+	private final int d;
+	private final int wordsPerRow;
+	private final long[][] slices;
+
+	/**
+	 * Create an empty (all background) stack
+	 *
+	 * @param w width
+	 * @param h height
+	 * @param d depth
+	 */
+	public BitPackedStack(final int w, final int h, final int d) {
+		this.w = w;
+		this.h = h;
+		this.d = d;
+		wordsPerRow = (w + 63) >>> 6;
+		slices = new long[d][wordsPerRow * h];
+	}
+
+	/**
+	 * Pack a binary image stack, treating pixels with value 255 as foreground
+	 * and all others as background. Slices are packed in parallel.
+	 *
+	 * @param stack a binary (0, 255) image stack
+	 * @return new packed stack
+	 */
+	public static BitPackedStack fromStack(final ImageStack stack) {
+		final int w = stack.getWidth();
+		final int h = stack.getHeight();
+		final int d = stack.getSize();
+		final BitPackedStack packed = new BitPackedStack(w, h, d);
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread[] threads = Multithreader.newThreads();
+		for (int thread = 0; thread < threads.length; thread++) {
+			threads[thread] = new Thread(() -> {
+				for (int z = ai.getAndIncrement(); z < d; z = ai.getAndIncrement()) {
+					final ImageProcessor ip = stack.getProcessor(z + 1);
+					final long[] slice = packed.slices[z];
+					for (int y = 0; y < h; y++) {
+						final int rowIndex = y * w;
+						final int rowWord = y * packed.wordsPerRow;
+						for (int x = 0; x < w; x++) {
+							if (ip.get(rowIndex + x) == 255)
+								slice[rowWord + (x >>> 6)] |= 1L << x;
+						}
+					}
+				}
+			});
+		}
+		Multithreader.startAndJoin(threads);
+		return packed;
+	}
+
+	/**
+	 * Check whether a voxel is foreground. No bounds checking is done.
+	 *
+	 * @param x x coordinate
+	 * @param y y coordinate
+	 * @param z z coordinate (0-based)
+	 * @return true if the voxel is foreground
+	 */
+	public boolean get(final int x, final int y, final int z) {
+		return (slices[z][y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Check whether a voxel is foreground, using its index within the slice
+	 *
+	 * @param index y * width + x
+	 * @param z z coordinate (0-based)
+	 * @return true if the voxel is foreground
+	 */
+	public boolean get(final int index, final int z) {
+		final int y = index / w;
+		return get(index - y * w, y, z);
+	}
+
+	/**
+	 * Make a voxel foreground
+	 *
+	 * @param x x coordinate
+	 * @param y y coordinate
+	 * @param z z coordinate (0-based)
+	 */
+	public void set(final int x, final int y, final int z) {
+		slices[z][y * wordsPerRow + (x >>> 6)] |= 1L << x;
+	}
+
+	/**
+	 * Make a voxel background
+	 *
+	 * @param x x coordinate
+	 * @param y y coordinate
+	 * @param z z coordinate (0-based)
+	 */
+	public void clear(final int x, final int y, final int z) {
+		slices[z][y * wordsPerRow + (x >>> 6)] &= ~(1L << x);
+	}
+
+	/**
+	 * Get the packed word holding 64 voxels of a row, with 0 outside the image
+	 *
+	 * @param wordIndex word's index in the row (x / 64)
+	 * @param y y coordinate
+	 * @param z z coordinate (0-based)
+	 * @return packed word, or 0 if (wordIndex, y, z) is out of bounds
+	 */
+	public long getWord(final int wordIndex, final int y, final int z) {
+		if (wordIndex < 0 || wordIndex >= wordsPerRow || y < 0 || y >= h || z < 0 || z >= d)
+			return 0;
+		return slices[z][y * wordsPerRow + wordIndex];
+	}
+
+	/**
+	 * Find the next foreground voxel in a slice, skipping empty words
+	 *
+	 * @param index y * width + x to start searching from (inclusive)
+	 * @param z z coordinate (0-based)
+	 * @return index of the next foreground voxel in the slice, or -1 if there are
+	 *         none
+	 */
+	public int nextSetIndex(final int index, final int z) {
+		final long[] slice = slices[z];
+		int y = index / w;
+		int x = index - y * w;
+		while (y < h) {
+			final int rowWord = y * wordsPerRow;
+			int wordIndex = x >>> 6;
+			long word = slice[rowWord + wordIndex] & (-1L << x);
+			while (true) {
+				if (word != 0)
+					return y * w + (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+				if (++wordIndex == wordsPerRow)
+					break;
+				word = slice[rowWord + wordIndex];
+			}
+			y++;
+			x = 0;
+		}
+		return -1;
+	}
+
+	/**
+	 * Count foreground voxels
+	 *
+	 * @return number of foreground voxels in the stack
+	 */
+	public long count() {
+		long count = 0;
+		for (final long[] slice : slices) {
+			for (final long word : slice) {
+				count += Long.bitCount(word);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Unpack a slice into binary (0, 255) pixels
+	 *
+	 * @param z z coordinate (0-based)
+	 * @return new array of w * h pixels
+	 */
+	public byte[] toByteSlice(final int z) {
+		final byte[] pixels = new byte[w * h];
+		for (int i = nextSetIndex(0, z); i >= 0; i = nextSetIndex(i + 1, z)) {
+			pixels[i] = (byte) 0xFF;
+		}
+		return pixels;
+	}
+
+	/**
+	 * Unpack into a binary (0, 255) image stack
+	 *
+	 * @return new image stack
+	 */
+	public ImageStack toImageStack() {
+		final ImageStack stack = new ImageStack(w, h);
+		for (int z = 0; z < d; z++) {
+			stack.addSlice("", toByteSlice(z));
+		}
+		return stack;
+	}
+
+	/** @return image width */
+	public int getWidth() {
+		return w;
+	}
+
+	/** @return image height */
+	public int getHeight() {
+		return h;
+	}
+
+	/** @return number of slices */
+	public int getDepth() {
+		return d;
+	}
+
+	/** @return number of words used by each row */
+	public int getWordsPerRow() {
+		return wordsPerRow;
+	}
+}
@@ -0,0 +1,248 @@
+/*-
+ * #%L
+ * Utility classes for BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+
+package org.bonej.util;
+
+import java.util.Arrays;
+
+/**
+ * Exact Euclidean distance transform and local thickness of 2D binary images.
+ * Work arrays are kept between calls, so one instance per thread can measure
+ * a whole stack slice by slice without allocating.
+ * <p>
+ * Non-zero pixels are foreground. Distances run from the centre of each
+ * foreground pixel to the centre of the nearest background pixel, and pixels
+ * outside the image are not background, as in LocalThickness. The local
+ * thickness of a foreground pixel is the diameter of the largest disc that
+ * contains it and fits inside the foreground (Hildebrand &amp; Rüegsegger,
+ * 1997). Only discs on the distance ridge are drawn, because every other
+ * pixel's disc lies inside a neighbour's.
+ * </p>
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ *
+ * @see <a href="https://doi.org/10.1007/0-306-47025-X_36">Meijster A,
+ *      Roerdink JBTM, Hesselink WH (2002) A general algorithm for computing
+ *      distance transforms in linear time.</a>
+ */
+public final class LocalThickness2D {
+
+	private final int w;
+	private final int h;
+	private final int[] squaredDistances;
+	/** column distances of one row, and the lower envelope of its parabolas */
+	private final long[] rowDistances;
+	private final int[] sites;
+	private final int[] starts;
+	private int[] ridge = new int[64];
+
+	/**
+	 * Create work arrays for images of one size
+	 *
+	 * @param w image width
+	 * @param h image height
+	 */
+	public LocalThickness2D(final int w, final int h) {
+		this.w = w;
+		this.h = h;
+		squaredDistances = new int[w * h];
+		rowDistances = new long[w];
+		sites = new int[w];
+		starts = new int[w];
+	}
+
+	/**
+	 * Calculate the squared distance of each foreground pixel to the nearest
+	 * background pixel
+	 *
+	 * @param binary w &#215; h pixels, non-zero for foreground
+	 * @return squared distances, 0 for background and
+	 *         {@link Integer#MAX_VALUE} everywhere if there is no background.
+	 *         The array is overwritten by the next call.
+	 */
+	public int[] squaredDistances(final byte[] binary) {
+		checkSize(binary.length);
+		final int[] g = squaredDistances;
+		// distances along each column, with w + h standing in for infinity
+		final int infinity = w + h;
+		boolean background = false;
+		for (int x = 0; x < w; x++) {
+			int distance = infinity;
+			for (int i = x; i < w * h; i += w) {
+				if (binary[i] == 0) {
+					distance = 0;
+					background = true;
+				}
+				else distance++;
+				g[i] = distance;
+			}
+			for (int i = (h - 2) * w + x; i >= 0; i -= w) {
+				if (g[i + w] + 1 < g[i]) g[i] = g[i + w] + 1;
+			}
+		}
+		if (!background) {
+			Arrays.fill(g, Integer.MAX_VALUE);
+			return g;
+		}
+		// lower envelope of the parabolas (x - u)² + g(u)² along each row
+		final long[] f = rowDistances;
+		for (int row = 0; row < w * h; row += w) {
+			for (int x = 0; x < w; x++) {
+				final long d = g[row + x];
+				f[x] = d * d;
+			}
+			int q = 0;
+			sites[0] = 0;
+			starts[0] = 0;
+			for (int u = 1; u < w; u++) {
+				while (q >= 0 && parabola(f, sites[q], starts[q]) > parabola(f, u,
+					starts[q])) q--;
+				if (q < 0) {
+					q = 0;
+					sites[0] = u;
+				}
+				else {
+					final int i = sites[q];
+					final long start = 1 + Math.floorDiv((long) u * u - (long) i * i +
+						f[u] - f[i], 2L * (u - i));
+					if (start < w) {
+						q++;
+						sites[q] = u;
+						starts[q] = (int) start;
+					}
+				}
+			}
+			for (int x = w - 1; x >= 0; x--) {
+				g[row + x] = (int) parabola(f, sites[q], x);
+				if (x == starts[q]) q--;
+			}
+		}
+		return g;
+	}
+
+	/**
+	 * Calculate the local thickness of each foreground pixel
+	 *
+	 * @param binary w &#215; h pixels, non-zero for foreground
+	 * @param thickness receives the thickness of each pixel in pixel widths, 0
+	 *          for background. NaN for the foreground if there is no
+	 *          background, because no disc is then bounded.
+	 */
+	public void thickness(final byte[] binary, final float[] thickness) {
+		checkSize(thickness.length);
+		final int[] d = squaredDistances(binary);
+		Arrays.fill(thickness, 0);
+		if (d.length > 0 && d[0] == Integer.MAX_VALUE) {
+			Arrays.fill(thickness, Float.NaN);
+			return;
+		}
+		final int nRidge = findRidge(d);
+		for (int r = 0; r < nRidge; r++) {
+			final int centre = ridge[r];
+			final int cx = centre % w;
+			final int cy = centre / w;
+			final int rSquared = d[centre];
+			final float diameter = (float) (2 * Math.sqrt(rSquared));
+			// the open disc: pixels closer to the centre than the nearest background
+			final int reach = isqrt(rSquared - 1);
+			final int y0 = Math.max(0, cy - reach);
+			final int y1 = Math.min(h - 1, cy + reach);
+			for (int y = y0; y <= y1; y++) {
+				final int dy = y - cy;
+				final int span = isqrt(rSquared - 1 - dy * dy);
+				final int x0 = Math.max(0, cx - span);
+				final int x1 = Math.min(w - 1, cx + span);
+				for (int i = y * w + x0; i <= y * w + x1; i++) {
+					if (thickness[i] < diameter) thickness[i] = diameter;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find the foreground pixels whose discs are not inside the disc of any of
+	 * their 8 neighbours
+	 */
+	private int findRidge(final int[] d) {
+		int n = 0;
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				final int i = y * w + x;
+				if (d[i] == 0) continue;
+				final double r = Math.sqrt(d[i]);
+				if (!isCovered(d, x, y, r)) {
+					if (n == ridge.length) ridge = Arrays.copyOf(ridge, n * 2);
+					ridge[n++] = i;
+				}
+			}
+		}
+		return n;
+	}
+
+	private boolean isCovered(final int[] d, final int x, final int y,
+		final double r)
+	{
+		for (int dy = -1; dy <= 1; dy++) {
+			final int ny = y + dy;
+			if (ny < 0 || ny >= h) continue;
+			for (int dx = -1; dx <= 1; dx++) {
+				final int nx = x + dx;
+				if (nx < 0 || nx >= w || (dx == 0 && dy == 0)) continue;
+				final double step = dx == 0 || dy == 0 ? 1 : Math.sqrt(2);
+				// strictly, so that rounding never drops a disc that is needed
+				if (Math.sqrt(d[ny * w + nx]) > r + step + 1e-9) return true;
+			}
+		}
+		return false;
+	}
+
+	/** (x - u)² + g(u)², with g(u)² held in f */
+	private static long parabola(final long[] f, final int u, final int x) {
+		final long dx = x - u;
+		return dx * dx + f[u];
+	}
+
+	private static int isqrt(final int n) {
+		if (n < 0) return -1;
+		int s = (int) Math.sqrt(n);
+		while ((long) s * s > n) s--;
+		while ((long) (s + 1) * (s + 1) <= n) s++;
+		return s;
+	}
+
+	private void checkSize(final int length) {
+		if (length != w * h) {
+			throw new IllegalArgumentException("Expected " + w + " × " + h +
+				" pixels but got " + length);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*-
+ * #%L
+ * Utility classes for BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.geometry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ConvexHull3DTest {
+
+	@Test
+	public void testCubeVertices() {
+		final double[][] points = new double[1000 + 8][];
+		final Random random = new Random(0xB0E);
+		for (int i = 0; i < 1000; i++) {
+			points[i] = new double[] { random.nextDouble(), random.nextDouble(),
+				random.nextDouble() };
+		}
+		for (int c = 0; c < 8; c++) {
+			points[1000 + c] = new double[] { c & 1, (c >> 1) & 1, (c >> 2) & 1 };
+		}
+		final ConvexHull3D hull = new ConvexHull3D(points);
+		assertArrayEquals(new int[] { 1000, 1001, 1002, 1003, 1004, 1005, 1006,
+			1007 }, hull.getVertices());
+		// a cube has 6 square sides, each split into 2 triangles
+		assertEquals(12, hull.getFaces().length);
+		assertEquals(Math.sqrt(3), hull.getDiameter(), 1e-12);
+	}
+
+	@Test
+	public void testPointsInsideFaces() {
+		final double[][] points = sphereShell(5000, 10, 0.5, 0xB0E);
+		final ConvexHull3D hull = new ConvexHull3D(points);
+		final int[][] faces = hull.getFaces();
+		assertTrue(faces.length > 0);
+		// Euler's formula for a triangulated convex polyhedron
+		assertEquals(2 * hull.getVertices().length - 4, faces.length);
+		for (final int[] face : faces) {
+			final double[] a = points[face[0]];
+			final double[] b = points[face[1]];
+			final double[] c = points[face[2]];
+			final double[] u = { b[0] - a[0], b[1] - a[1], b[2] - a[2] };
+			final double[] v = { c[0] - a[0], c[1] - a[1], c[2] - a[2] };
+			final double nx = u[1] * v[2] - u[2] * v[1];
+			final double ny = u[2] * v[0] - u[0] * v[2];
+			final double nz = u[0] * v[1] - u[1] * v[0];
+			for (final double[] p : points) {
+				final double dot = nx * (p[0] - a[0]) + ny * (p[1] - a[1]) + nz * (p[2] -
+					a[2]);
+				assertTrue(dot <= 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testDiameterMatchesBruteForce() {
+		for (int seed = 0; seed < 5; seed++) {
+			final double[][] points = sphereShell(3000, 5 + seed, 0.3 * seed, seed);
+			final double expected = bruteForceDiameter(points);
+			final ConvexHull3D hull = new ConvexHull3D(points);
+			assertEquals(expected, hull.getDiameter(), 1e-12);
+			final int[] pair = hull.getDiameterPoints();
+			assertEquals(expected, Trig.distance3D(points[pair[0]], points[pair[1]]),
+				1e-12);
+		}
+	}
+
+	@Test
+	public void testCoplanarPoints() {
+		final Random random = new Random(0xB0E);
+		final double[][] points = new double[200][];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = new double[] { random.nextDouble(), random.nextDouble(), 3 };
+		}
+		final ConvexHull3D hull = new ConvexHull3D(points);
+		assertEquals(0, hull.getFaces().length);
+		assertEquals(bruteForceDiameter(points), hull.getDiameter(), 1e-12);
+	}
+
+	@Test
+	public void testGetExtent() {
+		final double[][] points = sphereShell(2000, 4, 0, 0xB0E);
+		final double[] extent = new ConvexHull3D(points).getExtent(new double[] { 0,
+			0, 2 });
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (final double[] p : points) {
+			min = Math.min(min, 2 * p[2]);
+			max = Math.max(max, 2 * p[2]);
+		}
+		assertEquals(min, extent[0], 0);
+		assertEquals(max, extent[1], 0);
+	}
+
+	private static double bruteForceDiameter(final double[][] points) {
+		double max = 0;
+		for (int i = 0; i < points.length; i++)
+			for (int j = i + 1; j < points.length; j++)
+				max = Math.max(max, Trig.distance3D(points[i], points[j]));
+		return max;
+	}
+
+	/**
+	 * Random points in a shell of an ellipsoid with semi-axes r, 2r and 3r
+	 */
+	private static double[][] sphereShell(final int n, final double r,
+		final double thickness, final long seed)
+	{
+		final Random random = new Random(seed);
+		final double[][] points = new double[n][];
+		for (int i = 0; i < n; i++) {
+			final double x = random.nextGaussian();
+			final double y = random.nextGaussian();
+			final double z = random.nextGaussian();
+			final double scale = (r - thickness * random.nextDouble()) / Math.sqrt(x *
+				x + y * y + z * z);
+			points[i] = new double[] { x * scale, 2 * y * scale, 3 * z * scale };
+		}
+		return points;
+	}
+}
@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * Utility classes for BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+
+/**
+ * Unit tests for the {@link BitPackedStack} class
+ */
+public class BitPackedStackTest {
+
+	@Test
+	public void testPackingRoundTrip() {
+		final int w = 131;
+		final int h = 7;
+		final ImageStack stack = new ImageStack(w, h);
+		final Random random = new Random(0xB0E);
+		for (int z = 0; z < 5; z++) {
+			final ByteProcessor bp = new ByteProcessor(w, h);
+			for (int i = 0; i < w * h; i++) {
+				if (random.nextBoolean())
+					bp.set(i, 255);
+			}
+			stack.addSlice(bp);
+		}
+		final BitPackedStack packed = BitPackedStack.fromStack(stack);
+		long count = 0;
+		for (int z = 0; z < 5; z++) {
+			final byte[] pixels = (byte[]) stack.getPixels(z + 1);
+			final byte[] unpacked = packed.toByteSlice(z);
+			for (int i = 0; i < w * h; i++) {
+				assertEquals(pixels[i], unpacked[i]);
+				assertEquals(pixels[i] != 0, packed.get(i, z));
+				if (pixels[i] != 0)
+					count++;
+			}
+		}
+		assertEquals(count, packed.count());
+	}
+
+	@Test
+	public void testNextSetIndexSkipsEmptyWords() {
+		final BitPackedStack packed = new BitPackedStack(200, 3, 1);
+		packed.set(0, 0, 0);
+		packed.set(130, 1, 0);
+		packed.set(199, 2, 0);
+		assertEquals(0, packed.nextSetIndex(0, 0));
+		assertEquals(200 + 130, packed.nextSetIndex(1, 0));
+		assertEquals(400 + 199, packed.nextSetIndex(200 + 131, 0));
+		assertEquals(-1, packed.nextSetIndex(400 + 199 + 1, 0));
+		packed.clear(130, 1, 0);
+		assertFalse(packed.get(130, 1, 0));
+		assertEquals(400 + 199, packed.nextSetIndex(1, 0));
+	}
+
+	@Test
+	public void testGetWord() {
+		final BitPackedStack packed = new BitPackedStack(130, 4, 3);
+		packed.set(63, 1, 1);
+		packed.set(129, 3, 2);
+
+		assertEquals(3, packed.getWordsPerRow());
+		assertEquals(1L << 63, packed.getWord(0, 1, 1));
+		assertEquals(2L, packed.getWord(2, 3, 2));
+		assertEquals(0, packed.getWord(1, 1, 1));
+		// out of bounds words are background
+		assertEquals(0, packed.getWord(3, 3, 2));
+		assertEquals(0, packed.getWord(0, -1, 1));
+		assertEquals(0, packed.getWord(0, 1, 3));
+	}
+}
@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * Utility classes for BoneJ1 plugins
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.bonej.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link LocalThickness2D} class
+ */
+public class LocalThickness2DTest {
+
+	@Test
+	public void testSquaredDistancesMatchBruteForce() {
+		final Random random = new Random(0x2D);
+		for (final int[] size : new int[][] { { 1, 1 }, { 1, 17 }, { 23, 1 }, {
+			31, 29 }, { 64, 5 } })
+		{
+			final int w = size[0];
+			final int h = size[1];
+			final LocalThickness2D localThickness = new LocalThickness2D(w, h);
+			for (final double density : new double[] { 0.1, 0.6, 0.95 }) {
+				final byte[] binary = noise(w, h, density, random);
+				final int[] expected = bruteForceDistances(binary, w, h);
+				final int[] actual = localThickness.squaredDistances(binary);
+				for (int i = 0; i < w * h; i++)
+					assertEquals("Pixel " + i, expected[i], actual[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testThicknessMatchesBruteForce() {
+		final Random random = new Random(0x7C);
+		final int w = 41;
+		final int h = 37;
+		final LocalThickness2D localThickness = new LocalThickness2D(w, h);
+		final float[] thickness = new float[w * h];
+		for (final double density : new double[] { 0.3, 0.7, 0.9 }) {
+			final byte[] binary = noise(w, h, density, random);
+			final int[] d = bruteForceDistances(binary, w, h);
+			localThickness.thickness(binary, thickness);
+			for (int i = 0; i < w * h; i++) {
+				float expected = 0;
+				for (int c = 0; c < w * h; c++) {
+					final int dx = i % w - c % w;
+					final int dy = i / w - c / w;
+					if (dx * dx + dy * dy < d[c])
+						expected = Math.max(expected, (float) (2 * Math.sqrt(d[c])));
+				}
+				assertEquals("Pixel " + i, expected, thickness[i], 0);
+			}
+		}
+	}
+
+	@Test
+	public void testBandThickness() {
+		final int w = 30;
+		final int h = 9;
+		final byte[] binary = new byte[w * h];
+		// rows 2 to 6 are foreground, between background rows
+		for (int i = 2 * w; i < 7 * w; i++)
+			binary[i] = (byte) 255;
+		final float[] thickness = new float[w * h];
+
+		new LocalThickness2D(w, h).thickness(binary, thickness);
+
+		for (int x = 0; x < w; x++) {
+			assertEquals(0, thickness[x], 0);
+			assertEquals(6, thickness[4 * w + x], 0);
+			assertEquals(6, thickness[2 * w + x], 0);
+		}
+	}
+
+	@Test
+	public void testNoBackground() {
+		final byte[] binary = new byte[12];
+		Arrays.fill(binary, (byte) 255);
+		final float[] thickness = new float[12];
+
+		new LocalThickness2D(4, 3).thickness(binary, thickness);
+
+		for (final float t : thickness)
+			assertTrue(Float.isNaN(t));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongSize() {
+		new LocalThickness2D(4, 3).squaredDistances(new byte[13]);
+	}
+
+	private static byte[] noise(final int w, final int h, final double density,
+		final Random random)
+	{
+		final byte[] binary = new byte[w * h];
+		for (int i = 0; i < w * h; i++)
+			if (random.nextDouble() < density) binary[i] = (byte) 255;
+		return binary;
+	}
+
+	private static int[] bruteForceDistances(final byte[] binary, final int w,
+		final int h)
+	{
+		final int[] d = new int[w * h];
+		boolean background = false;
+		for (final byte b : binary)
+			background |= b == 0;
+		for (int i = 0; i < w * h; i++) {
+			if (binary[i] == 0) continue;
+			int min = Integer.MAX_VALUE;
+			for (int j = 0; j < w * h && background; j++) {
+				if (binary[j] != 0) continue;
+				final int dx = i % w - j % w;
+				final int dy = i / w - j / w;
+				min = Math.min(min, dx * dx + dy * dy);
+			}
+			d[i] = min;
+		}
+		return d;
+	}
+}
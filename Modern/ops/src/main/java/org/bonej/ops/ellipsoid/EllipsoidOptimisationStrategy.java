@@ -63,15 +63,17 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 	@Parameter(required = false)
 	private StatusService statusService;
 	@Parameter
-	private static EllipsoidConstrainStrategy constrainStrategy;
+	private EllipsoidConstrainStrategy constrainStrategy;
 	@Parameter(required = false)
 	private OptimisationParameters algorithmParameters = new OptimisationParameters(0.435,100,1,100,1.73);
 	double stackVolume;
+	/** Each thread's optimisation state, restarted for every seed point */
+	private final ThreadLocal<OptimisationContext> contexts = new ThreadLocal<>();
 
 
-	private static double[] threeWayShuffle() {
+	private static double[] threeWayShuffle(final SplittableRandom random) {
 		final double[] a = {0, 0, 0};
-		final double rand = Math.random();
+		final double rand = random.nextDouble();
 		if (rand < 1.0 / 3.0)
 			a[0] = 1;
 		else if (rand >= 2.0 / 3.0)
@@ -81,28 +83,22 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		return a;
 	}
 
-	private static double[][] findContactUnitVectors(final QuickEllipsoid ellipsoid,
-			final ArrayList<double[]> contactPoints) {
-		final double[][] unitVectors = new double[contactPoints.size()][3];
+	private static void findContactUnitVectors(final QuickEllipsoid ellipsoid,
+			final PointBuffer contactPoints, final PointBuffer unitVectors) {
+		unitVectors.clear();
 		final double[] c = ellipsoid.getCentre();
 		final double cx = c[0];
 		final double cy = c[1];
 		final double cz = c[2];
 
 		for (int i = 0; i < contactPoints.size(); i++) {
-			final double[] p = contactPoints.get(i);
-			final double px = p[0] - cx;
-			final double py = p[1] - cy;
-			final double pz = p[2] - cz;
+			final double px = contactPoints.x[i] - cx;
+			final double py = contactPoints.y[i] - cy;
+			final double pz = contactPoints.z[i] - cz;
 
 			final double l = Math.sqrt(px * px + py * py + pz * pz);
-			final double x = px / l;
-			final double y = py / l;
-			final double z = pz / l;
-			final double[] u = {x, y, z};
-			unitVectors[i] = u;
+			unitVectors.add(px / l, py / l, pz / l);
 		}
-		return unitVectors;
 	}
 
 	/**
@@ -135,7 +131,7 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 	 *            the contact points of the ellipsoid
 	 * @return the torque vector
 	 */
-	static double[] calculateTorque(final QuickEllipsoid ellipsoid, final Iterable<double[]> contactPoints) {
+	static double[] calculateTorque(final QuickEllipsoid ellipsoid, final PointBuffer contactPoints) {
 
 		final double[] pc = ellipsoid.getCentre();
 		final double cx = pc[0];
@@ -158,11 +154,11 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		double t1 = 0;
 		double t2 = 0;
 
-		for (final double[] p : contactPoints) {
+		for (int i = 0; i < contactPoints.size(); i++) {
 			// translate point to centre on origin
-			final double px = p[0] - cx;
-			final double py = p[1] - cy;
-			final double pz = p[2] - cz;
+			final double px = contactPoints.x[i] - cx;
+			final double py = contactPoints.y[i] - cy;
+			final double pz = contactPoints.z[i] - cz;
 
 			// derotate the point
 			final double x = inv[0][0] * px + inv[0][1] * py + inv[0][2] * pz;
@@ -173,7 +169,7 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 			final double nx = s * x;
 			final double ny = t * y;
 			final double nz = u * z;
-			final double length = new Vector3d(nx, ny, nz).length();
+			final double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
 			final double unx = nx / length;
 			final double uny = ny / length;
 			final double unz = nz / length;
@@ -183,12 +179,10 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 			final double ey = rot[1][0] * unx + rot[1][1] * uny + rot[1][2] * unz;
 			final double ez = rot[2][0] * unx + rot[2][1] * uny + rot[2][2] * unz;
 
-			final double[] torqueVector = crossProduct(px, py, pz, ex, ey, ez);
-
-			t0 += torqueVector[0];
-			t1 += torqueVector[1];
-			t2 += torqueVector[2];
-
+			// add the cross product of the point and the normal
+			t0 += py * ez - pz * ey;
+			t1 += pz * ex - px * ez;
+			t2 += px * ey - py * ex;
 		}
 		return new double[]{-t0, -t1, -t2};
 	}
@@ -204,7 +198,7 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 	 * @return a double array that is the mean unit vector
 	 */
 	private static double[] contactPointUnitVector(final QuickEllipsoid ellipsoid,
-			final Collection<double[]> contactPoints) {
+			final PointBuffer contactPoints) {
 
 		final int nPoints = contactPoints.size();
 
@@ -218,11 +212,11 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		double xSum = 0;
 		double ySum = 0;
 		double zSum = 0;
-		for (final double[] p : contactPoints) {
-			final double x = p[0] - cx;
-			final double y = p[1] - cy;
-			final double z = p[2] - cz;
-			final double l = new Vector3d(x, y, z).length();
+		for (int i = 0; i < nPoints; i++) {
+			final double x = contactPoints.x[i] - cx;
+			final double y = contactPoints.y[i] - cy;
+			final double z = contactPoints.z[i] - cz;
+			final double l = Math.sqrt(x * x + y * y + z * z);
 
 			xSum += x / l;
 			ySum += y / l;
@@ -232,7 +226,7 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		final double x = xSum / nPoints;
 		final double y = ySum / nPoints;
 		final double z = zSum / nPoints;
-		final double l = new Vector3d(x, y, z).length();
+		final double l = Math.sqrt(x * x + y * y + z * z);
 
 		return new double[]{x / l, y / l, z / l};
 	}
@@ -275,20 +269,45 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		return new double[]{x, y, z};
 	}
 
+	/**
+	 * Find the surface points in the given directions that lie on background
+	 *
+	 * @param ellipsoid
+	 *            the ellipsoid
+	 * @param contactPoints
+	 *            buffer for the contact points, with room for a point in each
+	 *            direction. It must not be the directions buffer.
+	 * @param unitVectors
+	 *            directions to search in. They are replaced by the surface
+	 *            points, as {@link QuickEllipsoid#getSurfacePoints(double[][])}
+	 *            replaces its argument's rows.
+	 * @param pixels
+	 *            the image, foreground is -1
+	 * @param w
+	 *            image dimension in x
+	 * @param h
+	 *            image dimension in y
+	 * @param d
+	 *            image dimension in z
+	 */
 	static void findContactPointsForGivenDirections(final QuickEllipsoid ellipsoid,
-			final ArrayList<double[]> contactPoints, final double[][] unitVectors, final byte[][] pixels, final int w,
+			final PointBuffer contactPoints, final PointBuffer unitVectors, final byte[][] pixels, final int w,
 			final int h, final int d) {
+		final int n = unitVectors.size();
+		final double[] px = unitVectors.x;
+		final double[] py = unitVectors.y;
+		final double[] pz = unitVectors.z;
+		ellipsoid.getSurfacePoints(px, py, pz, n, px, py, pz);
 		contactPoints.clear();
-		final double[][] points = ellipsoid.getSurfacePoints(unitVectors);
-		for (final double[] p : points) {
-			final int x = (int) Math.floor(p[0]);
-			final int y = (int) Math.floor(p[1]);
-			final int z = (int) Math.floor(p[2]);
+		for (int i = 0; i < n; i++) {
+			final int x = (int) Math.floor(px[i]);
+			final int y = (int) Math.floor(py[i]);
+			final int z = (int) Math.floor(pz[i]);
 			if (isOutOfBounds(x, y, z, w, h, d)) {
 				continue;
 			}
 			if (pixels[z][y * w + x] != -1) {
-				contactPoints.add(p);
+				contactPoints.add(px[i], py[i], pz[i]);
 			}
 		}
 	}
@@ -349,9 +368,9 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		return normed;
 	}
 
-	static void wiggle(QuickEllipsoid ellipsoid) {
-		final double b = Math.random() * 0.2 - 0.1;
-		final double c = Math.random() * 0.2 - 0.1;
+	static void wiggle(QuickEllipsoid ellipsoid, final SplittableRandom random) {
+		final double b = random.nextDouble() * 0.2 - 0.1;
+		final double c = random.nextDouble() * 0.2 - 0.1;
 		final double a = Math.sqrt(1 - b * b - c * c);
 
 		final double k = Math.sqrt(a*a+b*b+c*c);
@@ -373,10 +392,11 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		ellipsoid.rotate(rotation);
 	}
 
-	private void inflateToFit(final QuickEllipsoid ellipsoid, ArrayList<double[]> contactPoints, final double a,
+	private void inflateToFit(final QuickEllipsoid ellipsoid, final OptimisationContext context, final double a,
 			final double b, final double c, final byte[][] pixels, final int w, final int h, final int d) {
 
-		findContactPoints(ellipsoid, contactPoints, pixels, w, h, d);
+		final PointBuffer contactPoints = context.contactPoints;
+		findContactPoints(ellipsoid, context, pixels, w, h, d);
 
 		final double av = a * algorithmParameters.vectorIncrement;
 		final double bv = b * algorithmParameters.vectorIncrement;
@@ -385,7 +405,7 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		int safety = 0;
 		while (contactPoints.size() < algorithmParameters.contactSensitivity && safety < algorithmParameters.maxIterations) {
 			ellipsoid.dilate(av, bv, cv);
-			findContactPoints(ellipsoid, contactPoints, pixels, w, h, d);
+			findContactPoints(ellipsoid, context, pixels, w, h, d);
 			safety++;
 		}
 	}
@@ -410,14 +430,18 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		final List<Double> volumeHistory = new ArrayList<>();
 		volumeHistory.add(ellipsoid.getVolume());
 
-		// instantiate the ArrayList
-		ArrayList<double[]> contactPoints = new ArrayList<>();
+		// this thread's state, seeded for this seed point
+		final OptimisationContext context = startContext(OptimisationContext.seedFor(algorithmParameters.seed,
+				seedPoint));
+		final PointBuffer contactPoints = context.contactPoints;
+		final EllipsoidConstrainStrategy constrain = context.constrain();
+		final SplittableRandom random = context.random();
 
 		// dilate the sphere until it hits the background
-		while (isContained(ellipsoid, contactPoints, pixels, w, h, d)) {
-			constrainStrategy.preConstrain(ellipsoid, seedPoint);
+		while (isContained(ellipsoid, context, pixels, w, h, d)) {
+			constrain.preConstrain(ellipsoid, seedPoint);
 			ellipsoid.dilate(algorithmParameters.vectorIncrement, algorithmParameters.vectorIncrement, algorithmParameters.vectorIncrement);
-			constrainStrategy.postConstrain(ellipsoid);
+			constrain.postConstrain(ellipsoid);
 		}
 
 		volumeHistory.add(ellipsoid.getVolume());
@@ -425,7 +449,7 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		orientAxes(ellipsoid, contactPoints);
 
 		// shrink the ellipsoid slightly
-		shrinkToFit(ellipsoid, contactPoints, pixels, w, h, d);
+		shrinkToFit(ellipsoid, context, pixels, w, h, d);
 		ellipsoid.contract(0.1);
 
 		// dilate other two axes until number of contact points increases
@@ -433,8 +457,8 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 
 		while (contactPoints.size() < algorithmParameters.contactSensitivity) {
 			ellipsoid.dilate(0, algorithmParameters.vectorIncrement, algorithmParameters.vectorIncrement);
-			findContactPoints(ellipsoid, contactPoints, pixels, w, h, d);
-			if (isInvalid(ellipsoid, w, h, d)) {
+			findContactPoints(ellipsoid, context, pixels, w, h, d);
+			if (isInvalid(ellipsoid, context, w, h, d)) {
 				logService.debug("Ellipsoid at (" + centre[0] + ", " + centre[1] + ", " + centre[2]
 						+ ") is invalid, nullifying at initial oblation");
 				return null;
@@ -457,18 +481,18 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		while (totalIterations < absoluteMaxIterations && noImprovementCount < algorithmParameters.maxIterations) {
 
 			// rotate a little bit
-			constrainStrategy.preConstrain(ellipsoid, seedPoint);
-			wiggle(ellipsoid);
-			constrainStrategy.postConstrain(ellipsoid);
+			constrain.preConstrain(ellipsoid, seedPoint);
+			wiggle(ellipsoid, random);
+			constrain.postConstrain(ellipsoid);
 
 			// contract until no contact
-			shrinkToFit(ellipsoid, contactPoints, pixels, w, h, d);
+			shrinkToFit(ellipsoid, context, pixels, w, h, d);
 
 			// dilate an axis
-			double[] abc = threeWayShuffle();
-			inflateToFit(ellipsoid, contactPoints, abc[0], abc[1], abc[2], pixels, w, h, d);
+			double[] abc = threeWayShuffle(random);
+			inflateToFit(ellipsoid, context, abc[0], abc[1], abc[2], pixels, w, h, d);
 
-			if (isInvalid(ellipsoid, w, h, d)) {
+			if (isInvalid(ellipsoid, context, w, h, d)) {
 				logService.debug("Ellipsoid at (" + centre[0] + ", " + centre[1] + ", " + centre[2]
 						+ ") is invalid, nullifying after " + totalIterations + " iterations");
 				return null;
@@ -478,23 +502,23 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 				maximal = ellipsoid.copy();
 
 			// bump a little away from the sides
-			findContactPoints(ellipsoid, contactPoints, pixels, w, h, d);
-			constrainStrategy.preConstrain(ellipsoid, seedPoint);
+			findContactPoints(ellipsoid, context, pixels, w, h, d);
+			constrain.preConstrain(ellipsoid, seedPoint);
 			// if can't bump then do a wiggle
 			if (contactPoints.isEmpty()) {
-				wiggle(ellipsoid);
+				wiggle(ellipsoid, random);
 			} else {
 				bump(ellipsoid, contactPoints, centre);
 			}
-			constrainStrategy.postConstrain(ellipsoid);
+			constrain.postConstrain(ellipsoid);
 			// contract
-			shrinkToFit(ellipsoid, contactPoints, pixels, w, h, d);
+			shrinkToFit(ellipsoid, context, pixels, w, h, d);
 
 			// dilate an axis
-			abc = threeWayShuffle();
-			inflateToFit(ellipsoid, contactPoints, abc[0], abc[1], abc[2], pixels, w, h, d);
+			abc = threeWayShuffle(random);
+			inflateToFit(ellipsoid, context, abc[0], abc[1], abc[2], pixels, w, h, d);
 
-			if (isInvalid(ellipsoid, w, h, d)) {
+			if (isInvalid(ellipsoid, context, w, h, d)) {
 				logService.debug("Ellipsoid at (" + centre[0] + ", " + centre[1] + ", " + centre[2]
 						+ ") is invalid, nullifying after " + totalIterations + " iterations");
 				return null;
@@ -504,18 +528,18 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 				maximal = ellipsoid.copy();
 
 			// rotate a little bit
-			constrainStrategy.preConstrain(ellipsoid, seedPoint);
-			turn(ellipsoid, contactPoints, pixels, w, h, d);
-			constrainStrategy.postConstrain(ellipsoid);
+			constrain.preConstrain(ellipsoid, seedPoint);
+			turn(ellipsoid, context, pixels, w, h, d);
+			constrain.postConstrain(ellipsoid);
 
 			// contract until no contact
-			shrinkToFit(ellipsoid, contactPoints, pixels, w, h, d);
+			shrinkToFit(ellipsoid, context, pixels, w, h, d);
 
 			// dilate an axis
-			abc = threeWayShuffle();
-			inflateToFit(ellipsoid, contactPoints, abc[0], abc[1], abc[2], pixels, w, h, d);
+			abc = threeWayShuffle(random);
+			inflateToFit(ellipsoid, context, abc[0], abc[1], abc[2], pixels, w, h, d);
 
-			if (isInvalid(ellipsoid, w, h, d)) {
+			if (isInvalid(ellipsoid, context, w, h, d)) {
 				logService.debug("Ellipsoid at (" + centre[0] + ", " + centre[1] + ", " + centre[2]
 						+ ") is invalid, nullifying after " + totalIterations + " iterations");
 				return null;
@@ -570,7 +594,7 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		return ellipsoid;
 	}
 
-	private void orientAxes(QuickEllipsoid ellipsoid, ArrayList<double[]> contactPoints) {
+	private void orientAxes(QuickEllipsoid ellipsoid, PointBuffer contactPoints) {
 		// find the mean unit vector pointing to the points of contact from the
 		// centre
 		final double[] shortAxis = contactPointUnitVector(ellipsoid, contactPoints);
@@ -592,14 +616,16 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		ellipsoid.setRotation(rotation);
 	}
 
-	private void shrinkToFit(final QuickEllipsoid ellipsoid, ArrayList<double[]> contactPoints, final byte[][] pixels,
+	private void shrinkToFit(final QuickEllipsoid ellipsoid, final OptimisationContext context, final byte[][] pixels,
 			final int w, final int h, final int d) {
 
 		// get the contact points
-		findContactPoints(ellipsoid, contactPoints, pixels, w, h, d);
+		final PointBuffer contactPoints = context.contactPoints;
+		findContactPoints(ellipsoid, context, pixels, w, h, d);
 
-		// get the unit vectors to the contact points
-		final double[][] unitVectors = findContactUnitVectors(ellipsoid, contactPoints);
+		// get the unit vectors to the contact points, reusing the spent directions
+		final PointBuffer unitVectors = context.directions;
+		findContactUnitVectors(ellipsoid, contactPoints, unitVectors);
 
 		// contract until no contact
 		int safety = 0;
@@ -619,6 +645,8 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 	 *
 	 * @param ellipsoid
 	 *            the ellipsoid
+	 * @param context
+	 *            the optimisation's state
 	 * @param w
 	 *            the image dimension in x
 	 * @param h
@@ -626,28 +654,34 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 	 * @param d
 	 *            the image dimension in z
 	 */
-	void turn(QuickEllipsoid ellipsoid, ArrayList<double[]> contactPoints, final byte[][] pixels, final int w,
+	void turn(QuickEllipsoid ellipsoid, OptimisationContext context, final byte[][] pixels, final int w,
 			final int h, final int d) {
-		findContactPoints(ellipsoid, contactPoints, pixels, w, h, d);
+		final PointBuffer contactPoints = context.contactPoints;
+		findContactPoints(ellipsoid, context, pixels, w, h, d);
 		if (!contactPoints.isEmpty()) {
 			final double[] torque = calculateTorque(ellipsoid, contactPoints);
 			rotateAboutAxis(ellipsoid, norm(torque));
 		}
 	}
 
-	private boolean isContained(final QuickEllipsoid ellipsoid, ArrayList<double[]> contactPoints,
+	private boolean isContained(final QuickEllipsoid ellipsoid, final OptimisationContext context,
 			final byte[][] pixels, final int w, final int h, final int d) {
-		final double[][] points = ellipsoid
-				.getSurfacePoints(ellipsoid.getAxisAlignRandomlyDistributedSurfacePoints(algorithmParameters.nVectors));
-		for (final double[] p : points) {
-			final int x = (int) Math.floor(p[0]);
-			final int y = (int) Math.floor(p[1]);
-			final int z = (int) Math.floor(p[2]);
+		final int n = algorithmParameters.nVectors;
+		final PointBuffer contactPoints = context.contactPoints;
+		final PointBuffer directions = getRandomDirections(ellipsoid, context);
+		final double[] px = contactPoints.x;
+		final double[] py = contactPoints.y;
+		final double[] pz = contactPoints.z;
+		ellipsoid.getSurfacePoints(directions.x, directions.y, directions.z, n, px, py, pz);
+		for (int i = 0; i < n; i++) {
+			final int x = (int) Math.floor(px[i]);
+			final int y = (int) Math.floor(py[i]);
+			final int z = (int) Math.floor(pz[i]);
 			if (isOutOfBounds(x, y, z, w, h, d))
 				continue;
 			if (pixels[z][y * w + x] != -1) {
-				contactPoints.clear();
-				contactPoints.addAll(Arrays.asList(points));
+				// all the surface points count as contacts
+				contactPoints.setSize(n);
 				return false;
 			}
 		}
@@ -659,6 +693,8 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 	 *
 	 * @param ellipsoid
 	 *            ellipsoids
+	 * @param context
+	 *            the optimisation's state
 	 * @param w
 	 *            image dimension in x
 	 * @param h
@@ -669,8 +705,9 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 	 *         stack, if the smallest radius is less than half a pixel length, or if
 	 *         the volume of the ellipsoid exceeds that of the image stack
 	 */
-	boolean isInvalid(final QuickEllipsoid ellipsoid, final int w, final int h, final int d) {
-		double[][] surfacePoints = ellipsoid.getAxisAlignRandomlyDistributedSurfacePoints(algorithmParameters.nVectors);
+	boolean isInvalid(final QuickEllipsoid ellipsoid, final OptimisationContext context, final int w, final int h,
+			final int d) {
+		final PointBuffer directions = getRandomDirections(ellipsoid, context);
 
 		final double minRadius = ellipsoid.getSortedRadii()[0];
 		if (minRadius < 0.5) {
@@ -680,8 +717,8 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 		int outOfBoundsCount = 0;
 		final int half = algorithmParameters.nVectors / 2;
 
-		for (final double[] p : surfacePoints) {
-			if (isOutOfBounds((int) (p[0]), (int) (p[1]), (int) (p[2]), w, h, d))
+		for (int i = 0; i < directions.size(); i++) {
+			if (isOutOfBounds((int) directions.x[i], (int) directions.y[i], (int) directions.z[i], w, h, d))
 				outOfBoundsCount++;
 			if (outOfBoundsCount > half)
 				return true;
@@ -692,13 +729,47 @@ public class EllipsoidOptimisationStrategy extends AbstractBinaryFunctionOp<byte
 
 	}
 
-	void findContactPoints(final QuickEllipsoid ellipsoid, final ArrayList<double[]> contactPoints,
+	void findContactPoints(final QuickEllipsoid ellipsoid, final OptimisationContext context,
 			final byte[][] pixels, final int w, final int h, final int d) {
-		findContactPointsForGivenDirections(ellipsoid, contactPoints,
-				ellipsoid.getAxisAlignRandomlyDistributedSurfacePoints(algorithmParameters.nVectors), pixels, w, h, d);
+		findContactPointsForGivenDirections(ellipsoid, context.contactPoints, getRandomDirections(ellipsoid, context),
+				pixels, w, h, d);
+	}
+
+	/**
+	 * Draw nVectors directions evenly distributed over the ellipsoid's surface
+	 * into the context's direction buffer
+	 *
+	 * @param ellipsoid
+	 *            the ellipsoid
+	 * @param context
+	 *            the optimisation's state
+	 * @return the direction buffer
+	 */
+	private PointBuffer getRandomDirections(final QuickEllipsoid ellipsoid, final OptimisationContext context) {
+		return context.drawDirections(ellipsoid, algorithmParameters.nVectors);
+	}
+
+	/**
+	 * Restart this thread's context for a new seed point. Many threads run the
+	 * same instance of the op, and each reuses its own context on every call.
+	 *
+	 * @param seed
+	 *            seed of the seed point's random stream
+	 * @return the thread's context
+	 */
+	private OptimisationContext startContext(final long seed) {
+		OptimisationContext context = contexts.get();
+		if (context == null || context.directions.capacity() < algorithmParameters.nVectors) {
+			context = new OptimisationContext(algorithmParameters.nVectors, seed, constrainStrategy);
+			contexts.set(context);
+		}
+		else {
+			context.start(seed, constrainStrategy);
+		}
+		return context;
 	}
 
-	void bump(final QuickEllipsoid ellipsoid, final Collection<double[]> contactPoints, final double[] seedPoint) {
+	void bump(final QuickEllipsoid ellipsoid, final PointBuffer contactPoints, final double[] seedPoint) {
 		final double displacement = algorithmParameters.vectorIncrement / 2;
 
 		final double[] c = ellipsoid.getCentre();
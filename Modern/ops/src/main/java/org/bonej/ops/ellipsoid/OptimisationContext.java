@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * Ops created for BoneJ2
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.ops.ellipsoid;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import org.bonej.ops.ellipsoid.constrain.EllipsoidConstrainStrategy;
+import org.joml.Vector3d;
+
+/**
+ * The state of one ellipsoid optimisation: its stream of random numbers, its
+ * constraint, and buffers for the surface points that it samples.
+ * <p>
+ * Each worker thread keeps a context and restarts it for every seed point, so
+ * optimisations running in parallel share no mutable state and the buffers
+ * are allocated once per thread. The random stream is seeded from the seed
+ * point, so an optimisation gives the same result whichever thread runs it.
+ * </p>
+ */
+final class OptimisationContext {
+
+	private static final int TABLE_SIZE = 150;
+	private static final int REFRESH_PERIOD = 100;
+
+	/** Directions to sample from the centre of the ellipsoid */
+	final PointBuffer directions;
+	/** Surface points that touch the background */
+	final PointBuffer contactPoints;
+	/**
+	 * Random unit vectors and uniform numbers from which directions are drawn,
+	 * refreshed every {@link #REFRESH_PERIOD} draws as
+	 * {@link QuickEllipsoid}'s own generator does
+	 */
+	private final double[][] sphereVectors = new double[TABLE_SIZE][3];
+	private final double[] uniforms = new double[TABLE_SIZE];
+	private int nDraws;
+	private SplittableRandom random;
+	private EllipsoidConstrainStrategy constrain;
+
+	/**
+	 * Makes a context and starts its first optimisation.
+	 *
+	 * @param nVectors the most directions sampled at once.
+	 * @param seed seed of the random stream.
+	 * @param constrain the constraint on the ellipsoid.
+	 */
+	OptimisationContext(final int nVectors, final long seed,
+		final EllipsoidConstrainStrategy constrain)
+	{
+		directions = new PointBuffer(nVectors);
+		contactPoints = new PointBuffer(nVectors);
+		start(seed, constrain);
+	}
+
+	/**
+	 * Gets the seed of an optimisation, mixing the seed of the whole run with
+	 * the seed point's coordinates.
+	 *
+	 * @param seed seed of the run.
+	 * @param point the seed point.
+	 * @return seed of the seed point's random stream.
+	 */
+	static long seedFor(final long seed, final Vector3d point) {
+		final long gamma = 0x9E3779B97F4A7C15L;
+		long hash = seed;
+		hash = hash * gamma + Double.doubleToLongBits(point.x);
+		hash = hash * gamma + Double.doubleToLongBits(point.y);
+		hash = hash * gamma + Double.doubleToLongBits(point.z);
+		return hash;
+	}
+
+	EllipsoidConstrainStrategy constrain() {
+		return constrain;
+	}
+
+	SplittableRandom random() {
+		return random;
+	}
+
+	/**
+	 * Draws directions whose points are distributed evenly over the surface of
+	 * an ellipsoid into {@link #directions}.
+	 *
+	 * @param ellipsoid the ellipsoid.
+	 * @param n number of directions.
+	 * @return the direction buffer.
+	 */
+	PointBuffer drawDirections(final QuickEllipsoid ellipsoid, final int n) {
+		if (nDraws % REFRESH_PERIOD == 0) {
+			for (int i = 0; i < TABLE_SIZE; i++) {
+				QuickEllipsoid.nextUnitVector(random, sphereVectors[i]);
+				uniforms[i] = random.nextDouble();
+			}
+		}
+		nDraws++;
+		ellipsoid.getAxisAlignRandomlyDistributedSurfacePoints(n, directions.x,
+			directions.y, directions.z, sphereVectors, uniforms, random);
+		directions.setSize(n);
+		return directions;
+	}
+
+	/**
+	 * Restarts the context for a new optimisation.
+	 *
+	 * @param seed seed of the random stream.
+	 * @param constrain the constraint on the ellipsoid, shared by all
+	 *          optimisations. The context uses its own instance of it.
+	 */
+	void start(final long seed, final EllipsoidConstrainStrategy constrain) {
+		random = new SplittableRandom(seed);
+		this.constrain = constrain.forOptimisation(new Random(random.nextLong()));
+		nDraws = 0;
+		directions.clear();
+		contactPoints.clear();
+	}
+}
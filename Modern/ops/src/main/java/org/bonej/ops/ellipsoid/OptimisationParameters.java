@@ -28,6 +28,8 @@
  */
 package org.bonej.ops.ellipsoid;
 
+import java.util.Random;
+
 /**
  * A class wrapping the optimisation parameters for {@link EllipsoidOptimisationStrategy}.
  *
@@ -39,12 +41,26 @@ public class OptimisationParameters {
     public final int contactSensitivity;
     public final int maxIterations;
     public final double maxDrift;
+    /**
+     * Seed of the random choices. Each seed point's optimisation draws from its
+     * own stream, derived from this seed and the point, so results do not
+     * depend on the order in which the points are optimised.
+     */
+    public final long seed;
 
+    /**
+     * Creates parameters with a random seed.
+     */
     public OptimisationParameters(double inc, int n, int cs, int maxIt, double maxDr){
+        this(inc, n, cs, maxIt, maxDr, new Random().nextLong());
+    }
+
+    public OptimisationParameters(double inc, int n, int cs, int maxIt, double maxDr, long seed){
         vectorIncrement = inc;
         nVectors = n;
         contactSensitivity = cs;
         maxIterations = maxIt;
         maxDrift = maxDr;
+        this.seed = seed;
     }
 }
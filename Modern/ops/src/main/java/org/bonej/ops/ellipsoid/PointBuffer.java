@@ -0,0 +1,95 @@
+/*-
+ * #%L
+ * Ops created for BoneJ2
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.ops.ellipsoid;
+
+/**
+ * A reusable list of 3D points of fixed capacity, kept as separate arrays of
+ * x, y and z coordinates, so that {@link EllipsoidOptimisationStrategy} can
+ * fill and read surface and contact points without allocating.
+ */
+final class PointBuffer {
+
+	final double[] x;
+	final double[] y;
+	final double[] z;
+	private int size;
+
+	/**
+	 * Makes an empty buffer.
+	 *
+	 * @param capacity the most points the buffer can hold.
+	 */
+	PointBuffer(final int capacity) {
+		x = new double[capacity];
+		y = new double[capacity];
+		z = new double[capacity];
+	}
+
+	/**
+	 * Adds a point to the end of the buffer.
+	 *
+	 * @throws ArrayIndexOutOfBoundsException if the buffer is full.
+	 */
+	void add(final double px, final double py, final double pz) {
+		x[size] = px;
+		y[size] = py;
+		z[size] = pz;
+		size++;
+	}
+
+	int capacity() {
+		return x.length;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Sets the number of points in the buffer, after its arrays have been
+	 * written directly.
+	 *
+	 * @throws IllegalArgumentException if size is negative or over capacity.
+	 */
+	void setSize(final int size) {
+		if (size < 0 || size > x.length) {
+			throw new IllegalArgumentException("Size " + size +
+				" is not within capacity " + x.length);
+		}
+		this.size = size;
+	}
+}
@@ -28,6 +28,8 @@
  */
 package org.bonej.ops.ellipsoid;
 
+import java.util.SplittableRandom;
+
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.random.UnitSphereRandomVectorGenerator;
@@ -183,8 +185,7 @@ public class QuickEllipsoid {
 		final double vy = y - cy;
 		final double vz = z - cz;
 
-		final double[] radii = getSortedRadii();
-		final double maxRadius = radii[2];
+		final double maxRadius = Math.max(ra, Math.max(rb, rc));
 
 		// if further than maximal sphere's bounding box, must be outside
 		if (Math.abs(vx) > maxRadius || Math.abs(vy) > maxRadius || Math.abs(vz) > maxRadius)
@@ -200,11 +201,16 @@ public class QuickEllipsoid {
 
 		// if length closer than minor semiaxis length
 		// must be inside
-		final double minRadius = radii[0];
+		final double minRadius = Math.min(ra, Math.min(rb, rc));
 		if (length <= minRadius)
 			return true;
 
-		final double[][] h = getEllipsoidTensor();
+		// read the tensor without copying it, this is called once per voxel
+		double[][] h = eh;
+		if (h == null) {
+			h = times(times(ev, ed), transpose(ev));
+			eh = h;
+		}
 
 		final double dot0 = vx * h[0][0] + vy * h[1][0] + vz * h[2][0];
 		final double dot1 = vx * h[0][1] + vy * h[1][1] + vz * h[2][1];
@@ -361,12 +367,61 @@ public class QuickEllipsoid {
 		return vectors;
 	}
 
+	/**
+	 * Finds the surface points in the given directions, as
+	 * {@link #getSurfacePoints(double[][])} does, but without allocating. The
+	 * output arrays may be the input arrays.
+	 *
+	 * @param ux x-components of the unit vectors.
+	 * @param uy y-components of the unit vectors.
+	 * @param uz z-components of the unit vectors.
+	 * @param n number of vectors.
+	 * @param px array for the x-coordinates of the surface points.
+	 * @param py array for the y-coordinates of the surface points.
+	 * @param pz array for the z-coordinates of the surface points.
+	 */
+	public void getSurfacePoints(final double[] ux, final double[] uy, final double[] uz, final int n,
+			final double[] px, final double[] py, final double[] pz) {
+		final double[] e0 = ev[0];
+		final double[] e1 = ev[1];
+		final double[] e2 = ev[2];
+		for (int p = 0; p < n; p++) {
+			final double x = ra * ux[p];
+			final double y = rb * uy[p];
+			final double z = rc * uz[p];
+			px[p] = x * e0[0] + y * e0[1] + z * e0[2] + cx;
+			py[p] = x * e1[0] + y * e1[1] + z * e1[2] + cy;
+			pz[p] = x * e2[0] + y * e2[1] + z * e2[2] + cz;
+		}
+	}
+
 	public double[][] getAxisAlignRandomlyDistributedSurfacePoints(int n) {
+		final double[] ux = new double[n];
+		final double[] uy = new double[n];
+		final double[] uz = new double[n];
+		getAxisAlignRandomlyDistributedSurfacePoints(n, ux, uy, uz);
+		final double[][] surfacePoints = new double[n][];
+		for (int i = 0; i < n; i++) {
+			surfacePoints[i] = new double[]{ux[i], uy[i], uz[i]};
+		}
+		return surfacePoints;
+	}
+
+	/**
+	 * Draws unit vectors whose surface points are distributed evenly over the
+	 * axis-aligned ellipsoid, as {@link #getAxisAlignRandomlyDistributedSurfacePoints(int)}
+	 * does, but into the given arrays.
+	 *
+	 * @param n number of vectors.
+	 * @param ux array for the x-components.
+	 * @param uy array for the y-components.
+	 * @param uz array for the z-components.
+	 */
+	public void getAxisAlignRandomlyDistributedSurfacePoints(final int n, final double[] ux, final double[] uy,
+			final double[] uz) {
 		refreshRandomNumbersIfNeeded();
 
-		final double[] sortedRadii = getSortedRadii();
-		final double muMax = sortedRadii[1] * sortedRadii[2];
-		final double[][] surfacePoints = new double[n][3];
+		final double muMax = getMuMax();
 		int surfacePointsFound = 0;
 		int attemptCounter = 0;
 		while (surfacePointsFound < n) {
@@ -374,12 +429,85 @@ public class QuickEllipsoid {
 			final double mu = getMu(v);
 			double rn = (attemptCounter < numberOfPreallocatedRandomNumbers) ? uniformRandomNumbers[attemptCounter] : rng.nextDouble();
 			if(rn <= mu / muMax) {
-				surfacePoints[surfacePointsFound] = new double[]{v[0], v[1], v[2]};
+				ux[surfacePointsFound] = v[0];
+				uy[surfacePointsFound] = v[1];
+				uz[surfacePointsFound] = v[2];
 				surfacePointsFound++;
 			}
 			attemptCounter++;
 		}
-		return surfacePoints;
+	}
+
+	/**
+	 * Draws unit vectors whose surface points are distributed evenly over the
+	 * axis-aligned ellipsoid, as {@link #getAxisAlignRandomlyDistributedSurfacePoints(int, double[], double[], double[])}
+	 * does, but from the caller's random numbers rather than the ellipsoid's own
+	 * generator. Callers that make many ellipsoids can share one table and
+	 * stream, and seed them to get reproducible results.
+	 *
+	 * @param n number of vectors.
+	 * @param ux array for the x-components.
+	 * @param uy array for the y-components.
+	 * @param uz array for the z-components.
+	 * @param sphereVectors random unit vectors, tried first.
+	 * @param uniforms uniform random numbers in [0, 1), one per sphere vector.
+	 * @param random source of further random numbers, if the table runs out.
+	 */
+	public void getAxisAlignRandomlyDistributedSurfacePoints(final int n, final double[] ux, final double[] uy,
+			final double[] uz, final double[][] sphereVectors, final double[] uniforms, final SplittableRandom random) {
+		final double muMax = getMuMax();
+		final double[] w = new double[3];
+		int surfacePointsFound = 0;
+		int attemptCounter = 0;
+		while (surfacePointsFound < n) {
+			final double[] v;
+			final double rn;
+			if (attemptCounter < sphereVectors.length) {
+				v = sphereVectors[attemptCounter];
+				rn = uniforms[attemptCounter];
+			} else {
+				v = w;
+				nextUnitVector(random, v);
+				rn = random.nextDouble();
+			}
+			if (rn <= getMu(v) / muMax) {
+				ux[surfacePointsFound] = v[0];
+				uy[surfacePointsFound] = v[1];
+				uz[surfacePointsFound] = v[2];
+				surfacePointsFound++;
+			}
+			attemptCounter++;
+		}
+	}
+
+	/**
+	 * Draws a random unit vector, by Marsaglia's method.
+	 *
+	 * @param random source of random numbers.
+	 * @param v array for the vector's components.
+	 */
+	static void nextUnitVector(final SplittableRandom random, final double[] v) {
+		double a;
+		double b;
+		double s;
+		do {
+			a = 2 * random.nextDouble() - 1;
+			b = 2 * random.nextDouble() - 1;
+			s = a * a + b * b;
+		} while (s >= 1);
+		final double root = 2 * Math.sqrt(1 - s);
+		v[0] = a * root;
+		v[1] = b * root;
+		v[2] = 1 - 2 * s;
+	}
+
+	/** The product of the two largest radii */
+	private double getMuMax() {
+		final double min = Math.min(ra, Math.min(rb, rc));
+		if (min == ra) {
+			return rb * rc;
+		}
+		return min == rb ? ra * rc : ra * rb;
 	}
 
 	private void refreshRandomNumbersIfNeeded() {
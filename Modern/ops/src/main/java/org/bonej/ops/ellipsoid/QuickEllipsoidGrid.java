@@ -0,0 +1,239 @@
+/*-
+ * #%L
+ * Ops created for BoneJ2
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.ops.ellipsoid;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A uniform grid over the axis-aligned bounding boxes of a list of ellipsoids,
+ * for finding the ellipsoids that contain a voxel of an image.
+ * <p>
+ * Each cell of the grid holds the indices of the ellipsoids whose boxes
+ * overlap it, in descending order of volume (ties in list order), so a voxel
+ * is tested only against the few ellipsoids that could contain it, biggest
+ * first. Voxels are tested at their centres, i.e. voxel (x, y, z) is
+ * contained by an ellipsoid if it contains the point (x + 0.5, y + 0.5, z +
+ * 0.5).
+ * </p>
+ * <p>
+ * The grid is read-only once built and may be queried from many threads,
+ * provided that the ellipsoids are not changed.
+ * </p>
+ */
+public final class QuickEllipsoidGrid {
+
+	/** Upper limit on the number of cells, which bounds the size of the index */
+	private static final long MAX_CELLS = 1 << 21;
+
+	private final List<QuickEllipsoid> ellipsoids;
+	private final int cellSize;
+	private final int nX;
+	private final int nY;
+	private final int nZ;
+	/** Cell c holds cellIndices[cellStarts[c]] to cellIndices[cellStarts[c + 1] - 1] */
+	private final int[] cellStarts;
+	private final int[] cellIndices;
+
+	/**
+	 * Builds the grid over an image of the given size.
+	 *
+	 * @param ellipsoids ellipsoids in pixel coordinates. Indices returned by
+	 *          {@link #find(long, long, long, int[])} refer to this list.
+	 * @param width width of the image in pixels.
+	 * @param height height of the image in pixels.
+	 * @param depth depth of the image in pixels.
+	 * @throws IllegalArgumentException if the image has no voxels.
+	 */
+	public QuickEllipsoidGrid(final List<QuickEllipsoid> ellipsoids,
+		final long width, final long height, final long depth)
+	{
+		if (width < 1 || height < 1 || depth < 1) {
+			throw new IllegalArgumentException("Image must have at least one voxel");
+		}
+		this.ellipsoids = ellipsoids;
+		final int n = ellipsoids.size();
+
+		// voxel bounding box of each ellipsoid {xMin, yMin, zMin, xMax, yMax, zMax}
+		final long[][] boxes = new long[n][];
+		final long[] extents = new long[n];
+		for (int i = 0; i < n; i++) {
+			boxes[i] = voxelBox(ellipsoids.get(i));
+			extents[i] = Math.max(boxes[i][3] - boxes[i][0], Math.max(boxes[i][4] -
+				boxes[i][1], boxes[i][5] - boxes[i][2])) + 1;
+		}
+
+		// cells about as big as a typical ellipsoid, but not too many of them
+		Arrays.sort(extents);
+		final long typical = n == 0 ? 1 : extents[n / 2];
+		final long smallest = (long) Math.ceil(Math.cbrt((double) width * height *
+			depth / MAX_CELLS));
+		cellSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.max(typical,
+			smallest)));
+		nX = (int) ((width - 1) / cellSize + 1);
+		nY = (int) ((height - 1) / cellSize + 1);
+		nZ = (int) ((depth - 1) / cellSize + 1);
+		final int nCells = nX * nY * nZ;
+
+		final int[] order = IntStream.range(0, n).boxed().sorted(Comparator
+			.comparingDouble(i -> -ellipsoids.get(i).getVolume())).mapToInt(
+				Integer::intValue).toArray();
+
+		// count each cell's ellipsoids, then fill the cells in order of volume
+		final int[][] cellBoxes = new int[n][];
+		cellStarts = new int[nCells + 1];
+		long total = 0;
+		for (int i = 0; i < n; i++) {
+			cellBoxes[i] = cellBox(boxes[i]);
+			final int[] b = cellBoxes[i];
+			if (b == null) continue;
+			for (int z = b[2]; z <= b[5]; z++)
+				for (int y = b[1]; y <= b[4]; y++)
+					for (int x = b[0]; x <= b[3]; x++) {
+						cellStarts[cellIndex(x, y, z) + 1]++;
+						total++;
+					}
+		}
+		cellIndices = new int[Math.toIntExact(total)];
+		for (int c = 0; c < nCells; c++)
+			cellStarts[c + 1] += cellStarts[c];
+		final int[] next = Arrays.copyOf(cellStarts, nCells);
+		for (final int i : order) {
+			final int[] b = cellBoxes[i];
+			if (b == null) continue;
+			for (int z = b[2]; z <= b[5]; z++)
+				for (int y = b[1]; y <= b[4]; y++)
+					for (int x = b[0]; x <= b[3]; x++)
+						cellIndices[next[cellIndex(x, y, z)]++] = i;
+			// make sure the lazily built tensor is ready before any parallel reads
+			ellipsoids.get(i).getEllipsoidTensor();
+		}
+	}
+
+	/**
+	 * Finds the largest ellipsoids that contain a voxel.
+	 *
+	 * @param x x-coordinate of the voxel.
+	 * @param y y-coordinate of the voxel.
+	 * @param z z-coordinate of the voxel.
+	 * @param indices array to fill with the indices of the containing
+	 *          ellipsoids, in descending order of volume. Its length is the most
+	 *          ellipsoids to find.
+	 * @return the number of indices written, which is less than the length of
+	 *         the array if fewer ellipsoids contain the voxel.
+	 */
+	public int find(final long x, final long y, final long z,
+		final int[] indices)
+	{
+		if (x < 0 || y < 0 || z < 0) return 0;
+		final long cX = x / cellSize;
+		final long cY = y / cellSize;
+		final long cZ = z / cellSize;
+		if (cX >= nX || cY >= nY || cZ >= nZ) return 0;
+		final int cell = cellIndex((int) cX, (int) cY, (int) cZ);
+		final double px = x + 0.5;
+		final double py = y + 0.5;
+		final double pz = z + 0.5;
+		int found = 0;
+		for (int c = cellStarts[cell]; c < cellStarts[cell + 1] &&
+			found < indices.length; c++)
+		{
+			final int i = cellIndices[c];
+			if (ellipsoids.get(i).contains(px, py, pz)) {
+				indices[found] = i;
+				found++;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Gets the side length of the grid's cubic cells.
+	 *
+	 * @return cell size in pixels.
+	 */
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	private int cellIndex(final int x, final int y, final int z) {
+		return (z * nY + y) * nX + x;
+	}
+
+	/**
+	 * Finds the cells that overlap a voxel bounding box.
+	 *
+	 * @return {xMin, yMin, zMin, xMax, yMax, zMax} in cells, or null if the box
+	 *         is outside the grid.
+	 */
+	private int[] cellBox(final long[] box) {
+		final long[] sizes = { nX, nY, nZ };
+		final int[] cells = new int[6];
+		for (int d = 0; d < 3; d++) {
+			final long min = Math.floorDiv(box[d], cellSize);
+			final long max = Math.floorDiv(box[d + 3], cellSize);
+			if (max < 0 || min >= sizes[d]) return null;
+			cells[d] = (int) Math.max(0, min);
+			cells[d + 3] = (int) Math.min(sizes[d] - 1, max);
+		}
+		return cells;
+	}
+
+	/**
+	 * Finds the voxels whose centres might lie in an ellipsoid. The half-width
+	 * of the box along each axis is the length of the corresponding row of the
+	 * eigenvector matrix scaled by the radii, and a voxel of slack on each side
+	 * absorbs rounding.
+	 *
+	 * @return {xMin, yMin, zMin, xMax, yMax, zMax} in voxels.
+	 */
+	static long[] voxelBox(final QuickEllipsoid ellipsoid) {
+		final double[] centre = ellipsoid.getCentre();
+		final double[] radii = ellipsoid.getRadii();
+		final double[][] rotation = ellipsoid.getRotation();
+		final double[] sortedRadii = ellipsoid.getSortedRadii();
+		final long[] box = new long[6];
+		for (int d = 0; d < 3; d++) {
+			double sumSquares = 0;
+			for (int j = 0; j < 3; j++) {
+				final double r = rotation[d][j] * radii[j];
+				sumSquares += r * r;
+			}
+			// contains() accepts everything within the minor and nothing beyond
+			// the major radius, whatever the rotation matrix
+			final double halfWidth = Math.min(sortedRadii[2], Math.max(sortedRadii[0],
+				Math.sqrt(sumSquares)));
+			box[d] = (long) Math.floor(centre[d] - halfWidth - 0.5);
+			box[d + 3] = (long) Math.ceil(centre[d] + halfWidth - 0.5);
+		}
+		return box;
+	}
+}
@@ -0,0 +1,161 @@
+/*-
+ * #%L
+ * Ops created for BoneJ2
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.ops.ellipsoid;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Labels the foreground of a binary image with the ellipsoids that contain
+ * it by scan-converting each ellipsoid, rather than by testing each voxel.
+ * <p>
+ * Ellipsoids are drawn in descending order of volume. Each row of an
+ * ellipsoid is found by solving its quadric for x, and a voxel on the row is
+ * written only if fewer than the requested number of larger ellipsoids have
+ * already claimed it. The image is split into slabs of slices that are drawn
+ * in parallel. The result matches testing every voxel centre with
+ * {@link QuickEllipsoid#contains(double, double, double)}, apart from voxels
+ * centred within rounding error of an ellipsoid's surface.
+ * </p>
+ *
+ * @see QuickEllipsoidGrid
+ */
+public final class QuickEllipsoidRasteriser {
+
+	private QuickEllipsoidRasteriser() {}
+
+	/**
+	 * Labels each foreground voxel with the indices of the largest ellipsoids
+	 * that contain its centre.
+	 *
+	 * @param ellipsoids ellipsoids in pixel coordinates.
+	 * @param mask binary image as [z][y * width + x], foreground is non-zero.
+	 * @param width width of the image in pixels.
+	 * @param height height of the image in pixels.
+	 * @param nLargest the most ellipsoids to record per voxel.
+	 * @return labels as [((z * nLargest + n) * height + y) * width + x], where
+	 *         n = 0 is the index of the largest ellipsoid containing the voxel,
+	 *         n = 1 the second largest, and so on. Voxels contained by fewer
+	 *         ellipsoids are -1 in their remaining ranks.
+	 * @throws IllegalArgumentException if nLargest is not positive, or the
+	 *           labels would not fit in an array.
+	 */
+	public static int[] rasterise(final List<QuickEllipsoid> ellipsoids,
+		final byte[][] mask, final int width, final int height,
+		final int nLargest)
+	{
+		if (nLargest < 1) {
+			throw new IllegalArgumentException("Must record at least one ellipsoid");
+		}
+		final int depth = mask.length;
+		final int area = width * height;
+		final long size = (long) area * nLargest * depth;
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Image is too large to label");
+		}
+		final int[] labels = new int[(int) size];
+		Arrays.fill(labels, -1);
+
+		final int[] order = IntStream.range(0, ellipsoids.size()).boxed().sorted(
+			Comparator.comparingDouble(i -> -ellipsoids.get(i).getVolume()))
+			.mapToInt(Integer::intValue).toArray();
+		final long[][] boxes = new long[ellipsoids.size()][];
+		final double[][][] tensors = new double[ellipsoids.size()][][];
+		for (int i = 0; i < ellipsoids.size(); i++) {
+			boxes[i] = QuickEllipsoidGrid.voxelBox(ellipsoids.get(i));
+			tensors[i] = ellipsoids.get(i).getEllipsoidTensor();
+		}
+
+		// a few slabs per thread to balance uneven slabs
+		final int nParts = 4 * Runtime.getRuntime().availableProcessors();
+		final int slabDepth = Math.max(1, (depth + nParts - 1) / nParts);
+		final int nSlabs = (depth + slabDepth - 1) / slabDepth;
+		IntStream.range(0, nSlabs).parallel().forEach(slab -> {
+			final int zStart = slab * slabDepth;
+			final int zEnd = Math.min(depth, zStart + slabDepth) - 1;
+			for (final int i : order) {
+				final long[] box = boxes[i];
+				if (box[5] < zStart || box[2] > zEnd || box[4] < 0 || box[1] >= height ||
+					box[3] < 0 || box[0] >= width) continue;
+				final int z0 = (int) Math.max(zStart, box[2]);
+				final int z1 = (int) Math.min(zEnd, box[5]);
+				final int y0 = (int) Math.max(0, box[1]);
+				final int y1 = (int) Math.min(height - 1, box[4]);
+				draw(ellipsoids.get(i).getCentre(), tensors[i], i, z0, z1, y0, y1,
+					mask, labels, width, area, nLargest);
+			}
+		});
+		return labels;
+	}
+
+	/**
+	 * Draws one ellipsoid into a block of rows. With v = p - centre, the row
+	 * (y, z) is inside where H00 vx² + 2 (H01 vy + H02 vz) vx + (H11 vy² + 2
+	 * H12 vy vz + H22 vz²) ≤ 1, which is an interval of vx.
+	 */
+	private static void draw(final double[] centre, final double[][] h,
+		final int label, final int z0, final int z1, final int y0, final int y1,
+		final byte[][] mask, final int[] labels, final int width, final int area,
+		final int nLargest)
+	{
+		final double a = h[0][0];
+		for (int z = z0; z <= z1; z++) {
+			final byte[] maskSlice = mask[z];
+			final int sliceOffset = z * nLargest * area;
+			final double vz = z + 0.5 - centre[2];
+			for (int y = y0; y <= y1; y++) {
+				final double vy = y + 0.5 - centre[1];
+				final double b = 2 * (h[0][1] * vy + h[0][2] * vz);
+				final double c = h[1][1] * vy * vy + 2 * h[1][2] * vy * vz + h[2][2] *
+					vz * vz - 1;
+				final double discriminant = b * b - 4 * a * c;
+				if (discriminant < 0) continue;
+				final double root = Math.sqrt(discriminant);
+				final int x0 = (int) Math.max(0, Math.ceil(centre[0] + (-b - root) /
+					(2 * a) - 0.5));
+				final int x1 = (int) Math.min(width - 1, Math.floor(centre[0] + (-b +
+					root) / (2 * a) - 0.5));
+				final int row = y * width;
+				for (int x = x0; x <= x1; x++) {
+					if (maskSlice[row + x] == 0) continue;
+					int j = sliceOffset + row + x;
+					for (int n = 0; n < nLargest; n++) {
+						if (labels[j] == -1) {
+							labels[j] = label;
+							break;
+						}
+						j += area;
+					}
+				}
+			}
+		}
+	}
+}
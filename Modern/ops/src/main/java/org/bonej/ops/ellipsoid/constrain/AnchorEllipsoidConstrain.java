@@ -34,10 +34,27 @@ import org.joml.Vector3d;
 import java.util.Random;
 
 public class AnchorEllipsoidConstrain implements EllipsoidConstrainStrategy {
-    private static Random rng = new Random();
+    private final Random rng;
     private double[] surfacePointBefore;
     private Vector3d direction;
 
+    public AnchorEllipsoidConstrain() {
+        this(new Random());
+    }
+
+    /**
+     * @param rng source of the jitter applied when the ellipsoid is centred on
+     *            the fixed point.
+     */
+    public AnchorEllipsoidConstrain(final Random rng) {
+        this.rng = rng;
+    }
+
+    @Override
+    public EllipsoidConstrainStrategy forOptimisation(final Random random) {
+        return new AnchorEllipsoidConstrain(random);
+    }
+
     @Override
     public void preConstrain(QuickEllipsoid ellipsoid, Vector3d fixedPoint) {
         double[] centre = ellipsoid.getCentre();
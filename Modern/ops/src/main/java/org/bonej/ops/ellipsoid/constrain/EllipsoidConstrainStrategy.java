@@ -28,10 +28,25 @@
  */
 package org.bonej.ops.ellipsoid.constrain;
 
+import java.util.Random;
+
 import org.bonej.ops.ellipsoid.QuickEllipsoid;
 import org.joml.Vector3d;
 
 public interface EllipsoidConstrainStrategy {
     void preConstrain(QuickEllipsoid e, Vector3d fixed);
     void postConstrain(QuickEllipsoid e);
+
+    /**
+     * Gets an instance for a single optimisation. Optimisations run in
+     * parallel, so a strategy that keeps state between
+     * {@link #preConstrain(QuickEllipsoid, Vector3d)} and
+     * {@link #postConstrain(QuickEllipsoid)} must return a new instance.
+     *
+     * @param random the optimisation's source of random numbers.
+     * @return a strategy that is not shared with other optimisations.
+     */
+    default EllipsoidConstrainStrategy forOptimisation(final Random random) {
+        return this;
+    }
 }
@@ -28,9 +28,14 @@
  */
 package org.bonej.ops.ellipsoid;
 
+import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
 import java.util.stream.Stream;
 
 import net.imagej.ops.special.function.Functions;
@@ -55,6 +60,35 @@ public class EllipsoidOptimisationStrategyTest extends AbstractOpTest {
 		assertEquals(9.5,ellipsoid.getRadii()[2],1.5);
 	}
 
+	/**
+	 * Optimisations with the same seed find the same ellipsoid, whichever
+	 * thread runs them and in whatever order
+	 */
+	@Test
+	public void testSameSeedGivesSameEllipsoid() {
+		final byte[][] sphere = getSphere(10);
+		final OptimisationParameters parameters = new OptimisationParameters(0.435, 100, 1, 100, 1.73, 0xB0E);
+		final EllipsoidOptimisationStrategy optimisation = (EllipsoidOptimisationStrategy) Functions.binary(ops,
+				EllipsoidOptimisationStrategy.class, QuickEllipsoid.class, sphere, new Vector3d(), new long[]{40, 40, 40},
+				new NoEllipsoidConstrain(), parameters);
+		final List<Vector3d> seedPoints = Arrays.asList(new Vector3d(20.5, 20.5, 20.5),
+				new Vector3d(18.5, 21.5, 20.5), new Vector3d(22.5, 19.5, 21.5), new Vector3d(20.5, 23.5, 17.5));
+
+		final List<QuickEllipsoid> serial = seedPoints.stream().map(p -> optimisation.calculate(sphere, p))
+				.collect(toList());
+		final List<Vector3d> reversed = new ArrayList<>(seedPoints);
+		Collections.reverse(reversed);
+		final List<QuickEllipsoid> parallel = reversed.parallelStream().map(p -> optimisation.calculate(sphere, p))
+				.collect(toList());
+		Collections.reverse(parallel);
+
+		for (int i = 0; i < seedPoints.size(); i++) {
+			assertNotNull(serial.get(i));
+			assertArrayEquals(serial.get(i).getCentre(), parallel.get(i).getCentre(), 0.0);
+			assertArrayEquals(serial.get(i).getRadii(), parallel.get(i).getRadii(), 0.0);
+		}
+	}
+
 	private byte[][] getSphere(int radius) {
 		double centrePointCoordinate = 10 + radius + 0.5;
 		Vector3d sphereCentre = new Vector3d(centrePointCoordinate, centrePointCoordinate, centrePointCoordinate);
@@ -77,7 +111,7 @@ public class EllipsoidOptimisationStrategyTest extends AbstractOpTest {
 	}
 
 	/**
-	 * test for {@link EllipsoidOptimisationStrategy#calculateTorque(QuickEllipsoid, Iterable)}
+	 * test for {@link EllipsoidOptimisationStrategy#calculateTorque(QuickEllipsoid, PointBuffer)}
 	 *
 	 * see testFindContactPoints in this file for explanation on what contact points are used
 	 * based on these points, the torque is expected to be zero
@@ -90,18 +124,19 @@ public class EllipsoidOptimisationStrategyTest extends AbstractOpTest {
 		double[] centre = {3,3,2};
 		QuickEllipsoid e = new QuickEllipsoid(radii,centre,new double[][]{{1,0,0},{0,1,0},{0,0,1}});
 
-		double [][] vectors = new double[7][3];
-		vectors[0][0] = 1; //x-direction
-		vectors[1][1] = 1; //y-direction
-		vectors[2][2] = 1; //z-direction
-		vectors[3][0] = -1; //-x-direction
-		vectors[4][1] = -1; //-y-direction
-		vectors[5][2] = -1; //-z-direction
+		final PointBuffer vectors = new PointBuffer(7);
+		vectors.add(1, 0, 0); //x-direction
+		vectors.add(0, 1, 0); //y-direction
+		vectors.add(0, 0, 1); //z-direction
+		vectors.add(-1, 0, 0); //-x-direction
+		vectors.add(0, -1, 0); //-y-direction
+		vectors.add(0, 0, -1); //-z-direction
+		vectors.add(0, 0, 0);
 
 		final byte[][] cubeImage = getCuboidImage();
 
 		//EXECUTE
-		final ArrayList<double[]> contactPoints = new ArrayList<>();
+		final PointBuffer contactPoints = new PointBuffer(7);
 		EllipsoidOptimisationStrategy.findContactPointsForGivenDirections(e, contactPoints, vectors, cubeImage,6,6,6);
 		final double[] torque = EllipsoidOptimisationStrategy.calculateTorque(e, contactPoints);
 
@@ -133,7 +168,7 @@ public class EllipsoidOptimisationStrategyTest extends AbstractOpTest {
 	}
 
 	/**
-	 * test for {@link EllipsoidOptimisationStrategy#findContactPoints(QuickEllipsoid, ArrayList, byte[][], int, int, int)}
+	 * test for {@link EllipsoidOptimisationStrategy#findContactPoints(QuickEllipsoid, OptimisationContext, byte[][], int, int, int)}
 	 *
 	 * uses a 6x6x6 byte array image representation of a cuboid that touches the image boundary at z=0
 	 * and otherwise has a surface with 1 pixel distance from the image boundary
@@ -152,13 +187,13 @@ public class EllipsoidOptimisationStrategyTest extends AbstractOpTest {
 		final double[] centre = {3,3,2};
 		QuickEllipsoid e = new QuickEllipsoid(radii,centre,new double[][]{{1,0,0},{0,1,0},{0,0,1}});
 
-		double [][] vectors = new double[6][3];
-		vectors[0][0] = 1; //x-direction
-		vectors[1][1] = 1; //y-direction
-		vectors[2][2] = 1; //z-direction
-		vectors[3][0] = -1; //-x-direction
-		vectors[4][1] = -1; //-y-direction
-		vectors[5][2] = -1; //-z-direction
+		final PointBuffer vectors = new PointBuffer(6);
+		vectors.add(1, 0, 0); //x-direction
+		vectors.add(0, 1, 0); //y-direction
+		vectors.add(0, 0, 1); //z-direction
+		vectors.add(-1, 0, 0); //-x-direction
+		vectors.add(0, -1, 0); //-y-direction
+		vectors.add(0, 0, -1); //-z-direction
 
 		final byte[][] cubeImage = getCuboidImage();
 
@@ -166,19 +201,21 @@ public class EllipsoidOptimisationStrategyTest extends AbstractOpTest {
 
 
 		//EXECUTE
-		final ArrayList<double[]> contactPoints = new ArrayList<>();
+		final PointBuffer contactPoints = new PointBuffer(6);
 		EllipsoidOptimisationStrategy
 				.findContactPointsForGivenDirections(e, contactPoints, vectors, cubeImage,6,6,6);
 
 		//VERIFY
 		assertEquals(3, contactPoints.size());
-		Stream.of(0,1,2).forEach
-				(i -> Stream.of(0,1,2).forEach(
-						j -> assertEquals(expectedContact[i][j],contactPoints.get(i)[j],1e-12)));
+		Stream.of(0,1,2).forEach(i -> {
+			assertEquals(expectedContact[i][0], contactPoints.x[i], 1e-12);
+			assertEquals(expectedContact[i][1], contactPoints.y[i], 1e-12);
+			assertEquals(expectedContact[i][2], contactPoints.z[i], 1e-12);
+		});
 	}
 
 	/**
-	 * test for {@link EllipsoidOptimisationStrategy#wiggle(QuickEllipsoid)} in a constrained setting
+	 * test for {@link EllipsoidOptimisationStrategy#wiggle(QuickEllipsoid, SplittableRandom)} in a constrained setting
 	 */
 	@Test
 	public void testWiggleSurfacePoint() {
@@ -187,7 +224,7 @@ public class EllipsoidOptimisationStrategyTest extends AbstractOpTest {
 		QuickEllipsoid e = new QuickEllipsoid(radii,centre,new double[][]{{1,0,0},{0,1,0},{0,0,1}});
 		final AnchorEllipsoidConstrain anchorConstrain = new AnchorEllipsoidConstrain();
 		anchorConstrain.preConstrain(e, new Vector3d(1,0,0));
-		EllipsoidOptimisationStrategy.wiggle(e);
+		EllipsoidOptimisationStrategy.wiggle(e, new SplittableRandom(0xB0E));
 		anchorConstrain.postConstrain(e);
 		assertTrue("Wiggle does not preserve surface point.",onSurface(e, new double[]{1,0,0}));
 	}
@@ -204,8 +241,8 @@ public class EllipsoidOptimisationStrategyTest extends AbstractOpTest {
 		final EllipsoidOptimisationStrategy optimisation = (EllipsoidOptimisationStrategy) Functions.binary(ops, EllipsoidOptimisationStrategy.class, QuickEllipsoid.class,
 				new byte[10][10],
 				new Vector3d(),new long[]{10,10,1},  new AnchorEllipsoidConstrain());
-		final ArrayList<double[]> contactPoints = new ArrayList<>();
-		contactPoints.add(new double[]{0,0,3});
+		final PointBuffer contactPoints = new PointBuffer(1);
+		contactPoints.add(0, 0, 3);
 		final AnchorEllipsoidConstrain anchorConstrain = new AnchorEllipsoidConstrain();
 		anchorConstrain.preConstrain(e, new Vector3d(1,0,0));
 		optimisation.bump(e, contactPoints, new double[]{e.getCentre()[0], e.getCentre()[1], e.getCentre()[2]});
@@ -214,7 +251,7 @@ public class EllipsoidOptimisationStrategyTest extends AbstractOpTest {
 	}
 
 	/**
-	 * test for @link EllipsoidOptimisationStrategy#turn(QuickEllipsoid, ArrayList, byte[][], int, int, int)}
+	 * test for @link EllipsoidOptimisationStrategy#turn(QuickEllipsoid, OptimisationContext, byte[][], int, int, int)}
 	 */
 	@Test
 	public void testTurnSurfacePoint() {
@@ -224,11 +261,13 @@ public class EllipsoidOptimisationStrategyTest extends AbstractOpTest {
 
 		final EllipsoidOptimisationStrategy optimisation = (EllipsoidOptimisationStrategy) Functions.binary(ops, EllipsoidOptimisationStrategy.class, QuickEllipsoid.class,
 				new byte[10][10],
-				new Vector3d(),new long[]{10,10,1},  new AnchorEllipsoidConstrain());final ArrayList<double[]> contactPoints = new ArrayList<>();
-		contactPoints.add(new double[]{0,0,3});
+				new Vector3d(),new long[]{10,10,1},  new AnchorEllipsoidConstrain());
+		// room for the default 100 search directions
+		final OptimisationContext context = new OptimisationContext(100, 0xB0E, new NoEllipsoidConstrain());
+		context.contactPoints.add(0, 0, 3);
 		final AnchorEllipsoidConstrain anchorConstrain = new AnchorEllipsoidConstrain();
 		anchorConstrain.preConstrain(e, new Vector3d(1,0,0));
-		optimisation.turn(e,contactPoints, getCuboidImage(),6,6,6);
+		optimisation.turn(e, context, getCuboidImage(),6,6,6);
 		anchorConstrain.postConstrain(e);
 
 		assertTrue("Bump does not preserve surface point.",onSurface(e, new double[]{1,0,0}));
@@ -237,7 +276,7 @@ public class EllipsoidOptimisationStrategyTest extends AbstractOpTest {
 
 
 	/**
-	 * test for {@link EllipsoidOptimisationStrategy#isInvalid(QuickEllipsoid, int, int, int)}
+	 * test for {@link EllipsoidOptimisationStrategy#isInvalid(QuickEllipsoid, OptimisationContext, int, int, int)}
 	 *
 	 * isInvalid can be true in three situations (too small, too large, too out of bounds),
 	 * each of which are asserted here.
@@ -256,10 +295,12 @@ public class EllipsoidOptimisationStrategyTest extends AbstractOpTest {
 				new byte[10][10],
 				new Vector3d(),new long[]{10,10,1},  new NoEllipsoidConstrain(), new OptimisationParameters(2,0,0,0,0));
 
+		final OptimisationContext context = new OptimisationContext(0, 0xB0E, new NoEllipsoidConstrain());
+
 		//EXECUTE
-		boolean tooSmallInvalid = optimisation.isInvalid(tooSmall, 100,100,100);
-		boolean tooFarOutInvalid = optimisation.isInvalid(tooFarOutOfBounds, 100,100,100);
-		boolean tooLargeInvalid = optimisation.isInvalid(tooLarge, 100,100,100);
+		boolean tooSmallInvalid = optimisation.isInvalid(tooSmall, context, 100,100,100);
+		boolean tooFarOutInvalid = optimisation.isInvalid(tooFarOutOfBounds, context, 100,100,100);
+		boolean tooLargeInvalid = optimisation.isInvalid(tooLarge, context, 100,100,100);
 
 
 
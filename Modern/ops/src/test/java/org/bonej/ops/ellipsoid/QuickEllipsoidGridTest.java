@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * Ops created for BoneJ2
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.ops.ellipsoid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuickEllipsoidGridTest {
+
+	private static final double[][] IDENTITY = { { 1, 0, 0 }, { 0, 1, 0 }, { 0, 0,
+		1 } };
+
+	@Test
+	public void testFindMatchesTestingEveryEllipsoid() {
+		final Random random = new Random(0xE11);
+		final int w = 37;
+		final int h = 29;
+		final int d = 23;
+		final List<QuickEllipsoid> ellipsoids = new ArrayList<>();
+		for (int i = 0; i < 150; i++) {
+			final double[] radii = { 0.5 + 6 * random.nextDouble(), 0.5 + 6 * random
+				.nextDouble(), 0.5 + 12 * random.nextDouble() };
+			final double[] centre = { -5 + (w + 10) * random.nextDouble(), -5 + (h +
+				10) * random.nextDouble(), -5 + (d + 10) * random.nextDouble() };
+			ellipsoids.add(new QuickEllipsoid(radii, centre, randomRotation(random)));
+		}
+		final List<QuickEllipsoid> byVolume = new ArrayList<>(ellipsoids);
+		byVolume.sort((a, b) -> Double.compare(b.getVolume(), a.getVolume()));
+
+		final QuickEllipsoidGrid grid = new QuickEllipsoidGrid(ellipsoids, w, h, d);
+
+		final int[] found = new int[3];
+		final int[] expected = new int[3];
+		for (int z = 0; z < d; z++)
+			for (int y = 0; y < h; y++)
+				for (int x = 0; x < w; x++) {
+					int nExpected = 0;
+					for (int i = 0; i < byVolume.size() && nExpected < 3; i++) {
+						final QuickEllipsoid e = byVolume.get(i);
+						if (e.contains(x + 0.5, y + 0.5, z + 0.5)) {
+							expected[nExpected] = ellipsoids.indexOf(e);
+							nExpected++;
+						}
+					}
+					final int nFound = grid.find(x, y, z, found);
+					assertEquals(nExpected, nFound);
+					assertArrayEquals(Arrays.copyOf(expected, nExpected), Arrays.copyOf(
+						found, nFound));
+				}
+	}
+
+	@Test
+	public void testFindPutsLargerEllipsoidFirst() {
+		final QuickEllipsoid small = new QuickEllipsoid(new double[] { 2, 2, 2 },
+			new double[] { 10, 10, 10 }, IDENTITY);
+		final QuickEllipsoid large = new QuickEllipsoid(new double[] { 5, 6, 7 },
+			new double[] { 10, 10, 10 }, IDENTITY);
+		final QuickEllipsoidGrid grid = new QuickEllipsoidGrid(Arrays.asList(small,
+			large), 20, 20, 20);
+		final int[] found = new int[2];
+
+		assertEquals(2, grid.find(9, 9, 9, found));
+		assertArrayEquals(new int[] { 1, 0 }, found);
+		assertEquals(1, grid.find(10, 10, 15, found));
+		assertEquals(1, found[0]);
+	}
+
+	@Test
+	public void testFindOutsideImage() {
+		final QuickEllipsoid e = new QuickEllipsoid(new double[] { 5, 5, 5 },
+			new double[] { 0, 0, 0 }, IDENTITY);
+		final QuickEllipsoidGrid grid = new QuickEllipsoidGrid(Collections
+			.singletonList(e), 10, 10, 10);
+		final int[] found = new int[1];
+
+		assertEquals(1, grid.find(0, 0, 0, found));
+		assertEquals(0, grid.find(-1, 0, 0, found));
+		assertEquals(0, grid.find(0, 10, 0, found));
+	}
+
+	@Test
+	public void testNoEllipsoids() {
+		final QuickEllipsoidGrid grid = new QuickEllipsoidGrid(Collections
+			.emptyList(), 10, 10, 10);
+
+		assertEquals(0, grid.find(5, 5, 5, new int[1]));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyImageThrows() {
+		new QuickEllipsoidGrid(Collections.emptyList(), 0, 10, 10);
+	}
+
+	/** Orthonormalises three random vectors into the columns of a rotation */
+	private static double[][] randomRotation(final Random random) {
+		final double[][] v = new double[3][3];
+		for (int c = 0; c < 3; c++) {
+			for (int r = 0; r < 3; r++)
+				v[c][r] = random.nextGaussian();
+			for (int p = 0; p < c; p++) {
+				double dot = 0;
+				for (int r = 0; r < 3; r++)
+					dot += v[c][r] * v[p][r];
+				for (int r = 0; r < 3; r++)
+					v[c][r] -= dot * v[p][r];
+			}
+			double length = 0;
+			for (int r = 0; r < 3; r++)
+				length += v[c][r] * v[c][r];
+			length = Math.sqrt(length);
+			for (int r = 0; r < 3; r++)
+				v[c][r] /= length;
+		}
+		return QuickEllipsoid.transpose(v);
+	}
+}
@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * Ops created for BoneJ2
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Doube, BoneJ developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.bonej.ops.ellipsoid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuickEllipsoidRasteriserTest {
+
+	private static final double[][] IDENTITY = { { 1, 0, 0 }, { 0, 1, 0 }, { 0, 0,
+		1 } };
+
+	@Test
+	public void testRasteriseMatchesGrid() {
+		final Random random = new Random(0xEF);
+		final int w = 41;
+		final int h = 27;
+		final int d = 19;
+		final int nLargest = 3;
+		final List<QuickEllipsoid> ellipsoids = new ArrayList<>();
+		for (int i = 0; i < 120; i++) {
+			final double[] radii = { 0.5 + 5 * random.nextDouble(), 0.5 + 5 * random
+				.nextDouble(), 0.5 + 10 * random.nextDouble() };
+			final double[] centre = { -5 + (w + 10) * random.nextDouble(), -5 + (h +
+				10) * random.nextDouble(), -5 + (d + 10) * random.nextDouble() };
+			ellipsoids.add(new QuickEllipsoid(radii, centre, randomRotation(random)));
+		}
+		final byte[][] mask = new byte[d][w * h];
+		for (final byte[] slice : mask)
+			for (int i = 0; i < slice.length; i++)
+				slice[i] = random.nextDouble() < 0.7 ? (byte) 0xFF : 0;
+
+		final int[] labels = QuickEllipsoidRasteriser.rasterise(ellipsoids, mask, w,
+			h, nLargest);
+
+		final QuickEllipsoidGrid grid = new QuickEllipsoidGrid(ellipsoids, w, h, d);
+		final int[] found = new int[nLargest];
+		for (int z = 0; z < d; z++)
+			for (int y = 0; y < h; y++)
+				for (int x = 0; x < w; x++) {
+					final int nFound = mask[z][y * w + x] == 0 ? 0 : grid.find(x, y, z,
+						found);
+					final int[] expected = new int[nLargest];
+					Arrays.fill(expected, -1);
+					System.arraycopy(found, 0, expected, 0, nFound);
+					final int[] actual = new int[nLargest];
+					for (int n = 0; n < nLargest; n++)
+						actual[n] = labels[((z * nLargest + n) * h + y) * w + x];
+					assertArrayEquals(expected, actual);
+				}
+	}
+
+	@Test
+	public void testRasteriseRanksBySize() {
+		final QuickEllipsoid small = new QuickEllipsoid(new double[] { 2, 2, 2 },
+			new double[] { 5, 5, 5 }, IDENTITY);
+		final QuickEllipsoid large = new QuickEllipsoid(new double[] { 3, 4, 4 },
+			new double[] { 5, 5, 5 }, IDENTITY);
+		final byte[][] mask = new byte[10][100];
+		for (final byte[] slice : mask)
+			Arrays.fill(slice, (byte) 0xFF);
+
+		final int[] labels = QuickEllipsoidRasteriser.rasterise(Arrays.asList(small,
+			large), mask, 10, 10, 2);
+
+		// voxel (5, 5, 5), first and second rank
+		assertEquals(1, labels[((5 * 2) * 10 + 5) * 10 + 5]);
+		assertEquals(0, labels[((5 * 2 + 1) * 10 + 5) * 10 + 5]);
+		// voxel (5, 5, 8) is only in the larger ellipsoid
+		assertEquals(1, labels[((8 * 2) * 10 + 5) * 10 + 5]);
+		assertEquals(-1, labels[((8 * 2 + 1) * 10 + 5) * 10 + 5]);
+	}
+
+	@Test
+	public void testRasteriseSkipsBackground() {
+		final QuickEllipsoid e = new QuickEllipsoid(new double[] { 3, 3, 3 },
+			new double[] { 5, 5, 5 }, IDENTITY);
+		final byte[][] mask = new byte[10][100];
+
+		final int[] labels = QuickEllipsoidRasteriser.rasterise(Collections
+			.singletonList(e), mask, 10, 10, 1);
+
+		assertEquals(1000, Arrays.stream(labels).filter(l -> l == -1).count());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRasteriseThrowsIfNoRanks() {
+		QuickEllipsoidRasteriser.rasterise(Collections.emptyList(), new byte[1][1],
+			1, 1, 0);
+	}
+
+	/** Orthonormalises three random vectors into the columns of a rotation */
+	private static double[][] randomRotation(final Random random) {
+		final double[][] v = new double[3][3];
+		for (int c = 0; c < 3; c++) {
+			for (int r = 0; r < 3; r++)
+				v[c][r] = random.nextGaussian();
+			for (int p = 0; p < c; p++) {
+				double dot = 0;
+				for (int r = 0; r < 3; r++)
+					dot += v[c][r] * v[p][r];
+				for (int r = 0; r < 3; r++)
+					v[c][r] -= dot * v[p][r];
+			}
+			double length = 0;
+			for (int r = 0; r < 3; r++)
+				length += v[c][r] * v[c][r];
+			length = Math.sqrt(length);
+			for (int r = 0; r < 3; r++)
+				v[c][r] /= length;
+		}
+		return QuickEllipsoid.transpose(v);
+	}
+}
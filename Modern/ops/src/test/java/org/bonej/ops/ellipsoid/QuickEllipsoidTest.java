@@ -78,6 +78,32 @@ public class QuickEllipsoidTest {
         assertEquals(1, surfacePoint1[2], 0.0);
     }
 
+    @Test
+    public void testSurfacePointsIntoArraysMatchesSurfacePoints() {
+        final double[][] rotation = {{0.36, 0.48, -0.8}, {-0.8, 0.6, 0}, {0.48, 0.64, 0.6}};
+        final QuickEllipsoid e = new QuickEllipsoid(new double[]{1, 2, 3}, new double[]{4, 5, 6}, rotation);
+        final int n = 50;
+        final double[] ux = new double[n];
+        final double[] uy = new double[n];
+        final double[] uz = new double[n];
+        e.getAxisAlignRandomlyDistributedSurfacePoints(n, ux, uy, uz);
+        final double[][] vectors = new double[n][];
+        for (int i = 0; i < n; i++) {
+            vectors[i] = new double[]{ux[i], uy[i], uz[i]};
+            assertEquals(1, Math.sqrt(ux[i] * ux[i] + uy[i] * uy[i] + uz[i] * uz[i]), 1e-12);
+        }
+
+        // write the points over the directions
+        e.getSurfacePoints(ux, uy, uz, n, ux, uy, uz);
+        final double[][] expected = e.getSurfacePoints(vectors);
+
+        for (int i = 0; i < n; i++) {
+            assertEquals(expected[i][0], ux[i], 0.0);
+            assertEquals(expected[i][1], uy[i], 0.0);
+            assertEquals(expected[i][2], uz[i], 0.0);
+        }
+    }
+
     /**
      * Test for {@link QuickEllipsoid#contains(double, double, double)}
      *
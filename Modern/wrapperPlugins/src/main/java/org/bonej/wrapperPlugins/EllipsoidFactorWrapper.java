@@ -31,7 +31,6 @@
 package org.bonej.wrapperPlugins;
 
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
 import static net.imglib2.roi.Regions.countTrue;
 import static org.bonej.wrapperPlugins.CommonMessages.NOT_3D_IMAGE;
 import static org.bonej.wrapperPlugins.CommonMessages.NOT_BINARY;
@@ -43,15 +42,11 @@ import ij.ImagePlus;
 import ij.ImageStack;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Function;
-import java.util.stream.IntStream;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
@@ -86,6 +81,8 @@ import org.bonej.ops.ellipsoid.EllipsoidFactorOutputGenerator;
 import org.bonej.ops.ellipsoid.EllipsoidOptimisationStrategy;
 import org.bonej.ops.ellipsoid.OptimisationParameters;
 import org.bonej.ops.ellipsoid.QuickEllipsoid;
+import org.bonej.ops.ellipsoid.QuickEllipsoidGrid;
+import org.bonej.ops.ellipsoid.QuickEllipsoidRasteriser;
 import org.bonej.ops.ellipsoid.constrain.NoEllipsoidConstrain;
 import org.bonej.ops.skeletonize.FindRidgePoints;
 import org.bonej.utilities.AxisUtils;
@@ -93,7 +90,6 @@ import org.bonej.utilities.ElementUtil;
 import org.bonej.utilities.SharedTable;
 import org.bonej.wrapperPlugins.wrapperUtils.Common;
 import org.joml.Vector3d;
-import org.joml.Vector3dc;
 import org.scijava.ItemIO;
 import org.scijava.app.StatusService;
 import org.scijava.command.Command;
@@ -172,6 +168,10 @@ public class EllipsoidFactorWrapper <T extends RealType<T> & NativeType<T>> exte
 	private int runs = 1;
 	@Parameter(label = "Average over largest n ellipsoids", min="1")
 	private int weightedAverageN = 1;
+	@Parameter(label = "Rasterise ellipsoids", description = "Draw each ellipsoid into the image, largest first, instead of finding the ellipsoids that contain each voxel. Faster, but may label voxels at ellipsoid boundaries differently.")
+	private boolean rasteriseEllipsoids = false;
+	@Parameter(label = "Random seed", description = "Seed for the random choices of the optimisation. The same seed gives the same ellipsoids. 0 picks a new seed each time.", min = "0")
+	private long seed = 0;
 	
 	
 	//what seed points should I use?
@@ -212,10 +212,12 @@ public class EllipsoidFactorWrapper <T extends RealType<T> & NativeType<T>> exte
 		int counter = 0;
 		double[] medianErrors = new double[runs];
 		double[] maxErrors = new double[runs];
+		final long baseSeed = seed == 0 ? new Random().nextLong() : seed;
+		logService.info("Ellipsoid Factor random seed: " + baseSeed);
 
 		for(int i = 0; i<runs; i++) {
 			//optimise ellipsoids
-			final List<QuickEllipsoid> ellipsoids = runEllipsoidOptimisation(inputImage);
+			final List<QuickEllipsoid> ellipsoids = runEllipsoidOptimisation(inputImage, baseSeed + i);
 			if (ellipsoids.isEmpty()) {
 				cancelMacroSafe(this, NO_ELLIPSOIDS_FOUND);
 				return;
@@ -398,9 +400,11 @@ public class EllipsoidFactorWrapper <T extends RealType<T> & NativeType<T>> exte
 	 *
 	 * @param imp
 	 *            input image
+	 * @param runSeed
+	 *            seed for the random choices of this run
 	 * @return array of fitted ellipsoids
 	 */
-	private List<QuickEllipsoid> runEllipsoidOptimisation(final ImgPlus imp) {
+	private List<QuickEllipsoid> runEllipsoidOptimisation(final ImgPlus imp, final long runSeed) {
 		long start = System.currentTimeMillis();
 
 		final int w = (int) imp.dimension(0);
@@ -410,41 +414,27 @@ public class EllipsoidFactorWrapper <T extends RealType<T> & NativeType<T>> exte
 		final byte[][] pixels = imgPlusToByteArray(imp);
 		final ArrayImg<ByteType, ByteArray> seedImage = ArrayImgs.bytes(w, h, d);
 		final List<QuickEllipsoid> quickEllipsoids = new ArrayList<>();
-		final OptimisationParameters parameters = new OptimisationParameters(vectorIncrement, nVectors, contactSensitivity, maxIterations, maxDrift);
+		final OptimisationParameters parameters = new OptimisationParameters(vectorIncrement, nVectors, contactSensitivity, maxIterations, maxDrift, runSeed);
 		if (seedOnDistanceRidge) {
 			List<Vector3d> ridgePoints = getDistanceRidgePoints(inputAsBitType);
-			ridgePoints = applySkipRatio(ridgePoints);
+			ridgePoints = applySkipRatio(ridgePoints, runSeed);
 			addPointsToDisplay(ridgePoints, seedImage, (byte) 1);
 
 			statusService.showStatus("Optimising distance-ridge-seeded ellipsoids from "+ridgePoints.size()+" seed points...");
-			final BinaryFunctionOp<byte[][], Vector3d, QuickEllipsoid> medialOptimisation = Functions.binary(opService,
-					EllipsoidOptimisationStrategy.class, QuickEllipsoid.class, pixels, new Vector3d(),
-					new long[]{w, h, d}, new NoEllipsoidConstrain(),parameters);
-			final AtomicInteger progress = new AtomicInteger();
-			final int points = ridgePoints.size();
-			final List<QuickEllipsoid> ridgePointEllipsoids = ridgePoints.parallelStream()
-					.peek(p -> statusService.showProgress(progress.getAndIncrement(), points))
-					.map(sp -> medialOptimisation.calculate(pixels, sp)).filter(Objects::nonNull)
-					.collect(toList());
+			final List<QuickEllipsoid> ridgePointEllipsoids = optimiseEllipsoids(ridgePoints, pixels,
+					new long[]{w, h, d}, parameters);
 			logService.info("Found " + ridgePointEllipsoids.size() + " distance-ridge-seeded ellipsoids.");
 			quickEllipsoids.addAll(ridgePointEllipsoids);
 		}
 
 		if (seedOnTopologyPreserving) {
 			List<Vector3d> skeletonPoints = getSkeletonPoints();
-			skeletonPoints = applySkipRatio(skeletonPoints);
+			skeletonPoints = applySkipRatio(skeletonPoints, runSeed);
 			addPointsToDisplay(skeletonPoints, seedImage, (byte) 1);
 
 			statusService.showStatus("Optimising skeleton-seeded ellipsoids from "+skeletonPoints.size()+" seed points...");
-			final BinaryFunctionOp<byte[][], Vector3d, QuickEllipsoid> medialOptimisation = Functions.binary(opService,
-					EllipsoidOptimisationStrategy.class, QuickEllipsoid.class, pixels, new Vector3d(),
-					new long[]{w, h, d}, new NoEllipsoidConstrain(),parameters);
-			final AtomicInteger progress = new AtomicInteger();
-			final int points = skeletonPoints.size();
-			final List <QuickEllipsoid> skeletonSeededEllipsoids = skeletonPoints.parallelStream()
-					.peek(p -> statusService.showProgress(progress.getAndIncrement(), points))
-					.map(sp -> medialOptimisation.calculate(pixels, sp)).filter(Objects::nonNull)
-					.collect(toList());
+			final List <QuickEllipsoid> skeletonSeededEllipsoids = optimiseEllipsoids(skeletonPoints, pixels,
+					new long[]{w, h, d}, parameters);
 			logService.info("Found " + skeletonSeededEllipsoids.size() + " skeleton-seeded ellipsoids.");
 			quickEllipsoids.addAll(skeletonSeededEllipsoids);
 		}
@@ -464,6 +454,7 @@ public class EllipsoidFactorWrapper <T extends RealType<T> & NativeType<T>> exte
 			seedPointImage.setChannelMinimum(0, 0);
 			seedPointDataset = datasetService.create(seedPointImage);
 		}
+		// stable, so ellipsoids of equal volume keep the order of their seed points
 		quickEllipsoids.sort((a, b) -> Double.compare(b.getVolume(), a.getVolume()));
 		final long stop = System.currentTimeMillis();
 		logService.info("Found " + quickEllipsoids.size() + " ellipsoids in " + (stop - start) + " ms");
@@ -511,16 +502,48 @@ public class EllipsoidFactorWrapper <T extends RealType<T> & NativeType<T>> exte
 		return imagePlus;
 	}
 
+	/**
+	 * Optimises an ellipsoid from each seed point, in parallel.
+	 * <p>
+	 * Each optimisation draws its random numbers from a stream seeded by the
+	 * parameters' seed and its seed point, and the ellipsoids are collected in
+	 * the order of their seed points. The result is thus the same whichever
+	 * threads run the optimisations.
+	 * </p>
+	 *
+	 * @param seedPoints
+	 *            points from which to grow the ellipsoids
+	 * @param pixels
+	 *            the input image, one byte array per slice
+	 * @param dimensions
+	 *            width, height and depth of the image
+	 * @param parameters
+	 *            parameters of the optimisation
+	 * @return ellipsoids found, in the order of their seed points
+	 */
+	private List<QuickEllipsoid> optimiseEllipsoids(final List<Vector3d> seedPoints, final byte[][] pixels,
+			final long[] dimensions, final OptimisationParameters parameters) {
+		final BinaryFunctionOp<byte[][], Vector3d, QuickEllipsoid> medialOptimisation = Functions.binary(opService,
+				EllipsoidOptimisationStrategy.class, QuickEllipsoid.class, pixels, new Vector3d(),
+				dimensions, new NoEllipsoidConstrain(), parameters);
+		final AtomicInteger progress = new AtomicInteger();
+		final int points = seedPoints.size();
+		return seedPoints.parallelStream()
+				.peek(p -> statusService.showProgress(progress.getAndIncrement(), points))
+				.map(sp -> medialOptimisation.calculate(pixels, sp)).filter(Objects::nonNull)
+				.collect(toList());
+	}
+
 	private List<Vector3d> getDistanceRidgePoints(final ImgPlus<BitType> imp) {
 		final List<Vector3d> ridgePoints = (List<Vector3d>) opService.run(FindRidgePoints.class, imp, distanceThreshold);
 		logService.info("Found " + ridgePoints.size() + " distance-ridge-based points");
 		return ridgePoints;
 	}
 
-	private List<Vector3d> applySkipRatio(final List<Vector3d> seedPoints) {
+	private List<Vector3d> applySkipRatio(final List<Vector3d> seedPoints, final long runSeed) {
 		if (skipRatio > 1) {
 			final int limit = seedPoints.size() / skipRatio;
-			final Random random = new Random();
+			final Random random = new Random(runSeed);
 			final int skipper = random.nextInt(skipRatio);
 			return Stream.iterate(skipper, i -> i + skipRatio).limit(limit).map(seedPoints::get).collect(toList());
 		}
@@ -548,56 +571,55 @@ public class EllipsoidFactorWrapper <T extends RealType<T> & NativeType<T>> exte
 		return assignedVoxels.get();
 	}
 
-	private Img<IntType> assignEllipsoidIDs(final Img<BitType> mask, final List<QuickEllipsoid> ellipsoids) {
+	private Img<IntType> assignEllipsoidIDs(final ImgPlus<BitType> mask, final List<QuickEllipsoid> ellipsoids) {
+
+		if (rasteriseEllipsoids) {
+			final int[] iDs = QuickEllipsoidRasteriser.rasterise(ellipsoids, imgPlusToByteArray(mask),
+					(int) mask.dimension(0), (int) mask.dimension(1), weightedAverageN);
+			return ArrayImgs.ints(iDs, mask.dimension(0), mask.dimension(1), weightedAverageN, mask.dimension(2));
+		}
 
 		final Img<IntType> idImage = ArrayImgs.ints(mask.dimension(0), mask.dimension(1),weightedAverageN, mask.dimension(2));
 		idImage.forEach(c -> c.setInteger(-1));
 
-		for(int nn=0;nn<weightedAverageN;nn++) {
-			final int n = nn;
-			final Map<QuickEllipsoid, Integer> iDs = IntStream.range(0, ellipsoids.size()).boxed()
-					.collect(toMap(ellipsoids::get, Function.identity()));
-			final LongStream zRange = LongStream.range(0, mask.dimension(2));
-			zRange.parallel().forEach(z -> {
-				// multiply by image unit? make more intelligent bounding box?
-				final List<QuickEllipsoid> localEllipsoids = ellipsoids.stream()
-						.filter(e -> Math.abs(e.getCentre()[2] - z) < e.getSortedRadii()[2]).collect(toList());
-				final long[] mins = {0, 0, z};
-				final long[] maxs = {mask.dimension(0) - 1, mask.dimension(1) - 1, z};
-				final Cursor<BitType> maskSlice = Views.interval(mask, mins, maxs).localizingCursor();
-				colourSlice(idImage, maskSlice, localEllipsoids, iDs, n);
-			});
-		}
+		final QuickEllipsoidGrid grid = new QuickEllipsoidGrid(ellipsoids, mask.dimension(0), mask.dimension(1),
+				mask.dimension(2));
+		final LongStream zRange = LongStream.range(0, mask.dimension(2));
+		zRange.parallel().forEach(z -> {
+			final long[] mins = {0, 0, z};
+			final long[] maxs = {mask.dimension(0) - 1, mask.dimension(1) - 1, z};
+			final Cursor<BitType> maskSlice = Views.interval(mask, mins, maxs).localizingCursor();
+			colourSlice(idImage, maskSlice, grid);
+		});
 		return idImage;
 	}
 
+	/**
+	 * Labels each foreground voxel of a slice with the IDs of the largest
+	 * ellipsoids that contain it, the nth largest in the nth channel.
+	 */
 	private void colourSlice(final RandomAccessible<IntType> idImage, final Cursor<BitType> mask,
-							 final Collection<QuickEllipsoid> localEllipsoids, final Map<QuickEllipsoid, Integer> iDs,
-							 final int nLargest) {
+							 final QuickEllipsoidGrid grid) {
+		final RandomAccess<IntType> eIDRandomAccess = idImage.randomAccess();
 		final long[] coordinates = new long[mask.numDimensions()];
+		final long[] position = new long[4];
+		final int[] iDs = new int[weightedAverageN];
 		while (mask.hasNext()) {
 			mask.fwd();
 			if (!mask.get().get()) {
 				continue;
 			}
 			mask.localize(coordinates);
-			final Vector3d point = new Vector3d(coordinates[0] + 0.5, coordinates[1] + 0.5, coordinates[2] + 0.5);
-			colourID(localEllipsoids, idImage, point, iDs, nLargest);
-		}
-	}
-
-	private void colourID(final Collection<QuickEllipsoid> localEllipsoids,
-						  final RandomAccessible<IntType> ellipsoidIdentityImage, final Vector3dc point,
-						  final Map<QuickEllipsoid, Integer> iDs, int nLargest) {
-		final Optional<QuickEllipsoid> candidate = localEllipsoids.stream()
-				.filter(e -> e.contains(point.x(), point.y(), point.z())).skip(nLargest).findFirst();
-		if (!candidate.isPresent()) {
-			return;
+			final int found = grid.find(coordinates[0], coordinates[1], coordinates[2], iDs);
+			position[0] = coordinates[0];
+			position[1] = coordinates[1];
+			position[3] = coordinates[2];
+			for (int n = 0; n < found; n++) {
+				position[2] = n;
+				eIDRandomAccess.setPosition(position);
+				eIDRandomAccess.get().set(iDs[n]);
+			}
 		}
-		final RandomAccess<IntType> eIDRandomAccess = ellipsoidIdentityImage.randomAccess();
-		eIDRandomAccess.setPosition(new long[]{(long) point.x(), (long) point.y(), (long) nLargest, (long) point.z()});
-		final QuickEllipsoid ellipsoid = candidate.get();
-		eIDRandomAccess.get().set(iDs.get(ellipsoid));
 	}
 
 	private void addResults(final int totalEllipsoids, final double fillingPercentage) {
@@ -31,8 +31,10 @@ package org.bonej.wrapperPlugins;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
+import net.imagej.Dataset;
 import net.imagej.axis.Axes;
 import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.Cursor;
 import net.imglib2.RandomAccess;
 import net.imglib2.img.Img;
 import org.joml.Vector3d;
@@ -44,11 +46,22 @@ import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.array.ArrayRandomAccess;
 import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import org.junit.experimental.categories.Category;
+import org.scijava.command.CommandInfo;
 import org.scijava.command.CommandModule;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleRunner;
+import org.scijava.module.process.PostprocessorPlugin;
+import org.scijava.module.process.PreprocessorPlugin;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 public class EllipsoidFactorWrapperTest extends AbstractWrapperTest {
 
@@ -122,6 +135,22 @@ public class EllipsoidFactorWrapperTest extends AbstractWrapperTest {
         assertFalse("Sanity check failed: method cancelled", module.isCanceled());
     }
 
+    @Category(org.bonej.wrapperPlugins.SlowWrapperTest.class)
+    @Test
+    public void testSameSeedGivesSameEllipsoidFactors() throws ExecutionException, InterruptedException {
+        final DefaultLinearAxis xAxis = new DefaultLinearAxis(Axes.X, "", 1.0);
+        final DefaultLinearAxis yAxis = new DefaultLinearAxis(Axes.Y, "", 1.0);
+        final DefaultLinearAxis zAxis = new DefaultLinearAxis(Axes.Z, "", 1.0);
+        final ImgPlus<UnsignedByteType> imgPlus = new ImgPlus<>(createSphereImg(), "Sphere", xAxis, yAxis, zAxis);
+
+        final Dataset first = runWithSeed(imgPlus, 0xB0E);
+        final Dataset second = runWithSeed(imgPlus, 0xB0E);
+        final Dataset oneThread = runWithSeedOnOneThread(imgPlus, 0xB0E);
+
+        assertSameEllipsoidFactors("Runs with the same seed should give the same EF", first, second);
+        assertSameEllipsoidFactors("EF should not depend on the number of threads", first, oneThread);
+    }
+
     @Test
     public void testImgToByteArray(){
         final int fg = 0xFF;
@@ -139,6 +168,72 @@ public class EllipsoidFactorWrapperTest extends AbstractWrapperTest {
     public static void oneTimeSetup() {
     }
 
+    private static void assertSameEllipsoidFactors(final String message, final Dataset expected,
+            final Dataset actual) {
+        final Cursor<? extends RealType<?>> expectedCursor = expected.getImgPlus().cursor();
+        final Cursor<? extends RealType<?>> actualCursor = actual.getImgPlus().cursor();
+        while (expectedCursor.hasNext()) {
+            assertEquals(message, Double.doubleToLongBits(expectedCursor.next().getRealDouble()),
+                    Double.doubleToLongBits(actualCursor.next().getRealDouble()));
+        }
+    }
+
+    private static Map<String, Object> seededInputs(final ImgPlus<UnsignedByteType> imgPlus, final long seed) {
+        final Map<String, Object> inputs = new HashMap<>();
+        inputs.put("inputDataset", imgPlus);
+        inputs.put("nVectors", 100);
+        inputs.put("vectorIncrement", 0.435);
+        inputs.put("skipRatio", 1);
+        inputs.put("contactSensitivity", 10);
+        inputs.put("maxIterations", 100);
+        inputs.put("maxDrift", 1.73);
+        inputs.put("runs", 2);
+        inputs.put("weightedAverageN", 1);
+        inputs.put("seed", seed);
+        inputs.put("seedOnDistanceRidge", true);
+        inputs.put("distanceThreshold", 0.6);
+        inputs.put("seedOnTopologyPreserving", false);
+        return inputs;
+    }
+
+    private static Dataset runWithSeed(final ImgPlus<UnsignedByteType> imgPlus, final long seed)
+            throws ExecutionException, InterruptedException {
+        final CommandModule module = command().run(EllipsoidFactorWrapper.class, true,
+                seededInputs(imgPlus, seed)).get();
+        return getEllipsoidFactors(module);
+    }
+
+    /**
+     * Runs the plugin on the calling thread of a one-thread pool, so that its
+     * parallel streams run on that thread alone instead of the common pool.
+     */
+    private static Dataset runWithSeedOnOneThread(final ImgPlus<UnsignedByteType> imgPlus, final long seed)
+            throws ExecutionException, InterruptedException {
+        final CommandInfo info = command().getCommand(EllipsoidFactorWrapper.class);
+        final CommandModule module = (CommandModule) imageJ().module().createModule(info);
+        seededInputs(imgPlus, seed).forEach((name, value) -> {
+            module.setInput(name, imageJ().convert().convert(value, info.getInput(name).getType()));
+            module.resolveInput(name);
+        });
+        final ModuleRunner runner = new ModuleRunner(imageJ().context(), module,
+                imageJ().plugin().createInstancesOfType(PreprocessorPlugin.class),
+                imageJ().plugin().createInstancesOfType(PostprocessorPlugin.class));
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            pool.submit((Callable<Module>) runner).get();
+        } finally {
+            pool.shutdown();
+        }
+        return getEllipsoidFactors(module);
+    }
+
+    private static Dataset getEllipsoidFactors(final CommandModule module) {
+        assertFalse("Sanity check failed: method cancelled", module.isCanceled());
+        @SuppressWarnings("unchecked")
+        final List<Dataset> outputs = (List<Dataset>) module.getOutput("ellipsoidFactorOutputImages");
+        return outputs.get(0);
+    }
+
     private static Img<UnsignedByteType> createSphereImg() {
         final int r = 5;
         final int c = 10 + r;